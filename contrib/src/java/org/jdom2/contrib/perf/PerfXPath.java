@@ -0,0 +1,134 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.contrib.perf;
+
+import java.io.File;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.engine.NativeXPathFactory;
+import org.jdom2.xpath.jaxen.JaxenXPathFactory;
+
+/**
+ * Compare the evaluation time of the same XPath expressions compiled by the
+ * Jaxen and native XPath factories. The expressions are compiled once, and
+ * only the evaluation is timed, after a warm-up.
+ * <p>
+ * Usage: PerfXPath [file.xml] - defaults to contrib/src/resources/hamlet.xml
+ */
+@SuppressWarnings("javadoc")
+public class PerfXPath {
+
+	private static final String[] QUERIES = {
+		"//SPEAKER",
+		"/PLAY/ACT/SCENE/SPEECH/SPEAKER",
+		"/PLAY/ACT[3]/SCENE[2]/SPEECH",
+		"/PLAY/ACT/SCENE/TITLE/text()",
+		"//LINE[1]",
+		"//SPEECH[SPEAKER = 'HAMLET']/LINE",
+		"count(//LINE)",
+	};
+
+	private static final int LOOPS = 50;
+
+	private static long time(final XPathExpression<?> xp, final Document doc)
+			throws Exception {
+		return PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < LOOPS; i++) {
+					xp.evaluate(doc);
+				}
+			}
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		final File in = new File(args.length > 0 ? args[0] 
+				: "contrib/src/resources/hamlet.xml");
+		final Document doc = new SAXBuilder().build(in);
+		final XPathFactory[] factories = {
+				new JaxenXPathFactory(), new NativeXPathFactory()};
+		
+		System.out.printf("Evaluating each query %d times against %s\n", LOOPS, in);
+		System.out.printf("%-40s %12s %12s %8s\n", "Query", "Jaxen(ms)", "Native(ms)", "Speedup");
+		for (int warm = 0; warm < 3; warm++) {
+			for (String q : QUERIES) {
+				final long[] times = new long[factories.length];
+				List<?> expect = null;
+				for (int f = 0; f < factories.length; f++) {
+					final XPathExpression<Object> xp = factories[f].compile(q);
+					final List<Object> got = xp.evaluate(doc);
+					if (expect == null) {
+						expect = got;
+					} else if (!expect.equals(got)) {
+						throw new IllegalStateException("Different results for " + q);
+					}
+					times[f] = time(xp, doc);
+				}
+				if (warm == 2) {
+					System.out.printf("%-40s %12.3f %12.3f %8.2f\n", q, 
+							times[0] / 1000000.0, times[1] / 1000000.0,
+							(double)times[0] / times[1]);
+				}
+			}
+		}
+	}
+
+}
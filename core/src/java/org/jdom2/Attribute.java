@@ -353,8 +353,10 @@ public class Attribute extends CloneBase
 		if (reason != null) {
 			throw new IllegalNameException(name, "attribute", reason);
 		}
+		Snapshot.touch(this);
 		this.name = name;
 		specified = true;
+		markModified();
 		return this;
 	}
 
@@ -452,8 +454,10 @@ public class Attribute extends CloneBase
 					"An attribute namespace without a prefix can only be the " +
 					"NO_NAMESPACE namespace");
 		}
+		Snapshot.touch(this);
 		this.namespace = namespace;
 		specified = true;
+		markModified();
 		return this;
 	}
 
@@ -486,8 +490,10 @@ public class Attribute extends CloneBase
 		if (reason != null) {
 			throw new IllegalDataException(value, "attribute", reason);
 		}
+		Snapshot.touch(this);
 		this.value = value;
 		specified = true;
+		markModified();
 		return this;
 	}
 
@@ -509,8 +515,10 @@ public class Attribute extends CloneBase
 	 *         not one of the supported types.
 	 */
 	public Attribute setAttributeType(final AttributeType type) {
+		Snapshot.touch(this);
 		this.type = type == null ? AttributeType.UNDECLARED : type;
 		specified = true;
+		markModified();
 		return this;
 	}
 
@@ -546,7 +554,21 @@ public class Attribute extends CloneBase
 	 * @since JDOM2
 	 */
 	public void setSpecified(boolean specified) {
+		Snapshot.touch(this);
 		this.specified = specified;
+		markModified();
+	}
+
+	/**
+	 * Record a change to this Attribute in the modification stamp of the
+	 * parent Element (if any). See {@link Element#getModificationStamp()}.
+	 */
+	private final void markModified() {
+		if (parent != null) {
+			IdIndex.changed(this);
+			parent.markModified();
+			MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_CHANGED, parent, this, -1);
+		}
 	}
 	
 	/**
@@ -593,7 +615,15 @@ public class Attribute extends CloneBase
 	 * this has been included in the Element's list yet).
 	 */
 	protected Attribute setParent(Element parent) {
+		if (this.parent != null) {
+			IdIndex.detaching(this);
+			Snapshot.detaching(this);
+		}
 		this.parent = parent;
+		if (parent != null) {
+			IdIndex.attached(this);
+			Snapshot.attached(this);
+		}
 		return this;
 	}
 
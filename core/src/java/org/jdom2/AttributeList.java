@@ -56,6 +56,7 @@ package org.jdom2;
 
 import java.util.*;
 
+import org.jdom2.filter.Filter;
 import org.jdom2.internal.ArrayCopy;
 
 /**
@@ -119,10 +120,60 @@ final class AttributeList extends AbstractList<Attribute>
 	 *        an Attribute to add without any checks
 	 */
 	final void uncheckedAddAttribute(final Attribute a) {
+		Snapshot.touch(parent);
 		a.parent = parent;
 		ensureCapacity(size + 1);
 		attributeData[size++] = a;
+		IdIndex.attached(a);
+		Snapshot.attached(a);
+		incModCount();
+		MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, a, size - 1);
+	}
+
+	/**
+	 * Package internal method to support cloning. The list must be empty
+	 * and belong to a new Element, and the Attributes must be new, detached,
+	 * and valid for the Element.
+	 * 
+	 * @param data
+	 *        the Attributes to set. The array becomes the backing array.
+	 */
+	final void uncheckedSetAttributes(final Attribute[] data) {
+		for (int i = 0; i < data.length; i++) {
+			data[i].parent = parent;
+		}
+		attributeData = data;
+		size = data.length;
+		incModCount();
+	}
+
+	/**
+	 * Report the removal of Attributes to any MutationListeners, last to
+	 * first so each index is correct when its event is replayed in order.
+	 * 
+	 * @param from
+	 *        the Element the Attributes were removed from.
+	 * @param removed
+	 *        the Attributes before the removal.
+	 * @param drop
+	 *        which of the Attributes were removed, or null if all were.
+	 */
+	private static void fireRemoved(final Element from,
+			final Attribute[] removed, final boolean[] drop) {
+		for (int i = removed.length - 1; i >= 0; i--) {
+			if (drop == null || drop[i]) {
+				MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_REMOVED, from, removed[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Record a structural change to the list, and to the parent Element's
+	 * modification stamp.
+	 */
+	private final void incModCount() {
 		modCount++;
+		parent.markModified();
 	}
 
 	/**
@@ -151,16 +202,21 @@ final class AttributeList extends AbstractList<Attribute>
 
 		// returns -1 if not exist
 		final int duplicate = indexOfDuplicate(attribute);
+		Snapshot.touch(parent);
 		if (duplicate < 0) {
 			attribute.setParent(parent);
 			ensureCapacity(size + 1);
 			attributeData[size++] = attribute;
-			modCount++;
+			incModCount();
+			MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, attribute, size - 1);
 		} else {
 			final Attribute old = attributeData[duplicate];
 			old.setParent(null);
 			attributeData[duplicate] = attribute;
 			attribute.setParent(parent);
+			parent.markModified();
+			MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_REMOVED, parent, old, duplicate);
+			MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, attribute, duplicate);
 		}
 		return true;
 	}
@@ -197,6 +253,7 @@ final class AttributeList extends AbstractList<Attribute>
 			throw new IllegalAddException(parent, attribute, reason);
 		}
 
+		Snapshot.touch(parent);
 		attribute.setParent(parent);
 
 		ensureCapacity(size + 1);
@@ -208,7 +265,8 @@ final class AttributeList extends AbstractList<Attribute>
 			attributeData[index] = attribute;
 			size++;
 		}
-		modCount++;
+		incModCount();
+		MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, attribute, index);
 	}
 
 	/**
@@ -292,6 +350,9 @@ final class AttributeList extends AbstractList<Attribute>
 	 */
 	@Override
 	public void clear() {
+		Snapshot.touch(parent);
+		final Attribute[] removed = MutationEvent.isActive() && size > 0
+				? ArrayCopy.copyOf(attributeData, size) : null;
 		if (attributeData != null) {
 			while (size > 0) {
 				size--;
@@ -299,7 +360,194 @@ final class AttributeList extends AbstractList<Attribute>
 				attributeData[size] = null;
 			}
 		}
-		modCount++;
+		incModCount();
+		if (removed != null) {
+			fireRemoved(parent, removed, null);
+		}
+	}
+
+	/**
+	 * Move all the Attributes from another AttributeList to this one.
+	 * Attributes in this list that duplicate a moved Attribute are replaced.
+	 * <p>
+	 * Every Attribute is checked for Namespace collisions with this list's
+	 * Element before anything is changed. The source list is then emptied
+	 * in one step instead of one removal at a time.
+	 * 
+	 * @param src
+	 *        The AttributeList to take the Attributes from.
+	 * @throws IllegalAddException
+	 *         if validation rules prevent any of the Attributes being moved
+	 */
+	void transferFrom(final AttributeList src) {
+		final int count = src.size;
+		for (int i = 0; i < count; i++) {
+			final Attribute a = src.attributeData[i];
+			final String reason = Verifier.checkNamespaceCollision(a, parent);
+			if (reason != null) {
+				throw new IllegalAddException(parent, a, reason);
+			}
+		}
+		Snapshot.touch(parent);
+		Snapshot.touch(src.parent);
+		final boolean fire = MutationEvent.isActive();
+		final Attribute[] moved = fire 
+				? ArrayCopy.copyOf(src.attributeData, count) : null;
+		// where each moved Attribute went, and what it replaced.
+		final int[] at = fire ? new int[count] : null;
+		final Attribute[] replaced = fire ? new Attribute[count] : null;
+		ensureCapacity(size + count);
+		for (int i = 0; i < count; i++) {
+			final Attribute a = src.attributeData[i];
+			src.attributeData[i] = null;
+			final int duplicate = indexOfDuplicate(a);
+			if (duplicate < 0) {
+				if (fire) {
+					at[i] = size;
+				}
+				attributeData[size++] = a;
+			} else {
+				if (fire) {
+					at[i] = duplicate;
+					replaced[i] = attributeData[duplicate];
+				}
+				attributeData[duplicate].setParent(null);
+				attributeData[duplicate] = a;
+			}
+			a.setParent(parent);
+		}
+		src.size = 0;
+		src.incModCount();
+		incModCount();
+		if (fire) {
+			fireRemoved(src.parent, moved, null);
+			for (int i = 0; i < count; i++) {
+				if (replaced[i] != null) {
+					MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_REMOVED, parent, replaced[i], at[i]);
+				}
+				MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, moved[i], at[i]);
+			}
+		}
+	}
+
+	/**
+	 * Remove all Attributes matching the supplied filter in a single pass.
+	 * <p>
+	 * The filter is applied to all the Attributes before anything is
+	 * changed, so an exception from the filter leaves the list intact.
+	 * 
+	 * @param <F>
+	 *        The Generic type of the Attributes matched by the Filter.
+	 * @param filter
+	 *        The Filter selecting the Attributes to remove.
+	 * @return the removed Attributes, in order.
+	 */
+	<F> List<F> removeMatching(final Filter<F> filter) {
+		final List<F> removed = new ArrayList<F>();
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			final F f = filter.filter(attributeData[i]);
+			if (f != null) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+				removed.add(f);
+			}
+		}
+		removeDropped(drop);
+		return removed;
+	}
+
+	/**
+	 * Remove all Attributes <b>not</b> matching the supplied filter in a
+	 * single pass. See {@link #removeMatching(Filter)}.
+	 * 
+	 * @param filter
+	 *        The Filter selecting the Attributes to keep.
+	 * @return the removed Attributes, in order.
+	 */
+	List<Attribute> retainMatching(final Filter<?> filter) {
+		final List<Attribute> removed = new ArrayList<Attribute>();
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			if (!filter.matches(attributeData[i])) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+				removed.add(attributeData[i]);
+			}
+		}
+		removeDropped(drop);
+		return removed;
+	}
+
+	/**
+	 * Remove the marked Attributes, detaching them, and compacting the
+	 * remainder.
+	 * 
+	 * @param drop
+	 *        marks the Attributes to remove, or null if there are none.
+	 */
+	private void removeDropped(final boolean[] drop) {
+		if (drop == null) {
+			return;
+		}
+		Snapshot.touch(parent);
+		final Attribute[] removed = MutationEvent.isActive()
+				? ArrayCopy.copyOf(attributeData, size) : null;
+		int keep = 0;
+		for (int i = 0; i < size; i++) {
+			if (drop[i]) {
+				attributeData[i].setParent(null);
+			} else {
+				attributeData[keep++] = attributeData[i];
+			}
+		}
+		while (size > keep) {
+			attributeData[--size] = null; // Let gc do its work
+		}
+		incModCount();
+		if (removed != null) {
+			fireRemoved(parent, removed, drop);
+		}
+	}
+
+	@Override
+	public boolean removeAll(final Collection<?> collection) {
+		if (collection == null) {
+			throw new NullPointerException("Cannot remove a null collection");
+		}
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			if (collection.contains(attributeData[i])) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+			}
+		}
+		removeDropped(drop);
+		return drop != null;
+	}
+
+	@Override
+	public boolean retainAll(final Collection<?> collection) {
+		if (collection == null) {
+			throw new NullPointerException("Cannot retain a null collection");
+		}
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			if (!collection.contains(attributeData[i])) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+			}
+		}
+		removeDropped(drop);
+		return drop != null;
 	}
 
 	/**
@@ -315,6 +563,7 @@ final class AttributeList extends AbstractList<Attribute>
 			clear();
 			return;
 		}
+		Snapshot.touch(parent);
 
 		// keep a backup in case we need to roll-back...
 		final Attribute[] old = attributeData;
@@ -330,6 +579,9 @@ final class AttributeList extends AbstractList<Attribute>
 		}
 		size = 0;
 		attributeData = null;
+		if (oldSize > 0 && MutationEvent.isActive()) {
+			fireRemoved(parent, ArrayCopy.copyOf(old, oldSize), null);
+		}
 
 		boolean ok = false;
 		try {
@@ -343,6 +595,8 @@ final class AttributeList extends AbstractList<Attribute>
 				attributeData = old;
 				while (size < oldSize) {
 					attributeData[size++].setParent(parent);
+					MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, 
+							attributeData[size - 1], size - 1);
 				}
 				modCount = oldModCount;
 			}
@@ -350,6 +604,18 @@ final class AttributeList extends AbstractList<Attribute>
 
 	}
 
+	/**
+	 * Reduce the capacity of this <code>AttributeList</code> to its size.
+	 * The Attributes are not changed.
+	 */
+	void trimToSize() {
+		if (size == 0) {
+			attributeData = null;
+		} else if (size < attributeData.length) {
+			attributeData = ArrayCopy.copyOf(attributeData, size);
+		}
+	}
+
 	/**
 	 * Increases the capacity of this <code>AttributeList</code> instance, if
 	 * necessary, to ensure that it can hold at least the number of items
@@ -449,12 +715,14 @@ final class AttributeList extends AbstractList<Attribute>
 			throw new IndexOutOfBoundsException("Index: " + index +
 					" Size: " + size());
 
+		Snapshot.touch(parent);
 		final Attribute old = attributeData[index];
 		old.setParent(null);
 		System.arraycopy(attributeData, index + 1, attributeData, index,
 				size - index - 1);
 		attributeData[--size] = null; // Let gc do its work
-		modCount++;
+		incModCount();
+		MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_REMOVED, parent, old, index);
 		return old;
 	}
 
@@ -511,11 +779,15 @@ final class AttributeList extends AbstractList<Attribute>
 			throw new IllegalAddException(parent, attribute, reason);
 		}
 
+		Snapshot.touch(parent);
 		final Attribute old = attributeData[index];
 		old.setParent(null);
 
 		attributeData[index] = attribute;
 		attribute.setParent(parent);
+		parent.markModified();
+		MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_REMOVED, parent, old, index);
+		MutationEvent.fire(MutationEvent.Type.ATTRIBUTE_ADDED, parent, attribute, index);
 		return old;
 	}
 
@@ -594,6 +866,7 @@ final class AttributeList extends AbstractList<Attribute>
 	}
 	
 	private void sortInPlace(final int[] indexes) {
+		Snapshot.touch(parent);
 		// the indexes are a discrete set of values that have no duplicates,
 		// and describe the relative order of each of them.
 		// as a result, we can do some tricks....
@@ -633,6 +906,8 @@ final class AttributeList extends AbstractList<Attribute>
 			indexes[ip] = i;
 		}
 		sortInPlace(indexes);
+		parent.markModified();
+		MutationEvent.fire(MutationEvent.Type.ATTRIBUTES_REORDERED, parent, null, -1);
 	}
 
 	/* * * * * * * * * * * * * ContentListIterator * * * * * * * * * * * * * */
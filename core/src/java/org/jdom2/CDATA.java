@@ -116,7 +116,9 @@ public class CDATA extends Text {
 		// beyond Text and call that alone before super.setText().
 
 		if (str == null || "".equals(str)) {
+			Snapshot.touch(this);
 			value = EMPTY_STRING;
+			markModified();
 			return this;
 		}
 
@@ -125,7 +127,9 @@ public class CDATA extends Text {
 			throw new IllegalDataException(str, "CDATA section", reason);
 		}
 
+		Snapshot.touch(this);
 		value = str;
+		markModified();
 
 		return this;
 	}
@@ -170,7 +174,9 @@ public class CDATA extends Text {
 			throw new IllegalDataException(str, "CDATA section", reason);
 		}
 
+		Snapshot.touch(this);
 		value = tmpValue;
+		markModified();
 	}
 
 	/**
@@ -124,7 +124,9 @@ public class Comment extends Content {
 			throw new IllegalDataException(text, "comment", reason);
 		}
 
+		Snapshot.touch(this);
 		this.text = text;
+		markModified();
 		return this;
 	}
 
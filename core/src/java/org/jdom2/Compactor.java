@@ -0,0 +1,209 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduce the memory used by existing JDOM content, for Documents that are
+ * kept in memory for a long time and are mostly read.
+ * <p>
+ * Compacting content does two things:
+ * <ul>
+ * <li>Every String value in the content (Element and Attribute names,
+ * Attribute values, Text, CDATA and Comment text, ProcessingInstruction
+ * targets and data, and EntityRef names) is replaced by a shared instance
+ * of an equal String, the same way the {@link SlimJDOMFactory} does while
+ * a Document is built. Documents with many repeated structures (for
+ * example many <code>&lt;unit&gt;EA&lt;/unit&gt;</code> Elements) then share
+ * all of their String data.
+ * <li>The arrays backing the content and Attribute lists are trimmed to
+ * their size, so that the spare capacity left over from building the
+ * content is released.
+ * </ul>
+ * The content is not otherwise changed: it remains fully mutable, and no
+ * modification stamps change. Namespace instances are already shared by
+ * {@link Namespace#getNamespace(String, String)}.
+ * <p>
+ * The String cache is kept between calls, so compacting several Documents
+ * with the same Compactor shares equal Strings between all of them. Use
+ * {@link #clearCache()} (or a new Compactor) to release the cache.
+ * <p>
+ * This class is not thread-safe, and content should not be modified while
+ * it is being compacted.
+ * 
+ * @see SlimJDOMFactory
+ * @since JDOM 2.1
+ */
+public final class Compactor {
+
+	private StringBin cache = new StringBin();
+
+	/**
+	 * Create a Compactor with an empty String cache.
+	 */
+	public Compactor() {
+		// nothing
+	}
+
+	/**
+	 * Discard the cached String instances.
+	 */
+	public void clearCache() {
+		cache = new StringBin();
+	}
+
+	/**
+	 * Compact the Document and all of its content.
+	 * 
+	 * @param document The Document to compact.
+	 * @return The same Document.
+	 */
+	public Document compact(final Document document) {
+		final ContentList content = document.content;
+		content.trimToSize();
+		for (int i = 0, n = content.size(); i < n; i++) {
+			final Content c = content.get(i);
+			if (c instanceof Element) {
+				compactTree((Element)c);
+			} else {
+				compactLeaf(c);
+			}
+		}
+		return document;
+	}
+
+	/**
+	 * Compact the Element and all of its descendants.
+	 * 
+	 * @param element The Element to compact.
+	 * @return The same Element.
+	 */
+	public Element compact(final Element element) {
+		compactTree(element);
+		return element;
+	}
+
+	private void compactTree(final Element root) {
+		// walk the tree without recursion, deep trees are common in the
+		// large Documents this is meant for.
+		final List<Element> pending = new ArrayList<Element>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			final Element element = pending.remove(pending.size() - 1);
+			element.name = cache.reuse(element.name);
+			if (element.additionalNamespaces instanceof ArrayList) {
+				((ArrayList<Namespace>)element.additionalNamespaces).trimToSize();
+			}
+			final AttributeList attributes = element.attributes;
+			if (attributes != null) {
+				attributes.trimToSize();
+				for (int i = 0, n = attributes.size(); i < n; i++) {
+					final Attribute a = attributes.get(i);
+					a.name = cache.reuse(a.name);
+					a.value = cache.reuse(a.value);
+				}
+			}
+			final ContentList content = element.content;
+			content.trimToSize();
+			for (int i = 0, n = content.size(); i < n; i++) {
+				final Content c = content.get(i);
+				if (c instanceof Element) {
+					pending.add((Element)c);
+				} else {
+					compactLeaf(c);
+				}
+			}
+		}
+	}
+
+	private void compactLeaf(final Content content) {
+		switch (content.getCType()) {
+			case Text:
+			case CDATA:
+				final Text text = (Text)content;
+				text.value = cache.reuse(text.value);
+				break;
+			case Comment:
+				final Comment comment = (Comment)content;
+				comment.text = cache.reuse(comment.text);
+				break;
+			case ProcessingInstruction:
+				final ProcessingInstruction pi = (ProcessingInstruction)content;
+				pi.target = cache.reuse(pi.target);
+				pi.rawData = cache.reuse(pi.rawData);
+				break;
+			case EntityRef:
+				final EntityRef ref = (EntityRef)content;
+				ref.name = cache.reuse(ref.name);
+				break;
+			default:
+				// DocType is at most one per Document.
+				break;
+		}
+	}
+
+	/**
+	 * Get the number of distinct Strings in the cache.
+	 * 
+	 * @return The number of cached Strings.
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+}
@@ -134,6 +134,13 @@ public abstract class Content extends CloneBase
 	 * instances are 'detached'
 	 */
 	protected transient Parent parent = null;
+
+	/**
+	 * The last known position of this Content in its parent's ContentList.
+	 * This is only a hint: it is confirmed against the list before it is
+	 * used, and the list recalculates it when it is wrong.
+	 */
+	transient int indexHint = -1;
 	/**
 	 * The content type enumerate value for this Content
 	 * @serialField This is an Enum, and cannot be null.
@@ -190,6 +197,45 @@ public abstract class Content extends CloneBase
 		return parent;
 	}
 
+	/**
+	 * Return the Content immediately after this one in its parent, or null
+	 * if this is the last content, or if this content has no parent.
+	 * <p>
+	 * The position of this content in its parent is remembered, so walking
+	 * through siblings does not require a scan of the parent's content
+	 * unless the parent has been modified since the position was
+	 * calculated.
+	 *
+	 * @return the following sibling, or null if there is none.
+	 * @since JDOM 2.1
+	 */
+	public Content getNextSibling() {
+		final Parent p = getParent();
+		if (p == null) {
+			return null;
+		}
+		final int index = p.indexOf(this) + 1;
+		return index < p.getContentSize() ? p.getContent(index) : null;
+	}
+
+	/**
+	 * Return the Content immediately before this one in its parent, or null
+	 * if this is the first content, or if this content has no parent.
+	 * <p>
+	 * See {@link #getNextSibling()} for the performance characteristics.
+	 *
+	 * @return the preceding sibling, or null if there is none.
+	 * @since JDOM 2.1
+	 */
+	public Content getPreviousSibling() {
+		final Parent p = getParent();
+		if (p == null) {
+			return null;
+		}
+		final int index = p.indexOf(this) - 1;
+		return index >= 0 ? p.getContent(index) : null;
+	}
+
 	/**
 	 * A convenience method that returns any parent element for this element,
 	 * or null if the element is unattached or is a root element.  This was the
@@ -216,10 +262,34 @@ public abstract class Content extends CloneBase
 	 * @return                     the target element
 	 */
 	protected Content setParent(Parent parent) {
+		if (this.parent != null) {
+			IdIndex.detaching(this);
+			Snapshot.detaching(this);
+		}
 		this.parent = parent;
+		if (parent != null) {
+			IdIndex.attached(this);
+			Snapshot.attached(this);
+		}
 		return this;
 	}
 
+	/**
+	 * Record a modification to this content in the modification stamp of
+	 * the Element ancestors, and the Document. See
+	 * {@link Element#getModificationStamp()}.
+	 */
+	void markModified() {
+		if (parent instanceof Element) {
+			((Element)parent).markModified();
+		} else if (parent instanceof Document) {
+			((Document)parent).markModified();
+		}
+		if (parent != null) {
+			MutationEvent.fire(MutationEvent.Type.CONTENT_CHANGED, parent, this, -1);
+		}
+	}
+
 	/**
 	 * Return this child's owning document or null if the branch containing
 	 * this child is currently not attached to a document.
@@ -271,6 +341,61 @@ public abstract class Content extends CloneBase
 		return super.hashCode();
 	}
 
+	/**
+	 * Compare this Content with another by value rather than by identity.
+	 * Two Content items are deep-equal if they are of the same
+	 * {@link CType} and have the same data: for Text, CDATA and Comment
+	 * content that is the text value; ProcessingInstruction, EntityRef,
+	 * DocType and Element compare all of their own properties (and an
+	 * Element compares all of its descendants). Text and CDATA are
+	 * different types of Content, and adjacent Text nodes are not merged
+	 * before comparing.
+	 * <p>
+	 * Unlike {@link #equals(Object)} this does not consider where the Content
+	 * is attached.
+	 * 
+	 * @param other The Content to compare with.
+	 * @return true if the other Content has the same structure and values.
+	 * @since JDOM 2.1
+	 */
+	public boolean deepEquals(final Content other) {
+		return other == this || (other != null && other.ctype == ctype
+				&& getValue().equals(other.getValue()));
+	}
+
+	/**
+	 * Get a hash code computed from the same values that are compared by
+	 * {@link #deepEquals(Content)}: Content that is deep-equal has the same
+	 * structural hash. The hash depends only on the names and values in the
+	 * Content (using the hash codes of Strings), so the same structure has
+	 * the same hash in every JVM.
+	 * 
+	 * @return The structural hash of this Content.
+	 * @since JDOM 2.1
+	 */
+	public int structuralHash() {
+		return 31 * ctype.ordinal() + getValue().hashCode();
+	}
+
+	/**
+	 * Null-safe String comparison for {@link #deepEquals(Content)}.
+	 * @param a The first String.
+	 * @param b The second String.
+	 * @return true if both are null or the values are equal.
+	 */
+	static final boolean same(final String a, final String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Null-safe String hash for {@link #structuralHash()}.
+	 * @param s The String.
+	 * @return the String hash code, or 0 for null.
+	 */
+	static final int hash(final String s) {
+		return s == null ? 0 : s.hashCode();
+	}
+
 	@Override
 	public List<Namespace> getNamespacesInScope() {
 		// Element class will override this method to do it differently.
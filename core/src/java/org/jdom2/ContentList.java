@@ -116,6 +116,27 @@ final class ContentList extends AbstractList<Content>
 		this.parent = parent;
 	}
 	
+	/**
+	 * Get the ContentList that holds the content of a Parent.
+	 * 
+	 * @param parent
+	 *        the Element or Document to get the content of.
+	 * @return the ContentList of the parent.
+	 * @throws IllegalArgumentException
+	 *         if the parent is neither an Element nor a Document.
+	 */
+	static ContentList of(final Parent parent) {
+		if (parent instanceof Element) {
+			return ((Element)parent).content;
+		}
+		if (parent instanceof Document) {
+			return ((Document)parent).content;
+		}
+		throw new IllegalArgumentException(parent == null
+				? "Cannot transfer content from a null Parent"
+				: "Cannot transfer content from a " + parent.getClass().getName());
+	}
+
 	/**
 	 * Package internal method to support building from sources that are 100%
 	 * trusted.
@@ -124,10 +145,38 @@ final class ContentList extends AbstractList<Content>
 	 *        content to add without any checks
 	 */
 	final void uncheckedAddContent(final Content c) {
+		Snapshot.touch(parent);
 		c.parent = parent;
 		ensureCapacity(size + 1);
+		c.indexHint = size;
 		elementData[size++] = c;
+		IdIndex.attached(c);
+		Snapshot.attached(c);
 		incModCount();
+		MutationEvent.fire(MutationEvent.Type.CONTENT_ADDED, parent, c, size - 1);
+	}
+
+	/**
+	 * Package internal method to support cloning. The list must be empty
+	 * and belong to a new parent (one that is not attached, indexed, or
+	 * listened to), and the content must be new, detached, and valid for the
+	 * parent.
+	 * 
+	 * @param data
+	 *        the content to set. The array becomes the backing array.
+	 */
+	final void uncheckedSetContent(final Content[] data) {
+		for (int i = 0; i < data.length; i++) {
+			final Content c = data[i];
+			c.parent = parent;
+			c.indexHint = i;
+		}
+		elementData = data;
+		size = data.length;
+		// the parent is new, so there is no need to update its
+		// modification stamp (or those of its new ancestors).
+		dataModiCount++;
+		sizeModCount++;
 	}
 
 	/**
@@ -169,10 +218,45 @@ final class ContentList extends AbstractList<Content>
 		dataModiCount++;
 		// indicate there's a change to the size
 		sizeModCount++;
+		markParentModified();
 	}
 	
 	private final void incDataModOnly() {
 		dataModiCount++;
+		markParentModified();
+	}
+
+	/**
+	 * Report the removal of a run of content to any MutationListeners. The
+	 * removals are reported last-to-first so each index is correct when
+	 * its event is replayed in order.
+	 * 
+	 * @param removed
+	 *        the content that was at <i>start</i> onwards.
+	 * @param start
+	 *        the index of removed[0] before the removal.
+	 * @param drop
+	 *        which of the content was removed, or null if all of it was.
+	 */
+	private final void fireRemoved(final Content[] removed, final int start,
+			final boolean[] drop) {
+		for (int i = removed.length - 1; i >= 0; i--) {
+			if (drop == null || drop[i]) {
+				MutationEvent.fire(MutationEvent.Type.CONTENT_REMOVED, parent,
+						removed[i], start + i);
+			}
+		}
+	}
+
+	/**
+	 * Update the modification stamp of the parent Element or Document.
+	 */
+	private final void markParentModified() {
+		if (parent instanceof Element) {
+			((Element)parent).markModified();
+		} else if (parent instanceof Document) {
+			((Document)parent).markModified();
+		}
 	}
 
 	/**
@@ -245,9 +329,12 @@ final class ContentList extends AbstractList<Content>
 		// Check to see whether this parent believes it can contain this content
 		parent.canContainContent(child, index, false);
 
+		Snapshot.touch(parent);
+
 		child.setParent(parent);
 
 		ensureCapacity(size + 1);
+		child.indexHint = index;
 		if (index == size) {
 			elementData[size++] = child;
 		} else {
@@ -257,6 +344,7 @@ final class ContentList extends AbstractList<Content>
 		}
 		// Successful add's increment the AbstractList's modCount
 		incModCount();
+		MutationEvent.fire(MutationEvent.Type.CONTENT_ADDED, parent, child, index);
 	}
 
 	/**
@@ -307,6 +395,8 @@ final class ContentList extends AbstractList<Content>
 			return true;
 		}
 
+		Snapshot.touch(parent);
+
 		ensureCapacity(size() + addcnt);
 
 		final int tmpmodcount = getModCount();
@@ -335,11 +425,147 @@ final class ContentList extends AbstractList<Content>
 		return true;
 	}
 
+	/**
+	 * Move a range of content from another ContentList in to this one.
+	 * <p>
+	 * When this list belongs to an Element the move is done with array
+	 * copies: the only checks are the parent's canContainContent for each
+	 * moved item, and one walk up this Element's ancestry to ensure none of
+	 * the moved content is an ancestor of this Element. The moved content
+	 * keeps its identity, it is not detached and re-added one at a time.
+	 * <p>
+	 * When this list belongs to a Document the Document rules depend on the
+	 * order in which content is added, so the content is removed from the
+	 * source and added back through {@link #addAll(int, Collection)}, and
+	 * returned to the source if that fails.
+	 * <p>
+	 * Either way, if an exception is thrown neither list is changed.
+	 * 
+	 * @param index
+	 *        where in this list to insert the content
+	 * @param src
+	 *        the ContentList to take the content from
+	 * @param start
+	 *        the first (inclusive) source content to move
+	 * @param end
+	 *        the last (exclusive) source content to move
+	 */
+	void transferFrom(final int index, final ContentList src, 
+			final int start, final int end) {
+		if (src == this) {
+			throw new IllegalArgumentException(
+					"Cannot transfer content to the list it comes from");
+		}
+		checkIndex(index, false);
+		if (start < 0 || end > src.size || start > end) {
+			throw new IndexOutOfBoundsException("Range: " + start + " to " +
+					end + " Size: " + src.size);
+		}
+		final int count = end - start;
+		if (count == 0) {
+			return;
+		}
+
+		if (!(parent instanceof Element)) {
+			final List<Content> moved = new ArrayList<Content>(
+					Arrays.asList(src.elementData).subList(start, end));
+			src.removeRange(start, end);
+			boolean ok = false;
+			try {
+				addAll(index, moved);
+				ok = true;
+			} finally {
+				if (!ok) {
+					src.addAll(start, moved);
+				}
+			}
+			return;
+		}
+
+		// Detect if we have <a><b><c/></b></a> and c.transfer(a)
+		Parent anc = parent;
+		while (anc instanceof Element) {
+			final Parent ap = ((Element)anc).getParent();
+			if (ap == src.parent) {
+				final int ai = src.indexOf(anc);
+				if (ai >= start && ai < end) {
+					throw new IllegalAddException(
+							"The Element cannot be added as a descendent of itself");
+				}
+				break;
+			}
+			anc = ap;
+		}
+
+		for (int i = start; i < end; i++) {
+			parent.canContainContent(src.elementData[i], index + i - start, false);
+		}
+
+		Snapshot.touch(parent);
+		Snapshot.touch(src.parent);
+		ensureCapacity(size + count);
+		if (index < size) {
+			System.arraycopy(elementData, index, elementData, index + count,
+					size - index);
+		}
+		System.arraycopy(src.elementData, start, elementData, index, count);
+		size += count;
+		for (int i = index; i < index + count; i++) {
+			elementData[i].setParent(parent);
+			elementData[i].indexHint = i;
+		}
+		src.removeRange(start, end);
+		incModCount();
+		if (MutationEvent.isActive()) {
+			for (int i = index; i < index + count; i++) {
+				MutationEvent.fire(MutationEvent.Type.CONTENT_ADDED, parent,
+						elementData[i], i);
+			}
+		}
+	}
+
+	/**
+	 * Drop the references to a range of content that has already been
+	 * re-parented (or is about to be), compacting the remainder.
+	 * 
+	 * @param start
+	 *        the first (inclusive) content to drop
+	 * @param end
+	 *        the last (exclusive) content to drop
+	 */
+	@Override
+	protected void removeRange(final int start, final int end) {
+		if (start >= end) {
+			return;
+		}
+		Snapshot.touch(parent);
+		final Content[] removed = MutationEvent.isActive()
+				? ArrayCopy.copyOfRange(elementData, start, end) : null;
+		for (int i = start; i < end; i++) {
+			final Content c = elementData[i];
+			if (c.parent == parent) {
+				removeParent(c);
+			}
+		}
+		System.arraycopy(elementData, end, elementData, start, size - end);
+		final int newsize = size - (end - start);
+		while (size > newsize) {
+			elementData[--size] = null; // Let gc do its work
+		}
+		incModCount();
+		if (removed != null) {
+			fireRemoved(removed, start, null);
+		}
+	}
+
 	/**
 	 * Clear the current list.
 	 */
 	@Override
 	public void clear() {
+		Snapshot.touch(parent);
+		final Content[] removed = MutationEvent.isActive() && size > 0
+				? ArrayCopy.copyOf(elementData, size) : null;
 		if (elementData != null) {
 			for (int i = 0; i < size; i++) {
 				Content obj = elementData[i];
@@ -349,6 +575,132 @@ final class ContentList extends AbstractList<Content>
 			size = 0;
 		}
 		incModCount();
+		if (removed != null) {
+			fireRemoved(removed, 0, null);
+		}
+	}
+
+	/**
+	 * Remove all content matching the supplied filter in a single pass.
+	 * <p>
+	 * The filter is applied to all the content before anything is changed,
+	 * so an exception from the filter leaves the list intact. The remaining
+	 * content is then compacted in place and the mod counts are changed
+	 * once, regardless of how much content is removed.
+	 * 
+	 * @param <F>
+	 *        The Generic type of the content matched by the Filter.
+	 * @param filter
+	 *        The Filter selecting the content to remove.
+	 * @return the removed content, in document order.
+	 */
+	<F extends Content> List<F> removeMatching(final Filter<F> filter) {
+		final List<F> removed = new ArrayList<F>();
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			final F f = filter.filter(elementData[i]);
+			if (f != null) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+				removed.add(f);
+			}
+		}
+		removeDropped(drop);
+		return removed;
+	}
+
+	/**
+	 * Remove all content <b>not</b> matching the supplied filter in a single
+	 * pass. See {@link #removeMatching(Filter)}.
+	 * 
+	 * @param filter
+	 *        The Filter selecting the content to keep.
+	 * @return the removed content, in document order.
+	 */
+	List<Content> retainMatching(final Filter<?> filter) {
+		final List<Content> removed = new ArrayList<Content>();
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			if (!filter.matches(elementData[i])) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+				removed.add(elementData[i]);
+			}
+		}
+		removeDropped(drop);
+		return removed;
+	}
+
+	/**
+	 * Remove the marked content, detaching it, and compacting the remainder.
+	 * 
+	 * @param drop
+	 *        marks the content to remove, or null if there is none.
+	 */
+	private void removeDropped(final boolean[] drop) {
+		if (drop == null) {
+			return;
+		}
+		Snapshot.touch(parent);
+		final Content[] removed = MutationEvent.isActive()
+				? ArrayCopy.copyOf(elementData, size) : null;
+		int keep = 0;
+		for (int i = 0; i < size; i++) {
+			final Content c = elementData[i];
+			if (drop[i]) {
+				removeParent(c);
+			} else {
+				c.indexHint = keep;
+				elementData[keep++] = c;
+			}
+		}
+		while (size > keep) {
+			elementData[--size] = null; // Let gc do its work
+		}
+		incModCount();
+		if (removed != null) {
+			fireRemoved(removed, 0, drop);
+		}
+	}
+
+	@Override
+	public boolean removeAll(final Collection<?> collection) {
+		if (collection == null) {
+			throw new NullPointerException("Cannot remove a null collection");
+		}
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			if (collection.contains(elementData[i])) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+			}
+		}
+		removeDropped(drop);
+		return drop != null;
+	}
+
+	@Override
+	public boolean retainAll(final Collection<?> collection) {
+		if (collection == null) {
+			throw new NullPointerException("Cannot retain a null collection");
+		}
+		boolean[] drop = null;
+		for (int i = 0; i < size; i++) {
+			if (!collection.contains(elementData[i])) {
+				if (drop == null) {
+					drop = new boolean[size];
+				}
+				drop[i] = true;
+			}
+		}
+		removeDropped(drop);
+		return drop != null;
 	}
 
 	/**
@@ -363,6 +715,7 @@ final class ContentList extends AbstractList<Content>
 			clear();
 			return;
 		}
+		Snapshot.touch(parent);
 
 		// keep a backup in case we need to roll-back...
 		final Content[] old = elementData;
@@ -379,6 +732,9 @@ final class ContentList extends AbstractList<Content>
 		}
 		size = 0;
 		elementData = null;
+		if (oldSize > 0 && MutationEvent.isActive()) {
+			fireRemoved(ArrayCopy.copyOf(old, oldSize), 0, null);
+		}
 
 		boolean ok = false;
 		try {
@@ -394,6 +750,8 @@ final class ContentList extends AbstractList<Content>
 				elementData = old;
 				while (size < oldSize) {
 					elementData[size++].setParent(parent);
+					MutationEvent.fire(MutationEvent.Type.CONTENT_ADDED, 
+							parent, elementData[size - 1], size - 1);
 				}
 				setModCount(oldModCount, oldDataModCount);
 			}
@@ -401,6 +759,18 @@ final class ContentList extends AbstractList<Content>
 
 	}
 
+	/**
+	 * Reduce the capacity of this <code>ContentList</code> to its size. The
+	 * content is not changed.
+	 */
+	void trimToSize() {
+		if (size == 0) {
+			elementData = null;
+		} else if (size < elementData.length) {
+			elementData = ArrayCopy.copyOf(elementData, size);
+		}
+	}
+
 	/**
 	 * Increases the capacity of this <code>ContentList</code> instance, if
 	 * necessary, to ensure that it can hold at least the number of items
@@ -497,15 +867,81 @@ final class ContentList extends AbstractList<Content>
 	@Override
 	public Content remove(final int index) {
 		checkIndex(index, true);
+		Snapshot.touch(parent);
 
 		final Content old = elementData[index];
 		removeParent(old);
 		System.arraycopy(elementData, index + 1, elementData, index, size - index - 1);
 		elementData[--size] = null; // Let gc do its work
 		incModCount();
+		MutationEvent.fire(MutationEvent.Type.CONTENT_REMOVED, parent, old, index);
 		return old;
 	}
 
+	/**
+	 * Remove the specified Content from this list. This is what
+	 * {@link Content#detach()} ends up calling.
+	 * 
+	 * @param o
+	 *        The Content to remove.
+	 * @return true if the content was in this list and was removed.
+	 */
+	@Override
+	public boolean remove(final Object o) {
+		final int index = indexOf(o);
+		if (index < 0) {
+			return false;
+		}
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * Get the position of the specified Content in this list.
+	 * <p>
+	 * Content is only ever equal to itself, and each Content has at most
+	 * one parent, so the position is unique. The Content remembers where it
+	 * was last seen in the list, and if it is still there the position is
+	 * returned immediately. Otherwise all the content in the list is
+	 * renumbered in one pass, so subsequent lookups (for sibling navigation,
+	 * for example) are again immediate until the list is next modified.
+	 * 
+	 * @param o
+	 *        The Content to locate.
+	 * @return the position of the content, or -1 if it is not in this list.
+	 */
+	@Override
+	public int indexOf(final Object o) {
+		if (!(o instanceof Content)) {
+			return -1;
+		}
+		final Content c = (Content)o;
+		int index = c.indexHint;
+		if (index >= 0 && index < size && elementData[index] == c) {
+			return index;
+		}
+		if (c.parent != parent) {
+			// content in this list always has this list's parent.
+			return -1;
+		}
+		for (int i = 0; i < size; i++) {
+			elementData[i].indexHint = i;
+		}
+		index = c.indexHint;
+		return index >= 0 && index < size && elementData[index] == c ? index : -1;
+	}
+
+	@Override
+	public int lastIndexOf(final Object o) {
+		// content can be in the list only once.
+		return indexOf(o);
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		return indexOf(o) >= 0;
+	}
+
 	/** Remove the parent of a Object */
 	private static void removeParent(final Content c) {
 		c.setParent(null);
@@ -528,6 +964,7 @@ final class ContentList extends AbstractList<Content>
 
 		// Ensure the detail checks out OK too.
 		parent.canContainContent(child, index, true);
+		Snapshot.touch(parent);
 
 		/*
 		 * Do a special case of set() where we don't do a remove() then add()
@@ -538,10 +975,13 @@ final class ContentList extends AbstractList<Content>
 		final Content old = elementData[index];
 		removeParent(old);
 		child.setParent(parent);
+		child.indexHint = index;
 		elementData[index] = child;
 		// for set method we increment dataModCount, but not modCount
 		// set does not change the structure of the List (size())
 		incDataModOnly();
+		MutationEvent.fire(MutationEvent.Type.CONTENT_REMOVED, parent, old, index);
+		MutationEvent.fire(MutationEvent.Type.CONTENT_ADDED, parent, child, index);
 		return old;
 	}
 
@@ -581,6 +1021,7 @@ final class ContentList extends AbstractList<Content>
 	}
 	
 	private void sortInPlace(final int[] indexes) {
+		Snapshot.touch(parent);
 		// the indexes are a discrete set of values that have no duplicates,
 		// and describe the relative order of each of them.
 		// as a result, we can do some tricks....
@@ -654,6 +1095,10 @@ final class ContentList extends AbstractList<Content>
 			indexes[ip] = i;
 		}
 		sortInPlace(indexes);
+		// the list modcounts are unchanged, only the parent's
+		// modification stamp needs updating.
+		markParentModified();
+		MutationEvent.fire(MutationEvent.Type.CONTENT_REORDERED, parent, null, -1);
 	}
 	
 	/* * * * * * * * * * * * * ContentListIterator * * * * * * * * * * * * * * * */
@@ -1278,6 +1723,10 @@ final class ContentList extends AbstractList<Content>
 				indexes[ip] = backingpos[i];
 			}
 			sortInPlace(indexes);
+			// the filtered positions are unchanged, only the parent's
+			// modification stamp needs updating.
+			markParentModified();
+			MutationEvent.fire(MutationEvent.Type.CONTENT_REORDERED, parent, null, -1);
 		}
 		
 	}
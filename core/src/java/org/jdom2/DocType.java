@@ -184,6 +184,7 @@ public class DocType extends Content {
 		if (reason != null) {
 			throw new IllegalNameException(elementName, "DocType", reason);
 		}
+		Snapshot.touch(this);
 		this.elementName = elementName;
 		return this;
 	}
@@ -213,6 +214,7 @@ public class DocType extends Content {
 		if (reason != null) {
 			throw new IllegalDataException(publicID, "DocType", reason);
 		}
+		Snapshot.touch(this);
 		this.publicID = publicID;
 
 		return this;
@@ -244,6 +246,7 @@ public class DocType extends Content {
 		if (reason != null) {
 			throw new IllegalDataException(systemID, "DocType", reason);
 		}
+		Snapshot.touch(this);
 		this.systemID = systemID;
 
 		return this;
@@ -259,6 +262,27 @@ public class DocType extends Content {
 		return "";  // doctypes don't have an XPath string value
 	}
 
+	@Override
+	public boolean deepEquals(final Content other) {
+		if (other == this) {
+			return true;
+		}
+		if (!(other instanceof DocType)) {
+			return false;
+		}
+		final DocType dt = (DocType)other;
+		return same(elementName, dt.elementName) 
+				&& same(publicID, dt.publicID) && same(systemID, dt.systemID)
+				&& same(internalSubset, dt.internalSubset);
+	}
+
+	@Override
+	public int structuralHash() {
+		return (((31 * ctype.ordinal() + hash(elementName)) * 31
+				+ hash(publicID)) * 31 + hash(systemID)) * 31
+				+ hash(internalSubset);
+	}
+
 	/**
 	 * This sets the data for the internal subset.
 	 *
@@ -266,6 +290,7 @@ public class DocType extends Content {
 	 *        <code>String</code>.
 	 */
 	public void setInternalSubset(String newData) {
+		Snapshot.touch(this);
 		internalSubset = newData;
 	}
 
@@ -90,6 +90,39 @@ public class Document extends CloneBase implements Parent {
 	// Supports the setProperty/getProperty calls
 	private transient HashMap<String,Object> propertyMap = null;
 
+	/**
+	 * Changed every time the content of this Document changes.
+	 * See {@link #getModificationStamp()}.
+	 */
+	private transient int modstamp = 0;
+
+	/**
+	 * The value of {@link Element#STAMP_EPOCH} when modstamp was last
+	 * changed.
+	 */
+	private transient long stampedAt = 0L;
+
+	/**
+	 * The cached {@link #structuralHash()} in the low 32 bits, and the
+	 * modstamp it was computed at in the high 32 bits.
+	 */
+	private transient volatile long structuralHash = UNHASHED;
+
+	/** The structuralHash value when the hash is not cached. */
+	private static final long UNHASHED = Long.MIN_VALUE;
+
+	/** The installed IdIndex, if any. See {@link IdIndex}. */
+	transient IdIndex idIndex = null;
+
+	/** The MutationListeners registered on this Document, or null */
+	transient MutationListener[] listeners = null;
+
+	/**
+	 * The outstanding Snapshots of this Document (as WeakReferences), or
+	 * null. See {@link Snapshot}.
+	 */
+	transient volatile Object[] snapshots = null;
+
 	/**
 	 * Creates a new empty document.  A document must have a root element,
 	 * so this document will not be well-formed and accessor methods will
@@ -174,6 +207,198 @@ public class Document extends CloneBase implements Parent {
 		return content.size();
 	}
 
+	/**
+	 * Get the Element in this Document with the given ID. An Element has
+	 * the ID if it has an Attribute with that value and the
+	 * {@link AttributeType#ID} type (the SAX builders set that type for
+	 * attributes declared as ID in the DTD).
+	 * <p>
+	 * If an {@link IdIndex} is installed on this Document it is used, so
+	 * the lookup takes constant time, and other attributes the index is
+	 * configured with are also recognised. Otherwise the whole Document
+	 * is searched, in document order.
+	 * 
+	 * @param id The ID value to look for.
+	 * @return The Element with the ID, or null if there is none.
+	 * @since JDOM 2.1
+	 */
+	public Element getElementById(final String id) {
+		if (idIndex != null) {
+			return idIndex.getElement(id);
+		}
+		if (id == null || !hasRootElement()) {
+			return null;
+		}
+		final Element root = getRootElement();
+		if (hasId(root, id)) {
+			return root;
+		}
+		for (Element e : root.getDescendants(Filters.element())) {
+			if (hasId(e, id)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasId(final Element e, final String id) {
+		if (e.hasAttributes()) {
+			for (Attribute a : e.getAttributes()) {
+				if (a.getAttributeType() == AttributeType.ID
+						&& id.equals(a.getValue())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get a stamp representing the modification state of this Document and
+	 * all of its content. The returned value changes whenever content is
+	 * added to, removed from, or rearranged in this Document, and whenever
+	 * any descendant content changes (in the same way as
+	 * {@link Element#getModificationStamp()} changes for the root Element).
+	 * <p>
+	 * The stamp is only meaningful when compared with previous values from
+	 * the same Document instance: if the stamp is unchanged then the
+	 * Document is unchanged. Successive modifications that are not
+	 * separated by a call to this method may change the stamp only once.
+	 * 
+	 * @return the current modification stamp.
+	 * @since JDOM 2.1
+	 */
+	public int getModificationStamp() {
+		Element.stampRead(stampedAt);
+		return modstamp;
+	}
+
+	/**
+	 * Update the modification stamp of this Document.
+	 */
+	final void markModified() {
+		markModified(Element.STAMP_EPOCH.get());
+	}
+
+	/**
+	 * Update the modification stamp of this Document, unless it has already
+	 * been updated in the given epoch.
+	 * @param epoch The current value of {@link Element#STAMP_EPOCH}
+	 */
+	final void markModified(final long epoch) {
+		if (stampedAt != epoch) {
+			modstamp++;
+			stampedAt = epoch;
+		}
+	}
+
+	/**
+	 * Compare this Document with another by value: the Documents are
+	 * deep-equal if their content (DocType, Comments, ProcessingInstructions
+	 * and root Element) is deep-equal, in the same order. See
+	 * {@link Content#deepEquals(Content)} and
+	 * {@link Element#deepEquals(Content)}. The base URI and properties are
+	 * not compared.
+	 * 
+	 * @param other The Document to compare with.
+	 * @return true if the Documents have the same structure and values.
+	 * @since JDOM 2.1
+	 */
+	public boolean deepEquals(final Document other) {
+		if (other == this) {
+			return true;
+		}
+		if (other == null) {
+			return false;
+		}
+		final long mine = structuralHash;
+		final long theirs = other.structuralHash;
+		if (mine != UNHASHED && theirs != UNHASHED
+				&& (int)(mine >>> 32) == modstamp
+				&& (int)(theirs >>> 32) == other.modstamp
+				&& (int)mine != (int)theirs) {
+			return false;
+		}
+		final int size = content.size();
+		if (size != other.content.size()) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (!content.get(i).deepEquals(other.content.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get a hash of the structure of this Document, computed from the values
+	 * compared by {@link #deepEquals(Document)}. Like
+	 * {@link Element#structuralHash()} the hash is cached until the
+	 * Document is modified, and only the changed parts of the Document are
+	 * hashed again.
+	 * 
+	 * @return The structural hash of this Document.
+	 * @since JDOM 2.1
+	 */
+	public int structuralHash() {
+		final long cached = structuralHash;
+		if (cached != UNHASHED && (int)(cached >>> 32) == modstamp) {
+			return (int)cached;
+		}
+		final int stamp = getModificationStamp();
+		int h = 0;
+		for (int i = 0, n = content.size(); i < n; i++) {
+			h = h * 31 + content.get(i).structuralHash();
+		}
+		structuralHash = ((long)stamp << 32) | (h & 0xFFFFFFFFL);
+		return h;
+	}
+
+	/**
+	 * Take a read-only snapshot of this Document in its current state.
+	 * Nothing is copied when the snapshot is taken; while it is
+	 * outstanding, each node of this Document preserves its previous state
+	 * in the snapshot the first time it is changed. See {@link Snapshot}.
+	 * <p>
+	 * This is a cheaper alternative to cloning the Document when readers
+	 * need a stable view while the Document is being updated.
+	 *
+	 * @return a new Snapshot of this Document.
+	 * @since JDOM 2.1
+	 */
+	public Snapshot snapshot() {
+		return Snapshot.take(this);
+	}
+
+	/**
+	 * Register a listener to be notified of all changes to this Document and
+	 * to its descendants. See {@link MutationListener}.
+	 * <p>
+	 * Listeners are not copied when the Document is cloned.
+	 * 
+	 * @param listener The listener to add.
+	 * @throws NullPointerException if the listener is null.
+	 * @since JDOM 2.1
+	 */
+	public void addMutationListener(final MutationListener listener) {
+		listeners = MutationEvent.register(this, listeners, listener);
+	}
+
+	/**
+	 * Remove a listener previously added with
+	 * {@link #addMutationListener(MutationListener)}.
+	 * 
+	 * @param listener The listener to remove.
+	 * @return true if the listener was registered on this Document.
+	 * @since JDOM 2.1
+	 */
+	public boolean removeMutationListener(final MutationListener listener) {
+		final MutationListener[] was = listeners;
+		listeners = MutationEvent.unregister(this, was, listener);
+		return listeners != was;
+	}
+
 	@Override
 	public int indexOf(Content child) {
 		return content.indexOf(child);
@@ -374,6 +599,52 @@ public class Document extends CloneBase implements Parent {
 		return this;
 	}
 
+	/**
+	 * Move all the content of another Parent to the end of this Document.
+	 * <p>
+	 * This is equivalent to detaching each child of <i>source</i> and adding
+	 * it to this Document, but the content is moved in one operation, without
+	 * re-verifying each child in ways that cannot fail. See
+	 * {@link #transferContent(int, Parent, int, int)}.
+	 *
+	 * @param source the Element or Document to take the content from
+	 * @return this Document (for method chaining)
+	 * @throws IllegalAddException if any of the content cannot be added to
+	 *         this Document. In that case no content is moved.
+	 * @since JDOM 2.1
+	 */
+	public Document transferContent(Parent source) {
+		final ContentList src = ContentList.of(source);
+		content.transferFrom(content.size(), src, 0, src.size());
+		return this;
+	}
+
+	/**
+	 * Move a range of the content of another Parent in to this Document at the
+	 * given index.
+	 * <p>
+	 * The moved content keeps its relative order. The Document rules for the root Element
+	 * and DocType depend on the order of the content, so each item is
+	 * checked as it is added.
+	 *
+	 * @param index where in this Document to insert the content
+	 * @param source the Element or Document to take the content from
+	 * @param start the index of the first (inclusive) source content to move
+	 * @param end the index of the last (exclusive) source content to move
+	 * @return this Document (for method chaining)
+	 * @throws IndexOutOfBoundsException if the index or range is invalid
+	 * @throws IllegalArgumentException if source is this Document, or is
+	 *         neither an Element nor a Document
+	 * @throws IllegalAddException if any of the content cannot be added to
+	 *         this Document. In that case no content is moved.
+	 * @since JDOM 2.1
+	 */
+	public Document transferContent(int index, Parent source, 
+			int start, int end) {
+		content.transferFrom(index, ContentList.of(source), start, end);
+		return this;
+	}
+
 	@Override
 	public List<Content> cloneContent() {
 		int size = getContentSize();
@@ -456,14 +727,22 @@ public class Document extends CloneBase implements Parent {
 	 */
 	@Override
 	public <F extends Content> List<F> removeContent(Filter<F> filter) {
-		List<F> old = new ArrayList<F>();
-		Iterator<F> itr = content.getView(filter).iterator();
-		while (itr.hasNext()) {
-			F child = itr.next();
-			old.add(child);
-			itr.remove();
-		}
-		return old;
+		return content.removeMatching(filter);
+	}
+
+	/**
+	 * Remove all child content from this Document that does <b>not</b> match
+	 * the supplied filter.
+	 * <p>
+	 * Like {@link #removeContent(Filter)} this is done in a single pass over
+	 * the content, regardless of how much content is removed.
+	 *
+	 * @param filter filter to select which content to keep
+	 * @return list of the old children detached from this Document
+	 * @since JDOM 2.1
+	 */
+	public List<Content> retainContent(Filter<?> filter) {
+		return content.retainMatching(filter);
 	}
 
 	/**
@@ -515,6 +794,7 @@ public class Document extends CloneBase implements Parent {
 	 * @param uri the base URI of this document
 	 */
 	public final void setBaseURI(String uri) {
+		Snapshot.touch(this);
 		this.baseURI = uri;  // XXX We don't check the URI
 	}
 
@@ -683,31 +963,23 @@ public class Document extends CloneBase implements Parent {
 	public Document clone() {
 		final Document doc = (Document) super.clone();
 
+		// The clone is not indexed (unless it is indexed itself), and
+		// has no listeners or snapshots.
+		doc.idIndex = null;
+		doc.listeners = null;
+		doc.snapshots = null;
+
 		// The clone has a reference to this object's content list, so
 		// owerwrite with a empty list
 		doc.content = new ContentList(doc);
 
-		// Add the cloned content to clone
-
-		for (int i = 0; i < content.size(); i++) {
-			Object obj = content.get(i);
-			if (obj instanceof Element) {
-				Element element = ((Element)obj).clone();
-				doc.content.add(element);
-			}
-			else if (obj instanceof Comment) {
-				Comment comment = ((Comment)obj).clone();
-				doc.content.add(comment);
-			}
-			else if (obj instanceof ProcessingInstruction) {
-				ProcessingInstruction pi = ((ProcessingInstruction)obj).clone();
-				doc.content.add(pi);
-			}
-			else if (obj instanceof DocType) {
-				DocType dt = ((DocType)obj).clone();
-				doc.content.add(dt);
-			}
+		// Add the cloned content to clone. The content is known to be valid
+		// for a Document, so it is set without checks.
+		final Content[] data = new Content[content.size()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = content.get(i).clone();
 		}
+		doc.content.uncheckedSetContent(data);
 
 		return doc;
 	}
@@ -912,6 +1184,7 @@ public class Document extends CloneBase implements Parent {
 		in.defaultReadObject();
 		
 		content = new ContentList(this);
+		structuralHash = UNHASHED;
 
 		int cs = in.readInt();
 		while (--cs >= 0) {
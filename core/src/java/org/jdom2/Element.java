@@ -70,6 +70,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdom2.ContentList.FilterList;
 import org.jdom2.filter.ElementFilter;
@@ -128,6 +129,54 @@ public class Element extends Content implements Parent {
 	 */
 	transient ContentList content = new ContentList(this);
 
+	/**
+	 * Changed every time this Element or any of its descendants is modified.
+	 * See {@link #getModificationStamp()}.
+	 */
+	private transient int modstamp = 0;
+
+	/**
+	 * The value of {@link #STAMP_EPOCH} when modstamp was last changed.
+	 */
+	private transient long stampedAt = 0L;
+
+	/**
+	 * A modification stamp only has to change once between two reads of it,
+	 * so the ancestor walk in markModified() stops at the first Element (or
+	 * Document) that has already been stamped in the current epoch: all of
+	 * its ancestors have been stamped in this epoch too. Reading a stamp
+	 * that was changed in the current epoch starts a new epoch. The epoch
+	 * is a long so that it never comes back to a value it has already had.
+	 */
+	static final AtomicLong STAMP_EPOCH = new AtomicLong();
+
+	/**
+	 * Record that a modification stamp has been read: if the stamp was
+	 * changed in the current epoch, start a new one so that the next change
+	 * updates the stamp again. Other reads need no write.
+	 * 
+	 * @param stampedAt The epoch the stamp was last changed in.
+	 */
+	static void stampRead(final long stampedAt) {
+		final long epoch = STAMP_EPOCH.get();
+		if (stampedAt == epoch) {
+			// if this fails another thread has started a new epoch already.
+			STAMP_EPOCH.compareAndSet(epoch, epoch + 1);
+		}
+	}
+
+	/**
+	 * The cached {@link #structuralHash()} in the low 32 bits, and the
+	 * modstamp it was computed at in the high 32 bits.
+	 */
+	private transient volatile long structuralHash = UNHASHED;
+
+	/** The structuralHash value when the hash is not cached. */
+	private static final long UNHASHED = Long.MIN_VALUE;
+
+	/** The MutationListeners registered on this Element, or null */
+	transient MutationListener[] listeners = null;
+
 	/**
 	 * This protected constructor is provided in order to support an Element
 	 * subclass that wants full control over variable initialization. It
@@ -226,7 +275,10 @@ public class Element extends Content implements Parent {
 		if (reason != null) {
 			throw new IllegalNameException(name, "element", reason);
 		}
+		Snapshot.touch(this);
 		this.name = name;
+		markModified();
+		MutationEvent.fire(MutationEvent.Type.ELEMENT_CHANGED, this, this, -1);
 		return this;
 	}
 
@@ -269,7 +321,10 @@ public class Element extends Content implements Parent {
 			}
 		}
 		
+		Snapshot.touch(this);
 		this.namespace = namespace;
+		markModified();
+		MutationEvent.fire(MutationEvent.Type.ELEMENT_CHANGED, this, this, -1);
 		return this;
 	}
 
@@ -399,7 +454,12 @@ public class Element extends Content implements Parent {
 			throw new IllegalAddException(this, additionalNamespace, reason);
 		}
 
-		return additionalNamespaces.add(additionalNamespace);
+		Snapshot.touch(this);
+		additionalNamespaces.add(additionalNamespace);
+		markModified();
+		MutationEvent.fire(MutationEvent.Type.NAMESPACE_ADDED, this, 
+				additionalNamespace, -1);
+		return true;
 	}
 
 	/**
@@ -413,10 +473,15 @@ public class Element extends Content implements Parent {
 	 * @param additionalNamespace namespace to remove. A null Namespace does nothing.
 	 */
 	public void removeNamespaceDeclaration(final Namespace additionalNamespace) {
-		if (additionalNamespaces == null) {
+		if (additionalNamespaces == null
+				|| !additionalNamespaces.contains(additionalNamespace)) {
 			return;
 		}
+		Snapshot.touch(this);
 		additionalNamespaces.remove(additionalNamespace);
+		markModified();
+		MutationEvent.fire(MutationEvent.Type.NAMESPACE_REMOVED, this, 
+				additionalNamespace, -1);
 	}
 
 	/**
@@ -439,6 +504,194 @@ public class Element extends Content implements Parent {
 		return Collections.unmodifiableList(additionalNamespaces);
 	}
 
+	/**
+	 * Get a stamp representing the modification state of this Element and
+	 * all of its descendants. The returned value changes whenever this
+	 * Element's name, Namespace, additional Namespace declarations,
+	 * Attributes or content change, and also when any descendant content
+	 * (or descendant Attribute) is changed.
+	 * <p>
+	 * The stamp is only meaningful when compared with previous values from
+	 * the same Element instance: if the stamp is unchanged then the subtree
+	 * is unchanged. Note that moving this Element to a different parent
+	 * does not change the stamp (the subtree itself is unchanged), but it
+	 * does change the stamp of both the old and new parents.
+	 * <p>
+	 * Successive modifications that are not separated by a call to this
+	 * method may change the stamp only once.
+	 * <p>
+	 * This is useful for maintaining structures derived from the subtree
+	 * (serialized output, for example) which need to be recalculated only
+	 * when something has changed.
+	 * 
+	 * @return the current modification stamp.
+	 * @since JDOM 2.1
+	 */
+	public int getModificationStamp() {
+		stampRead(stampedAt);
+		return modstamp;
+	}
+
+	/**
+	 * Register a listener to be notified of all changes to this Element and
+	 * to its descendants. See {@link MutationListener}.
+	 * <p>
+	 * Listeners are not copied when the Element is cloned.
+	 * 
+	 * @param listener The listener to add.
+	 * @throws NullPointerException if the listener is null.
+	 * @since JDOM 2.1
+	 */
+	public void addMutationListener(final MutationListener listener) {
+		listeners = MutationEvent.register(this, listeners, listener);
+	}
+
+	/**
+	 * Remove a listener previously added with
+	 * {@link #addMutationListener(MutationListener)}.
+	 * 
+	 * @param listener The listener to remove.
+	 * @return true if the listener was registered on this Element.
+	 * @since JDOM 2.1
+	 */
+	public boolean removeMutationListener(final MutationListener listener) {
+		final MutationListener[] was = listeners;
+		listeners = MutationEvent.unregister(this, was, listener);
+		return listeners != was;
+	}
+
+	/**
+	 * Update the modification stamp of this Element and all its ancestor
+	 * Elements.
+	 */
+	@Override
+	final void markModified() {
+		final long epoch = STAMP_EPOCH.get();
+		Element e = this;
+		while (e.stampedAt != epoch) {
+			e.modstamp++;
+			e.stampedAt = epoch;
+			if (!(e.parent instanceof Element)) {
+				if (e.parent instanceof Document) {
+					((Document)e.parent).markModified(epoch);
+				}
+				return;
+			}
+			e = (Element)e.parent;
+		}
+	}
+
+	/**
+	 * Get the structural hash from the cache if it is still valid (this
+	 * Element and its descendants have not changed since it was computed).
+	 * 
+	 * @return the cached hash in the low 32 bits, or {@link #UNHASHED}.
+	 */
+	private final long cachedHash() {
+		final long cached = structuralHash;
+		return cached != UNHASHED && (int)(cached >>> 32) == modstamp 
+				? cached : UNHASHED;
+	}
+
+	/**
+	 * Compare this Element with another by value: the Elements are
+	 * deep-equal if they have the same local name and namespace URI, the
+	 * same Attributes (by local name, namespace URI and value, in any
+	 * order), and deep-equal content in the same order. Namespace prefixes,
+	 * additional namespace declarations, and Attribute types are not
+	 * compared.
+	 * <p>
+	 * The structural hashes of both Elements are used to detect differences
+	 * without comparing all descendants when they are cached (see
+	 * {@link #structuralHash()}), at every level of the comparison.
+	 * 
+	 * @param other The Content to compare with.
+	 * @return true if the other Content is a deep-equal Element.
+	 * @since JDOM 2.1
+	 */
+	@Override
+	public boolean deepEquals(final Content other) {
+		if (other == this) {
+			return true;
+		}
+		if (!(other instanceof Element)) {
+			return false;
+		}
+		final Element emt = (Element)other;
+		final long mine = cachedHash();
+		if (mine != UNHASHED) {
+			final long theirs = emt.cachedHash();
+			if (theirs != UNHASHED && (int)mine != (int)theirs) {
+				return false;
+			}
+		}
+		if (!name.equals(emt.name) || !namespace.equals(emt.namespace)) {
+			return false;
+		}
+		final int asize = attributes == null ? 0 : attributes.size();
+		if (asize != (emt.attributes == null ? 0 : emt.attributes.size())) {
+			return false;
+		}
+		for (int i = 0; i < asize; i++) {
+			final Attribute a = attributes.get(i);
+			final Attribute b = emt.attributes.get(
+					a.getName(), a.getNamespace());
+			if (b == null || !a.getValue().equals(b.getValue())) {
+				return false;
+			}
+		}
+		final int csize = content.size();
+		if (csize != emt.content.size()) {
+			return false;
+		}
+		for (int i = 0; i < csize; i++) {
+			if (!content.get(i).deepEquals(emt.content.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get a hash of the structure of this Element, computed from the values
+	 * compared by {@link #deepEquals(Content)}.
+	 * <p>
+	 * The hash of each Element is cached, and remains valid until the
+	 * {@link #getModificationStamp() modification stamp} of the Element
+	 * changes. Recomputing the hash after a change only recomputes the
+	 * Elements on the path from the change to this Element: the hashes of
+	 * unchanged descendant Elements are reused.
+	 * 
+	 * @return The structural hash of this Element and its descendants.
+	 * @since JDOM 2.1
+	 */
+	@Override
+	public int structuralHash() {
+		final long cached = cachedHash();
+		if (cached != UNHASHED) {
+			return (int)cached;
+		}
+		final int stamp = getModificationStamp();
+		int h = (31 * ctype.ordinal() + name.hashCode()) * 31 
+				+ namespace.getURI().hashCode();
+		// the Attribute order does not matter, so just sum them.
+		int ah = 0;
+		if (attributes != null) {
+			for (int i = attributes.size() - 1; i >= 0; i--) {
+				final Attribute a = attributes.get(i);
+				ah += (a.getName().hashCode() * 31 
+						+ a.getNamespaceURI().hashCode()) * 31 
+						+ a.getValue().hashCode();
+			}
+		}
+		h = h * 31 + ah;
+		for (int i = 0, n = content.size(); i < n; i++) {
+			h = h * 31 + content.get(i).structuralHash();
+		}
+		structuralHash = ((long)stamp << 32) | (h & 0xFFFFFFFFL);
+		return h;
+	}
+
 	/**
 	 * Returns the XPath 1.0 string value of this element, which is the
 	 * complete, ordered content of all text node descendants of this element
@@ -800,14 +1053,22 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public <F extends Content> List<F> removeContent(final Filter<F> filter) {
-		final List<F> old = new ArrayList<F>();
-		final Iterator<F> iter = content.getView(filter).iterator();
-		while (iter.hasNext()) {
-			final F child = iter.next();
-			old.add(child);
-			iter.remove();
-		}
-		return old;
+		return content.removeMatching(filter);
+	}
+
+	/**
+	 * Remove all child content from this Element that does <b>not</b> match
+	 * the supplied filter.
+	 * <p>
+	 * Like {@link #removeContent(Filter)} this is done in a single pass over
+	 * the content, regardless of how much content is removed.
+	 *
+	 * @param filter filter to select which content to keep
+	 * @return list of the old children detached from this Element
+	 * @since JDOM 2.1
+	 */
+	public List<Content> retainContent(final Filter<?> filter) {
+		return content.retainMatching(filter);
 	}
 
 	/**
@@ -971,6 +1232,81 @@ public class Element extends Content implements Parent {
 		return this;
 	}
 
+	/**
+	 * Move all the content of another Parent to the end of this Element.
+	 * <p>
+	 * This is equivalent to detaching each child of <i>source</i> and adding
+	 * it to this Element, but the content is moved in one operation, without
+	 * re-verifying each child in ways that cannot fail. See
+	 * {@link #transferContent(int, Parent, int, int)}.
+	 *
+	 * @param source the Element or Document to take the content from
+	 * @return this Element (for method chaining)
+	 * @throws IllegalAddException if any of the content cannot be added to
+	 *         this Element. In that case no content is moved.
+	 * @since JDOM 2.1
+	 */
+	public Element transferContent(final Parent source) {
+		final ContentList src = ContentList.of(source);
+		content.transferFrom(content.size(), src, 0, src.size());
+		return this;
+	}
+
+	/**
+	 * Move a range of the content of another Parent in to this Element at the
+	 * given index.
+	 * <p>
+	 * The moved content keeps its relative order. For an Element the work is two array copies and a sweep of the
+	 * parent references. The only checks are those that can fail: that the
+	 * content is allowed in an Element (a DocType is not), and that this
+	 * Element is not itself inside the moved content.
+	 *
+	 * @param index where in this Element to insert the content
+	 * @param source the Element or Document to take the content from
+	 * @param start the index of the first (inclusive) source content to move
+	 * @param end the index of the last (exclusive) source content to move
+	 * @return this Element (for method chaining)
+	 * @throws IndexOutOfBoundsException if the index or range is invalid
+	 * @throws IllegalArgumentException if source is this Element, or is
+	 *         neither an Element nor a Document
+	 * @throws IllegalAddException if any of the content cannot be added to
+	 *         this Element. In that case no content is moved.
+	 * @since JDOM 2.1
+	 */
+	public Element transferContent(final int index, final Parent source, 
+			final int start, final int end) {
+		content.transferFrom(index, ContentList.of(source), start, end);
+		return this;
+	}
+
+	/**
+	 * Move all the Attributes of another Element to this Element. Attributes
+	 * on this Element with the same name and Namespace as a moved Attribute
+	 * are replaced (and detached), in the same way as
+	 * {@link #setAttribute(Attribute)}.
+	 * <p>
+	 * All the Attributes are checked for Namespace collisions before any are
+	 * moved, so if an exception is thrown neither Element is changed.
+	 *
+	 * @param source the Element to take the Attributes from
+	 * @return this Element (for method chaining)
+	 * @throws IllegalArgumentException if source is this Element
+	 * @throws IllegalAddException if any of the Attributes has a Namespace
+	 *         prefix that collides with a Namespace on this Element
+	 * @since JDOM 2.1
+	 */
+	public Element transferAttributes(final Element source) {
+		if (source == this) {
+			throw new IllegalArgumentException(
+					"Cannot transfer Attributes to the Element they are on");
+		}
+		if (source.attributes == null || source.attributes.isEmpty()) {
+			return this;
+		}
+		getAttributeList().transferFrom(source.attributes);
+		return this;
+	}
+
 	@Override
 	public List<Content> cloneContent() {
 		final int size = getContentSize();
@@ -1394,6 +1730,38 @@ public class Element extends Content implements Parent {
 		return getAttributeList().remove(attribute);
 	}
 
+	/**
+	 * Remove all the Attributes of this Element that match the supplied
+	 * filter (for example one built from {@link org.jdom2.filter.Filters#attribute()}),
+	 * in a single pass over the Attributes.
+	 *
+	 * @param <F> The generic type of the Attributes matched by the filter.
+	 * @param filter filter to select which Attributes to remove
+	 * @return list of the removed Attributes
+	 * @since JDOM 2.1
+	 */
+	public <F> List<F> removeAttributes(final Filter<F> filter) {
+		if (attributes == null) {
+			return new ArrayList<F>();
+		}
+		return attributes.removeMatching(filter);
+	}
+
+	/**
+	 * Remove all the Attributes of this Element that do <b>not</b> match
+	 * the supplied filter, in a single pass over the Attributes.
+	 *
+	 * @param filter filter to select which Attributes to keep
+	 * @return list of the removed Attributes
+	 * @since JDOM 2.1
+	 */
+	public List<Attribute> retainAttributes(final Filter<?> filter) {
+		if (attributes == null) {
+			return new ArrayList<Attribute>();
+		}
+		return attributes.retainMatching(filter);
+	}
+
 	/**
 	 * <p>
 	 *  This returns a <code>String</code> representation of the
@@ -1438,8 +1806,53 @@ public class Element extends Content implements Parent {
 
 		// Ken Rune Helland <kenh@csc.no> is our local clone() guru
 
+		final Element element = cloneShell();
+
+		// The descendants are copied without recursion (so deep trees do
+		// not overflow the stack), and each copied content list is set in
+		// one step, without re-checking content that is known to be valid.
+		// Subclasses of Element may override clone(), so they are cloned
+		// through it.
+		final ArrayList<Element> pending = new ArrayList<Element>();
+		pending.add(this);
+		pending.add(element);
+		while (!pending.isEmpty()) {
+			final Element copy = pending.remove(pending.size() - 1);
+			final Element source = pending.remove(pending.size() - 1);
+			final int size = source.content.size();
+			if (size == 0) {
+				continue;
+			}
+			final Content[] data = new Content[size];
+			for (int i = 0; i < size; i++) {
+				final Content c = source.content.get(i);
+				if (c.getClass() == Element.class) {
+					final Element e = ((Element)c).cloneShell();
+					pending.add((Element)c);
+					pending.add(e);
+					data[i] = e;
+				} else {
+					data[i] = c.clone();
+				}
+			}
+			copy.content.uncheckedSetContent(data);
+		}
+
+		return element;
+	}
+
+	/**
+	 * Clone this Element without its content.
+	 * 
+	 * @return a detached copy of this Element with the same name, namespace
+	 *         declarations and Attributes, and no content.
+	 */
+	private final Element cloneShell() {
 		final Element element = (Element) super.clone();
 
+		// listeners are not cloned.
+		element.listeners = null;
+
 		// name and namespace are references to immutable objects
 		// so super.clone() handles them ok
 
@@ -1455,11 +1868,12 @@ public class Element extends Content implements Parent {
 		element.attributes = attributes == null ? null : new AttributeList(element);
 
 		// Cloning attributes
-		if (attributes != null) {
-			for(int i = 0; i < attributes.size(); i++) {
-				final Attribute attribute = attributes.get(i);
-				element.attributes.add(attribute.clone());
+		if (attributes != null && !attributes.isEmpty()) {
+			final Attribute[] atts = new Attribute[attributes.size()];
+			for (int i = 0; i < atts.length; i++) {
+				atts[i] = attributes.get(i).clone();
 			}
+			element.attributes.uncheckedSetAttributes(atts);
 		}
 
 		// Cloning additional namespaces
@@ -1467,12 +1881,6 @@ public class Element extends Content implements Parent {
 			element.additionalNamespaces = new ArrayList<Namespace>(additionalNamespaces);
 		}
 
-		// Cloning content
-		for(int i = 0; i < content.size(); i++) {
-			final Content c = content.get(i);
-			element.content.add(c.clone());
-		}
-
 		return element;
 	}
 
@@ -2080,6 +2488,7 @@ public class Element extends Content implements Parent {
 		in.defaultReadObject();
 		
 		content = new ContentList(this);
+		structuralHash = UNHASHED;
 
 		int nss = in.readInt();
 		
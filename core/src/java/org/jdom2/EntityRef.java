@@ -151,6 +151,25 @@ public class EntityRef extends Content {
 		return "";  // entity references don't have XPath string values
 	}
 
+	@Override
+	public boolean deepEquals(final Content other) {
+		if (other == this) {
+			return true;
+		}
+		if (!(other instanceof EntityRef)) {
+			return false;
+		}
+		final EntityRef ref = (EntityRef)other;
+		return name.equals(ref.name) && same(publicID, ref.publicID)
+				&& same(systemID, ref.systemID);
+	}
+
+	@Override
+	public int structuralHash() {
+		return ((31 * ctype.ordinal() + name.hashCode()) * 31
+				+ hash(publicID)) * 31 + hash(systemID);
+	}
+
 	/**
 	 * This will return the publid ID of this <code>EntityRef</code>.
 	 * If there is no public ID, then this returns <code>null</code>.
@@ -186,7 +205,9 @@ public class EntityRef extends Content {
 		if (reason != null) {
 			throw new IllegalNameException(name, "EntityRef", reason);
 		}
+		Snapshot.touch(this);
 		this.name = name;
+		markModified();
 		return this;
 	}
 
@@ -203,7 +224,9 @@ public class EntityRef extends Content {
 		if (reason != null) {
 			throw new IllegalDataException(publicID, "EntityRef", reason);
 		}
+		Snapshot.touch(this);
 		this.publicID = publicID;
+		markModified();
 		return this;
 	}
 
@@ -220,7 +243,9 @@ public class EntityRef extends Content {
 		if (reason != null) {
 			throw new IllegalDataException(systemID, "EntityRef", reason);
 		}
+		Snapshot.touch(this);
 		this.systemID = systemID;
+		markModified();
 		return this;
 	}
 
@@ -0,0 +1,433 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.jdom2.filter.Filters;
+
+/**
+ * An opt-in index of the Elements in a Document by the value of their ID
+ * (or other key) Attributes, kept up to date as the Document changes.
+ * <p>
+ * An Attribute is a key for the index if its
+ * {@link Attribute#getAttributeType() type} is {@link AttributeType#ID}
+ * (the SAX builders set that type for attributes declared as ID in the
+ * DTD), or if its name is one of the names the index is installed with.
+ * The names are either a plain name for attributes in no namespace, or
+ * <code>{uri}name</code> for attributes in a namespace (the same notation
+ * as {@link javax.xml.namespace.QName#toString()}).
+ * <pre>
+ * IdIndex.install(doc, "id");
+ * Element target = doc.getElementById("chapter-3");
+ * </pre>
+ * Once installed, the index is maintained incrementally: adding or
+ * removing content, adding or removing Attributes, and changing the name,
+ * value or type of an Attribute anywhere in the Document updates only the
+ * affected entries. The cost of this maintenance is only paid for
+ * Documents that have an index (and, while any indexed Document is
+ * reachable, by a check for the Document when Elements or Attributes are
+ * attached or detached elsewhere).
+ * <p>
+ * XML requires ID values to be unique. If they are not, the index keeps
+ * all the Elements, and {@link #getElement(String)} returns the one that
+ * was indexed first.
+ * <p>
+ * Lookups do not modify the index, so they can be made concurrently
+ * against a Document that is not being modified.
+ * 
+ * @since JDOM 2.1
+ */
+public final class IdIndex {
+
+	/**
+	 * The Documents with an index. While there are none the maintenance
+	 * hooks return immediately. Indexed Documents that are garbage collected
+	 * are dropped from the set.
+	 */
+	private static final WeakIdentitySet indexed = new WeakIdentitySet();
+
+	/**
+	 * Create an index for the Document and install it. Any previous index
+	 * on the Document is replaced.
+	 * 
+	 * @param document The Document to index.
+	 * @param attributes The names of additional (non-ID typed) attributes
+	 *        to use as keys.
+	 * @return The installed index.
+	 * @throws NullPointerException if the document is null.
+	 * @throws IllegalArgumentException if an attribute name is not valid.
+	 */
+	public static IdIndex install(final Document document,
+			final String... attributes) {
+		if (document == null) {
+			throw new NullPointerException("Cannot index a null Document");
+		}
+		final IdIndex index = new IdIndex(document, attributes);
+		document.idIndex = index;
+		indexed.add(document);
+		return index;
+	}
+
+	/**
+	 * Get the index installed on a Document.
+	 * 
+	 * @param document The Document to check.
+	 * @return The index, or null if there is none.
+	 */
+	public static IdIndex getIndex(final Document document) {
+		return document.idIndex;
+	}
+
+	/**
+	 * Remove the index from a Document. It will no longer be maintained.
+	 * 
+	 * @param document The Document to remove the index from.
+	 * @return true if there was an index to remove.
+	 */
+	public static boolean remove(final Document document) {
+		if (document.idIndex == null) {
+			return false;
+		}
+		document.idIndex = null;
+		indexed.remove(document);
+		return true;
+	}
+
+	/* 
+	 * Maintenance hooks, called by Content, Attribute, ContentList and
+	 * AttributeList.
+	 */
+
+	/**
+	 * Get the index that maintains a node attached to the given parent.
+	 * @param parent The parent (may be null).
+	 * @return The index, or null if there is none.
+	 */
+	private static IdIndex indexFor(final Parent parent) {
+		if (parent == null) {
+			return null;
+		}
+		final Document doc = parent.getDocument();
+		return doc == null ? null : doc.idIndex;
+	}
+
+	/**
+	 * Content has been attached to a parent.
+	 * @param content The attached content.
+	 */
+	static void attached(final Content content) {
+		if (indexed.isEmpty() || !(content instanceof Element)) {
+			return;
+		}
+		final IdIndex index = indexFor(content.parent);
+		if (index != null) {
+			index.addTree((Element)content);
+		}
+	}
+
+	/**
+	 * Content is about to be detached from its parent.
+	 * @param content The content being detached.
+	 */
+	static void detaching(final Content content) {
+		if (indexed.isEmpty() || !(content instanceof Element)) {
+			return;
+		}
+		final IdIndex index = indexFor(content.parent);
+		if (index != null) {
+			index.removeTree((Element)content);
+		}
+	}
+
+	/**
+	 * An Attribute has been attached to an Element.
+	 * @param attribute The attached Attribute.
+	 */
+	static void attached(final Attribute attribute) {
+		if (indexed.isEmpty()) {
+			return;
+		}
+		final IdIndex index = indexFor(attribute.parent);
+		if (index != null) {
+			index.add(attribute);
+		}
+	}
+
+	/**
+	 * An Attribute is about to be detached from its Element.
+	 * @param attribute The Attribute being detached.
+	 */
+	static void detaching(final Attribute attribute) {
+		if (indexed.isEmpty()) {
+			return;
+		}
+		final IdIndex index = indexFor(attribute.parent);
+		if (index != null) {
+			index.remove(attribute);
+		}
+	}
+
+	/**
+	 * The name, Namespace, value or type of an attached Attribute has
+	 * changed.
+	 * @param attribute The changed Attribute.
+	 */
+	static void changed(final Attribute attribute) {
+		if (indexed.isEmpty()) {
+			return;
+		}
+		final IdIndex index = indexFor(attribute.parent);
+		if (index != null) {
+			index.remove(attribute);
+			index.add(attribute);
+		}
+	}
+
+	/* 
+	 * The index itself.
+	 */
+
+	private final Document document;
+	private final Set<String> names;
+	/** key -> Element, or key -> List&lt;Element&gt; for duplicate keys */
+	private final HashMap<String, Object> elements = new HashMap<String, Object>();
+	/** the key each indexed Attribute is indexed under */
+	private final IdentityHashMap<Attribute, String> keys =
+			new IdentityHashMap<Attribute, String>();
+
+	private IdIndex(final Document document, final String[] attributes) {
+		this.document = document;
+		final HashSet<String> nameset = new HashSet<String>();
+		for (String att : attributes) {
+			if (att == null || att.length() == 0) {
+				throw new IllegalArgumentException(
+						"Attribute names must be non-empty");
+			}
+			nameset.add(att);
+		}
+		names = Collections.unmodifiableSet(nameset);
+		if (document.hasRootElement()) {
+			addTree(document.getRootElement());
+		}
+	}
+
+	private static String name(final String uri, final String name) {
+		return uri.length() == 0 ? name : "{" + uri + "}" + name;
+	}
+
+	/**
+	 * Get the key an Attribute should be indexed under, if any.
+	 * @param a The Attribute
+	 * @return the key, or null if the Attribute is not a key.
+	 */
+	private String keyOf(final Attribute a) {
+		if (a.getAttributeType() == AttributeType.ID
+				|| (!names.isEmpty() 
+						&& names.contains(name(a.getNamespaceURI(), a.getName())))) {
+			return a.getValue();
+		}
+		return null;
+	}
+
+	private void addTree(final Element root) {
+		add(root);
+		for (Element e : root.getDescendants(Filters.element())) {
+			add(e);
+		}
+	}
+
+	private void add(final Element e) {
+		if (e.hasAttributes()) {
+			for (Attribute a : e.getAttributes()) {
+				add(a);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void add(final Attribute a) {
+		final String key = keyOf(a);
+		if (key == null) {
+			return;
+		}
+		keys.put(a, key);
+		final Element e = a.getParent();
+		final Object was = elements.put(key, e);
+		if (was == null) {
+			return;
+		}
+		// duplicate key, keep them all, in the order they were added.
+		final List<Element> dups;
+		if (was instanceof Element) {
+			dups = new ArrayList<Element>(2);
+			dups.add((Element)was);
+		} else {
+			dups = (List<Element>)was;
+		}
+		dups.add(e);
+		elements.put(key, dups);
+	}
+
+	private void removeTree(final Element root) {
+		remove(root);
+		for (Element e : root.getDescendants(Filters.element())) {
+			remove(e);
+		}
+	}
+
+	private void remove(final Element e) {
+		if (e.hasAttributes()) {
+			for (Attribute a : e.getAttributes()) {
+				remove(a);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void remove(final Attribute a) {
+		final String key = keys.remove(a);
+		if (key == null) {
+			return;
+		}
+		final Element e = a.getParent();
+		final Object was = elements.get(key);
+		if (was == e) {
+			elements.remove(key);
+		} else if (was instanceof List) {
+			final List<Element> dups = (List<Element>)was;
+			// remove by identity.
+			for (int i = 0; i < dups.size(); i++) {
+				if (dups.get(i) == e) {
+					dups.remove(i);
+					break;
+				}
+			}
+			if (dups.size() == 1) {
+				elements.put(key, dups.get(0));
+			}
+		}
+	}
+
+	/**
+	 * Get the Document this index is for.
+	 * 
+	 * @return the Document.
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Get the names of the (non-ID typed) attributes used as keys.
+	 * 
+	 * @return the attribute names, as given to
+	 *         {@link #install(Document, String...)}.
+	 */
+	public Set<String> getAttributeNames() {
+		return names;
+	}
+
+	/**
+	 * Get the Element with the given ID (or other key) value.
+	 * 
+	 * @param id The value to look up.
+	 * @return The Element, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public Element getElement(final String id) {
+		final Object e = elements.get(id);
+		if (e instanceof List) {
+			return ((List<Element>)e).get(0);
+		}
+		return (Element)e;
+	}
+
+	/**
+	 * Get all the Elements with the given ID (or other key) value. This
+	 * only returns more than one Element if the Document repeats a key.
+	 * 
+	 * @param id The value to look up.
+	 * @return The Elements, possibly empty. The list is not live.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Element> getElements(final String id) {
+		final Object e = elements.get(id);
+		if (e == null) {
+			return Collections.emptyList();
+		}
+		if (e instanceof List) {
+			return Collections.unmodifiableList(
+					new ArrayList<Element>((List<Element>)e));
+		}
+		return Collections.singletonList((Element)e);
+	}
+
+	/**
+	 * Get the number of distinct key values in the index.
+	 * 
+	 * @return the number of distinct values.
+	 */
+	public int size() {
+		return elements.size();
+	}
+
+}
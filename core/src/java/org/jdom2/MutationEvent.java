@@ -0,0 +1,293 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+/**
+ * Describes a single change to a JDOM tree, as reported to a
+ * {@link MutationListener}.
+ * <p>
+ * Every event has a {@link Type}, the Parent the change was made in (the
+ * <i>parent</i>), and usually the node that was added, removed, or changed
+ * (the <i>node</i>). For content and Attributes that were added or removed
+ * the event also has the index in the parent at which that happened.
+ * <p>
+ * Operations that change many nodes at once (for example
+ * {@link Element#removeContent(org.jdom2.filter.Filter)} or
+ * {@link Element#setContent(java.util.Collection)}) are reported as a
+ * sequence of single-node events, ordered so that each index is correct
+ * at the time of its event. Replaying the events in order therefore
+ * reproduces the change. Replacing a node (for example with
+ * {@link Element#setContent(int, Content)}) is reported as a removal
+ * followed by an addition at the same index.
+ * 
+ * @since JDOM 2.1
+ */
+public final class MutationEvent {
+
+	/**
+	 * The types of change.
+	 */
+	public static enum Type {
+		/** Content was added: the node is the Content. */
+		CONTENT_ADDED,
+		/** Content was removed: the node is the (now detached) Content. */
+		CONTENT_REMOVED,
+		/**
+		 * The value of non-Element content (Text, CDATA, Comment,
+		 * ProcessingInstruction, EntityRef or DocType) changed: the node is
+		 * the Content. There is no index.
+		 */
+		CONTENT_CHANGED,
+		/**
+		 * The content of the parent was sorted. There is no node and no
+		 * index.
+		 */
+		CONTENT_REORDERED,
+		/** An Attribute was added: the parent is its Element. */
+		ATTRIBUTE_ADDED,
+		/** An Attribute was removed: the parent is its former Element. */
+		ATTRIBUTE_REMOVED,
+		/**
+		 * The name, Namespace, value, type or specified flag of an Attribute
+		 * changed. There is no index.
+		 */
+		ATTRIBUTE_CHANGED,
+		/**
+		 * The Attributes of the parent Element were sorted. There is no
+		 * node and no index.
+		 */
+		ATTRIBUTES_REORDERED,
+		/**
+		 * The name or Namespace of the parent Element changed. The node is
+		 * also the Element, and there is no index.
+		 */
+		ELEMENT_CHANGED,
+		/**
+		 * An additional Namespace declaration was added to the parent
+		 * Element: the node is the Namespace. There is no index.
+		 */
+		NAMESPACE_ADDED,
+		/**
+		 * An additional Namespace declaration was removed from the parent
+		 * Element: the node is the Namespace. There is no index.
+		 */
+		NAMESPACE_REMOVED
+	}
+
+	/**
+	 * The Elements and Documents that have listeners. While there are none
+	 * no events are created. Elements and Documents that are garbage
+	 * collected with their listeners still registered are dropped from the
+	 * set.
+	 */
+	private static final WeakIdentitySet watched = new WeakIdentitySet();
+
+	/**
+	 * Add a listener to an array of listeners.
+	 * @param owner The Element or Document the listeners are on.
+	 * @param listeners The existing listeners (may be null).
+	 * @param listener The listener to add.
+	 * @return The new listeners.
+	 */
+	static MutationListener[] register(final Parent owner,
+			final MutationListener[] listeners, final MutationListener listener) {
+		if (listener == null) {
+			throw new NullPointerException("Cannot add a null listener");
+		}
+		final MutationListener[] ret;
+		if (listeners == null) {
+			ret = new MutationListener[] {listener};
+			watched.add(owner);
+		} else {
+			ret = new MutationListener[listeners.length + 1];
+			System.arraycopy(listeners, 0, ret, 0, listeners.length);
+			ret[listeners.length] = listener;
+		}
+		return ret;
+	}
+
+	/**
+	 * Remove a listener from an array of listeners.
+	 * @param owner The Element or Document the listeners are on.
+	 * @param listeners The existing listeners (may be null).
+	 * @param listener The listener to remove.
+	 * @return The new listeners (which is the same array if the listener
+	 *         was not registered).
+	 */
+	static MutationListener[] unregister(final Parent owner,
+			final MutationListener[] listeners, final MutationListener listener) {
+		if (listeners == null) {
+			return null;
+		}
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				if (listeners.length == 1) {
+					watched.remove(owner);
+					return null;
+				}
+				final MutationListener[] ret = 
+						new MutationListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, ret, 0, i);
+				System.arraycopy(listeners, i + 1, ret, i, ret.length - i);
+				return ret;
+			}
+		}
+		return listeners;
+	}
+
+	/**
+	 * Whether any listeners are registered at all.
+	 * @return true if events may need to be fired.
+	 */
+	static boolean isActive() {
+		return !watched.isEmpty();
+	}
+
+	/**
+	 * Report a change to the listeners on the parent and its ancestors.
+	 * @param type The type of change.
+	 * @param parent The Parent the change was made in.
+	 * @param node The node added, removed, or changed (may be null).
+	 * @param index The index in the parent, or -1.
+	 */
+	static void fire(final Type type, final Parent parent, final Object node,
+			final int index) {
+		if (watched.isEmpty()) {
+			return;
+		}
+		MutationEvent event = null;
+		Parent p = parent;
+		while (p != null) {
+			final MutationListener[] listeners;
+			final Parent up;
+			if (p instanceof Element) {
+				listeners = ((Element)p).listeners;
+				up = ((Element)p).getParent();
+			} else if (p instanceof Document) {
+				listeners = ((Document)p).listeners;
+				up = null;
+			} else {
+				return;
+			}
+			if (listeners != null) {
+				if (event == null) {
+					event = new MutationEvent(type, parent, node, index);
+				}
+				for (MutationListener l : listeners) {
+					l.mutated(event);
+				}
+			}
+			p = up;
+		}
+	}
+
+	private final Type type;
+	private final Parent parent;
+	private final Object node;
+	private final int index;
+
+	private MutationEvent(final Type type, final Parent parent, 
+			final Object node, final int index) {
+		this.type = type;
+		this.parent = parent;
+		this.node = node;
+		this.index = index;
+	}
+
+	/**
+	 * Get the type of change.
+	 * 
+	 * @return the type.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Get the Element or Document the change was made in.
+	 * 
+	 * @return the parent.
+	 */
+	public Parent getParent() {
+		return parent;
+	}
+
+	/**
+	 * Get the node that was added, removed, or changed: a Content, an
+	 * Attribute, or a Namespace, depending on the type.
+	 * 
+	 * @return the node, or null for the reordering types.
+	 */
+	public Object getNode() {
+		return node;
+	}
+
+	/**
+	 * Get the index in the parent's content (or Attributes) at which a node
+	 * was added or removed.
+	 * 
+	 * @return the index, or -1 if the type does not have an index.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "[MutationEvent: " + type + " " + node + 
+				(index >= 0 ? " at " + index : "") + " in " + parent + "]";
+	}
+
+}
@@ -0,0 +1,143 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An append-only record of the changes to a JDOM tree.
+ * <p>
+ * A journal is a {@link MutationListener} that keeps every event it
+ * receives. Structures derived from the tree (an index, or cached output,
+ * for example) remember the {@link #size()} of the journal when they were
+ * last brought up to date, and later apply just the events recorded since:
+ * <pre>
+ * MutationJournal journal = new MutationJournal();
+ * doc.addMutationListener(journal);
+ * int seen = journal.size();
+ * ...
+ * for (MutationEvent e : journal.getEvents(seen)) {
+ *     // update the derived structure
+ * }
+ * seen = journal.size();
+ * </pre>
+ * The journal can be read by any thread. Since it only grows, a journal
+ * that is never {@link #truncate(int) truncated} holds on to all removed
+ * content.
+ * 
+ * @since JDOM 2.1
+ */
+public final class MutationJournal implements MutationListener {
+
+	private final ArrayList<MutationEvent> events = 
+			new ArrayList<MutationEvent>();
+	/** The position of events.get(0) in the journal */
+	private int offset = 0;
+
+	@Override
+	public synchronized void mutated(final MutationEvent event) {
+		events.add(event);
+	}
+
+	/**
+	 * Get the number of events ever recorded in this journal. This is the
+	 * position the next event will be recorded at.
+	 * 
+	 * @return the journal size.
+	 */
+	public synchronized int size() {
+		return offset + events.size();
+	}
+
+	/**
+	 * Get the events recorded at or after a position in the journal.
+	 * 
+	 * @param from The position of the first event to return (typically the
+	 *        {@link #size()} of the journal at some earlier time).
+	 * @return The events, in the order they happened. The list is a copy.
+	 * @throws IndexOutOfBoundsException if <i>from</i> is after the end of
+	 *         the journal, or is before the start of the events that have
+	 *         been kept.
+	 */
+	public synchronized List<MutationEvent> getEvents(final int from) {
+		if (from < offset || from > size()) {
+			throw new IndexOutOfBoundsException("Position " + from + 
+					" is not between " + offset + " and " + size());
+		}
+		if (from == size()) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<MutationEvent>(
+				events.subList(from - offset, events.size()));
+	}
+
+	/**
+	 * Discard the events before a position in the journal, when no reader
+	 * needs them any more. Positions are not changed by truncation.
+	 * 
+	 * @param before The position of the first event to keep.
+	 */
+	public synchronized void truncate(final int before) {
+		if (before <= offset) {
+			return;
+		}
+		final int drop = Math.min(before - offset, events.size());
+		events.subList(0, drop).clear();
+		offset += drop;
+	}
+
+}
@@ -147,7 +147,9 @@ public class ProcessingInstruction extends Content {
 			throw new IllegalTargetException(newTarget, reason);
 		}
 
+		Snapshot.touch(this);
 		target = newTarget;
+		markModified();
 		return this;
 	}
 
@@ -162,6 +164,24 @@ public class ProcessingInstruction extends Content {
 		return rawData;
 	}
 
+	@Override
+	public boolean deepEquals(final Content other) {
+		if (other == this) {
+			return true;
+		}
+		if (!(other instanceof ProcessingInstruction)) {
+			return false;
+		}
+		final ProcessingInstruction pi = (ProcessingInstruction)other;
+		return target.equals(pi.target) && rawData.equals(pi.rawData);
+	}
+
+	@Override
+	public int structuralHash() {
+		return (31 * ctype.ordinal() + target.hashCode()) * 31
+				+ rawData.hashCode();
+	}
+
 
 	/**
 	 * This will retrieve the target of the PI.
@@ -204,8 +224,10 @@ public class ProcessingInstruction extends Content {
 			throw new IllegalDataException(data, reason);
 		}
 
+		Snapshot.touch(this);
 		this.rawData = data;
 		this.mapData = parseData(data);
+		markModified();
 		return this;
 	}
 
@@ -226,8 +248,10 @@ public class ProcessingInstruction extends Content {
 			throw new IllegalDataException(temp, reason);
 		}
 
+		Snapshot.touch(this);
 		this.rawData = temp;
 		this.mapData = new LinkedHashMap<String,String>(data);
+		markModified();
 		return this;
 	}
 
@@ -265,8 +289,10 @@ public class ProcessingInstruction extends Content {
 			throw new IllegalDataException(value, reason);
 		}
 
+		Snapshot.touch(this);
 		this.mapData.put(name, value);
 		this.rawData = toString(mapData);
+		markModified();
 		return this;
 	}
 
@@ -279,8 +305,10 @@ public class ProcessingInstruction extends Content {
 	 *         instruction was removed.
 	 */
 	public boolean removePseudoAttribute(String name) {
+		Snapshot.touch(this);
 		if ((mapData.remove(name)) != null) {
 			rawData = toString(mapData);
+			markModified();
 			return true;
 		}
 
@@ -0,0 +1,685 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A point-in-time, read-only view of a Document that stays unchanged while
+ * the Document itself continues to be modified.
+ * <p>
+ * Taking a snapshot with {@link Document#snapshot()} copies nothing. While
+ * the snapshot is outstanding, the first change to each node that is part
+ * of the snapshot (an Element's name, namespaces, content or attributes, a
+ * Text value, an Attribute value, and so on) preserves that node's previous
+ * state in the snapshot before the change is made. Only the nodes that are
+ * actually modified are preserved, and each only once, so the cost of a
+ * snapshot is proportional to the changes made while it is outstanding
+ * rather than to the size of the Document. Every unchanged node is shared
+ * with the live Document.
+ * <p>
+ * JDOM nodes know their parent, so one node can not be part of two
+ * different trees. The snapshot is therefore not itself a Document: it is
+ * navigated by node identity with {@link #getContent(Parent)} and
+ * {@link #getAttributes(Element)}, which return the nodes that were present
+ * when the snapshot was taken, and the state of any node (or a complete
+ * Document) as it was when the snapshot was taken can be copied out with
+ * the <code>copyOf</code> methods and {@link #toDocument()}. The node
+ * instances returned by the navigation methods are the live nodes, so
+ * their own accessors return their current state.
+ * <pre>
+ * Snapshot snap = doc.snapshot();
+ * // ... doc is modified by another thread ...
+ * for (Content c : snap.getContent(snap.getRootElement())) {
+ *     Content asItWas = snap.copyOf(c);
+ * }
+ * snap.release();
+ * </pre>
+ * The snapshot is safe to read from one thread while a (single) other
+ * thread modifies the Document. Snapshots that are no longer referenced
+ * stop being maintained when they are garbage collected, but calling
+ * {@link #release()} stops the maintenance cost immediately. While no
+ * snapshot is outstanding the maintenance hooks cost a single volatile read,
+ * and while there are, a change is only checked against the snapshots of
+ * the Document it is made in.
+ * 
+ * @since JDOM 2.1
+ */
+public final class Snapshot {
+
+	/**
+	 * The preserved state of an Element.
+	 */
+	private static final class ElementState {
+		private final String name;
+		private final Namespace namespace;
+		private final Namespace[] additional;
+		private final Content[] content;
+		private final Attribute[] attributes;
+
+		ElementState(final Element element) {
+			this.name = element.name;
+			this.namespace = element.namespace;
+			this.additional = element.additionalNamespaces == null
+					? null : element.additionalNamespaces.toArray(
+							new Namespace[element.additionalNamespaces.size()]);
+			this.content = element.content.toArray(
+					new Content[element.content.size()]);
+			this.attributes = element.attributes == null ? null
+					: element.attributes.toArray(
+							new Attribute[element.attributes.size()]);
+		}
+	}
+
+	/**
+	 * The preserved state of a Document.
+	 */
+	private static final class DocumentState {
+		private final String baseURI;
+		private final Content[] content;
+
+		DocumentState(final Document document) {
+			this.baseURI = document.getBaseURI();
+			this.content = document.content.toArray(
+					new Content[document.content.size()]);
+		}
+	}
+
+	/**
+	 * The outstanding snapshots. While there are none the hooks return
+	 * immediately.
+	 */
+	private static final WeakIdentitySet outstanding = new WeakIdentitySet();
+
+	/**
+	 * The snapshots that may contain nodes of a detached tree (because the
+	 * nodes were removed from the snapshot Document, or from another such
+	 * tree), keyed by the root of the detached tree. The values are arrays
+	 * of WeakReferences, the same as {@link Document#snapshots}. Guarded by
+	 * the Snapshot class lock.
+	 */
+	private static final WeakHashMap<Object, Object[]> detached = 
+			new WeakHashMap<Object, Object[]>();
+
+	/**
+	 * The number of detached trees, readable without the lock.
+	 */
+	private static volatile int detachedCount = 0;
+
+	/**
+	 * Create and register a snapshot of a Document.
+	 * 
+	 * @param document The Document to snapshot.
+	 * @return The snapshot.
+	 */
+	static Snapshot take(final Document document) {
+		final Snapshot snapshot = new Snapshot(document);
+		synchronized (Snapshot.class) {
+			document.snapshots = add(prune(document.snapshots), snapshot.self);
+		}
+		outstanding.add(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Called before the state of a node is changed. Any outstanding
+	 * snapshot of the tree the node is in that contains the node, and has
+	 * not already preserved it, preserves the node's current state.
+	 * 
+	 * @param node The Element, Document, Attribute or other Content that is
+	 *        about to change.
+	 */
+	static void touch(final Object node) {
+		if (outstanding.isEmpty()) {
+			return;
+		}
+		final Object top = topOf(node);
+		final Object[] refs = snapshotsOf(top);
+		if (refs == null) {
+			return;
+		}
+		boolean stale = false;
+		for (Object ref : refs) {
+			final Snapshot snapshot = (Snapshot)((WeakReference<?>)ref).get();
+			if (snapshot == null || !snapshot.preserve(node)) {
+				stale = true;
+			}
+		}
+		if (stale) {
+			synchronized (Snapshot.class) {
+				setSnapshotsOf(top, prune(snapshotsOf(top)));
+			}
+		}
+	}
+
+	/**
+	 * Called before a node is detached from its parent. The snapshots of
+	 * the tree that contain the node follow it into its detached tree, so
+	 * that later changes to it are still preserved.
+	 * 
+	 * @param node The Attribute or Content about to be detached.
+	 */
+	static void detaching(final Object node) {
+		if (outstanding.isEmpty()) {
+			return;
+		}
+		final Object[] refs = snapshotsOf(topOf(node));
+		if (refs == null) {
+			return;
+		}
+		Object[] follow = null;
+		for (Object ref : refs) {
+			final Snapshot snapshot = (Snapshot)((WeakReference<?>)ref).get();
+			if (snapshot != null && snapshot.contains(node)) {
+				follow = add(follow, ref);
+			}
+		}
+		if (follow != null) {
+			synchronized (Snapshot.class) {
+				setSnapshotsOf(node, merge(snapshotsOf(node), follow));
+			}
+		}
+	}
+
+	/**
+	 * Called after a node has been attached to a parent. If the node was
+	 * the root of a detached tree with snapshots, the snapshots follow it
+	 * into its new tree.
+	 * 
+	 * @param node The Attribute or Content that was attached.
+	 */
+	static void attached(final Object node) {
+		if (detachedCount == 0 || outstanding.isEmpty()) {
+			return;
+		}
+		synchronized (Snapshot.class) {
+			final Object[] refs = detached.remove(node);
+			detachedCount = detached.size();
+			if (refs != null) {
+				final Object top = topOf(node);
+				setSnapshotsOf(top, merge(snapshotsOf(top), refs));
+			}
+		}
+	}
+
+	/**
+	 * Get the root of the tree a node is in.
+	 * @param node The node.
+	 * @return The Document, or the root of a detached tree.
+	 */
+	private static Object topOf(final Object node) {
+		Object x = node;
+		while (true) {
+			final Object up = x instanceof Content ? ((Content)x).parent
+					: x instanceof Attribute ? ((Attribute)x).parent
+					: null;
+			if (up == null) {
+				return x;
+			}
+			x = up;
+		}
+	}
+
+	/**
+	 * Get the snapshots registered on the root of a tree.
+	 * @param top The Document, or the root of a detached tree.
+	 * @return The WeakReferences to the snapshots, or null.
+	 */
+	private static Object[] snapshotsOf(final Object top) {
+		if (top instanceof Document) {
+			return ((Document)top).snapshots;
+		}
+		if (detachedCount == 0) {
+			return null;
+		}
+		synchronized (Snapshot.class) {
+			return detached.get(top);
+		}
+	}
+
+	/**
+	 * Set the snapshots registered on the root of a tree. The caller must
+	 * hold the Snapshot class lock.
+	 * @param top The Document, or the root of a detached tree.
+	 * @param refs The WeakReferences to the snapshots, or null.
+	 */
+	private static void setSnapshotsOf(final Object top, final Object[] refs) {
+		if (top instanceof Document) {
+			((Document)top).snapshots = refs;
+			return;
+		}
+		if (refs == null) {
+			detached.remove(top);
+		} else {
+			detached.put(top, refs);
+		}
+		detachedCount = detached.size();
+	}
+
+	private static Object[] add(final Object[] refs, final Object ref) {
+		if (refs == null) {
+			return new Object[] {ref};
+		}
+		for (Object r : refs) {
+			if (r == ref) {
+				return refs;
+			}
+		}
+		final Object[] ret = new Object[refs.length + 1];
+		System.arraycopy(refs, 0, ret, 0, refs.length);
+		ret[refs.length] = ref;
+		return ret;
+	}
+
+	private static Object[] merge(final Object[] refs, final Object[] more) {
+		Object[] ret = refs;
+		for (Object ref : more) {
+			ret = add(ret, ref);
+		}
+		return ret;
+	}
+
+	/**
+	 * Remove the references to snapshots that have been released or
+	 * garbage collected.
+	 * @param refs The WeakReferences to the snapshots (may be null).
+	 * @return The live references, or null if there are none.
+	 */
+	private static Object[] prune(final Object[] refs) {
+		if (refs == null) {
+			return null;
+		}
+		int live = 0;
+		for (Object ref : refs) {
+			if (isLive(ref)) {
+				live++;
+			}
+		}
+		if (live == refs.length) {
+			return refs;
+		}
+		if (live == 0) {
+			return null;
+		}
+		final Object[] ret = new Object[live];
+		live = 0;
+		for (Object ref : refs) {
+			if (isLive(ref)) {
+				ret[live++] = ref;
+			}
+		}
+		return ret;
+	}
+
+	private static boolean isLive(final Object ref) {
+		final Snapshot snapshot = (Snapshot)((WeakReference<?>)ref).get();
+		return snapshot != null && !snapshot.released;
+	}
+
+	private final Document source;
+	private final WeakReference<Snapshot> self;
+	/** The preserved state of each changed node */
+	private final IdentityHashMap<Object, Object> saved = 
+			new IdentityHashMap<Object, Object>();
+	/** The children and attributes of the preserved Elements/Document */
+	private final IdentityHashMap<Object, Boolean> pinned = 
+			new IdentityHashMap<Object, Boolean>();
+	private volatile boolean released = false;
+
+	private Snapshot(final Document source) {
+		this.source = source;
+		this.self = new WeakReference<Snapshot>(this);
+	}
+
+	/**
+	 * Preserve the state of the node if it is part of this snapshot and
+	 * has not been preserved already.
+	 * 
+	 * @param node The node about to change.
+	 * @return false if this snapshot has been released.
+	 */
+	private synchronized boolean preserve(final Object node) {
+		if (released) {
+			return false;
+		}
+		if (saved.containsKey(node) || !isMember(node)) {
+			return true;
+		}
+		if (node instanceof Element) {
+			final ElementState state = new ElementState((Element)node);
+			pin(state.content);
+			if (state.attributes != null) {
+				pin(state.attributes);
+			}
+			saved.put(node, state);
+		} else if (node instanceof Document) {
+			final DocumentState state = new DocumentState((Document)node);
+			pin(state.content);
+			saved.put(node, state);
+		} else if (node instanceof Attribute) {
+			saved.put(node, ((Attribute)node).clone());
+		} else {
+			saved.put(node, ((Content)node).clone());
+		}
+		return true;
+	}
+
+	/**
+	 * Determine whether a node is part of this snapshot.
+	 * 
+	 * @param node The node to check.
+	 * @return true if this snapshot is outstanding and contains the node.
+	 */
+	private synchronized boolean contains(final Object node) {
+		return !released && isMember(node);
+	}
+
+	private void pin(final Object[] nodes) {
+		for (Object o : nodes) {
+			pinned.put(o, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Determine whether a node was part of the Document when the snapshot
+	 * was taken. A node is if it is in the preserved content of a preserved
+	 * parent, or if none of its ancestors have been changed and it is in
+	 * the Document.
+	 * 
+	 * @param node The node to check.
+	 * @return true if the node is part of the snapshot.
+	 */
+	private boolean isMember(final Object node) {
+		Object x = node;
+		while (true) {
+			if (x == source || pinned.containsKey(x)) {
+				return true;
+			}
+			final Object up = x instanceof Content ? ((Content)x).getParent()
+					: x instanceof Attribute ? ((Attribute)x).getParent()
+					: null;
+			if (up == null || saved.containsKey(up)) {
+				// a changed parent preserved its content, and this node
+				// was not in it.
+				return false;
+			}
+			x = up;
+		}
+	}
+
+	private void checkReleased() {
+		if (released) {
+			throw new IllegalStateException("The Snapshot has been released");
+		}
+	}
+
+	private synchronized ElementState stateOf(final Element element) {
+		checkReleased();
+		final Object state = saved.get(element);
+		return state == null ? new ElementState(element) : (ElementState)state;
+	}
+
+	private synchronized DocumentState stateOf() {
+		checkReleased();
+		final Object state = saved.get(source);
+		return state == null ? new DocumentState(source) : (DocumentState)state;
+	}
+
+	/**
+	 * Get the Document this is a snapshot of.
+	 * 
+	 * @return The (live) Document.
+	 */
+	public Document getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the number of nodes that have been changed (and preserved) since
+	 * this snapshot was taken.
+	 * 
+	 * @return The number of changed nodes, zero if the Document is
+	 *         unchanged.
+	 */
+	public synchronized int getChangedCount() {
+		return saved.size();
+	}
+
+	/**
+	 * Get the root Element of the Document as it was when the snapshot was
+	 * taken.
+	 * 
+	 * @return The root Element, or null if the Document had no root.
+	 */
+	public Element getRootElement() {
+		for (Content c : stateOf().content) {
+			if (c instanceof Element) {
+				return (Element)c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the content of a Parent as it was when the snapshot was taken.
+	 * The parent should be the source Document or an Element obtained from
+	 * this snapshot.
+	 * 
+	 * @param parent The Document or Element to get the content of.
+	 * @return An unmodifiable list of the content.
+	 * @throws IllegalStateException if the snapshot has been released.
+	 */
+	public List<Content> getContent(final Parent parent) {
+		final Content[] content = parent == source ? stateOf().content
+				: stateOf((Element)parent).content;
+		return Collections.unmodifiableList(Arrays.asList(content));
+	}
+
+	/**
+	 * Get the Attributes of an Element as they were when the snapshot was
+	 * taken. The Element should be one obtained from this snapshot.
+	 * 
+	 * @param element The Element to get the Attributes of.
+	 * @return An unmodifiable list of the Attributes.
+	 * @throws IllegalStateException if the snapshot has been released.
+	 */
+	public List<Attribute> getAttributes(final Element element) {
+		final Attribute[] attributes = stateOf(element).attributes;
+		if (attributes == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(attributes));
+	}
+
+	/**
+	 * Get a detached copy of an Attribute as it was when the snapshot was
+	 * taken.
+	 * 
+	 * @param attribute An Attribute obtained from this snapshot.
+	 * @return A detached copy of the Attribute.
+	 * @throws IllegalStateException if the snapshot has been released.
+	 */
+	public Attribute copyOf(final Attribute attribute) {
+		final Object state;
+		synchronized (this) {
+			checkReleased();
+			state = saved.get(attribute);
+			if (state == null) {
+				return attribute.clone();
+			}
+		}
+		return ((Attribute)state).clone();
+	}
+
+	/**
+	 * Get a detached copy of some Content as it was when the snapshot was
+	 * taken. Elements are copied with all their descendants.
+	 * 
+	 * @param <C> The type of Content to copy.
+	 * @param content Content obtained from this snapshot.
+	 * @return A detached copy of the Content.
+	 * @throws IllegalStateException if the snapshot has been released.
+	 */
+	@SuppressWarnings("unchecked")
+	public <C extends Content> C copyOf(final C content) {
+		if (content instanceof Element) {
+			return (C)copyElement((Element)content);
+		}
+		final Object state;
+		synchronized (this) {
+			checkReleased();
+			state = saved.get(content);
+			if (state == null) {
+				return (C)content.clone();
+			}
+		}
+		return (C)((Content)state).clone();
+	}
+
+	private Element copyElement(final Element element) {
+		final ElementState state = stateOf(element);
+		final Element copy = new Element(state.name, state.namespace);
+		if (state.additional != null) {
+			for (Namespace ns : state.additional) {
+				copy.addNamespaceDeclaration(ns);
+			}
+		}
+		if (state.attributes != null) {
+			for (Attribute a : state.attributes) {
+				copy.setAttribute(copyOf(a));
+			}
+		}
+		final ContentList content = copy.content;
+		content.ensureCapacity(state.content.length);
+		for (Content c : state.content) {
+			content.uncheckedAddContent(copyOf(c));
+		}
+		return copy;
+	}
+
+	/**
+	 * Create a new, detached Document with the content the source Document
+	 * had when the snapshot was taken. This copies the entire Document.
+	 * 
+	 * @return A new Document.
+	 * @throws IllegalStateException if the snapshot has been released.
+	 */
+	public Document toDocument() {
+		final DocumentState state = stateOf();
+		final List<Content> content = new ArrayList<Content>(state.content.length);
+		for (Content c : state.content) {
+			content.add(copyOf(c));
+		}
+		final Document doc = new Document();
+		doc.setContent(content);
+		doc.setBaseURI(state.baseURI);
+		return doc;
+	}
+
+	/**
+	 * Stop maintaining this snapshot and discard the preserved state.
+	 * Subsequent calls to the read methods throw IllegalStateException.
+	 */
+	public void release() {
+		synchronized (this) {
+			if (released) {
+				return;
+			}
+			released = true;
+			saved.clear();
+			pinned.clear();
+		}
+		outstanding.remove(this);
+		synchronized (Snapshot.class) {
+			source.snapshots = prune(source.snapshots);
+			final Iterator<Map.Entry<Object, Object[]>> it = 
+					detached.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<Object, Object[]> e = it.next();
+				final Object[] refs = prune(e.getValue());
+				if (refs == null) {
+					it.remove();
+				} else {
+					e.setValue(refs);
+				}
+			}
+			detachedCount = detached.size();
+		}
+	}
+
+	/**
+	 * Whether {@link #release()} has been called.
+	 * 
+	 * @return true if this snapshot has been released.
+	 */
+	public synchronized boolean isReleased() {
+		return released;
+	}
+
+	@Override
+	public String toString() {
+		return "[Snapshot of " + source + ": " + getChangedCount() + " changed]";
+	}
+
+}
@@ -174,14 +174,18 @@ public class Text extends Content {
 		String reason;
 
 		if (str == null) {
+			Snapshot.touch(this);
 			value = EMPTY_STRING;
+			markModified();
 			return this;
 		}
 
 		if ((reason = Verifier.checkCharacterData(str)) != null) {
 			throw new IllegalDataException(str, "character content", reason);
 		}
+		Snapshot.touch(this);
 		value = str;
+		markModified();
 		return this;
 	}
 
@@ -205,7 +209,9 @@ public class Text extends Content {
 		}
 
 		if (str.length() > 0) {
+			Snapshot.touch(this);
 			value += str;
+			markModified();
 		}
 	}
 
@@ -219,7 +225,9 @@ public class Text extends Content {
 		if (text == null) {
 			return;
 		}
+		Snapshot.touch(this);
 		value += text.getText();
+		markModified();
 	}
 
 	/**
@@ -0,0 +1,159 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+
+/**
+ * A set of weakly referenced objects, compared by identity, that is built
+ * for a fast {@link #isEmpty()} check. It is used to record the Documents
+ * and Elements that have an optional feature enabled (an IdIndex,
+ * MutationListeners, Snapshots), so that the maintenance hooks for the
+ * feature can return immediately while there are none. An object that is
+ * garbage collected without being removed stops being a member.
+ * 
+ * @since JDOM 2.1
+ */
+final class WeakIdentitySet {
+
+	/**
+	 * A weak reference that is equal to another reference to the same
+	 * object.
+	 */
+	private static final class Ref extends WeakReference<Object> {
+		private final int hash;
+
+		Ref(final Object referent, final ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Ref)) {
+				return false;
+			}
+			final Object referent = get();
+			return referent != null && referent == ((Ref)obj).get();
+		}
+	}
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	private final HashSet<Ref> members = new HashSet<Ref>();
+	/** The size of members, readable without the lock */
+	private volatile int size = 0;
+
+	/**
+	 * Add an object to the set.
+	 * @param member The object to add.
+	 */
+	synchronized void add(final Object member) {
+		expunge();
+		members.add(new Ref(member, queue));
+		size = members.size();
+	}
+
+	/**
+	 * Remove an object from the set.
+	 * @param member The object to remove.
+	 */
+	synchronized void remove(final Object member) {
+		members.remove(new Ref(member, null));
+		expunge();
+		size = members.size();
+	}
+
+	/**
+	 * Whether the set has no (reachable) members.
+	 * @return true if the set is empty.
+	 */
+	boolean isEmpty() {
+		if (size == 0) {
+			return true;
+		}
+		final Reference<?> gone = queue.poll();
+		if (gone != null) {
+			synchronized (this) {
+				members.remove(gone);
+				expunge();
+				size = members.size();
+			}
+		}
+		return size == 0;
+	}
+
+	/**
+	 * Remove the members that have been garbage collected.
+	 */
+	private void expunge() {
+		Reference<?> gone = null;
+		while ((gone = queue.poll()) != null) {
+			members.remove(gone);
+		}
+	}
+
+}
@@ -0,0 +1,381 @@
+/*--
+
+ Copyright (C) 2000-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Writer that encodes characters directly in to a small set of pooled
+ * direct ByteBuffers, and writes those buffers to a
+ * {@link WritableByteChannel}. When the channel is a
+ * {@link GatheringByteChannel} all the full buffers are written in a single
+ * gathering write.
+ * <p>
+ * The buffers (and the CharsetEncoder) are borrowed from a static pool when
+ * the writer is created and are returned to the pool in {@link #finish()}
+ * (or, when the output fails, in {@link #abandon()}), so repeated output
+ * calls do not allocate new direct memory.
+ * <p>
+ * Only blocking channels are supported: a {@link SelectableChannel} in
+ * non-blocking mode is rejected, and a write that makes no progress fails
+ * with an IOException.
+ * <p>
+ * Instances are not thread-safe, and are only intended for use by
+ * {@link XMLOutputter}.
+ */
+final class ChannelWriter extends Writer {
+
+	/** The number of chars encoded in each batch. */
+	private static final int CHARSIZE = 4096;
+	/** The size of each direct byte buffer */
+	private static final int BYTESIZE = 8192;
+	/** The number of byte buffers that are filled before a write. */
+	private static final int BUFFERCOUNT = 4;
+	/** The maximum number of idle Buffers instances kept in the pool. */
+	private static final int MAXPOOLED = 8;
+
+	/**
+	 * The set of buffers used by one ChannelWriter.
+	 */
+	private static final class Buffers {
+		private final CharBuffer chars = CharBuffer.allocate(CHARSIZE);
+		private final ByteBuffer[] bytes = new ByteBuffer[BUFFERCOUNT];
+		private CharsetEncoder encoder = null;
+
+		Buffers() {
+			for (int i = 0; i < BUFFERCOUNT; i++) {
+				bytes[i] = ByteBuffer.allocateDirect(BYTESIZE);
+			}
+		}
+
+		CharsetEncoder getEncoder(final Charset charset) {
+			if (encoder == null || !encoder.charset().equals(charset)) {
+				encoder = charset.newEncoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			} else {
+				encoder.reset();
+			}
+			return encoder;
+		}
+
+		void clear() {
+			chars.clear();
+			for (ByteBuffer bb : bytes) {
+				bb.clear();
+			}
+		}
+	}
+
+	private static final ConcurrentLinkedQueue<Buffers> POOL =
+			new ConcurrentLinkedQueue<Buffers>();
+	private static final AtomicInteger POOLSIZE = new AtomicInteger();
+
+	private static final Buffers borrow() {
+		final Buffers b = POOL.poll();
+		if (b == null) {
+			return new Buffers();
+		}
+		POOLSIZE.decrementAndGet();
+		return b;
+	}
+
+	private static final void release(final Buffers b) {
+		b.clear();
+		if (POOLSIZE.incrementAndGet() > MAXPOOLED) {
+			POOLSIZE.decrementAndGet();
+			return;
+		}
+		POOL.offer(b);
+	}
+
+	private final WritableByteChannel channel;
+	private final GatheringByteChannel gathering;
+	private Buffers buffers;
+	private final CharBuffer chars;
+	private final ByteBuffer[] bytes;
+	private final CharsetEncoder encoder;
+	/** The index of the ByteBuffer currently being filled */
+	private int current = 0;
+	private long written = 0L;
+
+	/**
+	 * Create a ChannelWriter that encodes using the specified encoding.
+	 * 
+	 * @param channel
+	 *        The channel to write to.
+	 * @param encoding
+	 *        The name of the character encoding to use.
+	 * @throws java.io.UnsupportedEncodingException
+	 *         if the encoding is not supported.
+	 * @throws IllegalArgumentException
+	 *         if the channel is in non-blocking mode.
+	 */
+	ChannelWriter(final WritableByteChannel channel, final String encoding)
+			throws java.io.UnsupportedEncodingException {
+		if (channel == null) {
+			throw new NullPointerException("Cannot write to a null channel");
+		}
+		if (channel instanceof SelectableChannel
+				&& !((SelectableChannel)channel).isBlocking()) {
+			throw new IllegalArgumentException(
+					"Cannot write to a channel in non-blocking mode");
+		}
+		final Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+		} catch (IllegalArgumentException iae) {
+			throw new java.io.UnsupportedEncodingException(encoding);
+		}
+		this.channel = channel;
+		this.gathering = channel instanceof GatheringByteChannel
+				? (GatheringByteChannel)channel : null;
+		this.buffers = borrow();
+		this.chars = buffers.chars;
+		this.bytes = buffers.bytes;
+		this.encoder = buffers.getEncoder(charset);
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len)
+			throws IOException {
+		ensureOpen();
+		int o = off;
+		int l = len;
+		while (l > 0) {
+			final int n = Math.min(l, chars.remaining());
+			chars.put(cbuf, o, n);
+			o += n;
+			l -= n;
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(final String str, final int off, final int len)
+			throws IOException {
+		ensureOpen();
+		int o = off;
+		int l = len;
+		while (l > 0) {
+			final int n = Math.min(l, chars.remaining());
+			chars.put(str, o, o + n);
+			o += n;
+			l -= n;
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(final int c) throws IOException {
+		ensureOpen();
+		chars.put((char)c);
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+	}
+
+	/**
+	 * Encode all pending chars and write all encoded bytes to the channel.
+	 * Any dangling high surrogate is kept back until more chars arrive.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encode(false);
+		drain();
+	}
+
+	/**
+	 * Nothing is closed, the channel belongs to the caller. This is the same
+	 * as {@link #finish()}.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (buffers != null) {
+			finish();
+		}
+	}
+
+	/**
+	 * Complete the encoding, write all remaining bytes to the channel, and
+	 * return the buffers to the pool. The channel is not closed.
+	 * 
+	 * @return the total number of bytes written to the channel.
+	 * @throws IOException
+	 *         if the channel fails.
+	 */
+	long finish() throws IOException {
+		ensureOpen();
+		try {
+			encode(true);
+			CoderResult cr = encoder.flush(bytes[current]);
+			while (cr.isOverflow()) {
+				nextBuffer();
+				cr = encoder.flush(bytes[current]);
+			}
+			drain();
+		} finally {
+			final Buffers b = buffers;
+			buffers = null;
+			release(b);
+		}
+		return written;
+	}
+
+	/**
+	 * Return the buffers to the pool without writing anything more to the
+	 * channel. This is used when the output has failed, and does nothing
+	 * if the writer is already finished.
+	 */
+	void abandon() {
+		if (buffers != null) {
+			final Buffers b = buffers;
+			buffers = null;
+			release(b);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (buffers == null) {
+			throw new IOException("ChannelWriter is already finished.");
+		}
+	}
+
+	private void encode(final boolean endOfInput) throws IOException {
+		chars.flip();
+		CoderResult cr = encoder.encode(chars, bytes[current], endOfInput);
+		while (cr.isOverflow()) {
+			nextBuffer();
+			cr = encoder.encode(chars, bytes[current], endOfInput);
+		}
+		if (cr.isError()) {
+			// cannot happen with CodingErrorAction.REPLACE
+			cr.throwException();
+		}
+		// keep any unconsumed chars (a trailing high surrogate).
+		chars.compact();
+	}
+
+	private void nextBuffer() throws IOException {
+		if (++current == bytes.length) {
+			drain();
+		}
+	}
+
+	/**
+	 * Write all encoded bytes and reset the buffers for re-use.
+	 */
+	private void drain() throws IOException {
+		final int count = current < bytes.length ? current + 1 : bytes.length;
+		for (int i = 0; i < count; i++) {
+			bytes[i].flip();
+		}
+		if (gathering != null && count > 1) {
+			int first = 0;
+			while (first < count) {
+				if (bytes[first].hasRemaining()) {
+					written += progress(gathering.write(bytes, first, count - first));
+				} else {
+					first++;
+				}
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				final ByteBuffer bb = bytes[i];
+				while (bb.hasRemaining()) {
+					written += progress(channel.write(bb));
+				}
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			bytes[i].clear();
+		}
+		current = 0;
+	}
+
+	/**
+	 * Check that a write to the channel wrote something. A blocking channel
+	 * always does, so rather than spin on a channel that does not, fail.
+	 * 
+	 * @param count The number of bytes written.
+	 * @return the count.
+	 * @throws IOException if nothing was written.
+	 */
+	private static long progress(final long count) throws IOException {
+		if (count <= 0) {
+			throw new IOException("The channel did not accept any bytes. "
+					+ "Only blocking channels are supported.");
+		}
+		return count;
+	}
+
+}
@@ -61,6 +61,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 import org.jdom2.Attribute;
@@ -559,6 +560,136 @@ public final class XMLOutputter implements Cloneable {
 		output(entity, makeWriter(out, myFormat)); // output() flushes
 	}
 
+	/*
+	 * =======================================================================
+	 * API - Output to CHANNEL Methods ... All methods encode through pooled
+	 * direct buffers and defer to the WRITER equivalents. The channel is
+	 * not closed.
+	 * =======================================================================
+	 */
+
+	/**
+	 * This will print the <code>{@link Document}</code> to the given
+	 * WritableByteChannel. The characters are encoded using the encoding
+	 * specified in the Format, in to pooled direct buffers that are written
+	 * (with gathering writes when the channel supports it) to the channel.
+	 * The channel is not closed.
+	 * 
+	 * @param doc
+	 *        <code>Document</code> to format.
+	 * @param out
+	 *        <code>WritableByteChannel</code> to use. It must be in blocking
+	 *        mode.
+	 * @return the number of bytes written to the channel.
+	 * @throws IOException
+	 *         if there's any problem writing.
+	 * @throws NullPointerException
+	 *         if the specified content is null.
+	 * @throws IllegalArgumentException
+	 *         if the channel is in non-blocking mode.
+	 * @since JDOM 2.1
+	 */
+	public final long output(Document doc, WritableByteChannel out)
+			throws IOException {
+		final ChannelWriter cw = new ChannelWriter(out, myFormat.getEncoding());
+		try {
+			output(doc, cw);
+			return cw.finish();
+		} finally {
+			// after a failure, do not write anything more to the channel.
+			cw.abandon();
+		}
+	}
+
+	/**
+	 * Print out an <code>{@link Element}</code>, including its
+	 * <code>{@link Attribute}</code>s, and all contained (child) elements, etc.
+	 * to the given WritableByteChannel. The channel is not closed.
+	 * 
+	 * @param element
+	 *        <code>Element</code> to output.
+	 * @param out
+	 *        <code>WritableByteChannel</code> to use. It must be in blocking
+	 *        mode.
+	 * @return the number of bytes written to the channel.
+	 * @throws IOException
+	 *         if there's any problem writing.
+	 * @throws NullPointerException
+	 *         if the specified content is null.
+	 * @throws IllegalArgumentException
+	 *         if the channel is in non-blocking mode.
+	 * @since JDOM 2.1
+	 */
+	public final long output(Element element, WritableByteChannel out)
+			throws IOException {
+		final ChannelWriter cw = new ChannelWriter(out, myFormat.getEncoding());
+		try {
+			output(element, cw);
+			return cw.finish();
+		} finally {
+			cw.abandon();
+		}
+	}
+
+	/**
+	 * This will handle printing out an <code>{@link
+	 * Element}</code>'s content only, not including its tag, and attributes,
+	 * to the given WritableByteChannel. The channel is not closed.
+	 * 
+	 * @param element
+	 *        <code>Element</code> to output.
+	 * @param out
+	 *        <code>WritableByteChannel</code> to use. It must be in blocking
+	 *        mode.
+	 * @return the number of bytes written to the channel.
+	 * @throws IOException
+	 *         if there's any problem writing.
+	 * @throws NullPointerException
+	 *         if the specified content is null.
+	 * @throws IllegalArgumentException
+	 *         if the channel is in non-blocking mode.
+	 * @since JDOM 2.1
+	 */
+	public final long outputElementContent(Element element,
+			WritableByteChannel out) throws IOException {
+		final ChannelWriter cw = new ChannelWriter(out, myFormat.getEncoding());
+		try {
+			outputElementContent(element, cw);
+			return cw.finish();
+		} finally {
+			cw.abandon();
+		}
+	}
+
+	/**
+	 * This will handle printing out a list of nodes to the given
+	 * WritableByteChannel. The channel is not closed.
+	 * 
+	 * @param list
+	 *        <code>List</code> of nodes.
+	 * @param out
+	 *        <code>WritableByteChannel</code> to use. It must be in blocking
+	 *        mode.
+	 * @return the number of bytes written to the channel.
+	 * @throws IOException
+	 *         if there's any problem writing.
+	 * @throws NullPointerException
+	 *         if the specified content is null.
+	 * @throws IllegalArgumentException
+	 *         if the channel is in non-blocking mode.
+	 * @since JDOM 2.1
+	 */
+	public final long output(List<? extends Content> list,
+			WritableByteChannel out) throws IOException {
+		final ChannelWriter cw = new ChannelWriter(out, myFormat.getEncoding());
+		try {
+			output(list, cw);
+			return cw.finish();
+		} finally {
+			cw.abandon();
+		}
+	}
+
 	/*
 	 * =======================================================================
 	 * API - Output to STRING Methods ... All methods defer to the WRITER
@@ -57,9 +57,12 @@ package org.jdom2.output.support;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 import org.jdom2.CDATA;
 import org.jdom2.Content;
+import org.jdom2.IllegalDataException;
+import org.jdom2.Verifier;
 import org.jdom2.internal.ArrayCopy;
 import org.jdom2.output.EscapeStrategy;
 import org.jdom2.output.Format;
@@ -115,23 +118,6 @@ public abstract class AbstractFormattedWalker implements Walker {
 		NONE
 	}
 	
-	private static final Iterator<Content> EMPTYIT = new Iterator<Content>() {
-		@Override
-		public boolean hasNext() {
-			return false;
-		}
-
-		@Override
-		public Content next() {
-			throw new NoSuchElementException("Cannot call next() on an empty iterator.");
-		}
-
-		@Override
-		public void remove() {
-			throw new UnsupportedOperationException("Cannot remove from an empty iterator.");
-		}
-	};
-	
 	/**
 	 * Collect together the items that constitute formatted Text-like content.
 	 * 
@@ -187,44 +173,129 @@ public abstract class AbstractFormattedWalker implements Walker {
 			if (tlen == 0) {
 				return;
 			}
-			String toadd = null;
+			// we work with index ranges in the original text to avoid creating
+			// trimmed/compacted String instances only to copy them again.
+			int left = 0;
+			int right = tlen;
 			switch (trim) {
 				case NONE:
-					toadd = text;
 					break;
 				case BOTH:
-					toadd = Format.trimBoth(text);
+				case COMPACT:
+					left = trimLeftIndex(text);
+					right = trimRightIndex(text, left);
 					break;
 				case LEFT:
-					toadd = Format.trimLeft(text);
+					left = trimLeftIndex(text);
 					break;
 				case RIGHT:
-					toadd = Format.trimRight(text);
-					break;
-				case COMPACT:
-					toadd = Format.compact(text);
+					right = trimRightIndex(text, 0);
 					break;
 			}
-			if (toadd != null) {
-				toadd = escapeText(toadd);
-				mtbuffer.append(toadd);
-				mtgottext = true;
+			if (escape == null || !fstack.getEscapeOutput()) {
+				if (trim == Trim.COMPACT) {
+					appendCompact(mtbuffer, text, left, right);
+				} else {
+					mtbuffer.append(text, left, right);
+				}
+			} else {
+				appendEscaped(text, left, right, trim == Trim.COMPACT);
 			}
+			mtgottext = true;
 		}
 		
-		private String escapeText(final String text) {
-			if (escape == null || !fstack.getEscapeOutput()) {
-				return text;
+		/**
+		 * Append the XML-escaped characters in the range from/to of the input
+		 * text directly to the text buffer. This produces the same result as
+		 * {@link Format#escapeText(EscapeStrategy, String, String)} (after
+		 * an optional {@link Format#compact(String)}) on the same range.
+		 * @param text The source text
+		 * @param from The first character to add (inclusive)
+		 * @param to The last character to add (exclusive)
+		 * @param compact Whether internal whitespace should be compacted.
+		 */
+		private void appendEscaped(final String text, final int from,
+				final int to, final boolean compact) {
+			int run = from;
+			int idx = from;
+			char highsurrogate = 0;
+			boolean space = false;
+			while (idx < to) {
+				final char ch = text.charAt(idx);
+				if (highsurrogate > 0) {
+					if (!Verifier.isLowSurrogate(ch)) {
+						throw new IllegalDataException(
+								"Could not decode surrogate pair 0x" +
+										Integer.toHexString(highsurrogate) + " / 0x"
+										+ Integer.toHexString(ch));
+					}
+					mtbuffer.append("&#x");
+					mtbuffer.append(Integer.toHexString(
+							Verifier.decodeSurrogatePair(highsurrogate, ch)));
+					mtbuffer.append(';');
+					highsurrogate = 0;
+					run = ++idx;
+					continue;
+				}
+				if (compact && Verifier.isXMLWhitespace(ch)) {
+					// flush the pending run, and collapse the whitespace
+					// to a single space.
+					mtbuffer.append(text, run, idx);
+					if (!space) {
+						mtbuffer.append(' ');
+						space = true;
+					}
+					run = ++idx;
+					continue;
+				}
+				space = false;
+				final String rep;
+				switch (ch) {
+					case '<':
+						rep = "&lt;";
+						break;
+					case '>':
+						rep = "&gt;";
+						break;
+					case '&':
+						rep = "&amp;";
+						break;
+					case '\r':
+						rep = "&#xD;";
+						break;
+					case '\n':
+						rep = endofline != null ? endofline : "\n";
+						break;
+					default:
+						if (!escape.shouldEscape(ch)) {
+							// part of the current run of plain characters.
+							idx++;
+							continue;
+						}
+						rep = null;
+						break;
+				}
+				mtbuffer.append(text, run, idx);
+				if (rep != null) {
+					mtbuffer.append(rep);
+				} else if (Verifier.isHighSurrogate(ch)) {
+					// make sure what we are escaping is not the
+					// beginning of a multi-byte character.
+					highsurrogate = ch;
+				} else {
+					mtbuffer.append("&#x");
+					mtbuffer.append(Integer.toHexString(ch));
+					mtbuffer.append(';');
+				}
+				run = ++idx;
 			}
-			return Format.escapeText(escape, endofline, text);
-		}
-
-		private String escapeCDATA(final String text) {
-			if (escape == null) {
-				return text;
+			if (highsurrogate > 0) {
+				throw new IllegalDataException("Surrogate pair 0x" +
+						Integer.toHexString(highsurrogate) + "truncated");
 			}
-			return text;
+			mtbuffer.append(text, run, to);
 		}
+
 		/**
 		 * Append some text to the text-like sequence that will be treated as
 		 * CDATA.
@@ -234,26 +305,33 @@ public abstract class AbstractFormattedWalker implements Walker {
 		public void appendCDATA(final Trim trim, final String text) {
 			// this resets the mtbuffer too.
 			closeText();
-			String toadd = null;
+			String toadd = text;
 			switch (trim) {
 				case NONE:
-					toadd = text;
 					break;
-				case BOTH:
-					toadd = Format.trimBoth(text);
+				case BOTH: {
+					final int left = trimLeftIndex(text);
+					toadd = text.substring(left, trimRightIndex(text, left));
 					break;
+				}
 				case LEFT:
-					toadd = Format.trimLeft(text);
+					toadd = text.substring(trimLeftIndex(text));
 					break;
 				case RIGHT:
-					toadd = Format.trimRight(text);
+					toadd = text.substring(0, trimRightIndex(text, 0));
 					break;
-				case COMPACT:
-					toadd = Format.compact(text);
+				case COMPACT: {
+					final int left = trimLeftIndex(text);
+					final int right = trimRightIndex(text, left);
+					// we can use the mtbuffer as scratch space, it was
+					// emptied by closeText().
+					appendCompact(mtbuffer, text, left, right);
+					toadd = mtbuffer.toString();
+					mtbuffer.setLength(0);
 					break;
+				}
 			}
 			
-			toadd = escapeCDATA(toadd);
 			ensurespace();
 			// mark this as being CDATA text
 			mtdata[mtsize] = CDATATOKEN;
@@ -308,12 +386,17 @@ public abstract class AbstractFormattedWalker implements Walker {
 	
 	
 	private Content pending = null;
-	private final Iterator<? extends Content> content;
-	private final boolean alltext;
-	private final boolean allwhite;
-	private final String newlineindent;
-	private final String endofline;
-	private final EscapeStrategy escape;
+	// the content is read by index when the list supports random access,
+	// otherwise through an iterator (contentit is null in the indexed case).
+	private List<? extends Content> content;
+	private Iterator<? extends Content> contentit;
+	private int contentpos;
+	private int contentsize;
+	private boolean alltext;
+	private boolean allwhite;
+	private String newlineindent;
+	private String endofline;
+	private EscapeStrategy escape;
 	private final FormatStack fstack;
 	private boolean hasnext = true;
 
@@ -364,17 +447,49 @@ public abstract class AbstractFormattedWalker implements Walker {
 			final FormatStack fstack, final boolean doescape) {
 		super();
 		this.fstack = fstack;
-		this.content = xx.isEmpty() ? EMPTYIT : xx.iterator();
+		init(xx, doescape);
+	}
+	
+	/**
+	 * Re-initialize this walker to walk some new content. The walker is only
+	 * reset if it has been completely consumed, and if it was built for the
+	 * same FormatStack (the FormatStack depth is managed by the caller).
+	 * This allows the (comparatively expensive) internal buffers to be reused
+	 * for each Element at the same depth in the output.
+	 * @param xx the content to walk.
+	 * @param fs the current FormatStack
+	 * @param doescape Whether Text values should be escaped.
+	 * @return true if this walker was reset, false if it is still in use
+	 *         and cannot be reused.
+	 */
+	final boolean reuse(final List<? extends Content> xx,
+			final FormatStack fs, final boolean doescape) {
+		if (hasnext || fs != fstack) {
+			return false;
+		}
+		multitext = null;
+		pendingmt = null;
+		resetMultiText();
+		init(xx, doescape);
+		return true;
+	}
+
+	private final void init(final List<? extends Content> xx, 
+			final boolean doescape) {
+		this.content = xx;
+		this.contentpos = 0;
+		this.contentsize = xx.size();
+		this.contentit = xx instanceof RandomAccess ? null : xx.iterator();
 		this.escape = doescape ? fstack.getEscapeStrategy() : null;
 		newlineindent = fstack.getPadBetween();
 		endofline = fstack.getLevelEOL();
-		if (!content.hasNext()) {
+		pending = fetch();
+		if (pending == null) {
 			alltext = true;
 			allwhite = true;
 		} else {
 			boolean atext = false;
 			boolean awhite = false;
-			pending = content.next();
 			if (isTextLike(pending)) {
 				// the first item in the list is Text-like, and we pre-check
 				// to see whether all content is text.... and whether it amounts
@@ -397,6 +512,17 @@ public abstract class AbstractFormattedWalker implements Walker {
 		}
 		hasnext = pendingmt != null || pending != null;
 	}
+	
+	/**
+	 * Get the next raw content from the source list.
+	 * @return the next content, or null if there is no more. 
+	 */
+	private final Content fetch() {
+		if (contentit == null) {
+			return contentpos < contentsize ? content.get(contentpos++) : null;
+		}
+		return contentit.hasNext() ? contentit.next() : null;
+	}
 
 	@Override
 	public final Content next() {
@@ -448,7 +574,7 @@ public abstract class AbstractFormattedWalker implements Walker {
 		
 		// non-text, increment and return content.
 		final Content ret = pending;
-		pending = content.hasNext() ? content.next() : null;
+		pending = fetch();
 		
 		// OK, we are returning some content.
 		// we need to determine the state of the next loop.
@@ -554,7 +680,7 @@ public abstract class AbstractFormattedWalker implements Walker {
 				mtsource = ArrayCopy.copyOf(mtsource, mtsource.length * 2);
 			}
 			mtsource[mtsourcesize++] = pending;
-			pending = content.hasNext() ? content.next() : null;
+			pending = fetch();
 		} while (pending != null && isTextLike(pending));
 		
 		mtpostpad = pending != null;
@@ -587,6 +713,64 @@ public abstract class AbstractFormattedWalker implements Walker {
 		return allwhite;
 	}
 
+	/**
+	 * Locate the first non-whitespace character in the text.
+	 * @param text The text to inspect.
+	 * @return The index of the first non-whitespace char, or the text length
+	 *         if it is all whitespace.
+	 */
+	private static final int trimLeftIndex(final String text) {
+		final int len = text.length();
+		int left = 0;
+		while (left < len && Verifier.isXMLWhitespace(text.charAt(left))) {
+			left++;
+		}
+		return left;
+	}
+
+	/**
+	 * Locate the end of the text after trailing whitespace is removed.
+	 * @param text The text to inspect.
+	 * @param left The point beyond which the right trim should not go.
+	 * @return The index after the last non-whitespace char (never less than
+	 *         left).
+	 */
+	private static final int trimRightIndex(final String text, final int left) {
+		int right = text.length();
+		while (right > left && Verifier.isXMLWhitespace(text.charAt(right - 1))) {
+			right--;
+		}
+		return right;
+	}
+
+	/**
+	 * Append a range of text to a buffer replacing each internal sequence of
+	 * whitespace with a single space, the same as
+	 * {@link Format#compact(String)} does for an already-trimmed value.
+	 * @param sb The buffer to append to.
+	 * @param text The source text.
+	 * @param from The first char to append (inclusive).
+	 * @param to The last char to append (exclusive).
+	 */
+	private static final void appendCompact(final StringBuilder sb,
+			final String text, final int from, final int to) {
+		int run = from;
+		boolean space = false;
+		for (int i = from; i < to; i++) {
+			if (Verifier.isXMLWhitespace(text.charAt(i))) {
+				if (!space) {
+					sb.append(text, run, i);
+					sb.append(' ');
+					space = true;
+				}
+				run = i + 1;
+			} else {
+				space = false;
+			}
+		}
+		sb.append(text, run, to);
+	}
+
 	private final boolean isTextLike(final Content c) {
 		switch (c.getCType()) {
 			case Text:
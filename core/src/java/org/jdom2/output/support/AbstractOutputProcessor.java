@@ -82,6 +82,12 @@ public abstract class AbstractOutputProcessor {
 	 * If you require a custom walker to process content in a specific way
 	 * then you probably want to override this method to build the walker you
 	 * want.
+	 * <p>
+	 * The formatted walkers are reused: once a walker has been completely
+	 * consumed it is reset and returned again the next time a walker of the
+	 * same type is needed at the same FormatStack depth. This means that
+	 * the buffers used to format the text content are not re-allocated for
+	 * every Element in the output.
 	 * 
 	 * @param fstack The current FormatStack for the walker (this should not be 
 	 * 		modified by the Walker).
@@ -93,15 +99,36 @@ public abstract class AbstractOutputProcessor {
 	protected Walker buildWalker(final FormatStack fstack, 
 			final List<? extends Content> content, boolean escape) {
 		
+		final AbstractFormattedWalker reusable = fstack.getReusableWalker();
+		AbstractFormattedWalker walker = null;
 		switch (fstack.getTextMode()) {
 			case PRESERVE:
 				return new WalkerPRESERVE(content);
 			case NORMALIZE:
-				return new WalkerNORMALIZE(content, fstack, escape);
+				if (reusable != null && reusable.getClass() == WalkerNORMALIZE.class
+						&& reusable.reuse(content, fstack, escape)) {
+					return reusable;
+				}
+				walker = new WalkerNORMALIZE(content, fstack, escape);
+				break;
 			case TRIM:
-				return new WalkerTRIM(content, fstack, escape);
+				if (reusable != null && reusable.getClass() == WalkerTRIM.class
+						&& reusable.reuse(content, fstack, escape)) {
+					return reusable;
+				}
+				walker = new WalkerTRIM(content, fstack, escape);
+				break;
 			case TRIM_FULL_WHITE:
-				return new WalkerTRIM_FULL_WHITE(content, fstack, escape);
+				if (reusable != null && reusable.getClass() == WalkerTRIM_FULL_WHITE.class
+						&& reusable.reuse(content, fstack, escape)) {
+					return reusable;
+				}
+				walker = new WalkerTRIM_FULL_WHITE(content, fstack, escape);
+				break;
+		}
+		if (walker != null) {
+			fstack.setReusableWalker(walker);
+			return walker;
 		}
 		// all cases should be handled in the switch statement above. If someone
 		// creates a new TextMode though, then it will create a warning in
@@ -71,12 +71,9 @@ import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.ext.DeclHandler;
 import org.xml.sax.ext.LexicalHandler;
-import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
-import org.jdom2.Attribute;
-import org.jdom2.AttributeType;
 import org.jdom2.CDATA;
 import org.jdom2.Comment;
 import org.jdom2.Content;
@@ -548,39 +545,27 @@ public class AbstractSAXOutputProcessor extends AbstractOutputProcessor
 			// update locator
 			out.getLocator().setNode(element);
 
-			AttributesImpl atts = new AttributesImpl();
+			// The Attributes instance is reused for every Element, it is
+			// only valid for the duration of the startElement call.
+			final SAXAttributes atts = out.getSAXAttributes();
+			final String qname = atts.getQName(element);
 
 			// contentHandler.startPrefixMapping()
 			for (Namespace ns : nstack.addedForward()) {
 				ch.startPrefixMapping(ns.getPrefix(), ns.getURI());
 				if (out.isDeclareNamespaces()) {
 					// add a physical attribute if requested.
-					String prefix = ns.getPrefix();
-					if (prefix.equals("")) {
-						atts.addAttribute("", "", "xmlns", "CDATA", ns.getURI());
-					} else {
-						atts.addAttribute("", "", "xmlns:" + ns.getPrefix(),
-								"CDATA", ns.getURI());
-					}
+					atts.addDeclaration(ns);
 				}
 			}
 
-			// Allocate attribute list.
-			if (element.hasAttributes()) {
-				for (Attribute a : element.getAttributes()) {
-					if (!a.isSpecified() && fstack.isSpecifiedAttributesOnly()) {
-						continue;
-					}
-					atts.addAttribute(a.getNamespaceURI(), a.getName(),
-							a.getQualifiedName(),
-							getAttributeTypeName(a.getAttributeType()),
-							a.getValue());
-				}
-			}
+			// View the attribute list.
+			atts.setAttributes(element, fstack.isSpecifiedAttributesOnly());
 
 			// contentHandler.startElement()
 			ch.startElement(element.getNamespaceURI(), element.getName(),
-					element.getQualifiedName(), atts);
+					qname, atts);
+			atts.clear();
 
 			final List<Content> content = element.getContent();
 
@@ -630,7 +615,7 @@ public class AbstractSAXOutputProcessor extends AbstractOutputProcessor
 
 			// contentHandler.endElement()
 			out.getContentHandler().endElement(element.getNamespaceURI(),
-					element.getName(), element.getQualifiedName());
+					element.getName(), qname);
 
 			// contentHandler.endPrefixMapping()
 			// de-map in reverse order to the mapping.
@@ -703,27 +688,6 @@ public class AbstractSAXOutputProcessor extends AbstractOutputProcessor
 		}
 	}
 
-	/**
-	 * <p>
-	 * Returns the SAX 2.0 attribute type string from the type of a JDOM
-	 * Attribute.
-	 * </p>
-	 * 
-	 * @param type
-	 *        <code>int</code> the type of the JDOM attribute.
-	 * @return <code>String</code> the SAX 2.0 attribute type string.
-	 * @see org.jdom2.Attribute#getAttributeType
-	 * @see org.xml.sax.Attributes#getType
-	 */
-	private static String getAttributeTypeName(AttributeType type) {
-		switch (type) {
-			case UNDECLARED:
-				return "CDATA";
-			default:
-				return type.name();
-		}
-	}
-
 	/**
 	 * <p>
 	 * Creates a SAX XMLReader.
@@ -0,0 +1,385 @@
+/*-- 
+
+ Copyright (C) 2000-2007 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows 
+    these conditions in the documentation and/or other materials 
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the 
+ end-user documentation provided with the redistribution and/or in the 
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos 
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many 
+ individuals on behalf of the JDOM Project and was originally 
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.output.support;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.output.EscapeStrategy;
+import org.jdom2.output.Format.TextMode;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.util.NamespaceStack;
+
+/**
+ * An {@link XMLOutputProcessor} that remembers the serialized form of the
+ * Elements it outputs, and re-uses that output the next time the same
+ * (unmodified) Element is output in the same context.
+ * <p>
+ * This is useful when the same large, mostly unchanged, JDOM content is
+ * output over and over again. Only the modified parts of the document
+ * need to be re-walked and formatted, the output for unchanged Elements is
+ * spliced in directly from the cache. Use it with an XMLOutputter like:
+ * <pre>
+ *   CachingXMLOutputProcessor cache = new CachingXMLOutputProcessor();
+ *   XMLOutputter xout = new XMLOutputter(Format.getPrettyFormat(), cache);
+ *   ....
+ *   xout.output(document, stream);
+ * </pre>
+ * <p>
+ * A cached value is only used when:
+ * <ul>
+ * <li>the Element's {@link Element#getModificationStamp()} is unchanged,
+ * which means neither the Element nor any of its descendants have been
+ * modified since the output was cached.
+ * <li>the Format details that affect the Element output (indenting, text
+ * mode, escaping, etc.) are the same, including the current indent level.
+ * <li>the same Namespaces are in scope (so the same Namespace declarations
+ * are needed).
+ * </ul>
+ * <p>
+ * Only Elements that produce at least a minimum number of characters are
+ * cached (see {@link #CachingXMLOutputProcessor(int)}). Only one cached value
+ * is kept for each Element, and the Elements are weakly referenced, so the
+ * cached values are discarded when the Elements are garbage collected.
+ * Note that cached output is kept for each (large enough) level in the
+ * document, so the cache can use a multiple of the size of the output.
+ * <p>
+ * Unlike other AbstractXMLOutputProcessor implementations this class has
+ * state (the cache), but all access to the cache is thread-safe, and the
+ * process methods are reentrant. A single instance can be shared between
+ * many XMLOutputter instances and threads.
+ * 
+ * @see XMLOutputter
+ * @see Element#getModificationStamp()
+ * @since JDOM 2.1
+ */
+public class CachingXMLOutputProcessor extends AbstractXMLOutputProcessor {
+
+	/** The default minimum size (in chars) of output worth caching */
+	public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+	/**
+	 * The cached output of an Element, as well as all the details that the
+	 * output depends on.
+	 */
+	private static final class CacheEntry {
+		private final int stamp;
+		private final String output;
+		private final Namespace[] scope;
+		private final String indent;
+		private final String lineSeparator;
+		private final String levelIndent;
+		private final String levelEOL;
+		private final TextMode mode;
+		private final TextMode defaultMode;
+		private final EscapeStrategy strategy;
+		private final boolean escapeOutput;
+		private final boolean ignoreTrAX;
+		private final boolean expandEmpty;
+		private final boolean specifiedOnly;
+
+		private CacheEntry(final int stamp, final String output,
+				final FormatStack fstack, final NamespaceStack nstack) {
+			this.stamp = stamp;
+			this.output = output;
+			this.scope = nstack.getScope();
+			this.indent = fstack.getIndent();
+			this.lineSeparator = fstack.getLineSeparator();
+			this.levelIndent = fstack.getLevelIndent();
+			this.levelEOL = fstack.getLevelEOL();
+			this.mode = fstack.getTextMode();
+			this.defaultMode = fstack.getDefaultMode();
+			this.strategy = fstack.getEscapeStrategy();
+			this.escapeOutput = fstack.getEscapeOutput();
+			this.ignoreTrAX = fstack.isIgnoreTrAXEscapingPIs();
+			this.expandEmpty = fstack.isExpandEmptyElements();
+			this.specifiedOnly = fstack.isSpecifiedAttributesOnly();
+		}
+
+		/**
+		 * Check whether this cached output is valid for the current state.
+		 * @param curstamp The current Element modification stamp
+		 * @param fstack The current FormatStack
+		 * @param nstack The current NamespaceStack
+		 * @return true if the cached output can be used.
+		 */
+		private boolean matches(final int curstamp, final FormatStack fstack,
+				final NamespaceStack nstack) {
+			if (stamp != curstamp 
+					|| mode != fstack.getTextMode()
+					|| defaultMode != fstack.getDefaultMode()
+					|| strategy != fstack.getEscapeStrategy()
+					|| escapeOutput != fstack.getEscapeOutput()
+					|| ignoreTrAX != fstack.isIgnoreTrAXEscapingPIs()
+					|| expandEmpty != fstack.isExpandEmptyElements()
+					|| specifiedOnly != fstack.isSpecifiedAttributesOnly()
+					|| !same(indent, fstack.getIndent())
+					|| !same(lineSeparator, fstack.getLineSeparator())
+					|| !same(levelIndent, fstack.getLevelIndent())
+					|| !same(levelEOL, fstack.getLevelEOL())) {
+				return false;
+			}
+			// Namespace instances are unique, we can compare by identity.
+			int i = 0;
+			final Iterator<Namespace> it = nstack.iterator();
+			while (it.hasNext()) {
+				if (i >= scope.length || scope[i++] != it.next()) {
+					return false;
+				}
+			}
+			return i == scope.length;
+		}
+
+		private static final boolean same(final String a, final String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	/**
+	 * A Writer that passes all output through to a delegate Writer, and also
+	 * records it (while there is an Element being recorded).
+	 */
+	private static final class RecordingWriter extends Writer {
+		private final CachingXMLOutputProcessor owner;
+		private final Writer delegate;
+		private final StringBuilder record = new StringBuilder();
+		private int depth = 0;
+
+		private RecordingWriter(final CachingXMLOutputProcessor owner,
+				final Writer delegate) {
+			this.owner = owner;
+			this.delegate = delegate;
+		}
+
+		private int start() {
+			depth++;
+			return record.length();
+		}
+
+		private String end(final int start, final boolean keep) {
+			final String ret = keep ? record.substring(start) : null;
+			if (--depth == 0) {
+				// nothing left to record (yet).
+				record.setLength(0);
+			}
+			return ret;
+		}
+
+		@Override
+		public void write(final int c) throws IOException {
+			delegate.write(c);
+			record.append((char)c);
+		}
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int len)
+				throws IOException {
+			delegate.write(cbuf, off, len);
+			record.append(cbuf, off, len);
+		}
+
+		@Override
+		public void write(final String str) throws IOException {
+			delegate.write(str);
+			record.append(str);
+		}
+
+		@Override
+		public void write(final String str, final int off, final int len)
+				throws IOException {
+			delegate.write(str, off, len);
+			record.append(str, off, off + len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+	}
+
+	private final int minimumSize;
+	private final Map<Element, CacheEntry> cache = 
+			new WeakHashMap<Element, CacheEntry>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create a CachingXMLOutputProcessor that caches the output of Elements
+	 * that produce at least {@link #DEFAULT_MINIMUM_SIZE} characters.
+	 */
+	public CachingXMLOutputProcessor() {
+		this(DEFAULT_MINIMUM_SIZE);
+	}
+
+	/**
+	 * Create a CachingXMLOutputProcessor that caches the output of Elements
+	 * that produce at least the specified number of characters.
+	 * @param minimumSize The smallest output (in characters) to cache. Smaller
+	 *        values make the cache more effective, but use more memory.
+	 */
+	public CachingXMLOutputProcessor(final int minimumSize) {
+		super();
+		if (minimumSize < 0) {
+			throw new IllegalArgumentException(
+					"The minimum size cannot be negative: " + minimumSize);
+		}
+		this.minimumSize = minimumSize;
+	}
+
+	/**
+	 * Get the minimum output size that will be cached.
+	 * @return the minimum size in characters.
+	 */
+	public int getMinimumSize() {
+		return minimumSize;
+	}
+
+	/**
+	 * The number of Element outputs that were served from the cache.
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of Element outputs that had to be processed because there
+	 * was no valid cached output.
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of Elements that currently have cached output.
+	 * @return the cache size.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Discard all cached output, and reset the hit/miss statistics.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/**
+	 * Discard any cached output for the specified Element (but not for any
+	 * of its descendants).
+	 * @param element The Element to discard output for.
+	 */
+	public void evict(final Element element) {
+		synchronized (cache) {
+			cache.remove(element);
+		}
+	}
+
+	@Override
+	protected void printElement(final Writer out, final FormatStack fstack,
+			final NamespaceStack nstack, final Element element) throws IOException {
+
+		final int stamp = element.getModificationStamp();
+		final CacheEntry entry;
+		synchronized (cache) {
+			entry = cache.get(element);
+		}
+		if (entry != null && entry.matches(stamp, fstack, nstack)) {
+			hits.incrementAndGet();
+			write(out, entry.output);
+			return;
+		}
+		misses.incrementAndGet();
+
+		final RecordingWriter recorder = 
+				(out instanceof RecordingWriter && ((RecordingWriter)out).owner == this)
+				? (RecordingWriter)out : new RecordingWriter(this, out);
+		final int start = recorder.start();
+		boolean ok = false;
+		try {
+			super.printElement(recorder, fstack, nstack, element);
+			ok = true;
+		} finally {
+			final String output = recorder.end(start, ok &&
+					recorder.record.length() - start >= minimumSize);
+			if (output != null) {
+				final CacheEntry created = new CacheEntry(stamp, output, fstack, nstack);
+				synchronized (cache) {
+					cache.put(element, created);
+				}
+			}
+		}
+	}
+
+}
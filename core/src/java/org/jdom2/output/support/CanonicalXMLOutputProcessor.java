@@ -0,0 +1,927 @@
+/*-- 
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows 
+    these conditions in the documentation and/or other materials 
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the 
+ end-user documentation provided with the redistribution and/or in the 
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos 
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many 
+ individuals on behalf of the JDOM Project and was originally 
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.output.support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jdom2.Attribute;
+import org.jdom2.CDATA;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.DocType;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.Namespace;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.util.NamespaceStack;
+
+/**
+ * An {@link XMLOutputProcessor} that produces Canonical XML, either
+ * <a href="http://www.w3.org/TR/xml-c14n">Canonical XML 1.0</a> or
+ * <a href="http://www.w3.org/TR/xml-exc-c14n/">Exclusive XML
+ * Canonicalization 1.0</a>, with or without comments.
+ * <p>
+ * The canonical form is independent of the {@link Format} supplied to the
+ * process methods: all content is output in its raw form (the Format's text
+ * mode, indenting, line separator, declaration, and escaping settings are
+ * ignored). In particular:
+ * <ul>
+ * <li>the XML declaration and the DocType are never output.
+ * <li>empty elements are output as start/end tag pairs.
+ * <li>namespace declarations are output first, sorted by prefix, and only
+ * when they are not already in effect on the nearest output ancestor
+ * (Exclusive canonicalization only outputs visibly-utilized namespaces and
+ * the 'InclusiveNamespaces' prefixes).
+ * <li>attributes are sorted by namespace URI and then local name.
+ * <li>CDATA sections are output as escaped text, and text/attribute values
+ * are escaped as the specification requires.
+ * <li>Comments and ProcessingInstructions outside the root element are
+ * separated from it by a single #xA character.
+ * </ul>
+ * When an Element is canonicalized on its own (a document subset) the
+ * namespaces in scope on that Element are rendered, and (for inclusive
+ * canonicalization only) the xml:* attributes inherited from its ancestors
+ * are added to it.
+ * <p>
+ * JDOM cannot expand unresolved {@link EntityRef} content, so any EntityRef
+ * is output as a reference. Documents that have to be canonicalized should be
+ * built with entity expansion enabled (the default).
+ * <p>
+ * Canonical XML is always encoded as UTF-8. The XMLOutputProcessor methods
+ * write chars to a Writer, which has to encode them as UTF-8. The
+ * {@link #canonicalize(OutputStream, Document)} methods encode the UTF-8
+ * bytes directly to an OutputStream, and the
+ * {@link #digest(MessageDigest, Document)} methods feed the canonical bytes
+ * straight in to a MessageDigest during the tree walk, without ever holding
+ * the canonical form in memory.
+ * <p>
+ * Instances of this class are immutable, and can be shared between threads.
+ * 
+ * @see XMLOutputter
+ * @since JDOM 2.1
+ */
+public class CanonicalXMLOutputProcessor extends AbstractXMLOutputProcessor {
+
+	/**
+	 * Sort Attributes by namespace URI and then local name.
+	 */
+	private static final Comparator<Attribute> ATTSORT = new Comparator<Attribute>() {
+		@Override
+		public int compare(final Attribute a, final Attribute b) {
+			final int cmp = a.getNamespaceURI().compareTo(b.getNamespaceURI());
+			if (cmp != 0) {
+				return cmp;
+			}
+			return a.getName().compareTo(b.getName());
+		}
+	};
+
+	/**
+	 * A Writer that encodes chars as UTF-8 in to a byte buffer, and hands
+	 * full buffers to a sink.
+	 */
+	private static abstract class UTF8Sink extends Writer {
+		private final byte[] buffer = new byte[8192];
+		private int len = 0;
+		private char highsurrogate = 0;
+
+		protected abstract void sink(byte[] bytes, int length)
+				throws IOException;
+
+		private void put(final int b) throws IOException {
+			if (len == buffer.length) {
+				sink(buffer, len);
+				len = 0;
+			}
+			buffer[len++] = (byte)b;
+		}
+
+		@Override
+		public void write(final int c) throws IOException {
+			final char ch = (char)c;
+			if (highsurrogate != 0) {
+				final char hs = highsurrogate;
+				highsurrogate = 0;
+				if (Character.isLowSurrogate(ch)) {
+					final int cp = Character.toCodePoint(hs, ch);
+					put(0xF0 | (cp >> 18));
+					put(0x80 | ((cp >> 12) & 0x3F));
+					put(0x80 | ((cp >> 6) & 0x3F));
+					put(0x80 | (cp & 0x3F));
+					return;
+				}
+				// unpaired surrogate, same as the JDK encoder's replacement.
+				put('?');
+			}
+			if (ch < 0x80) {
+				put(ch);
+			} else if (ch < 0x800) {
+				put(0xC0 | (ch >> 6));
+				put(0x80 | (ch & 0x3F));
+			} else if (Character.isHighSurrogate(ch)) {
+				highsurrogate = ch;
+			} else if (Character.isLowSurrogate(ch)) {
+				put('?');
+			} else {
+				put(0xE0 | (ch >> 12));
+				put(0x80 | ((ch >> 6) & 0x3F));
+				put(0x80 | (ch & 0x3F));
+			}
+		}
+
+		@Override
+		public void write(final char[] cbuf, final int off, final int length)
+				throws IOException {
+			final int end = off + length;
+			for (int i = off; i < end; i++) {
+				final char ch = cbuf[i];
+				if (ch < 0x80 && highsurrogate == 0) {
+					// fast-path for ASCII
+					if (len == buffer.length) {
+						sink(buffer, len);
+						len = 0;
+					}
+					buffer[len++] = (byte)ch;
+				} else {
+					write(ch);
+				}
+			}
+		}
+
+		@Override
+		public void write(final String str, final int off, final int length)
+				throws IOException {
+			final int end = off + length;
+			for (int i = off; i < end; i++) {
+				final char ch = str.charAt(i);
+				if (ch < 0x80 && highsurrogate == 0) {
+					// fast-path for ASCII
+					if (len == buffer.length) {
+						sink(buffer, len);
+						len = 0;
+					}
+					buffer[len++] = (byte)ch;
+				} else {
+					write(ch);
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (len > 0) {
+				sink(buffer, len);
+				len = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (highsurrogate != 0) {
+				highsurrogate = 0;
+				put('?');
+			}
+			flush();
+		}
+	}
+
+	private static final class StreamSink extends UTF8Sink {
+		private final OutputStream stream;
+
+		StreamSink(final OutputStream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		protected void sink(final byte[] bytes, final int length)
+				throws IOException {
+			stream.write(bytes, 0, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			super.flush();
+			stream.flush();
+		}
+	}
+
+	private static final class DigestSink extends UTF8Sink {
+		private final MessageDigest digest;
+
+		DigestSink(final MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		@Override
+		protected void sink(final byte[] bytes, final int length) {
+			digest.update(bytes, 0, length);
+		}
+	}
+
+	private final boolean exclusive;
+	private final boolean withComments;
+	private final String[] inclusivePrefixes;
+
+	/**
+	 * Create a processor for inclusive Canonical XML 1.0 without comments.
+	 */
+	public CanonicalXMLOutputProcessor() {
+		this(false, false, null);
+	}
+
+	/**
+	 * Create a processor for inclusive Canonical XML 1.0.
+	 * 
+	 * @param withComments
+	 *        true if Comments should be included in the output.
+	 */
+	public CanonicalXMLOutputProcessor(final boolean withComments) {
+		this(false, withComments, null);
+	}
+
+	/**
+	 * Create a processor for inclusive Canonical XML 1.0, or Exclusive XML
+	 * Canonicalization 1.0.
+	 * 
+	 * @param exclusive
+	 *        true for Exclusive canonicalization.
+	 * @param withComments
+	 *        true if Comments should be included in the output.
+	 * @param inclusivePrefixes
+	 *        The 'InclusiveNamespaces PrefixList' for Exclusive
+	 *        canonicalization: the prefixes of namespaces that are treated as
+	 *        in inclusive canonicalization. Use "#default" for the default
+	 *        namespace. This is ignored for inclusive canonicalization, and
+	 *        may be null.
+	 */
+	public CanonicalXMLOutputProcessor(final boolean exclusive,
+			final boolean withComments,
+			final Collection<String> inclusivePrefixes) {
+		super();
+		this.exclusive = exclusive;
+		this.withComments = withComments;
+		if (!exclusive || inclusivePrefixes == null
+				|| inclusivePrefixes.isEmpty()) {
+			this.inclusivePrefixes = new String[0];
+		} else {
+			final String[] prefixes = new String[inclusivePrefixes.size()];
+			int i = 0;
+			for (final String p : inclusivePrefixes) {
+				prefixes[i++] = "#default".equals(p) ? "" : p;
+			}
+			this.inclusivePrefixes = prefixes;
+		}
+	}
+
+	/**
+	 * Is this processor doing Exclusive canonicalization.
+	 * 
+	 * @return true if this is Exclusive canonicalization.
+	 */
+	public boolean isExclusive() {
+		return exclusive;
+	}
+
+	/**
+	 * Does this processor include Comments in the output.
+	 * 
+	 * @return true if Comments are output.
+	 */
+	public boolean isWithComments() {
+		return withComments;
+	}
+
+	/**
+	 * Get the 'InclusiveNamespaces PrefixList' used for Exclusive
+	 * canonicalization (the default namespace is represented as "").
+	 * 
+	 * @return the inclusive prefixes (empty for inclusive canonicalization).
+	 */
+	public List<String> getInclusivePrefixes() {
+		return Collections.unmodifiableList(Arrays.asList(inclusivePrefixes));
+	}
+
+	/* *******************************************
+	 * Byte and Digest output.
+	 * *******************************************
+	 */
+
+	/**
+	 * Write the canonical form of a Document as UTF-8 to an OutputStream. The
+	 * stream is flushed but not closed.
+	 * 
+	 * @param out
+	 *        The destination stream.
+	 * @param doc
+	 *        The Document to canonicalize.
+	 * @throws IOException
+	 *         if the stream fails.
+	 */
+	public void canonicalize(final OutputStream out, final Document doc)
+			throws IOException {
+		final StreamSink sink = new StreamSink(out);
+		process(sink, null, doc);
+		sink.close();
+	}
+
+	/**
+	 * Write the canonical form of an Element (a document subset containing
+	 * the Element and all its descendants) as UTF-8 to an OutputStream. The
+	 * stream is flushed but not closed.
+	 * 
+	 * @param out
+	 *        The destination stream.
+	 * @param element
+	 *        The Element to canonicalize.
+	 * @throws IOException
+	 *         if the stream fails.
+	 */
+	public void canonicalize(final OutputStream out, final Element element)
+			throws IOException {
+		final StreamSink sink = new StreamSink(out);
+		process(sink, null, element);
+		sink.close();
+	}
+
+	/**
+	 * Compute the digest of the canonical form of a Document. The canonical
+	 * bytes are fed to the digest as they are produced, and are never
+	 * accumulated in memory. The digest is reset when the result is returned.
+	 * 
+	 * @param digest
+	 *        The MessageDigest to use.
+	 * @param doc
+	 *        The Document to canonicalize.
+	 * @return the digest value.
+	 */
+	public byte[] digest(final MessageDigest digest, final Document doc) {
+		final DigestSink sink = new DigestSink(digest);
+		try {
+			process(sink, null, doc);
+			sink.close();
+		} catch (IOException e) {
+			// the DigestSink does not throw IOExceptions.
+			throw new IllegalStateException("Unexpected IOException", e);
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Compute the digest of the canonical form of an Element and its
+	 * descendants. The canonical bytes are fed to the digest as they are
+	 * produced, and are never accumulated in memory. The digest is reset when
+	 * the result is returned.
+	 * 
+	 * @param digest
+	 *        The MessageDigest to use.
+	 * @param element
+	 *        The Element to canonicalize.
+	 * @return the digest value.
+	 */
+	public byte[] digest(final MessageDigest digest, final Element element) {
+		final DigestSink sink = new DigestSink(digest);
+		try {
+			process(sink, null, element);
+			sink.close();
+		} catch (IOException e) {
+			// the DigestSink does not throw IOExceptions.
+			throw new IllegalStateException("Unexpected IOException", e);
+		}
+		return digest.digest();
+	}
+
+	/* *******************************************
+	 * AbstractXMLOutputProcessor overrides.
+	 * *******************************************
+	 */
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final Document doc) throws IOException {
+		printDocument(out, new FormatStack(Format.getRawFormat()),
+				new NamespaceStack(), doc);
+		out.flush();
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final DocType doctype) throws IOException {
+		// DocTypes are not part of the canonical form.
+		out.flush();
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final Element element) throws IOException {
+		printElement(out, new FormatStack(Format.getRawFormat()),
+				new NamespaceStack(), element);
+		out.flush();
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final List<? extends Content> list) throws IOException {
+		super.process(out, Format.getRawFormat(), list);
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final CDATA cdata) throws IOException {
+		super.process(out, Format.getRawFormat(), cdata);
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final Text text) throws IOException {
+		super.process(out, Format.getRawFormat(), text);
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final Comment comment) throws IOException {
+		super.process(out, Format.getRawFormat(), comment);
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final ProcessingInstruction pi) throws IOException {
+		super.process(out, Format.getRawFormat(), pi);
+	}
+
+	@Override
+	public void process(final Writer out, final Format format,
+			final EntityRef entity) throws IOException {
+		super.process(out, Format.getRawFormat(), entity);
+	}
+
+	/**
+	 * Canonical output never formats content, so this always walks the
+	 * content in its raw state.
+	 */
+	@Override
+	protected Walker buildWalker(final FormatStack fstack,
+			final List<? extends Content> content, final boolean escape) {
+		return new WalkerPRESERVE(content);
+	}
+
+	/**
+	 * Output the Document's Comments (if required), ProcessingInstructions,
+	 * and root Element. Content before the root Element is followed by a #xA,
+	 * and content after it is preceded by a #xA.
+	 */
+	@Override
+	protected void printDocument(final Writer out, final FormatStack fstack,
+			final NamespaceStack nstack, final Document doc) throws IOException {
+		final int sz = doc.getContentSize();
+		boolean afterroot = false;
+		for (int i = 0; i < sz; i++) {
+			final Content c = doc.getContent(i);
+			switch (c.getCType()) {
+				case Element:
+					printCanonical(out, (Element)c, null);
+					afterroot = true;
+					break;
+				case Comment:
+					if (withComments) {
+						if (afterroot) {
+							write(out, '\n');
+						}
+						printComment(out, fstack, (Comment)c);
+						if (!afterroot) {
+							write(out, '\n');
+						}
+					}
+					break;
+				case ProcessingInstruction:
+					if (afterroot) {
+						write(out, '\n');
+					}
+					printProcessingInstruction(out, fstack,
+							(ProcessingInstruction)c);
+					if (!afterroot) {
+						write(out, '\n');
+					}
+					break;
+				default:
+					// DocType, and whitespace Text, are not output.
+			}
+		}
+	}
+
+	@Override
+	protected void printDeclaration(final Writer out, final FormatStack fstack)
+			throws IOException {
+		// no declaration in canonical XML.
+	}
+
+	@Override
+	protected void printDocType(final Writer out, final FormatStack fstack,
+			final DocType docType) throws IOException {
+		// no DocType in canonical XML.
+	}
+
+	@Override
+	protected void printProcessingInstruction(final Writer out,
+			final FormatStack fstack, final ProcessingInstruction pi)
+			throws IOException {
+		write(out, "<?");
+		write(out, pi.getTarget());
+		final String data = pi.getData();
+		if (data != null && data.length() > 0) {
+			write(out, ' ');
+			write(out, data);
+		}
+		write(out, "?>");
+	}
+
+	@Override
+	protected void printComment(final Writer out, final FormatStack fstack,
+			final Comment comment) throws IOException {
+		if (withComments) {
+			write(out, "<!--");
+			write(out, comment.getText());
+			write(out, "-->");
+		}
+	}
+
+	@Override
+	protected void printEntityRef(final Writer out, final FormatStack fstack,
+			final EntityRef entity) throws IOException {
+		// cannot be expanded.
+		textEntityRef(out, entity.getName());
+	}
+
+	@Override
+	protected void printCDATA(final Writer out, final FormatStack fstack,
+			final CDATA cdata) throws IOException {
+		canonicalText(out, cdata.getText());
+	}
+
+	@Override
+	protected void printText(final Writer out, final FormatStack fstack,
+			final Text text) throws IOException {
+		canonicalText(out, text.getText());
+	}
+
+	/**
+	 * Output an Element as the apex of a document subset: the namespaces in
+	 * scope on the Element are rendered on it.
+	 */
+	@Override
+	protected void printElement(final Writer out, final FormatStack fstack,
+			final NamespaceStack nstack, final Element element)
+			throws IOException {
+		printCanonical(out, element, null);
+	}
+
+	/* *******************************************
+	 * Canonical output.
+	 * *******************************************
+	 */
+
+	/**
+	 * Output an Element and its content in canonical form.
+	 * 
+	 * @param out
+	 *        The destination.
+	 * @param element
+	 *        The Element to output
+	 * @param rendered
+	 *        The prefix-to-URI namespace mappings rendered on the output
+	 *        ancestors, or null if this is the apex of the output.
+	 * @throws IOException
+	 *         if the destination fails.
+	 */
+	private void printCanonical(final Writer out, final Element element,
+			final Map<String, String> rendered) throws IOException {
+
+		final boolean apex = rendered == null;
+		final Map<String, String> inscope = apex
+				? Collections.<String, String>emptyMap() : rendered;
+
+		// The namespaces to declare on this element, sorted by prefix.
+		final TreeMap<String, String> declare = new TreeMap<String, String>();
+		if (exclusive) {
+			candidate(declare, inscope, element.getNamespace());
+			if (element.hasAttributes()) {
+				for (final Attribute a : element.getAttributes()) {
+					// un-prefixed attributes are not in the default namespace
+					if (a.getNamespacePrefix().length() > 0) {
+						candidate(declare, inscope, a.getNamespace());
+					}
+				}
+			}
+			for (final String p : inclusivePrefixes) {
+				final Namespace ns = element.getNamespace(p);
+				if (ns != null) {
+					candidate(declare, inscope, ns);
+				}
+			}
+		} else if (apex) {
+			for (final Namespace ns : element.getNamespacesInScope()) {
+				candidate(declare, inscope, ns);
+			}
+		} else {
+			// the inherited namespaces are already rendered on the ancestors.
+			candidate(declare, inscope, element.getNamespace());
+			for (final Namespace ns : element.getAdditionalNamespaces()) {
+				candidate(declare, inscope, ns);
+			}
+			if (element.hasAttributes()) {
+				for (final Attribute a : element.getAttributes()) {
+					// un-prefixed attributes are not in the default namespace
+					if (a.getNamespacePrefix().length() > 0) {
+						candidate(declare, inscope, a.getNamespace());
+					}
+				}
+			}
+		}
+
+		final Map<String, String> childscope;
+		if (declare.isEmpty()) {
+			childscope = inscope;
+		} else {
+			childscope = new HashMap<String, String>(inscope);
+			childscope.putAll(declare);
+		}
+
+		write(out, '<');
+		write(out, element.getQualifiedName());
+
+		for (final Map.Entry<String, String> me : declare.entrySet()) {
+			write(out, " xmlns");
+			if (me.getKey().length() > 0) {
+				write(out, ':');
+				write(out, me.getKey());
+			}
+			write(out, "=\"");
+			canonicalAttribute(out, me.getValue());
+			write(out, '"');
+		}
+
+		final List<Attribute> atts = sortedAttributes(element, apex);
+		for (final Attribute a : atts) {
+			write(out, ' ');
+			write(out, a.getQualifiedName());
+			write(out, "=\"");
+			canonicalAttribute(out, a.getValue());
+			write(out, '"');
+		}
+		write(out, '>');
+
+		final List<Content> content = element.getContent();
+		final int sz = content.size();
+		for (int i = 0; i < sz; i++) {
+			final Content c = content.get(i);
+			switch (c.getCType()) {
+				case Element:
+					printCanonical(out, (Element)c, childscope);
+					break;
+				case Text:
+				case CDATA:
+					canonicalText(out, c.getValue());
+					break;
+				case Comment:
+					printComment(out, null, (Comment)c);
+					break;
+				case ProcessingInstruction:
+					printProcessingInstruction(out, null,
+							(ProcessingInstruction)c);
+					break;
+				case EntityRef:
+					printEntityRef(out, null, (EntityRef)c);
+					break;
+				default:
+					// DocType cannot be in an Element.
+			}
+		}
+
+		write(out, "</");
+		write(out, element.getQualifiedName());
+		write(out, '>');
+	}
+
+	/**
+	 * Add a namespace to the declarations if it is not already in effect.
+	 */
+	private static void candidate(final Map<String, String> declare,
+			final Map<String, String> inscope, final Namespace ns) {
+		final String prefix = ns.getPrefix();
+		final String uri = ns.getURI();
+		if (ns == Namespace.XML_NAMESPACE) {
+			return;
+		}
+		if (prefix.length() == 0 && uri.length() == 0) {
+			// the empty default namespace only needs declaring if a
+			// non-empty default namespace is in effect.
+			final String current = inscope.get("");
+			if (current != null && current.length() > 0) {
+				declare.put("", "");
+			}
+			return;
+		}
+		if (!uri.equals(inscope.get(prefix))) {
+			declare.put(prefix, uri);
+		}
+	}
+
+	/**
+	 * Get the attributes in canonical order, including any inherited xml:*
+	 * attributes if this is the apex of an inclusive canonicalization.
+	 */
+	private List<Attribute> sortedAttributes(final Element element,
+			final boolean apex) {
+		List<Attribute> atts = element.hasAttributes()
+				? new ArrayList<Attribute>(element.getAttributes())
+				: Collections.<Attribute>emptyList();
+		if (apex && !exclusive) {
+			// inherit xml:* attributes, nearest ancestor first.
+			ArrayList<Attribute> inherited = null;
+			Element anc = element.getParentElement();
+			while (anc != null) {
+				if (anc.hasAttributes()) {
+					for (final Attribute a : anc.getAttributes()) {
+						if (a.getNamespace() == Namespace.XML_NAMESPACE
+								&& element.getAttribute(a.getName(),
+										Namespace.XML_NAMESPACE) == null
+								&& !containsName(inherited, a.getName())) {
+							if (inherited == null) {
+								inherited = new ArrayList<Attribute>();
+							}
+							inherited.add(a);
+						}
+					}
+				}
+				anc = anc.getParentElement();
+			}
+			if (inherited != null) {
+				inherited.addAll(atts);
+				atts = inherited;
+			}
+		}
+		if (atts.size() > 1) {
+			Collections.sort(atts, ATTSORT);
+		}
+		return atts;
+	}
+
+	private static boolean containsName(final List<Attribute> atts,
+			final String name) {
+		if (atts == null) {
+			return false;
+		}
+		for (final Attribute a : atts) {
+			if (a.getName().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Escape text content: &amp;, &lt;, &gt;, and #xD.
+	 */
+	private void canonicalText(final Writer out, final String text)
+			throws IOException {
+		final int len = text.length();
+		int start = 0;
+		for (int i = 0; i < len; i++) {
+			final String rep;
+			switch (text.charAt(i)) {
+				case '&':
+					rep = "&amp;";
+					break;
+				case '<':
+					rep = "&lt;";
+					break;
+				case '>':
+					rep = "&gt;";
+					break;
+				case '\r':
+					rep = "&#xD;";
+					break;
+				default:
+					continue;
+			}
+			if (start < i) {
+				out.write(text, start, i - start);
+			}
+			write(out, rep);
+			start = i + 1;
+		}
+		if (start < len) {
+			out.write(text, start, len - start);
+		}
+	}
+
+	/**
+	 * Escape attribute values: &amp;, &lt;, &quot;, #x9, #xA, and #xD.
+	 */
+	private void canonicalAttribute(final Writer out, final String value)
+			throws IOException {
+		final int len = value.length();
+		int start = 0;
+		for (int i = 0; i < len; i++) {
+			final String rep;
+			switch (value.charAt(i)) {
+				case '&':
+					rep = "&amp;";
+					break;
+				case '<':
+					rep = "&lt;";
+					break;
+				case '"':
+					rep = "&quot;";
+					break;
+				case '\t':
+					rep = "&#x9;";
+					break;
+				case '\n':
+					rep = "&#xA;";
+					break;
+				case '\r':
+					rep = "&#xD;";
+					break;
+				default:
+					continue;
+			}
+			if (start < i) {
+				out.write(value, start, i - start);
+			}
+			write(out, rep);
+			start = i + 1;
+		}
+		if (start < len) {
+			out.write(value, start, len - start);
+		}
+	}
+
+}
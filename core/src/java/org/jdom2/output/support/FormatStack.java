@@ -154,6 +154,22 @@ public final class FormatStack {
 
 	/** escape Output logic - can be changed by */
 	private boolean[] escapeOutput = new boolean[capacity];
+	
+	/**
+	 * The standard accumulated indent for each depth (the Format's indent
+	 * repeated depth times). Computed lazily, and never invalidated because
+	 * it only depends on the original Format.
+	 */
+	private String[] standardIndent = new String[capacity];
+
+	/** The standard End-Of-Line plus indent for each depth. */
+	private String[] standardEOLIndent = new String[capacity];
+
+	/**
+	 * Walkers that can be reused for subsequent content at the same depth.
+	 * See {@link AbstractOutputProcessor#buildWalker(FormatStack, java.util.List, boolean)} 
+	 */
+	private AbstractFormattedWalker[] walkers = new AbstractFormattedWalker[capacity];
 
 	/**
 	 * Creates a new FormatStack seeded with the specified Format
@@ -193,6 +209,52 @@ public final class FormatStack {
 		escapeOutput[depth] = true;
 	}
 
+	/**
+	 * Get the standard indent for a depth (the indent repeated depth times).
+	 * Only valid when the original indent is not null.
+	 * @param level The depth to get the indent for.
+	 * @return The cached indent.
+	 */
+	private final String getStandardIndent(final int level) {
+		String ret = standardIndent[level];
+		if (ret == null) {
+			ret = level == 0 ? "" : (getStandardIndent(level - 1) + indent);
+			standardIndent[level] = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Get the standard line separator and indent for a depth.
+	 * Only valid when the original indent and line separator are not null.
+	 * @param level The depth to get the padding for.
+	 * @return The cached padding.
+	 */
+	private final String getStandardEOLIndent(final int level) {
+		String ret = standardEOLIndent[level];
+		if (ret == null) {
+			ret = lineSeparator + getStandardIndent(level);
+			standardEOLIndent[level] = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Get the walker previously registered at the current depth.
+	 * @return the walker, or null if there is none.
+	 */
+	AbstractFormattedWalker getReusableWalker() {
+		return walkers[depth];
+	}
+
+	/**
+	 * Register a walker for reuse at the current depth.
+	 * @param walker the walker to register.
+	 */
+	void setReusableWalker(final AbstractFormattedWalker walker) {
+		walkers[depth] = walker;
+	}
+
 	/**
 	 * If the indent strategy changes part way through a stack, we need to
 	 * clear the previously calculated reusable 'lower' levels of the stack.
@@ -403,22 +465,11 @@ public final class FormatStack {
 					levelEOLIndent[depth] = null;
 					termEOLIndent[depth] = null;
 				} else {
-					if (depth > 0) {
-						final StringBuilder sb = new StringBuilder(indent.length() * depth);
-						for (int i = 1; i < depth; i++) {
-							sb.append(indent);
-						}
-						// the start point was '1', so we are one indent
-						// short, which is just right for the term....
-						termEOLIndent[depth] = lineSeparator + sb.toString();
-						// but we increase it once for the actual indent.
-						sb.append(indent);
-						levelIndent[depth] = sb.toString();
-					} else {
-						termEOLIndent[depth] = lineSeparator; 
-						levelIndent[depth] = "";
-					}
-					levelEOLIndent[depth] = lineSeparator + levelIndent[depth];
+					// the term is one indent short of the level indent.
+					termEOLIndent[depth] = depth > 0
+							? getStandardEOLIndent(depth - 1) : lineSeparator;
+					levelIndent[depth] = getStandardIndent(depth);
+					levelEOLIndent[depth] = getStandardEOLIndent(depth);
 				}
 		}
 		resetReusableIndents();
@@ -440,6 +491,9 @@ public final class FormatStack {
 			ignoreTrAXEscapingPIs = ArrayCopy.copyOf(ignoreTrAXEscapingPIs, capacity);
 			mode = ArrayCopy.copyOf(mode, capacity);
 			escapeOutput = ArrayCopy.copyOf(escapeOutput, capacity);
+			standardIndent = ArrayCopy.copyOf(standardIndent, capacity);
+			standardEOLIndent = ArrayCopy.copyOf(standardEOLIndent, capacity);
+			walkers = ArrayCopy.copyOf(walkers, capacity);
 		}
 		
 		ignoreTrAXEscapingPIs[depth] = ignoreTrAXEscapingPIs[prev];
@@ -455,9 +509,18 @@ public final class FormatStack {
 			// we need to build our level details ....
 			// cannot reuse previous ones.
 			levelEOL[depth] = levelEOL[prev];
-			termEOLIndent[depth] = levelEOL[depth] + levelIndent[prev];
-			levelIndent[depth] = levelIndent[prev] + indent;
-			levelEOLIndent[depth] = levelEOL[depth] + levelIndent[depth];
+			if (indent != null && levelEOL[prev] == lineSeparator &&
+					levelIndent[prev] == getStandardIndent(prev)) {
+				// the common case, the indent has not been customized
+				// so we can use the cached values.
+				termEOLIndent[depth] = getStandardEOLIndent(prev);
+				levelIndent[depth] = getStandardIndent(depth);
+				levelEOLIndent[depth] = getStandardEOLIndent(depth);
+			} else {
+				termEOLIndent[depth] = levelEOL[depth] + levelIndent[prev];
+				levelIndent[depth] = levelIndent[prev] + indent;
+				levelEOLIndent[depth] = levelEOL[depth] + levelIndent[depth];
+			}
 		}
 	}
 
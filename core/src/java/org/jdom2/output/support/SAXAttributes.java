@@ -0,0 +1,325 @@
+/*-- 
+
+ Copyright (C) 2011 - 2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows 
+    these conditions in the documentation and/or other materials 
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the 
+ end-user documentation provided with the redistribution and/or in the 
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos 
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many 
+ individuals on behalf of the JDOM Project and was originally 
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.output.support;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * A reusable SAX {@link Attributes} implementation that presents an Element's
+ * attributes (and, optionally, its namespace declarations as xmlns
+ * attributes) without copying them in to an AttributesImpl.
+ * <p>
+ * When all of the Element's attributes are reported the attribute list is
+ * read directly. Only when some (non-specified) attributes are skipped are the
+ * remaining ones gathered in to a reused array.
+ * <p>
+ * SAX only guarantees the Attributes passed to startElement are valid for
+ * the duration of that call, so a single instance is reused for every
+ * Element in one output run. It also caches the qualified names it builds,
+ * so that the same prefix:name String is reused for every occurrence.
+ * 
+ * @since JDOM 2.1
+ */
+final class SAXAttributes implements Attributes {
+
+	private static final Namespace[] EMPTYNS = new Namespace[0];
+	private static final Attribute[] EMPTYATTS = new Attribute[0];
+
+	/** prefix -&gt; (name -&gt; qName) */
+	private final HashMap<String, HashMap<String, String>> qnames =
+			new HashMap<String, HashMap<String, String>>();
+
+	private Namespace[] decls = EMPTYNS;
+	private int declcount = 0;
+	private List<Attribute> view = null;
+	private Attribute[] filtered = EMPTYATTS;
+	private int attcount = 0;
+
+	/**
+	 * Get the (cached) qualified name for a prefix and local name.
+	 * 
+	 * @param prefix
+	 *        The prefix (may be "").
+	 * @param name
+	 *        The local name.
+	 * @return The qualified name.
+	 */
+	String getQName(final String prefix, final String name) {
+		if (prefix.length() == 0) {
+			return name;
+		}
+		HashMap<String, String> names = qnames.get(prefix);
+		if (names == null) {
+			names = new HashMap<String, String>();
+			qnames.put(prefix, names);
+		}
+		String qname = names.get(name);
+		if (qname == null) {
+			qname = prefix + ":" + name;
+			names.put(name, qname);
+		}
+		return qname;
+	}
+
+	/**
+	 * Get the (cached) qualified name of an Element.
+	 * 
+	 * @param element
+	 *        The Element.
+	 * @return The qualified name.
+	 */
+	String getQName(final Element element) {
+		return getQName(element.getNamespacePrefix(), element.getName());
+	}
+
+	/**
+	 * Reset this instance to represent no attributes at all.
+	 */
+	void clear() {
+		for (int i = 0; i < declcount; i++) {
+			decls[i] = null;
+		}
+		if (view == null) {
+			for (int i = 0; i < attcount; i++) {
+				filtered[i] = null;
+			}
+		}
+		declcount = 0;
+		attcount = 0;
+		view = null;
+	}
+
+	/**
+	 * Add a namespace declaration to be reported as an xmlns attribute.
+	 * These have to be added before the attributes are set.
+	 * 
+	 * @param ns
+	 *        The Namespace being declared.
+	 */
+	void addDeclaration(final Namespace ns) {
+		if (declcount == decls.length) {
+			decls = ArrayCopy.copyOf(decls,
+					declcount == 0 ? 4 : declcount * 2);
+		}
+		decls[declcount++] = ns;
+	}
+
+	/**
+	 * Set the Element whose attributes are to be reported.
+	 * 
+	 * @param element
+	 *        The Element.
+	 * @param specifiedonly
+	 *        Whether to skip attributes that were not specified.
+	 */
+	void setAttributes(final Element element, final boolean specifiedonly) {
+		if (!element.hasAttributes()) {
+			return;
+		}
+		final List<Attribute> atts = element.getAttributes();
+		final int sz = atts.size();
+		boolean all = true;
+		if (specifiedonly) {
+			for (int i = 0; i < sz && all; i++) {
+				all = atts.get(i).isSpecified();
+			}
+		}
+		if (all) {
+			view = atts;
+			attcount = sz;
+			return;
+		}
+		if (filtered.length < sz) {
+			filtered = new Attribute[sz];
+		}
+		int cnt = 0;
+		for (int i = 0; i < sz; i++) {
+			final Attribute a = atts.get(i);
+			if (a.isSpecified()) {
+				filtered[cnt++] = a;
+			}
+		}
+		attcount = cnt;
+	}
+
+	private Attribute attribute(final int index) {
+		final int i = index - declcount;
+		if (i < 0 || i >= attcount) {
+			return null;
+		}
+		return view == null ? filtered[i] : view.get(i);
+	}
+
+	private static String typeName(final AttributeType type) {
+		switch (type) {
+			case UNDECLARED:
+				return "CDATA";
+			default:
+				return type.name();
+		}
+	}
+
+	@Override
+	public int getLength() {
+		return declcount + attcount;
+	}
+
+	@Override
+	public String getURI(final int index) {
+		if (index >= 0 && index < declcount) {
+			return "";
+		}
+		final Attribute a = attribute(index);
+		return a == null ? null : a.getNamespaceURI();
+	}
+
+	@Override
+	public String getLocalName(final int index) {
+		if (index >= 0 && index < declcount) {
+			return "";
+		}
+		final Attribute a = attribute(index);
+		return a == null ? null : a.getName();
+	}
+
+	@Override
+	public String getQName(final int index) {
+		if (index >= 0 && index < declcount) {
+			final String prefix = decls[index].getPrefix();
+			return prefix.length() == 0 ? "xmlns" : getQName("xmlns", prefix);
+		}
+		final Attribute a = attribute(index);
+		return a == null ? null : getQName(a.getNamespacePrefix(), a.getName());
+	}
+
+	@Override
+	public String getType(final int index) {
+		if (index >= 0 && index < declcount) {
+			return "CDATA";
+		}
+		final Attribute a = attribute(index);
+		return a == null ? null : typeName(a.getAttributeType());
+	}
+
+	@Override
+	public String getValue(final int index) {
+		if (index >= 0 && index < declcount) {
+			return decls[index].getURI();
+		}
+		final Attribute a = attribute(index);
+		return a == null ? null : a.getValue();
+	}
+
+	@Override
+	public int getIndex(final String uri, final String localName) {
+		if (uri == null || localName == null) {
+			return -1;
+		}
+		// namespace declarations have no URI/localName in SAX.
+		final int len = getLength();
+		for (int i = declcount; i < len; i++) {
+			final Attribute a = attribute(i);
+			if (a.getName().equals(localName)
+					&& a.getNamespaceURI().equals(uri)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int getIndex(final String qName) {
+		if (qName == null) {
+			return -1;
+		}
+		final int len = getLength();
+		for (int i = 0; i < len; i++) {
+			if (qName.equals(getQName(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String getType(final String uri, final String localName) {
+		return getType(getIndex(uri, localName));
+	}
+
+	@Override
+	public String getType(final String qName) {
+		return getType(getIndex(qName));
+	}
+
+	@Override
+	public String getValue(final String uri, final String localName) {
+		return getValue(getIndex(uri, localName));
+	}
+
+	@Override
+	public String getValue(final String qName) {
+		return getValue(getIndex(qName));
+	}
+
+}
@@ -146,6 +146,9 @@ public final class SAXTarget {
 
 	private final SAXLocator locator;
 
+	/** The Attributes instance reused for each startElement */
+	private SAXAttributes attributes = null;
+
 	/**
 	 * Whether to report attribute namespace declarations as xmlns
 	 * attributes. Defaults to <code>false</code> as per SAX specifications.
@@ -266,4 +269,19 @@ public final class SAXTarget {
 		return locator;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Get the reusable Attributes instance for this target. The instance is
+	 * cleared before it is returned.
+	 * 
+	 * @return the SAXAttributes for this output run.
+	 */
+	SAXAttributes getSAXAttributes() {
+		if (attributes == null) {
+			attributes = new SAXAttributes();
+		} else {
+			attributes.clear();
+		}
+		return attributes;
+	}
+
+}
@@ -0,0 +1,300 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.util;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Parent;
+
+/**
+ * Numbers the nodes of a JDOM tree in document order, so that the relative
+ * order of any two nodes, and whether one is an ancestor of the other, can
+ * be determined in constant time.
+ * <p>
+ * Without numbering, comparing the order of two nodes means walking up to
+ * their common ancestor and locating each branch in its parent's content.
+ * Code that sorts or merges many nodes (XPath union results, for example)
+ * does that repeatedly. A DocumentOrder instead gives every node in the
+ * tree an ordinal: the Document or Element at the root is 0, every Element
+ * is followed by its Attributes and then its content, recursively. Each
+ * Element (and the Document) also records the last ordinal inside it, so
+ * the ordinals of its descendants form a contiguous range.
+ * <p>
+ * The numbering is calculated on first use and is tied to the root's
+ * modification stamp (see {@link Document#getModificationStamp()} and
+ * {@link Element#getModificationStamp()}): it is reused
+ * for as long as the tree is unchanged (frozen), and recalculated the first
+ * time it is used after any change. Interleaving many small modifications
+ * with order queries is therefore no faster than not numbering at all.
+ * <p>
+ * A DocumentOrder can be created for any Document or Element. One can
+ * also be installed on a Document with {@link #install(Document)}, which
+ * stores it as a Document property (see
+ * {@link Document#setProperty(String, Object)}) where other code (the
+ * native XPath engine, for example) will find it and use it to sort
+ * results in to document order.
+ * <p>
+ * Instances can be used concurrently, but, as with all JDOM content, the
+ * tree must not be modified while it is being queried.
+ * 
+ * @since JDOM 2.1
+ */
+public final class DocumentOrder implements Comparator<Object> {
+
+	/** The Document property the numbering is stored in */
+	private static final String PROPERTY = DocumentOrder.class.getName();
+
+	/**
+	 * Create a numbering for the Document and install it so that other
+	 * code can find it with {@link #getInstance(Document)}. Any previous
+	 * numbering installed on the Document is replaced.
+	 * 
+	 * @param document The Document to number.
+	 * @return The installed numbering.
+	 * @throws NullPointerException if the document is null.
+	 */
+	public static DocumentOrder install(final Document document) {
+		final DocumentOrder order = new DocumentOrder(document);
+		document.setProperty(PROPERTY, order);
+		return order;
+	}
+
+	/**
+	 * Get the numbering installed on a Document.
+	 * 
+	 * @param document The Document to check.
+	 * @return The numbering, or null if there is none.
+	 */
+	public static DocumentOrder getInstance(final Document document) {
+		final Object order = document.getProperty(PROPERTY);
+		// cloned Documents share their properties, check it is ours.
+		if (order instanceof DocumentOrder 
+				&& ((DocumentOrder)order).root == document) {
+			return (DocumentOrder)order;
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the numbering from a Document.
+	 * 
+	 * @param document The Document to remove the numbering from.
+	 * @return true if there was a numbering to remove.
+	 */
+	public static boolean remove(final Document document) {
+		if (getInstance(document) == null) {
+			return false;
+		}
+		document.setProperty(PROPERTY, null);
+		return true;
+	}
+
+	/**
+	 * The ordinals of one version of the tree.
+	 */
+	private static final class Numbering {
+		private final int stamp;
+		/** node -> {ordinal, last descendant ordinal} */
+		private final IdentityHashMap<Object, int[]> ordinals =
+				new IdentityHashMap<Object, int[]>();
+		private int next = 0;
+
+		Numbering(final Parent root, final int stamp) {
+			this.stamp = stamp;
+			number(root);
+		}
+
+		private int[] add(final Object node) {
+			final int[] ord = new int[] {next, next};
+			next++;
+			ordinals.put(node, ord);
+			return ord;
+		}
+
+		private void number(final Parent parent) {
+			final int[] ord = add(parent);
+			if (parent instanceof Element && ((Element)parent).hasAttributes()) {
+				for (Attribute a : ((Element)parent).getAttributes()) {
+					add(a);
+				}
+			}
+			final int sz = parent.getContentSize();
+			for (int i = 0; i < sz; i++) {
+				final Content c = parent.getContent(i);
+				if (c instanceof Element) {
+					number((Element)c);
+				} else {
+					add(c);
+				}
+			}
+			ord[1] = next - 1;
+		}
+	}
+
+	private final Parent root;
+	private Numbering numbering = null;
+
+	/**
+	 * Create a numbering for the tree rooted at a Document or Element.
+	 * Nodes outside the tree (including the ancestors of an Element root)
+	 * are not numbered.
+	 * 
+	 * @param root The Document or Element at the root of the tree.
+	 * @throws NullPointerException if root is null.
+	 */
+	public DocumentOrder(final Parent root) {
+		if (root == null) {
+			throw new NullPointerException("Cannot number a null root");
+		}
+		this.root = root;
+	}
+
+	/**
+	 * Get the Document or Element at the root of the numbered tree.
+	 * 
+	 * @return the root.
+	 */
+	public Parent getRoot() {
+		return root;
+	}
+
+	private int stamp() {
+		return root instanceof Element 
+				? ((Element)root).getModificationStamp()
+				: ((Document)root).getModificationStamp();
+	}
+
+	/**
+	 * Get the numbering for the current state of the tree, recalculating it
+	 * if the tree has changed.
+	 * 
+	 * @return the current numbering.
+	 */
+	private synchronized Numbering current() {
+		final int stamp = stamp();
+		if (numbering == null || numbering.stamp != stamp) {
+			numbering = new Numbering(root, stamp);
+		}
+		return numbering;
+	}
+
+	private int[] ordinals(final Object node) {
+		final int[] ord = current().ordinals.get(node);
+		if (ord == null) {
+			throw new IllegalArgumentException("The node " + node + 
+					" is not in the tree rooted at " + root);
+		}
+		return ord;
+	}
+
+	/**
+	 * Get the position of a node in document order. The root is 0, and
+	 * every node after it is one more than the node before.
+	 * 
+	 * @param node The Content, Attribute, or Document to locate.
+	 * @return the ordinal of the node, or -1 if it is not in this tree.
+	 */
+	public int getOrdinal(final Object node) {
+		final int[] ord = current().ordinals.get(node);
+		return ord == null ? -1 : ord[0];
+	}
+
+	/**
+	 * Get the number of nodes in the tree (the root, all content at all
+	 * levels, and all Attributes).
+	 * 
+	 * @return the number of nodes.
+	 */
+	public int size() {
+		return current().next;
+	}
+
+	/**
+	 * Compare two nodes of this tree in document order.
+	 * 
+	 * @param a The first node.
+	 * @param b The second node.
+	 * @return a negative value if a comes before b, 0 if they are the same
+	 *         node, and a positive value if a comes after b.
+	 * @throws IllegalArgumentException if either node is not in this tree.
+	 */
+	@Override
+	public int compare(final Object a, final Object b) {
+		final int oa = ordinals(a)[0];
+		final int ob = ordinals(b)[0];
+		return oa < ob ? -1 : (oa == ob ? 0 : 1);
+	}
+
+	/**
+	 * Determine whether a node is a (strict) ancestor of another node in
+	 * this tree. Attributes are considered to be inside their Element.
+	 * 
+	 * @param ancestor The possible ancestor.
+	 * @param node The possible descendant.
+	 * @return true if <i>ancestor</i> contains <i>node</i>.
+	 * @throws IllegalArgumentException if either node is not in this tree.
+	 */
+	public boolean isAncestor(final Object ancestor, final Object node) {
+		final int[] oa = ordinals(ancestor);
+		final int on = ordinals(node)[0];
+		return oa[0] < on && on <= oa[1];
+	}
+
+}
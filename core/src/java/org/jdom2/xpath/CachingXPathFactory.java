@@ -0,0 +1,334 @@
+/*--
+
+ Copyright (C) 2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.xpath;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filter;
+
+/**
+ * An XPathFactory that keeps a bounded cache of compiled XPathExpressions
+ * created by some other (delegate) XPathFactory.
+ * <p>
+ * Compiling an XPath expression requires a complete parse of the expression.
+ * Applications that repeatedly compile the same expressions (typically
+ * because XPathExpression instances are not thread-safe, and thus are not
+ * shared) can use this factory to pay the compile cost only once.
+ * <p>
+ * Compiled expressions are cached using a key made from the expression, the
+ * filter, the Namespaces (in any order), and the initial variable values.
+ * The cached instance is never returned, instead a {@link XPathExpression#clone()}
+ * of it is returned from each compile call. The clone is an independent
+ * instance: setting variables on it does not affect the cached instance, or
+ * any other clone. Filters that do not implement <code>equals()</code> are
+ * only matched by identity.
+ * <p>
+ * When the cache is full the least-recently used expression is evicted.
+ * <p>
+ * Like all XPathFactory instances, this factory is thread-safe. The delegate
+ * compile is done outside of any lock, so concurrent compiles of the same
+ * new expression may both compile it.
+ * 
+ * @since JDOM 2.1
+ */
+public class CachingXPathFactory extends XPathFactory {
+
+	private static final Comparator<Namespace> NSSORT = new Comparator<Namespace>() {
+		@Override
+		public int compare(final Namespace ns1, final Namespace ns2) {
+			return ns1.getPrefix().compareTo(ns2.getPrefix());
+		}
+	};
+
+	/**
+	 * The cache key: expression, filter, sorted namespaces, and variables.
+	 */
+	private static final class Key {
+		private final String expression;
+		private final Filter<?> filter;
+		private final Namespace[] namespaces;
+		private final Map<String, Object> variables;
+		private final int hashcode;
+
+		Key(final String expression, final Filter<?> filter,
+				final Map<String, Object> variables,
+				final Namespace[] namespaces) {
+			this.expression = expression;
+			this.filter = filter;
+			this.namespaces = namespaces;
+			this.variables = variables;
+			int h = expression.hashCode();
+			h = h * 31 + filter.hashCode();
+			h = h * 31 + Arrays.hashCode(namespaces);
+			h = h * 31 + (variables == null ? 0 : variables.hashCode());
+			this.hashcode = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key k = (Key)obj;
+			return hashcode == k.hashcode
+					&& expression.equals(k.expression)
+					&& filter.equals(k.filter)
+					&& Arrays.equals(namespaces, k.namespaces)
+					&& (variables == null ? k.variables == null
+							: variables.equals(k.variables));
+		}
+	}
+
+	/**
+	 * A LinkedHashMap in access-order that evicts the eldest entry when it
+	 * exceeds its maximum size.
+	 */
+	private static final class LRUMap extends LinkedHashMap<Key, XPathExpression<?>> {
+		private static final long serialVersionUID = 1L;
+		private final int maxsize;
+
+		LRUMap(final int maxsize) {
+			super(16, 0.75f, true);
+			this.maxsize = maxsize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<Key, XPathExpression<?>> eldest) {
+			return size() > maxsize;
+		}
+	}
+
+	private final XPathFactory delegate;
+	private final int maximumSize;
+	private final LRUMap cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create a CachingXPathFactory that caches the expressions compiled by
+	 * the default XPathFactory {@link XPathFactory#instance()}.
+	 * 
+	 * @param maximumSize
+	 *        The maximum number of expressions to cache.
+	 * @throws IllegalArgumentException
+	 *         if maximumSize is less than 1.
+	 */
+	public CachingXPathFactory(final int maximumSize) {
+		this(XPathFactory.instance(), maximumSize);
+	}
+
+	/**
+	 * Create a CachingXPathFactory that caches the expressions compiled by
+	 * the specified XPathFactory.
+	 * 
+	 * @param delegate
+	 *        The XPathFactory that compiles the expressions.
+	 * @param maximumSize
+	 *        The maximum number of expressions to cache.
+	 * @throws NullPointerException
+	 *         if the delegate is null.
+	 * @throws IllegalArgumentException
+	 *         if maximumSize is less than 1.
+	 */
+	public CachingXPathFactory(final XPathFactory delegate,
+			final int maximumSize) {
+		if (delegate == null) {
+			throw new NullPointerException("Null delegate XPathFactory");
+		}
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException(
+					"The maximum cache size must be at least 1, not "
+							+ maximumSize);
+		}
+		this.delegate = delegate;
+		this.maximumSize = maximumSize;
+		this.cache = new LRUMap(maximumSize);
+	}
+
+	@Override
+	public <T> XPathExpression<T> compile(final String expression,
+			final Filter<T> filter, final Map<String, Object> variables,
+			final Namespace... namespaces) {
+		if (expression == null) {
+			throw new NullPointerException("Null expression");
+		}
+		if (filter == null) {
+			throw new NullPointerException("Null filter");
+		}
+		final Namespace[] nsa = namespaces == null ? new Namespace[0]
+				: namespaces.clone();
+		for (final Namespace ns : nsa) {
+			if (ns == null) {
+				throw new NullPointerException("Null namespace");
+			}
+		}
+		Arrays.sort(nsa, NSSORT);
+		final Map<String, Object> vars = variables == null
+				|| variables.isEmpty() ? null
+				: new HashMap<String, Object>(variables);
+		final Key key = new Key(expression, filter, vars, nsa);
+
+		XPathExpression<?> compiled = null;
+		synchronized (cache) {
+			compiled = cache.get(key);
+		}
+		if (compiled == null) {
+			misses.incrementAndGet();
+			// compile outside the lock, errors are not cached.
+			compiled = delegate.compile(expression, filter, variables,
+					namespaces);
+			synchronized (cache) {
+				cache.put(key, compiled);
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+
+		// the key includes the filter, so the generic type is right.
+		@SuppressWarnings("unchecked")
+		final XPathExpression<T> ret = (XPathExpression<T>)compiled.clone();
+		return ret;
+	}
+
+	/**
+	 * Get the XPathFactory that is used to compile expressions.
+	 * 
+	 * @return the delegate XPathFactory.
+	 */
+	public XPathFactory getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Get the maximum number of expressions that are cached.
+	 * 
+	 * @return the maximum cache size.
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Get the number of expressions currently cached.
+	 * 
+	 * @return the current cache size.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Remove all cached expressions. The statistics are not reset.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Get the number of compile calls that were satisfied from the cache.
+	 * 
+	 * @return the cache hit count.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of compile calls that had to compile the expression.
+	 * 
+	 * @return the cache miss count.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the proportion of compile calls that were satisfied from the cache.
+	 * 
+	 * @return the hit rate, from 0.0 to 1.0 (0.0 if nothing is compiled yet).
+	 */
+	public double getHitRate() {
+		final long h = hits.get();
+		final long total = h + misses.get();
+		return total == 0 ? 0.0 : (double)h / (double)total;
+	}
+
+	@Override
+	public String toString() {
+		return "CachingXPathFactory[size=" + size() + ", maximumSize="
+				+ maximumSize + ", hits=" + hits.get() + ", misses="
+				+ misses.get() + ", delegate=" + delegate + "]";
+	}
+
+}
@@ -111,4 +111,13 @@ public interface XPathDiagnostic<T> {
 	 */
 	public boolean isFirstOnly();
 
+	/**
+	 * Returns the execution profile of the evaluation, if one was requested
+	 * with {@link XPathExpression2#diagnose(Object, boolean, boolean)}.
+	 * 
+	 * @return the profile, or null if the evaluation was not profiled.
+	 * @since JDOM 2.1
+	 */
+	public XPathProfile getProfile();
+
 }
@@ -75,6 +75,10 @@ import org.jdom2.filter.Filter;
  * supports Cloneable to easily create another XPathExpression instance. It is
  * the responsibility of the JDOM caller to ensure appropriate synchronisation
  * of the XPathExpression if it is accessed from multiple threads.
+ * <p>
+ * The {@link XPathExpression2} extension of this interface has evaluate
+ * methods that take the variable values for a single evaluation, which
+ * relaxes this rule for some XPath libraries.
  * 
  * @author Rolf Lear
  * @param <T>
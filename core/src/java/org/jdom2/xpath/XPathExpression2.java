@@ -0,0 +1,294 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filter;
+
+/**
+ * An extension of {@link XPathExpression} with the evaluation methods that
+ * were added in JDOM 2.1.
+ * <p>
+ * These methods are in a separate interface so that existing implementations
+ * of XPathExpression are still valid. All the XPathExpressions compiled by
+ * the XPathFactory implementations in JDOM implement this interface (they
+ * extend {@link org.jdom2.xpath.util.AbstractXPathCompiled}), so it is safe
+ * to cast them:
+ * 
+ * <pre>
+ * XPathExpression2&lt;Element&gt; xp = (XPathExpression2&lt;Element&gt;)
+ *         XPathFactory.instance().compile("//title", Filters.element());
+ * </pre>
+ * 
+ * Expressions from other libraries should be tested with
+ * <code>instanceof</code> first.
+ * <p>
+ * The {@link #evaluate(Object, Map)} and {@link #evaluateFirst(Object, Map)}
+ * methods take the variable values for just the one evaluation, and never
+ * change the values set on the XPathExpression. This relaxes the
+ * thread-safety rule of XPathExpression for the XPathExpressions created by
+ * the default (Jaxen) XPathFactory: they keep all evaluation state local to
+ * each evaluation, so as long as no thread changes the variables with the
+ * setVariable methods, their evaluate methods may be called from multiple
+ * threads at the same time on the same instance. Anything else still needs
+ * the caller's synchronisation, or a clone() for each thread.
+ * 
+ * @param <T>
+ *        The generic type of the results of the XPath query after being
+ *        processed by the JDOM {@code Filter<T>}
+ * @since JDOM 2.1
+ */
+public interface XPathExpression2<T> extends XPathExpression<T> {
+
+	/**
+	 * Process the compiled XPathExpression against the specified context,
+	 * using the supplied variable values for this evaluation only.
+	 * <p>
+	 * The variables are identified by the same prefix-qualified names used in
+	 * {@link XPathFactory#compile(String, Filter, Map, Namespace...)}, and
+	 * each variable has to have been declared when the expression was
+	 * compiled. Variables that are not in the map keep the values set on this
+	 * XPathExpression. The values set on this XPathExpression are not
+	 * changed.
+	 * <p>
+	 * See the class documentation for the thread-safety of this method.
+	 * 
+	 * @param context
+	 *        The context against which to process the query.
+	 * @param variables
+	 *        The variable values to use for this evaluation (may be null).
+	 * @return a list of the XPath results.
+	 * @throws NullPointerException
+	 *         if the context is null
+	 * @throws IllegalArgumentException
+	 *         if a variable name is not declared on this expression.
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable or if the context node is not
+	 *         appropriate for the expression.
+	 * @since JDOM 2.1
+	 */
+	public List<T> evaluate(Object context, Map<String, Object> variables);
+
+	/**
+	 * Return the first value in the XPath query result set type-cast to the
+	 * return type of this XPathExpression, using the supplied variable values
+	 * for this evaluation only.
+	 * <p>
+	 * See {@link #evaluateFirst(Object)} for the details of the 'first'
+	 * result, and {@link #evaluate(Object, Map)} for the use of the
+	 * variables and the thread-safety of this method.
+	 * 
+	 * @param context
+	 *        The context against which to evaluate the expression.
+	 * @param variables
+	 *        The variable values to use for this evaluation (may be null).
+	 * @return The first XPath result (if there is any) coerced to the generic
+	 *         type of this XPathExpression, or null if it cannot be coerced.
+	 * @throws NullPointerException
+	 *         if the context is null
+	 * @throws IllegalArgumentException
+	 *         if a variable name is not declared on this expression.
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable or if the context node is not
+	 *         appropriate for the expression.
+	 * @since JDOM 2.1
+	 */
+	public T evaluateFirst(Object context, Map<String, Object> variables);
+
+	/**
+	 * Process the compiled XPathExpression against the specified context, and
+	 * return the results one at a time, in the same order as
+	 * {@link #evaluate(Object)}.
+	 * <p>
+	 * Results that cannot be coerced by the Filter are skipped. Where the
+	 * XPath library supports it the results are found lazily: the document
+	 * is only searched as far as is needed to find the next result, so a
+	 * caller that stops iterating early does not pay for the results it
+	 * never pulls. Libraries that cannot do this will find all the results
+	 * before the first one is returned. The content being searched should
+	 * not be modified while the Iterator is in use.
+	 * <p>
+	 * The Iterator does not support remove().
+	 * 
+	 * @param context
+	 *        The context against which to process the query.
+	 * @return an Iterator over the XPath results.
+	 * @throws NullPointerException
+	 *         if the context is null
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable or if the context node is not
+	 *         appropriate for the expression.
+	 * @since JDOM 2.1
+	 */
+	public Iterator<T> evaluateIterator(Object context);
+
+	/**
+	 * Process the compiled XPathExpression against the specified context,
+	 * using the supplied variable values for this evaluation only, and return
+	 * the results one at a time.
+	 * <p>
+	 * See {@link #evaluateIterator(Object)} for the details of the iteration,
+	 * and {@link #evaluate(Object, Map)} for the use of the variables.
+	 * 
+	 * @param context
+	 *        The context against which to process the query.
+	 * @param variables
+	 *        The variable values to use for this evaluation (may be null).
+	 * @return an Iterator over the XPath results.
+	 * @throws NullPointerException
+	 *         if the context is null
+	 * @throws IllegalArgumentException
+	 *         if a variable name is not declared on this expression.
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable or if the context node is not
+	 *         appropriate for the expression.
+	 * @since JDOM 2.1
+	 */
+	public Iterator<T> evaluateIterator(Object context,
+			Map<String, Object> variables);
+
+	/**
+	 * Process the compiled XPathExpression against each of the specified
+	 * contexts separately, and return the results grouped by context. This
+	 * is the same as calling {@link #evaluate(Object)} for each context, but
+	 * the per-evaluation setup the XPath library needs is done once for all
+	 * the contexts instead of once for each.
+	 * <p>
+	 * Note that this is different to calling {@link #evaluate(Object)} with a
+	 * List of contexts, which merges the results from all the contexts in to
+	 * one List.
+	 * 
+	 * @param contexts
+	 *        The contexts against which to process the query.
+	 * @return a List with one entry for each context, in the iteration order
+	 *         of the contexts, each entry being the List of results for that
+	 *         context.
+	 * @throws NullPointerException
+	 *         if contexts is null or contains a null context
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable or if a context node is not
+	 *         appropriate for the expression.
+	 * @since JDOM 2.1
+	 */
+	public List<List<T>> evaluateEach(Collection<?> contexts);
+
+	/**
+	 * Process the compiled XPathExpression against each of the specified
+	 * contexts separately, using the Executor to evaluate groups of contexts
+	 * in parallel, and return the results grouped by context.
+	 * <p>
+	 * The results are the same as {@link #evaluateEach(Collection)}. The
+	 * contexts are split in to about one group for each available processor
+	 * and the calling thread waits for all the groups to complete. XPath
+	 * libraries that cannot evaluate an expression concurrently evaluate all
+	 * the contexts in the calling thread instead, and a null Executor also
+	 * evaluates them in the calling thread. The content being searched must
+	 * not be modified during the evaluation.
+	 * 
+	 * @param contexts
+	 *        The contexts against which to process the query.
+	 * @param executor
+	 *        The Executor to run the groups of contexts on (may be null).
+	 * @return a List with one entry for each context, in the iteration order
+	 *         of the contexts, each entry being the List of results for that
+	 *         context.
+	 * @throws NullPointerException
+	 *         if contexts is null or contains a null context
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable, if a context node is not
+	 *         appropriate for the expression, or if the calling thread is
+	 *         interrupted while it waits.
+	 * @since JDOM 2.1
+	 */
+	public List<List<T>> evaluateEach(Collection<?> contexts, Executor executor);
+
+	/**
+	 * Evaluate the XPath query against the supplied context, return
+	 * additional data which may be useful for diagnosing problems with XPath
+	 * queries, and optionally profile the evaluation.
+	 * <p>
+	 * A profiled evaluation records the total time taken, and, where the
+	 * XPath library supports it, the nodes visited, predicates evaluated,
+	 * results and time of each location step (see {@link XPathProfile}).
+	 * Profiling slows the evaluation down, and the XPath library may use a
+	 * less optimised evaluation strategy in order to record the steps, so
+	 * the profile is for comparing the relative cost of steps and
+	 * expressions rather than for absolute timing.
+	 * 
+	 * @param context
+	 *        The context against which to run the query.
+	 * @param firstonly
+	 *        Indicate whether the XPath expression can be terminated after the
+	 *        first successful result value.
+	 * @param profile
+	 *        true to include an {@link XPathProfile} in the diagnostic.
+	 * @return an {@link XPathDiagnostic} instance.
+	 * @throws NullPointerException
+	 *         if the context is null
+	 * @throws IllegalStateException
+	 *         if the expression is not runnable or if the context node is not
+	 *         appropriate for the expression.
+	 * @since JDOM 2.1
+	 */
+	public XPathDiagnostic<T> diagnose(Object context, boolean firstonly, 
+			boolean profile);
+}
@@ -85,7 +85,9 @@ import org.jdom2.xpath.jaxen.JaxenXPathFactory;
  * <p>
  * Instances of XPathFactory are specified to be thread-safe. You can reuse an
  * XPathFactory in multiple threads. Instances of XPathExpression are
- * <strong>NOT</strong> thread-safe.
+ * <strong>NOT</strong> thread-safe, although the expressions compiled by the
+ * default (Jaxen) factory can be evaluated concurrently (see
+ * {@link XPathExpression}).
  * 
  * @since JDOM2
  * @author Rolf Lear
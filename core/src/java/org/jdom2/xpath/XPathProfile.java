@@ -0,0 +1,144 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath;
+
+import java.util.List;
+
+/**
+ * The execution profile of an XPath evaluation, as returned by
+ * {@link XPathDiagnostic#getProfile()} when an expression is diagnosed with
+ * {@link XPathExpression2#diagnose(Object, boolean, boolean)}.
+ * <p>
+ * The profile records the total evaluation time, and, for XPath libraries
+ * that support it, the work done by each location step. A step inside a
+ * predicate is run once for every node the predicate is evaluated for, so
+ * steps with many evaluations and many visited nodes are the ones that make
+ * an expression slow: typically an expression that is quadratic in the size
+ * of the document.
+ * 
+ * @since JDOM 2.1
+ */
+public interface XPathProfile {
+
+	/**
+	 * The work done by one location step of the expression, accumulated
+	 * over every time the step was run during the evaluation.
+	 */
+	public interface Step {
+
+		/**
+		 * @return The location path the step is part of.
+		 */
+		public String getPath();
+
+		/**
+		 * @return The step itself, and how it was evaluated.
+		 */
+		public String getStep();
+
+		/**
+		 * @return The number of times the step was run. A step inside a
+		 *         predicate is run for each node the predicate is tested on.
+		 */
+		public long getEvaluations();
+
+		/**
+		 * @return The number of context nodes the step was applied to.
+		 */
+		public long getContextNodes();
+
+		/**
+		 * @return The number of nodes the step's axis visited.
+		 */
+		public long getNodesVisited();
+
+		/**
+		 * @return The number of times a predicate of the step was evaluated
+		 *         for a node.
+		 */
+		public long getPredicateEvaluations();
+
+		/**
+		 * @return The total number of nodes the step selected.
+		 */
+		public long getResultSize();
+
+		/**
+		 * @return The time spent in the step, in nanoseconds. This includes
+		 *         the time spent in any steps inside the step's predicates.
+		 */
+		public long getElapsedNanos();
+
+	}
+
+	/**
+	 * @return The total time the evaluation took, in nanoseconds.
+	 */
+	public long getElapsedNanos();
+
+	/**
+	 * @return The number of raw results of the evaluation.
+	 */
+	public int getResultSize();
+
+	/**
+	 * @return The profile of each location step in the order they were first
+	 *         run, or an empty list if the XPath library does not profile
+	 *         steps.
+	 */
+	public List<Step> getSteps();
+
+}
@@ -0,0 +1,167 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The XPath 1.0 axes.
+ */
+enum Axis {
+	/** child:: */
+	CHILD("child", false),
+	/** descendant:: */
+	DESCENDANT("descendant", false),
+	/** parent:: */
+	PARENT("parent", false),
+	/** ancestor:: */
+	ANCESTOR("ancestor", true),
+	/** following-sibling:: */
+	FOLLOWING_SIBLING("following-sibling", false),
+	/** preceding-sibling:: */
+	PRECEDING_SIBLING("preceding-sibling", true),
+	/** following:: */
+	FOLLOWING("following", false),
+	/** preceding:: */
+	PRECEDING("preceding", true),
+	/** attribute:: */
+	ATTRIBUTE("attribute", false),
+	/** namespace:: */
+	NAMESPACE("namespace", false),
+	/** self:: */
+	SELF("self", false),
+	/** descendant-or-self:: */
+	DESCENDANT_OR_SELF("descendant-or-self", false),
+	/** ancestor-or-self:: */
+	ANCESTOR_OR_SELF("ancestor-or-self", true);
+
+	private static final Map<String, Axis> BYNAME = new HashMap<String, Axis>();
+
+	static {
+		for (Axis a : values()) {
+			BYNAME.put(a.axisName, a);
+		}
+	}
+
+	/**
+	 * Get the Axis with the given XPath name.
+	 * @param name The XPath name of the axis
+	 * @return the Axis, or null if there is no such axis.
+	 */
+	static Axis forName(final String name) {
+		return BYNAME.get(name);
+	}
+
+	private final String axisName;
+	private final boolean reverse;
+
+	private Axis(final String name, final boolean reverse) {
+		this.axisName = name;
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Is this a reverse axis.
+	 * @return true if nodes on this axis are in reverse document order.
+	 */
+	boolean isReverse() {
+		return reverse;
+	}
+
+	/**
+	 * Does the axis select nodes that are never ancestors of each other
+	 * when applied to a single node. 
+	 * @return true if the selected nodes never nest.
+	 */
+	boolean isFlat() {
+		switch (this) {
+			case CHILD:
+			case PARENT:
+			case SELF:
+			case ATTRIBUTE:
+			case NAMESPACE:
+			case FOLLOWING_SIBLING:
+			case PRECEDING_SIBLING:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * The XPath name of this axis.
+	 * @return the name as used in expressions.
+	 */
+	String getAxisName() {
+		return axisName;
+	}
+
+	/**
+	 * The node type selected by a name test on this axis.
+	 * @return the principal node type.
+	 */
+	int getPrincipalType() {
+		switch (this) {
+			case ATTRIBUTE:
+				return Nodes.ATTRIBUTE;
+			case NAMESPACE:
+				return Nodes.NAMESPACE;
+			default:
+				return Nodes.ELEMENT;
+		}
+	}
+}
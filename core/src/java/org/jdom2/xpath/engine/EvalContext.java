@@ -0,0 +1,161 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Namespace;
+
+/**
+ * The state for a single evaluation of an expression. This is what makes it
+ * possible to evaluate the same compiled expression concurrently.
+ */
+final class EvalContext {
+
+	private final NativeXPathCompiled<?> expression;
+	private final Map<String, Map<String, Object>> variables;
+	private final Profiler profiler;
+
+	/**
+	 * Create the state for one evaluation.
+	 * @param expression The expression being evaluated (for the variables).
+	 * @param variables The variables for this evaluation only (may be null).
+	 */
+	EvalContext(final NativeXPathCompiled<?> expression,
+			final Map<String, Map<String, Object>> variables) {
+		this(expression, variables, null);
+	}
+
+	/**
+	 * Create the state for one profiled evaluation.
+	 * @param expression The expression being evaluated (for the variables).
+	 * @param variables The variables for this evaluation only (may be null).
+	 * @param profiler The Profiler to record the steps in (may be null).
+	 */
+	EvalContext(final NativeXPathCompiled<?> expression,
+			final Map<String, Map<String, Object>> variables,
+			final Profiler profiler) {
+		this.expression = expression;
+		this.variables = variables;
+		this.profiler = profiler;
+	}
+
+	/**
+	 * The Profiler for this evaluation.
+	 * @return the Profiler, or null if the evaluation is not profiled.
+	 */
+	Profiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Get the XPath value of a variable.
+	 * @param name The local name of the variable
+	 * @param uri The Namespace of the variable
+	 * @return The value converted to an XPath type.
+	 * @throws IllegalStateException if the variable is not declared.
+	 */
+	Object getVariable(final String name, final Namespace uri) {
+		final Object val;
+		try {
+			val = expression.getVariableValue(name, uri, variables);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalStateException("Unable to evaluate expression '"
+					+ expression.getExpression() + "': " + e.getMessage(), e);
+		}
+		return toXPathValue(val);
+	}
+
+	/**
+	 * Convert a Java value to an XPath value.
+	 */
+	private static Object toXPathValue(final Object val) {
+		if (val == null) {
+			return "";
+		}
+		if (val instanceof String || val instanceof Boolean 
+				|| val instanceof Double) {
+			return val;
+		}
+		if (val instanceof Number) {
+			return Double.valueOf(((Number)val).doubleValue());
+		}
+		if (val instanceof Content || val instanceof Attribute 
+				|| val instanceof Document || val instanceof Namespace) {
+			final ArrayList<Object> ret = new ArrayList<Object>(1);
+			ret.add(Nodes.wrap(val));
+			return ret;
+		}
+		if (val instanceof Collection) {
+			final ArrayList<Object> ret = new ArrayList<Object>();
+			for (Object o : (Collection<?>)val) {
+				if (!Nodes.isNode(o)) {
+					// not a node-set, use the string value.
+					return val.toString();
+				}
+				ret.add(Nodes.wrap(o));
+			}
+			return Nodes.sort(ret);
+		}
+		return val.toString();
+	}
+
+}
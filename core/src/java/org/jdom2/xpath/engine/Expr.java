@@ -0,0 +1,290 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A compiled XPath expression (or sub-expression). Expressions are immutable
+ * and may be evaluated concurrently. All evaluation state is held in the
+ * {@link EvalContext} and the method arguments.
+ * <p>
+ * Expressions evaluate to one of the four XPath types:
+ * <ul>
+ * <li>node-set : a List of nodes in document order with no duplicates
+ * <li>boolean : Boolean
+ * <li>number : Double
+ * <li>string : String
+ * </ul>
+ */
+abstract class Expr {
+
+	/**
+	 * Evaluate this expression.
+	 * @param ec The state for the whole evaluation.
+	 * @param node The context node.
+	 * @param position The context position (1-based).
+	 * @param size The context size.
+	 * @return The XPath value of the expression.
+	 */
+	abstract Object evaluate(EvalContext ec, Object node, int position, int size);
+
+	/**
+	 * Does this expression evaluate to a node-set.
+	 * @return true if the result will always be a node-set.
+	 */
+	boolean isNodeSet() {
+		return false;
+	}
+
+	/**
+	 * Evaluate this expression and convert it to a boolean.
+	 * @param ec The state for the whole evaluation.
+	 * @param node The context node.
+	 * @param position The context position (1-based).
+	 * @param size The context size.
+	 * @return The boolean value of the expression.
+	 */
+	boolean evaluateBoolean(EvalContext ec, Object node, int position, int size) {
+		return toBoolean(evaluate(ec, node, position, size));
+	}
+
+	/**
+	 * Evaluate this expression and convert it to a number.
+	 * @param ec The state for the whole evaluation.
+	 * @param node The context node.
+	 * @param position The context position (1-based).
+	 * @param size The context size.
+	 * @return The numeric value of the expression.
+	 */
+	double evaluateNumber(EvalContext ec, Object node, int position, int size) {
+		return toNumber(evaluate(ec, node, position, size));
+	}
+
+	/**
+	 * Evaluate this expression and convert it to a string.
+	 * @param ec The state for the whole evaluation.
+	 * @param node The context node.
+	 * @param position The context position (1-based).
+	 * @param size The context size.
+	 * @return The string value of the expression.
+	 */
+	String evaluateString(EvalContext ec, Object node, int position, int size) {
+		return toXPathString(evaluate(ec, node, position, size));
+	}
+
+	/**
+	 * Evaluate this expression as a node-set.
+	 * @param ec The state for the whole evaluation.
+	 * @param node The context node.
+	 * @param position The context position (1-based).
+	 * @param size The context size.
+	 * @return The node-set value of the expression.
+	 * @throws IllegalStateException if the expression is not a node-set.
+	 */
+	@SuppressWarnings("unchecked")
+	List<Object> evaluateNodeSet(EvalContext ec, Object node, int position, int size) {
+		final Object val = evaluate(ec, node, position, size);
+		if (val instanceof List) {
+			return (List<Object>)val;
+		}
+		throw new IllegalStateException("Expression '" + this 
+				+ "' does not evaluate to a node-set, but " + val);
+	}
+
+	/**
+	 * Evaluate this expression as a node-set, and return the nodes in
+	 * document order. Expressions that can find their nodes lazily override
+	 * this, the default evaluates the whole node-set first.
+	 * @param ec The state for the whole evaluation.
+	 * @param node The context node.
+	 * @param position The context position (1-based).
+	 * @param size The context size.
+	 * @return The nodes of the node-set.
+	 * @throws IllegalStateException if the expression is not a node-set.
+	 */
+	Iterator<Object> iterate(EvalContext ec, Object node, int position, int size) {
+		return evaluateNodeSet(ec, node, position, size).iterator();
+	}
+
+	/* 
+	 * =====================================================================
+	 * XPath type conversions.
+	 * =====================================================================
+	 */
+
+	/**
+	 * The XPath boolean() function.
+	 * @param val the value to convert
+	 * @return the boolean value.
+	 */
+	static boolean toBoolean(final Object val) {
+		if (val instanceof Boolean) {
+			return ((Boolean)val).booleanValue();
+		}
+		if (val instanceof List) {
+			return !((List<?>)val).isEmpty();
+		}
+		if (val instanceof Double) {
+			final double d = ((Double)val).doubleValue();
+			return d != 0.0 && !Double.isNaN(d);
+		}
+		return ((String)val).length() > 0;
+	}
+
+	/**
+	 * The XPath number() function.
+	 * @param val the value to convert
+	 * @return the number value.
+	 */
+	static double toNumber(final Object val) {
+		if (val instanceof Double) {
+			return ((Double)val).doubleValue();
+		}
+		if (val instanceof Boolean) {
+			return ((Boolean)val).booleanValue() ? 1.0 : 0.0;
+		}
+		return stringToNumber(toXPathString(val));
+	}
+
+	/**
+	 * The XPath string() function.
+	 * @param val the value to convert
+	 * @return the string value.
+	 */
+	static String toXPathString(final Object val) {
+		if (val instanceof String) {
+			return (String)val;
+		}
+		if (val instanceof List) {
+			final List<?> nodes = (List<?>)val;
+			return nodes.isEmpty() ? "" : Nodes.stringValue(nodes.get(0));
+		}
+		if (val instanceof Double) {
+			return numberToString(((Double)val).doubleValue());
+		}
+		return ((Boolean)val).booleanValue() ? "true" : "false";
+	}
+
+	/**
+	 * Convert a String to a number following the XPath rules: optional
+	 * whitespace, an optional minus sign, digits with an optional decimal
+	 * point, and optional whitespace. Anything else is NaN.
+	 * @param str the string to convert
+	 * @return the numeric value.
+	 */
+	static double stringToNumber(final String str) {
+		final String s = str.trim();
+		final int len = s.length();
+		int i = 0;
+		if (i < len && s.charAt(i) == '-') {
+			i++;
+		}
+		boolean digits = false;
+		boolean dot = false;
+		for (; i < len; i++) {
+			final char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				return Double.NaN;
+			}
+		}
+		if (!digits) {
+			return Double.NaN;
+		}
+		return Double.parseDouble(s);
+	}
+
+	/**
+	 * Convert a number to a String following the XPath rules: integers have
+	 * no decimal point, and there is never an exponent.
+	 * @param d the number to convert
+	 * @return the string value.
+	 */
+	static String numberToString(final double d) {
+		if (Double.isNaN(d)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(d)) {
+			return d > 0 ? "Infinity" : "-Infinity";
+		}
+		if (d == 0.0) {
+			// includes negative zero.
+			return "0";
+		}
+		if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+			return Long.toString((long)d);
+		}
+		final String s = new BigDecimal(Double.toString(d)).toPlainString();
+		if (s.indexOf('.') < 0) {
+			return s;
+		}
+		int end = s.length();
+		while (s.charAt(end - 1) == '0') {
+			end--;
+		}
+		if (s.charAt(end - 1) == '.') {
+			end--;
+		}
+		return s.substring(0, end);
+	}
+
+}
@@ -0,0 +1,503 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.Parent;
+
+/**
+ * The XPath 1.0 core function library.
+ */
+final class FunctionCall extends Expr {
+
+	private static final int LAST = 0;
+	private static final int POSITION = 1;
+	private static final int COUNT = 2;
+	private static final int ID = 3;
+	private static final int LOCAL_NAME = 4;
+	private static final int NAMESPACE_URI = 5;
+	private static final int NAME = 6;
+	private static final int STRING = 7;
+	private static final int CONCAT = 8;
+	private static final int STARTS_WITH = 9;
+	private static final int CONTAINS = 10;
+	private static final int SUBSTRING_BEFORE = 11;
+	private static final int SUBSTRING_AFTER = 12;
+	private static final int SUBSTRING = 13;
+	private static final int STRING_LENGTH = 14;
+	private static final int NORMALIZE_SPACE = 15;
+	private static final int TRANSLATE = 16;
+	private static final int BOOLEAN = 17;
+	private static final int NOT = 18;
+	private static final int TRUE = 19;
+	private static final int FALSE = 20;
+	private static final int LANG = 21;
+	private static final int NUMBER = 22;
+	private static final int SUM = 23;
+	private static final int FLOOR = 24;
+	private static final int CEILING = 25;
+	private static final int ROUND = 26;
+
+	/** name -> {id, min args, max args} */
+	private static final Map<String, int[]> FUNCTIONS = new HashMap<String, int[]>();
+
+	private static void fn(final String name, final int id, final int min,
+			final int max) {
+		FUNCTIONS.put(name, new int[] {id, min, max});
+	}
+
+	static {
+		fn("last", LAST, 0, 0);
+		fn("position", POSITION, 0, 0);
+		fn("count", COUNT, 1, 1);
+		fn("id", ID, 1, 1);
+		fn("local-name", LOCAL_NAME, 0, 1);
+		fn("namespace-uri", NAMESPACE_URI, 0, 1);
+		fn("name", NAME, 0, 1);
+		fn("string", STRING, 0, 1);
+		fn("concat", CONCAT, 2, Integer.MAX_VALUE);
+		fn("starts-with", STARTS_WITH, 2, 2);
+		fn("contains", CONTAINS, 2, 2);
+		fn("substring-before", SUBSTRING_BEFORE, 2, 2);
+		fn("substring-after", SUBSTRING_AFTER, 2, 2);
+		fn("substring", SUBSTRING, 2, 3);
+		fn("string-length", STRING_LENGTH, 0, 1);
+		fn("normalize-space", NORMALIZE_SPACE, 0, 1);
+		fn("translate", TRANSLATE, 3, 3);
+		fn("boolean", BOOLEAN, 1, 1);
+		fn("not", NOT, 1, 1);
+		fn("true", TRUE, 0, 0);
+		fn("false", FALSE, 0, 0);
+		fn("lang", LANG, 1, 1);
+		fn("number", NUMBER, 0, 1);
+		fn("sum", SUM, 1, 1);
+		fn("floor", FLOOR, 1, 1);
+		fn("ceiling", CEILING, 1, 1);
+		fn("round", ROUND, 1, 1);
+	}
+
+	private final String name;
+	private final int fn;
+	private final Expr[] args;
+
+	/**
+	 * Create a function call.
+	 * @param name the function name.
+	 * @param args the argument expressions.
+	 * @throws IllegalArgumentException if there is no such function, or the
+	 * number of arguments is wrong.
+	 */
+	FunctionCall(final String name, final List<Expr> args) {
+		final int[] def = FUNCTIONS.get(name);
+		if (def == null) {
+			throw new IllegalArgumentException("No such function " + name + "()");
+		}
+		if (args.size() < def[1] || args.size() > def[2]) {
+			throw new IllegalArgumentException("Function " + name 
+					+ "() does not accept " + args.size() + " arguments");
+		}
+		this.name = name;
+		this.fn = def[0];
+		this.args = args.toArray(new Expr[args.size()]);
+	}
+
+	@Override
+	boolean isNodeSet() {
+		return fn == ID;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(name).append('(');
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(args[i]);
+		}
+		return sb.append(')').toString();
+	}
+
+	@Override
+	Object evaluate(EvalContext ec, Object node, int position, int size) {
+		switch (fn) {
+			case LAST:
+			case POSITION:
+			case COUNT:
+			case STRING_LENGTH:
+			case NUMBER:
+			case SUM:
+			case FLOOR:
+			case CEILING:
+			case ROUND:
+				return Double.valueOf(evaluateNumber(ec, node, position, size));
+			case BOOLEAN:
+			case NOT:
+			case TRUE:
+			case FALSE:
+			case LANG:
+			case STARTS_WITH:
+			case CONTAINS:
+				return Boolean.valueOf(evaluateBoolean(ec, node, position, size));
+			case ID:
+				return id(ec, node, position, size);
+			default:
+				return evaluateString(ec, node, position, size);
+		}
+	}
+
+	@Override
+	boolean evaluateBoolean(EvalContext ec, Object node, int position, int size) {
+		switch (fn) {
+			case BOOLEAN:
+				return args[0].evaluateBoolean(ec, node, position, size);
+			case NOT:
+				return !args[0].evaluateBoolean(ec, node, position, size);
+			case TRUE:
+				return true;
+			case FALSE:
+				return false;
+			case LANG:
+				return lang(args[0].evaluateString(ec, node, position, size), node);
+			case STARTS_WITH:
+				return args[0].evaluateString(ec, node, position, size).startsWith(
+						args[1].evaluateString(ec, node, position, size));
+			case CONTAINS:
+				return args[0].evaluateString(ec, node, position, size).contains(
+						args[1].evaluateString(ec, node, position, size));
+			default:
+				return super.evaluateBoolean(ec, node, position, size);
+		}
+	}
+
+	@Override
+	double evaluateNumber(EvalContext ec, Object node, int position, int size) {
+		switch (fn) {
+			case LAST:
+				return size;
+			case POSITION:
+				return position;
+			case COUNT:
+				return args[0].evaluateNodeSet(ec, node, position, size).size();
+			case STRING_LENGTH: {
+				final String s = stringArg(ec, node, position, size);
+				return s.codePointCount(0, s.length());
+			}
+			case NUMBER:
+				if (args.length == 0) {
+					return stringToNumber(Nodes.stringValue(node));
+				}
+				return args[0].evaluateNumber(ec, node, position, size);
+			case SUM: {
+				double sum = 0.0;
+				for (Object n : args[0].evaluateNodeSet(ec, node, position, size)) {
+					sum += stringToNumber(Nodes.stringValue(n));
+				}
+				return sum;
+			}
+			case FLOOR:
+				return Math.floor(args[0].evaluateNumber(ec, node, position, size));
+			case CEILING:
+				return Math.ceil(args[0].evaluateNumber(ec, node, position, size));
+			case ROUND:
+				return round(args[0].evaluateNumber(ec, node, position, size));
+			default:
+				return super.evaluateNumber(ec, node, position, size);
+		}
+	}
+
+	@Override
+	String evaluateString(EvalContext ec, Object node, int position, int size) {
+		switch (fn) {
+			case LOCAL_NAME: {
+				final Object n = nodeArg(ec, node, position, size);
+				return n == null ? "" : Nodes.localName(n);
+			}
+			case NAMESPACE_URI: {
+				final Object n = nodeArg(ec, node, position, size);
+				return n == null ? "" : Nodes.namespaceURI(n);
+			}
+			case NAME: {
+				final Object n = nodeArg(ec, node, position, size);
+				return n == null ? "" : Nodes.qualifiedName(n);
+			}
+			case STRING:
+				return stringArg(ec, node, position, size);
+			case CONCAT: {
+				final StringBuilder sb = new StringBuilder();
+				for (Expr e : args) {
+					sb.append(e.evaluateString(ec, node, position, size));
+				}
+				return sb.toString();
+			}
+			case SUBSTRING_BEFORE: {
+				final String s = args[0].evaluateString(ec, node, position, size);
+				final int pos = s.indexOf(args[1].evaluateString(ec, node, position, size));
+				return pos < 0 ? "" : s.substring(0, pos);
+			}
+			case SUBSTRING_AFTER: {
+				final String s = args[0].evaluateString(ec, node, position, size);
+				final String t = args[1].evaluateString(ec, node, position, size);
+				final int pos = s.indexOf(t);
+				return pos < 0 ? "" : s.substring(pos + t.length());
+			}
+			case SUBSTRING:
+				return substring(ec, node, position, size);
+			case NORMALIZE_SPACE:
+				return normalize(stringArg(ec, node, position, size));
+			case TRANSLATE:
+				return translate(args[0].evaluateString(ec, node, position, size),
+						args[1].evaluateString(ec, node, position, size),
+						args[2].evaluateString(ec, node, position, size));
+			default:
+				return super.evaluateString(ec, node, position, size);
+		}
+	}
+
+	/**
+	 * The string argument, defaulting to the context node.
+	 */
+	private String stringArg(EvalContext ec, Object node, int position, int size) {
+		if (args.length == 0) {
+			return Nodes.stringValue(node);
+		}
+		return args[0].evaluateString(ec, node, position, size);
+	}
+
+	/**
+	 * The first node of the node-set argument, defaulting to the context node.
+	 */
+	private Object nodeArg(EvalContext ec, Object node, int position, int size) {
+		if (args.length == 0) {
+			return node;
+		}
+		final List<Object> nodes = args[0].evaluateNodeSet(ec, node, position, size);
+		return nodes.isEmpty() ? null : nodes.get(0);
+	}
+
+	private static double round(final double d) {
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			return d;
+		}
+		if (d >= -0.5 && d < 0) {
+			return -0.0;
+		}
+		return Math.floor(d + 0.5);
+	}
+
+	private String substring(EvalContext ec, Object node, int position, int size) {
+		final String s = args[0].evaluateString(ec, node, position, size);
+		final double start = round(args[1].evaluateNumber(ec, node, position, size));
+		final double end = args.length == 2 ? Double.POSITIVE_INFINITY 
+				: start + round(args[2].evaluateNumber(ec, node, position, size));
+		if (!(start < end)) {
+			// handles NaN too.
+			return "";
+		}
+		final StringBuilder sb = new StringBuilder();
+		int p = 1;
+		for (int i = 0; i < s.length(); p++) {
+			final int cp = s.codePointAt(i);
+			if (p >= start && p < end) {
+				sb.appendCodePoint(cp);
+			}
+			i += Character.charCount(cp);
+		}
+		return sb.toString();
+	}
+
+	private static boolean isWhite(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static String normalize(final String s) {
+		final StringBuilder sb = new StringBuilder(s.length());
+		boolean space = false;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (isWhite(c)) {
+				space = sb.length() > 0;
+			} else {
+				if (space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String translate(final String s, final String from,
+			final String to) {
+		final int[] tocp = new int[to.codePointCount(0, to.length())];
+		for (int i = 0, j = 0; i < to.length(); j++) {
+			tocp[j] = to.codePointAt(i);
+			i += Character.charCount(tocp[j]);
+		}
+		// code point -> replacement (-1 means remove)
+		final Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+		for (int i = 0, j = 0; i < from.length(); j++) {
+			final int cp = from.codePointAt(i);
+			final Integer key = Integer.valueOf(cp);
+			if (!map.containsKey(key)) {
+				map.put(key, Integer.valueOf(j < tocp.length ? tocp[j] : -1));
+			}
+			i += Character.charCount(cp);
+		}
+		final StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); ) {
+			final int cp = s.codePointAt(i);
+			final Integer rep = map.get(Integer.valueOf(cp));
+			if (rep == null) {
+				sb.appendCodePoint(cp);
+			} else if (rep.intValue() >= 0) {
+				sb.appendCodePoint(rep.intValue());
+			}
+			i += Character.charCount(cp);
+		}
+		return sb.toString();
+	}
+
+	private static boolean lang(final String lang, final Object node) {
+		Object n = node;
+		while (n != null && !(n instanceof Element)) {
+			n = Nodes.getParent(n);
+		}
+		while (n instanceof Element) {
+			final String val = ((Element)n).getAttributeValue("lang",
+					Namespace.XML_NAMESPACE);
+			if (val != null) {
+				if (val.equalsIgnoreCase(lang)) {
+					return true;
+				}
+				return val.length() > lang.length() 
+						&& val.charAt(lang.length()) == '-'
+						&& val.substring(0, lang.length()).equalsIgnoreCase(lang);
+			}
+			n = ((Element)n).getParent();
+		}
+		return false;
+	}
+
+	private List<Object> id(EvalContext ec, Object node, int position, int size) {
+		final Object val = args[0].evaluate(ec, node, position, size);
+		final Set<String> ids = new HashSet<String>();
+		if (val instanceof List) {
+			for (Object n : (List<?>)val) {
+				addTokens(Nodes.stringValue(n), ids);
+			}
+		} else {
+			addTokens(toXPathString(val), ids);
+		}
+		final List<Object> ret = new ArrayList<Object>();
+		final Object root = Nodes.getRoot(node);
+		if (!ids.isEmpty() && root instanceof Parent) {
+			if (root instanceof Element) {
+				addIDElement((Element)root, ids, ret);
+			}
+			findIDs((Parent)root, ids, ret);
+		}
+		return ret;
+	}
+
+	private static void addTokens(final String s, final Set<String> ids) {
+		for (String tok : normalize(s).split(" ")) {
+			if (tok.length() > 0) {
+				ids.add(tok);
+			}
+		}
+	}
+
+	private static void findIDs(final Parent parent, final Set<String> ids,
+			final List<Object> out) {
+		final int sz = parent.getContentSize();
+		for (int i = 0; i < sz; i++) {
+			final Content c = parent.getContent(i);
+			if (c instanceof Element) {
+				addIDElement((Element)c, ids, out);
+				findIDs((Element)c, ids, out);
+			}
+		}
+	}
+
+	private static void addIDElement(final Element emt, final Set<String> ids,
+			final List<Object> out) {
+		if (!emt.hasAttributes()) {
+			return;
+		}
+		for (Attribute a : emt.getAttributes()) {
+			if (a.getAttributeType() == AttributeType.ID 
+					&& ids.remove(a.getValue())) {
+				// each ID is only used once, in document order.
+				out.add(emt);
+				return;
+			}
+		}
+	}
+
+}
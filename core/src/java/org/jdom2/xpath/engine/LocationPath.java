@@ -0,0 +1,724 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Parent;
+import org.jdom2.xpath.engine.NodeTest.NameTest;
+
+/**
+ * A location path, or a filter expression followed by a relative location
+ * path. The steps are evaluated directly over the JDOM content.
+ * <p>
+ * The nodes from each step are only re-sorted in to document order when they
+ * could be out of order: a single context node, or child, attribute,
+ * namespace or descendant steps from context nodes that do not nest inside
+ * each other, can never produce out-of-order or duplicate nodes.
+ * <p>
+ * Absolute paths that start by selecting descendant Elements by name, or by
+ * an attribute value, are answered from the {@link XPathIndex} when the
+ * Document has one. Paths of the common child/descendant/attribute forms are
+ * evaluated by a compiled {@link PathPlan} instead of step by step.
+ */
+final class LocationPath extends Expr {
+
+	/**
+	 * A single location step: axis::test[predicate]...
+	 */
+	static final class Step {
+		final Axis axis;
+		final NodeTest test;
+		final Expr[] predicates;
+
+		Step(final Axis axis, final NodeTest test, final List<Expr> predicates) {
+			this.axis = axis;
+			this.test = test;
+			this.predicates = new Expr[predicates.size()];
+			for (int i = 0; i < this.predicates.length; i++) {
+				this.predicates[i] = optimizePredicate(predicates.get(i));
+			}
+		}
+
+		/**
+		 * Add the nodes selected by this step from the given context node, in
+		 * axis order.
+		 */
+		void select(final EvalContext ec, final Object node, final List<Object> out) {
+			select(ec, node, out, null);
+		}
+
+		/**
+		 * Add the nodes selected by this step from the given context node, in
+		 * axis order, counting the work done in the profile counters.
+		 */
+		void select(final EvalContext ec, final Object node, 
+				final List<Object> out, final Profiler.StepStats stats) {
+			final NodeTest t = stats == null ? test : stats.test;
+			if (predicates.length == 0) {
+				Nodes.axis(axis, node, t, out);
+				return;
+			}
+			List<Object> nodes = new ArrayList<Object>();
+			Nodes.axis(axis, node, t, nodes);
+			for (Expr p : predicates) {
+				if (nodes.isEmpty()) {
+					return;
+				}
+				if (stats != null) {
+					stats.predicates += p instanceof PositionPredicate 
+							? 1 : nodes.size();
+				}
+				nodes = filter(ec, nodes, p);
+			}
+			out.addAll(nodes);
+		}
+
+		/**
+		 * Iterate the nodes selected by this step from the given context
+		 * node, in document order. Forward axes whose predicates are all
+		 * attribute tests or literal positions are traversed lazily.
+		 */
+		Iterator<Object> iterate(final EvalContext ec, final Object node) {
+			Iterator<Object> it = null;
+			switch (axis) {
+				case CHILD:
+					if (node instanceof Parent) {
+						it = new NodeIterator.Children((Parent)node, 0, test);
+					}
+					break;
+				case DESCENDANT:
+				case DESCENDANT_OR_SELF:
+					if (node instanceof Parent) {
+						it = new NodeIterator.Descendants((Parent)node,
+								axis == Axis.DESCENDANT_OR_SELF, test);
+					}
+					break;
+				case FOLLOWING_SIBLING:
+					if (node instanceof Content 
+							&& ((Content)node).getParent() != null) {
+						final Parent p = ((Content)node).getParent();
+						it = new NodeIterator.Children(p, 
+								p.indexOf((Content)node) + 1, test);
+					}
+					break;
+				default:
+					break;
+			}
+			for (int i = 0; it != null && i < predicates.length; i++) {
+				if (predicates[i] instanceof AttributePredicate) {
+					it = new NodeIterator.Filtered(ec, it, predicates[i]);
+				} else if (predicates[i] instanceof PositionPredicate) {
+					it = new NodeIterator.Nth(it, 
+							((PositionPredicate)predicates[i]).position);
+				} else {
+					it = null;
+				}
+			}
+			if (it != null) {
+				return it;
+			}
+			final List<Object> nodes = new ArrayList<Object>();
+			select(ec, node, nodes);
+			if (axis.isReverse() && nodes.size() > 1) {
+				Collections.reverse(nodes);
+			}
+			return nodes.iterator();
+		}
+
+		/**
+		 * A key that is the same for steps that select the same nodes
+		 * regardless of the expression they come from (namespace prefixes
+		 * and variables can differ between expressions).
+		 * @return the key, or null if the step cannot be shared.
+		 */
+		String key() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append(axis.getAxisName()).append("::");
+			if (test instanceof NameTest) {
+				final NameTest nt = (NameTest)test;
+				sb.append('{').append(nt.uri).append('}')
+					.append(nt.name == null ? "*" : nt.name);
+			} else {
+				sb.append(test);
+			}
+			for (Expr p : predicates) {
+				if (p instanceof PositionPredicate) {
+					sb.append('[').append(((PositionPredicate)p).position)
+						.append(']');
+				} else if (p instanceof AttributePredicate) {
+					final AttributePredicate ap = (AttributePredicate)p;
+					sb.append("[@{").append(ap.att.uri).append('}')
+						.append(ap.att.name);
+					if (ap.value != null) {
+						sb.append('=').append(ap.value.length()).append(':')
+							.append(ap.value);
+					}
+					sb.append(']');
+				} else {
+					return null;
+				}
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append(axis.getAxisName()).append("::").append(test);
+			for (Expr p : predicates) {
+				sb.append('[').append(p).append(']');
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * A positional predicate with a literal position: [3]
+	 */
+	static final class PositionPredicate extends Expr {
+		final int position;
+		PositionPredicate(final int position) {
+			this.position = position;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int pos, int size) {
+			return Boolean.valueOf(pos == position);
+		}
+		@Override
+		public String toString() {
+			return Integer.toString(position);
+		}
+	}
+
+	/**
+	 * An attribute existence, or attribute value equality predicate:
+	 * [@name] or [@name = 'value']. The attribute is read directly from the
+	 * Element.
+	 */
+	static final class AttributePredicate extends Expr {
+		final NameTest att;
+		final String value;
+		AttributePredicate(final NameTest att, final String value) {
+			this.att = att;
+			this.value = value;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int pos, int size) {
+			return Boolean.valueOf(evaluateBoolean(ec, node, pos, size));
+		}
+		@Override
+		boolean evaluateBoolean(EvalContext ec, Object node, int pos, int size) {
+			if (!(node instanceof Element) || !((Element)node).hasAttributes()) {
+				return false;
+			}
+			for (Attribute a : ((Element)node).getAttributes()) {
+				if (att.name.equals(a.getName()) 
+						&& att.uri.equals(a.getNamespaceURI())) {
+					return value == null || value.equals(a.getValue());
+				}
+			}
+			return false;
+		}
+		@Override
+		public String toString() {
+			return value == null ? "@" + att : "@" + att + " = '" + value + "'";
+		}
+	}
+
+	/**
+	 * Replace common predicates with faster equivalents.
+	 */
+	private static Expr optimizePredicate(final Expr pred) {
+		if (pred instanceof Operators.NumberLiteral) {
+			final double d = ((Operators.NumberLiteral)pred).value.doubleValue();
+			// a position that can never match is 0.
+			return new PositionPredicate(d == (int)d ? (int)d : 0);
+		}
+		final NameTest att = attributeName(pred);
+		if (att != null) {
+			return new AttributePredicate(att, null);
+		}
+		if (pred instanceof Operators.Compare 
+				&& ((Operators.Compare)pred).op == Operators.EQ) {
+			final Operators.Compare cmp = (Operators.Compare)pred;
+			NameTest name = attributeName(cmp.left);
+			if (name != null && cmp.right instanceof Operators.Literal) {
+				return new AttributePredicate(name, 
+						((Operators.Literal)cmp.right).value);
+			}
+			name = attributeName(cmp.right);
+			if (name != null && cmp.left instanceof Operators.Literal) {
+				return new AttributePredicate(name, 
+						((Operators.Literal)cmp.left).value);
+			}
+		}
+		return pred;
+	}
+
+	/**
+	 * Is the predicate a test of the attributes of the context Element only.
+	 * Such predicates can be evaluated as soon as the Element's start tag has
+	 * been parsed.
+	 * @param pred The predicate to check
+	 * @return true if it only tests an attribute.
+	 */
+	static boolean isAttributePredicate(final Expr pred) {
+		return pred instanceof AttributePredicate;
+	}
+
+	/**
+	 * If the expression is a simple @name expression return the name.
+	 */
+	private static NameTest attributeName(final Expr expr) {
+		if (!(expr instanceof LocationPath)) {
+			return null;
+		}
+		final LocationPath lp = (LocationPath)expr;
+		if (lp.filter != null || lp.absolute || lp.steps.length != 1) {
+			return null;
+		}
+		final Step step = lp.steps[0];
+		if (step.axis != Axis.ATTRIBUTE || step.predicates.length != 0
+				|| !(step.test instanceof NameTest)
+				|| ((NameTest)step.test).name == null) {
+			return null;
+		}
+		return (NameTest)step.test;
+	}
+
+	/**
+	 * Apply a predicate to nodes, the position of each node being its index
+	 * in the list.
+	 */
+	static List<Object> filter(final EvalContext ec, final List<Object> nodes, 
+			final Expr pred) {
+		final int size = nodes.size();
+		if (pred instanceof PositionPredicate) {
+			final int pos = ((PositionPredicate)pred).position;
+			if (pos < 1 || pos > size) {
+				return Collections.emptyList();
+			}
+			final List<Object> ret = new ArrayList<Object>(1);
+			ret.add(nodes.get(pos - 1));
+			return ret;
+		}
+		final List<Object> ret = new ArrayList<Object>(size);
+		for (int i = 0; i < size; i++) {
+			final Object node = nodes.get(i);
+			final Object val = pred.evaluate(ec, node, i + 1, size);
+			if (val instanceof Double) {
+				if (((Double)val).doubleValue() == i + 1) {
+					ret.add(node);
+				}
+			} else if (toBoolean(val)) {
+				ret.add(node);
+			}
+		}
+		return ret;
+	}
+
+	private final Expr filter;
+	private final Expr[] filterPredicates;
+	private final boolean absolute;
+	private final Step[] steps;
+	/** true if the nodes can be found lazily, in document order */
+	private final boolean streamable;
+	/** the number of leading steps an XPathIndex can answer */
+	private final int indexSteps;
+	/** the compiled form of the steps, or null */
+	private final PathPlan plan;
+
+	/**
+	 * Create a location path, or a filtered path expression.
+	 * @param filter The filter expression to start with (may be null).
+	 * @param filterPredicates The predicates applied to the filter expression.
+	 * @param absolute true if the location path starts at the root.
+	 * @param steps The location steps.
+	 */
+	LocationPath(final Expr filter, final List<Expr> filterPredicates, 
+			final boolean absolute, final List<Step> steps) {
+		this.filter = filter;
+		this.filterPredicates = new Expr[filterPredicates.size()];
+		for (int i = 0; i < this.filterPredicates.length; i++) {
+			this.filterPredicates[i] = optimizePredicate(filterPredicates.get(i));
+		}
+		this.absolute = absolute;
+		this.steps = steps.toArray(new Step[steps.size()]);
+		this.streamable = filter == null && isStreamable(this.steps);
+		this.indexSteps = filter == null && absolute 
+				? indexSteps(this.steps) : 0;
+		this.plan = filter == null ? PathPlan.compile(this.steps) : null;
+	}
+
+	/**
+	 * Count the leading steps that select the same Elements as an
+	 * XPathIndex lookup: descendant::name[...], or
+	 * descendant-or-self::node()/child::name[@a='v'] (the '//name' form).
+	 * The Elements must be selected by name, or by an attribute value in
+	 * the first predicate.
+	 * @return 0 if no index can be used.
+	 */
+	private static int indexSteps(final Step[] steps) {
+		if (steps.length == 0) {
+			return 0;
+		}
+		final Step first = steps[0];
+		if ((first.axis == Axis.DESCENDANT 
+				|| first.axis == Axis.DESCENDANT_OR_SELF)
+				&& isIndexable(first)) {
+			// the Document itself is never an Element.
+			return 1;
+		}
+		if (steps.length < 2 || first.axis != Axis.DESCENDANT_OR_SELF
+				|| first.test != NodeTest.ANYNODE 
+				|| first.predicates.length != 0
+				|| steps[1].axis != Axis.CHILD || !isIndexable(steps[1])) {
+			return 0;
+		}
+		// positions are per-parent, only attribute tests give the same
+		// result on the whole descendant list.
+		for (Expr p : steps[1].predicates) {
+			if (!(p instanceof AttributePredicate)) {
+				return 0;
+			}
+		}
+		return 2;
+	}
+
+	private static boolean isIndexable(final Step step) {
+		if (step.test instanceof NameTest && ((NameTest)step.test).name != null) {
+			return true;
+		}
+		return (step.test instanceof NameTest || step.test == NodeTest.ANYNAME)
+				&& step.predicates.length > 0 
+				&& step.predicates[0] instanceof AttributePredicate
+				&& ((AttributePredicate)step.predicates[0]).value != null;
+	}
+
+	/**
+	 * Select the nodes of the first {@link #indexSteps} steps using the
+	 * Document's XPathIndex.
+	 * @return the selected nodes in document order, or null if there is no
+	 *         usable index.
+	 */
+	private List<Object> indexed(final EvalContext ec, final Document doc) {
+		final XPathIndex index = XPathIndex.getIndex(doc);
+		if (index == null) {
+			return null;
+		}
+		final Step step = steps[indexSteps - 1];
+		int p = 0;
+		List<Object> nodes = null;
+		if (step.predicates.length > 0 
+				&& step.predicates[0] instanceof AttributePredicate) {
+			final AttributePredicate ap = (AttributePredicate)step.predicates[0];
+			final List<Element> found = ap.value == null ? null :
+				index.getElementsByAttribute(ap.att.uri, ap.att.name, ap.value);
+			if (found != null) {
+				nodes = new ArrayList<Object>(found.size());
+				for (Element e : found) {
+					if (step.test.matches(e, Nodes.ELEMENT)) {
+						nodes.add(e);
+					}
+				}
+				p = 1;
+			}
+		}
+		if (nodes == null) {
+			if (!(step.test instanceof NameTest) 
+					|| ((NameTest)step.test).name == null) {
+				// the attribute is not indexed.
+				return null;
+			}
+			final NameTest nt = (NameTest)step.test;
+			nodes = new ArrayList<Object>(index.getElements(nt.uri, nt.name));
+		}
+		for (; p < step.predicates.length && !nodes.isEmpty(); p++) {
+			nodes = filter(ec, nodes, step.predicates[p]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * The steps can be streamed if, starting from a single node, no step
+	 * ever needs its nodes re-sorted. This uses the same rules as
+	 * {@link #evaluate(EvalContext, Object, int, int)}.
+	 */
+	private static boolean isStreamable(final Step[] steps) {
+		if (steps.length == 0) {
+			return false;
+		}
+		boolean flat = steps[0].axis.isFlat();
+		for (int i = 1; i < steps.length; i++) {
+			switch (steps[i].axis) {
+				case CHILD:
+				case ATTRIBUTE:
+				case NAMESPACE:
+				case SELF:
+					if (!flat) {
+						return false;
+					}
+					break;
+				case DESCENDANT:
+				case DESCENDANT_OR_SELF:
+					if (!flat) {
+						return false;
+					}
+					flat = false;
+					break;
+				default:
+					return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	Iterator<Object> iterate(EvalContext ec, Object node, int position, int size) {
+		if (!streamable) {
+			return super.iterate(ec, node, position, size);
+		}
+		final Object start = absolute ? Nodes.getRoot(node) : node;
+		if (indexSteps == steps.length && start instanceof Document) {
+			final List<Object> nodes = indexed(ec, (Document)start);
+			if (nodes != null) {
+				return nodes.iterator();
+			}
+		}
+		Iterator<Object> it = steps[0].iterate(ec, start);
+		for (int i = 1; i < steps.length; i++) {
+			it = new NodeIterator.Steps(ec, it, steps[i]);
+		}
+		return it;
+	}
+
+	@Override
+	boolean isNodeSet() {
+		return true;
+	}
+
+	@Override
+	Object evaluate(EvalContext ec, Object node, int position, int size) {
+		final Profiler profiler = ec.getProfiler();
+		List<Object> current = null;
+		int first = 0;
+		if (filter != null) {
+			current = filter.evaluateNodeSet(ec, node, position, size);
+			for (Expr p : filterPredicates) {
+				current = filter(ec, current, p);
+			}
+		} else {
+			final Object start = absolute ? Nodes.getRoot(node) : node;
+			if (indexSteps > 0 && start instanceof Document) {
+				if (profiler == null) {
+					current = indexed(ec, (Document)start);
+				} else {
+					final long time = System.nanoTime();
+					current = indexed(ec, (Document)start);
+					if (current != null) {
+						final Profiler.StepStats stats = 
+								profiler.get(this, steps[indexSteps - 1], true);
+						stats.evaluations++;
+						stats.contexts++;
+						stats.results += current.size();
+						stats.elapsed += System.nanoTime() - time;
+					}
+				}
+			}
+			if (current != null) {
+				first = indexSteps;
+			} else if (plan != null && profiler == null) {
+				// profiles record the individual steps instead.
+				return plan.select(start);
+			} else {
+				current = new ArrayList<Object>(1);
+				current.add(start);
+			}
+		}
+		// true when no node in current is an ancestor of another.
+		boolean flat = first == 0 && current.size() <= 1;
+		for (int s = first; s < steps.length; s++) {
+			final Step step = steps[s];
+			if (current.isEmpty()) {
+				return current;
+			}
+			final Profiler.StepStats stats = 
+					profiler == null ? null : profiler.get(this, step, false);
+			final long time = stats == null ? 0L : System.nanoTime();
+			final List<Object> next = new ArrayList<Object>();
+			for (Object n : current) {
+				step.select(ec, n, next, stats);
+			}
+			final int inputs = current.size();
+			current = order(step.axis, next, inputs, flat);
+			flat = isFlat(step.axis, inputs, flat);
+			if (stats != null) {
+				stats.evaluations++;
+				stats.contexts += inputs;
+				stats.results += current.size();
+				stats.elapsed += System.nanoTime() - time;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Put the nodes selected by one step in to document order.
+	 * @param axis The axis of the step.
+	 * @param next The selected nodes, in axis order for each context node.
+	 * @param inputs The number of context nodes.
+	 * @param flat true if no context node is an ancestor of another.
+	 * @return The nodes in document order, without duplicates.
+	 */
+	static List<Object> order(final Axis axis, final List<Object> next,
+			final int inputs, final boolean flat) {
+		if (inputs == 1) {
+			if (axis.isReverse() && next.size() > 1) {
+				Collections.reverse(next);
+			}
+			return next;
+		}
+		switch (axis) {
+			case CHILD:
+			case ATTRIBUTE:
+			case NAMESPACE:
+			case SELF:
+			case DESCENDANT:
+			case DESCENDANT_OR_SELF:
+				return flat ? next : Nodes.sort(next);
+			default:
+				return Nodes.sort(next);
+		}
+	}
+
+	/**
+	 * Determine whether the nodes selected by a step can nest.
+	 * @param axis The axis of the step.
+	 * @param inputs The number of context nodes.
+	 * @param flat true if no context node is an ancestor of another.
+	 * @return true if no selected node is an ancestor of another.
+	 */
+	static boolean isFlat(final Axis axis, final int inputs, final boolean flat) {
+		if (inputs == 1) {
+			return axis.isFlat();
+		}
+		switch (axis) {
+			case CHILD:
+			case ATTRIBUTE:
+			case NAMESPACE:
+			case SELF:
+				return flat;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * The filter expression this path starts from.
+	 * @return the filter, or null for a plain location path.
+	 */
+	Expr getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Is this an absolute location path.
+	 * @return true if the path starts at the root.
+	 */
+	boolean isAbsolute() {
+		return absolute;
+	}
+
+	/**
+	 * The location steps.
+	 * @return the steps (the array is shared, do not modify it).
+	 */
+	Step[] getSteps() {
+		return steps;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		if (filter != null) {
+			sb.append(filter);
+			for (Expr p : filterPredicates) {
+				sb.append('[').append(p).append(']');
+			}
+		} else if (absolute) {
+			sb.append('/');
+		}
+		for (int i = 0; i < steps.length; i++) {
+			if (i > 0 || filter != null) {
+				sb.append('/');
+			}
+			sb.append(steps[i]);
+		}
+		if (filter == null && !absolute && steps.length == 0) {
+			sb.append('.');
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,254 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filter;
+import org.jdom2.xpath.XPathDiagnostic;
+import org.jdom2.xpath.util.AbstractXPathCompiled;
+import org.jdom2.xpath.util.XPathDiagnosticImpl;
+
+/**
+ * An XPathExpression compiled by the native engine. The compiled form is
+ * immutable, and all evaluation state is held in an {@link EvalContext}, so
+ * the expression can be evaluated concurrently from many threads (provided
+ * the variables are not changed on the expression itself at the same time).
+ * 
+ * @param <T> the type of the coerced results.
+ */
+class NativeXPathCompiled<T> extends AbstractXPathCompiled<T> {
+
+	private final Expr expr;
+
+	/**
+	 * Compile the expression.
+	 * @param query The XPath query to compile.
+	 * @param filter The coercion filter.
+	 * @param variables The variable map
+	 * @param namespaces The scope namespaces.
+	 * @throws IllegalArgumentException if the query is not valid XPath 1.0.
+	 */
+	NativeXPathCompiled(final String query, final Filter<T> filter,
+			final Map<String, Object> variables, final Namespace[] namespaces) {
+		super(query, filter, variables, namespaces);
+		expr = new XPathParser(query, this).parse();
+	}
+
+	/**
+	 * The compiled form of this expression.
+	 * @return the compiled Expr.
+	 */
+	Expr getExpr() {
+		return expr;
+	}
+
+	/**
+	 * Get the value of a variable for one evaluation.
+	 * @param name The variable local name.
+	 * @param uri The variable namespace.
+	 * @param variables The evaluation variables (may be null).
+	 * @return The variable value.
+	 */
+	Object getVariableValue(final String name, final Namespace uri,
+			final Map<String, Map<String, Object>> variables) {
+		return getVariable(name, uri, variables);
+	}
+
+	/**
+	 * Evaluate the expression, and unwrap the result.
+	 */
+	private List<?> evaluateNative(final Object context, 
+			final Map<String, Map<String, Object>> variables) {
+		if (context == null) {
+			throw new NullPointerException("Null context");
+		}
+		return evaluateNative(new EvalContext(this, variables), context);
+	}
+
+	/**
+	 * Evaluate the expression with the given evaluation state.
+	 */
+	private List<?> evaluateNative(final EvalContext ec, final Object context) {
+		if (context instanceof List) {
+			// evaluate against each node, and merge the node-set results.
+			final List<?> nodes = (List<?>)context;
+			if (nodes.isEmpty()) {
+				return Collections.emptyList();
+			}
+			if (nodes.size() > 1 && expr.isNodeSet()) {
+				final List<Object> all = new ArrayList<Object>();
+				final int size = nodes.size();
+				for (int i = 0; i < size; i++) {
+					all.addAll(expr.evaluateNodeSet(ec, 
+							checkNode(nodes.get(i)), i + 1, size));
+				}
+				return unwrap(Nodes.sort(all));
+			}
+			return unwrap(expr.evaluate(ec, checkNode(nodes.get(0)),
+					1, nodes.size()));
+		}
+		return unwrap(expr.evaluate(ec, checkNode(context), 1, 1));
+	}
+
+	private static Object checkNode(final Object context) {
+		if (!Nodes.isNode(context)) {
+			throw new IllegalArgumentException(
+					"Unable to evaluate XPath against context " + context);
+		}
+		return Nodes.wrap(context);
+	}
+
+	private static List<?> unwrap(final Object result) {
+		if (!(result instanceof List)) {
+			return Collections.singletonList(result);
+		}
+		final List<?> nodes = (List<?>)result;
+		final ArrayList<Object> ret = new ArrayList<Object>(nodes.size());
+		for (Object o : nodes) {
+			ret.add(Nodes.unwrap(o));
+		}
+		return ret;
+	}
+
+	@Override
+	protected List<?> evaluateRawAll(final Object context) {
+		return evaluateNative(context, null);
+	}
+
+	@Override
+	protected Object evaluateRawFirst(final Object context) {
+		return evaluateRawFirst(context, null);
+	}
+
+	@Override
+	protected List<?> evaluateRawAll(final Object context,
+			final Map<String, Map<String, Object>> variables) {
+		return evaluateNative(context, variables);
+	}
+
+	/**
+	 * All the contexts share one evaluation state.
+	 */
+	@Override
+	protected List<List<?>> evaluateRawEach(final List<?> contexts) {
+		final EvalContext ec = new EvalContext(this, null);
+		final List<List<?>> ret = new ArrayList<List<?>>(contexts.size());
+		for (Object context : contexts) {
+			ret.add(evaluateNative(ec, context));
+		}
+		return ret;
+	}
+
+	@Override
+	protected boolean isConcurrent() {
+		return true;
+	}
+
+	@Override
+	protected Object evaluateRawFirst(final Object context,
+			final Map<String, Map<String, Object>> variables) {
+		// stops searching once the first node is found, where possible.
+		final Iterator<?> it = evaluateRawIterator(context, variables);
+		return it.hasNext() ? it.next() : null;
+	}
+
+	@Override
+	protected Iterator<?> evaluateRawIterator(final Object context,
+			final Map<String, Map<String, Object>> variables) {
+		if (context instanceof List || !expr.isNodeSet()) {
+			return evaluateNative(context, variables).iterator();
+		}
+		if (context == null) {
+			throw new NullPointerException("Null context");
+		}
+		return new NodeIterator.Unwrapped(expr.iterate(
+				new EvalContext(this, variables), checkNode(context), 1, 1));
+	}
+
+	/**
+	 * Profiles record every location step. The steps are evaluated one at a
+	 * time, even where a compiled plan or lazy iteration would normally be
+	 * used, and all the results are found even for a first-only diagnosis.
+	 */
+	@Override
+	protected XPathDiagnostic<T> diagnoseProfiled(final Object context,
+			final boolean firstonly) {
+		if (context == null) {
+			throw new NullPointerException("Null context");
+		}
+		final Profiler profiler = new Profiler();
+		final long start = System.nanoTime();
+		final List<?> all = evaluateNative(
+				new EvalContext(this, null, profiler), context);
+		final long elapsed = System.nanoTime() - start;
+		final List<?> result = firstonly ? Collections.singletonList(
+				all.isEmpty() ? null : all.get(0)) : all;
+		return new XPathDiagnosticImpl<T>(context, this, result, firstonly,
+				profiler.toProfile(elapsed, all.size()));
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " compiled as " + expr;
+	}
+
+}
@@ -0,0 +1,117 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.Map;
+
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filter;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathExpression2;
+import org.jdom2.xpath.XPathFactory;
+
+/**
+ * This Factory creates XPath instances using the native JDOM XPath 1.0
+ * engine, which needs no third-party library.
+ * <p>
+ * Expressions are compiled in to a tree of location steps and predicates that
+ * is evaluated directly against the JDOM content (Parent content lists and
+ * Element attributes). Child and descendant name tests compare the Element
+ * name and namespace URI directly, and attribute predicates like
+ * <code>[@id='value']</code> and positional predicates like <code>[2]</code>
+ * are compiled to specialised tests. Nodes are only re-sorted in to document
+ * order when a step could actually produce them out of order. Location paths
+ * that never need re-sorting are traversed lazily by
+ * {@link XPathExpression2#evaluateIterator(Object)} and
+ * {@link XPathExpression#evaluateFirst(Object)}, so the search stops as soon
+ * as no more results are wanted. Documents that are queried often can have
+ * an {@link XPathIndex} installed, which answers <code>//name</code> and
+ * <code>//name[@att='value']</code> steps without traversing the Document.
+ * <p>
+ * The full XPath 1.0 core function library is supported, but there are no
+ * extension functions. The compiled expressions are thread-safe: they may be
+ * evaluated concurrently, and the
+ * {@link XPathExpression2#evaluate(Object, Map)} methods supply variable
+ * values for a single evaluation without locking.
+ * <p>
+ * Syntax errors, undeclared namespace prefixes, unknown functions and the
+ * wrong number of function arguments are reported as
+ * IllegalArgumentException at compile time. Undeclared variables, and
+ * expressions that need a node-set but get something else, are reported as
+ * IllegalStateException when the expression is evaluated.
+ * <p>
+ * To use this engine by default, set the system property
+ * <code>org.jdom2.xpath.XPathFactory</code> to
+ * <code>org.jdom2.xpath.engine.NativeXPathFactory</code>.
+ * 
+ * @since JDOM 2.1
+ */
+public class NativeXPathFactory extends XPathFactory {
+
+	/**
+	 * The public default constructor used by the XPathFactory.
+	 */
+	public NativeXPathFactory() {
+		// do nothing.
+	}
+
+	@Override
+	public <T> XPathExpression<T> compile(String expression, Filter<T> filter,
+			Map<String, Object> variables, Namespace... namespaces) {
+		return new NativeXPathCompiled<T>(expression, filter, variables, namespaces);
+	}
+
+}
@@ -0,0 +1,283 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Parent;
+
+/**
+ * Lazily produce nodes. Subclasses implement {@link #fetch()} which finds
+ * the next node, and only do as much work as is needed to find it.
+ */
+abstract class NodeIterator implements Iterator<Object> {
+
+	private Object next = null;
+	private boolean done = false;
+
+	/**
+	 * Find the next node.
+	 * @return the next node, or null if there are no more.
+	 */
+	abstract Object fetch();
+
+	@Override
+	public final boolean hasNext() {
+		if (next == null && !done) {
+			next = fetch();
+			done = next == null;
+		}
+		return next != null;
+	}
+
+	@Override
+	public final Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final Object ret = next;
+		next = null;
+		return ret;
+	}
+
+	@Override
+	public final void remove() {
+		throw new UnsupportedOperationException("XPath results cannot be removed");
+	}
+
+	/**
+	 * The children of a Parent from a given index.
+	 */
+	static final class Children extends NodeIterator {
+		private final Parent parent;
+		private final NodeTest test;
+		private int index;
+
+		Children(final Parent parent, final int start, final NodeTest test) {
+			this.parent = parent;
+			this.index = start;
+			this.test = test;
+		}
+
+		@Override
+		Object fetch() {
+			while (index < parent.getContentSize()) {
+				final Content c = parent.getContent(index++);
+				if (test.matches(c, Nodes.ELEMENT)) {
+					return c;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * The descendants of a Parent in document order, optionally preceded by
+	 * the Parent itself. The traversal keeps its own stack of positions.
+	 */
+	static final class Descendants extends NodeIterator {
+		private final NodeTest test;
+		private Object self;
+		private Parent[] parents = new Parent[16];
+		private int[] indexes = new int[16];
+		private int depth = 0;
+
+		Descendants(final Parent parent, final boolean orSelf, 
+				final NodeTest test) {
+			this.test = test;
+			this.self = orSelf ? parent : null;
+			parents[0] = parent;
+		}
+
+		@Override
+		Object fetch() {
+			if (self != null) {
+				final Object s = self;
+				self = null;
+				if (test.matches(s, Nodes.ELEMENT)) {
+					return s;
+				}
+			}
+			while (depth >= 0) {
+				final Parent p = parents[depth];
+				if (indexes[depth] >= p.getContentSize()) {
+					parents[depth--] = null;
+					continue;
+				}
+				final Content c = p.getContent(indexes[depth]++);
+				if (c instanceof Element && ((Element)c).getContentSize() > 0) {
+					if (++depth == parents.length) {
+						final Parent[] np = new Parent[depth * 2];
+						System.arraycopy(parents, 0, np, 0, depth);
+						parents = np;
+						final int[] ni = new int[depth * 2];
+						System.arraycopy(indexes, 0, ni, 0, depth);
+						indexes = ni;
+					}
+					parents[depth] = (Element)c;
+					indexes[depth] = 0;
+				}
+				if (test.matches(c, Nodes.ELEMENT)) {
+					return c;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Apply a location step to each node from a source iterator, and
+	 * concatenate the results.
+	 */
+	static final class Steps extends NodeIterator {
+		private final EvalContext ec;
+		private final Iterator<Object> source;
+		private final LocationPath.Step step;
+		private Iterator<Object> current = null;
+
+		Steps(final EvalContext ec, final Iterator<Object> source,
+				final LocationPath.Step step) {
+			this.ec = ec;
+			this.source = source;
+			this.step = step;
+		}
+
+		@Override
+		Object fetch() {
+			while (current == null || !current.hasNext()) {
+				if (!source.hasNext()) {
+					return null;
+				}
+				current = step.iterate(ec, source.next());
+			}
+			return current.next();
+		}
+	}
+
+	/**
+	 * Filter nodes with a predicate that does not depend on the context
+	 * position or size.
+	 */
+	static final class Filtered extends NodeIterator {
+		private final EvalContext ec;
+		private final Iterator<Object> source;
+		private final Expr predicate;
+
+		Filtered(final EvalContext ec, final Iterator<Object> source,
+				final Expr predicate) {
+			this.ec = ec;
+			this.source = source;
+			this.predicate = predicate;
+		}
+
+		@Override
+		Object fetch() {
+			while (source.hasNext()) {
+				final Object n = source.next();
+				if (predicate.evaluateBoolean(ec, n, 1, 1)) {
+					return n;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Only the node at a given position: a positional predicate that does
+	 * not need the context size.
+	 */
+	static final class Nth extends NodeIterator {
+		private final Iterator<Object> source;
+		private int remaining;
+
+		Nth(final Iterator<Object> source, final int position) {
+			this.source = source;
+			this.remaining = position;
+		}
+
+		@Override
+		Object fetch() {
+			while (remaining > 0 && source.hasNext()) {
+				final Object n = source.next();
+				if (--remaining == 0) {
+					return n;
+				}
+			}
+			remaining = 0;
+			return null;
+		}
+	}
+
+	/**
+	 * Convert the engine nodes to the JDOM results.
+	 */
+	static final class Unwrapped extends NodeIterator {
+		private final Iterator<Object> source;
+
+		Unwrapped(final Iterator<Object> source) {
+			this.source = source;
+		}
+
+		@Override
+		Object fetch() {
+			return source.hasNext() ? Nodes.unwrap(source.next()) : null;
+		}
+	}
+
+}
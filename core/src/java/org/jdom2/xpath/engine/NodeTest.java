@@ -0,0 +1,197 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import org.jdom2.Attribute;
+import org.jdom2.DocType;
+import org.jdom2.Element;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.xpath.engine.Nodes.NamespaceNode;
+
+/**
+ * The node test part of a location step.
+ */
+abstract class NodeTest {
+
+	/**
+	 * Test a node.
+	 * @param node The node to test.
+	 * @param principal The principal node type of the axis the node is on.
+	 * @return true if the node matches.
+	 */
+	abstract boolean matches(Object node, int principal);
+
+	/** node() matches everything except DocType */
+	static final NodeTest ANYNODE = new NodeTest() {
+		@Override
+		boolean matches(final Object node, final int principal) {
+			return !(node instanceof DocType);
+		}
+		@Override
+		public String toString() {
+			return "node()";
+		}
+	};
+
+	/** text() */
+	static final NodeTest TEXT = new TypeTest(Nodes.TEXT, "text()");
+
+	/** comment() */
+	static final NodeTest COMMENT = new TypeTest(Nodes.COMMENT, "comment()");
+
+	/** processing-instruction() */
+	static final NodeTest PI = new TypeTest(Nodes.PI, "processing-instruction()");
+
+	private static final class TypeTest extends NodeTest {
+		private final int type;
+		private final String name;
+		TypeTest(final int type, final String name) {
+			this.type = type;
+			this.name = name;
+		}
+		@Override
+		boolean matches(final Object node, final int principal) {
+			return Nodes.nodeType(node) == type;
+		}
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * processing-instruction('target')
+	 */
+	static final class PITargetTest extends NodeTest {
+		private final String target;
+		PITargetTest(final String target) {
+			this.target = target;
+		}
+		@Override
+		boolean matches(final Object node, final int principal) {
+			return node instanceof ProcessingInstruction
+					&& target.equals(((ProcessingInstruction)node).getTarget());
+		}
+		@Override
+		public String toString() {
+			return "processing-instruction('" + target + "')";
+		}
+	}
+
+	/**
+	 * The * name test: any node of the principal type.
+	 */
+	static final NodeTest ANYNAME = new NodeTest() {
+		@Override
+		boolean matches(final Object node, final int principal) {
+			return Nodes.nodeType(node) == principal;
+		}
+		@Override
+		public String toString() {
+			return "*";
+		}
+	};
+
+	/**
+	 * A name test (prefix:local or local) or a prefix:* test. The name tests
+	 * compare directly against the JDOM Element and Attribute fields.
+	 */
+	static final class NameTest extends NodeTest {
+		/** The namespace URI the node must have */
+		final String uri;
+		/** The local name the node must have, or null for prefix:* */
+		final String name;
+		private final String display;
+
+		NameTest(final String uri, final String name, final String display) {
+			this.uri = uri;
+			this.name = name;
+			this.display = display;
+		}
+
+		@Override
+		boolean matches(final Object node, final int principal) {
+			switch (principal) {
+				case Nodes.ELEMENT:
+					if (node instanceof Element) {
+						final Element e = (Element)node;
+						return (name == null || name.equals(e.getName()))
+								&& uri.equals(e.getNamespaceURI());
+					}
+					return false;
+				case Nodes.ATTRIBUTE:
+					if (node instanceof Attribute) {
+						final Attribute a = (Attribute)node;
+						return (name == null || name.equals(a.getName()))
+								&& uri.equals(a.getNamespaceURI());
+					}
+					return false;
+				default:
+					// namespace nodes have a name (the prefix) but no
+					// namespace URI.
+					return node instanceof NamespaceNode && uri.length() == 0
+							&& (name == null || name.equals(
+									((NamespaceNode)node).namespace.getPrefix()));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return display;
+		}
+	}
+
+}
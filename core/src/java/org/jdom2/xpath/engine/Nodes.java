@@ -0,0 +1,714 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.jdom2.Attribute;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.Parent;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+import org.jdom2.util.DocumentOrder;
+
+/**
+ * The XPath data model as seen over JDOM objects. All navigation is done
+ * directly on the JDOM Parent content and the Element attributes, there is no
+ * intermediate navigator.
+ * <p>
+ * XPath namespace nodes have a parent Element, JDOM Namespace instances do
+ * not, so namespace nodes are represented by {@link NamespaceNode} during
+ * evaluation, and unwrapped to the Namespace again in the results.
+ * <p>
+ * DocType content is not part of the XPath data model and is never selected.
+ * EntityRef content is selected only by the <code>node()</code> test.
+ */
+final class Nodes {
+
+	/** The document (root) node */
+	static final int ROOT = 0;
+	/** Element nodes */
+	static final int ELEMENT = 1;
+	/** Attribute nodes */
+	static final int ATTRIBUTE = 2;
+	/** Text and CDATA nodes */
+	static final int TEXT = 3;
+	/** Namespace nodes */
+	static final int NAMESPACE = 4;
+	/** ProcessingInstruction nodes */
+	static final int PI = 5;
+	/** Comment nodes */
+	static final int COMMENT = 6;
+	/** EntityRef nodes, which have no XPath equivalent */
+	static final int OTHER = 7;
+
+	/**
+	 * An XPath namespace node: a Namespace in scope on a specific Element.
+	 */
+	static final class NamespaceNode {
+		final Namespace namespace;
+		final Element parent;
+
+		NamespaceNode(final Namespace namespace, final Element parent) {
+			this.namespace = namespace;
+			this.parent = parent;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof NamespaceNode) {
+				final NamespaceNode nn = (NamespaceNode)obj;
+				return nn.namespace == namespace && nn.parent == parent;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(namespace) * 31
+					+ System.identityHashCode(parent);
+		}
+
+		@Override
+		public String toString() {
+			return namespace.getPrefix() + "=" + namespace.getURI();
+		}
+	}
+
+	private Nodes() {
+		// static utility methods only.
+	}
+
+	/**
+	 * Is the given object a node that the engine can navigate.
+	 * @param o the object to check
+	 * @return true if it is a node.
+	 */
+	static boolean isNode(final Object o) {
+		return o instanceof Content || o instanceof Attribute
+				|| o instanceof Document || o instanceof NamespaceNode
+				|| o instanceof Namespace;
+	}
+
+	/**
+	 * Get the XPath node type of a node.
+	 * @param node the node
+	 * @return one of the node type constants.
+	 */
+	static int nodeType(final Object node) {
+		if (node instanceof Element) {
+			return ELEMENT;
+		}
+		if (node instanceof Text) {
+			return TEXT;
+		}
+		if (node instanceof Attribute) {
+			return ATTRIBUTE;
+		}
+		if (node instanceof Comment) {
+			return COMMENT;
+		}
+		if (node instanceof ProcessingInstruction) {
+			return PI;
+		}
+		if (node instanceof Document) {
+			return ROOT;
+		}
+		if (node instanceof NamespaceNode || node instanceof Namespace) {
+			return NAMESPACE;
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Get the XPath parent of a node.
+	 * @param node the node
+	 * @return the parent, or null if there is none.
+	 */
+	static Object getParent(final Object node) {
+		if (node instanceof Content) {
+			return ((Content)node).getParent();
+		}
+		if (node instanceof Attribute) {
+			return ((Attribute)node).getParent();
+		}
+		if (node instanceof NamespaceNode) {
+			return ((NamespaceNode)node).parent;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the XPath root node of the tree containing a node. This is the
+	 * Document if there is one, otherwise it is the top-most ancestor.
+	 * @param node the node
+	 * @return the root node.
+	 */
+	static Object getRoot(final Object node) {
+		Object root = node;
+		Object p = getParent(root);
+		while (p != null) {
+			root = p;
+			p = getParent(root);
+		}
+		return root;
+	}
+
+	/**
+	 * Convert a JDOM object used outside the engine in to the node used
+	 * inside the engine.
+	 * @param o the object
+	 * @return the node.
+	 */
+	static Object wrap(final Object o) {
+		if (o instanceof Namespace) {
+			// a Namespace on its own has no parent Element.
+			return new NamespaceNode((Namespace)o, null);
+		}
+		return o;
+	}
+
+	/**
+	 * Convert an engine node to the JDOM object exposed in the results.
+	 * @param o the node
+	 * @return the JDOM object.
+	 */
+	static Object unwrap(final Object o) {
+		if (o instanceof NamespaceNode) {
+			return ((NamespaceNode)o).namespace;
+		}
+		return o;
+	}
+
+	/**
+	 * Get the XPath string-value of a node.
+	 * @param node the node
+	 * @return the string value.
+	 */
+	static String stringValue(final Object node) {
+		if (node instanceof Text) {
+			return ((Text)node).getText();
+		}
+		if (node instanceof Attribute) {
+			return ((Attribute)node).getValue();
+		}
+		if (node instanceof Element) {
+			final Element emt = (Element)node;
+			if (emt.getContentSize() == 1 && emt.getContent(0) instanceof Text) {
+				return ((Text)emt.getContent(0)).getText();
+			}
+			final StringBuilder sb = new StringBuilder();
+			appendText(emt, sb);
+			return sb.toString();
+		}
+		if (node instanceof Document) {
+			final StringBuilder sb = new StringBuilder();
+			appendText((Document)node, sb);
+			return sb.toString();
+		}
+		if (node instanceof Comment) {
+			return ((Comment)node).getText();
+		}
+		if (node instanceof ProcessingInstruction) {
+			return ((ProcessingInstruction)node).getData();
+		}
+		if (node instanceof NamespaceNode) {
+			return ((NamespaceNode)node).namespace.getURI();
+		}
+		if (node instanceof Namespace) {
+			return ((Namespace)node).getURI();
+		}
+		return "";
+	}
+
+	private static void appendText(final Parent parent, final StringBuilder sb) {
+		final int sz = parent.getContentSize();
+		for (int i = 0; i < sz; i++) {
+			final Content c = parent.getContent(i);
+			if (c instanceof Text) {
+				sb.append(((Text)c).getText());
+			} else if (c instanceof Element) {
+				appendText((Element)c, sb);
+			}
+		}
+	}
+
+	/**
+	 * Get the XPath local-name of a node.
+	 * @param node the node
+	 * @return the local name, or the empty string if the node has no name.
+	 */
+	static String localName(final Object node) {
+		if (node instanceof Element) {
+			return ((Element)node).getName();
+		}
+		if (node instanceof Attribute) {
+			return ((Attribute)node).getName();
+		}
+		if (node instanceof ProcessingInstruction) {
+			return ((ProcessingInstruction)node).getTarget();
+		}
+		if (node instanceof NamespaceNode) {
+			return ((NamespaceNode)node).namespace.getPrefix();
+		}
+		return "";
+	}
+
+	/**
+	 * Get the XPath namespace-uri of a node.
+	 * @param node the node
+	 * @return the namespace URI, or the empty string if there is none.
+	 */
+	static String namespaceURI(final Object node) {
+		if (node instanceof Element) {
+			return ((Element)node).getNamespaceURI();
+		}
+		if (node instanceof Attribute) {
+			return ((Attribute)node).getNamespaceURI();
+		}
+		return "";
+	}
+
+	/**
+	 * Get the XPath name of a node.
+	 * @param node the node
+	 * @return the qualified name, or the empty string if the node has no name.
+	 */
+	static String qualifiedName(final Object node) {
+		if (node instanceof Element) {
+			return ((Element)node).getQualifiedName();
+		}
+		if (node instanceof Attribute) {
+			return ((Attribute)node).getQualifiedName();
+		}
+		return localName(node);
+	}
+
+	/**
+	 * Add the children of a Parent, in document order, to the output.
+	 * @param parent the parent
+	 * @param test the NodeTest to match
+	 * @param out where to add the matches
+	 */
+	static void children(final Parent parent, final NodeTest test,
+			final List<Object> out) {
+		final int sz = parent.getContentSize();
+		for (int i = 0; i < sz; i++) {
+			final Content c = parent.getContent(i);
+			if (test.matches(c, ELEMENT)) {
+				out.add(c);
+			}
+		}
+	}
+
+	/**
+	 * Add the descendants of a Parent, in document order, to the output.
+	 * @param parent the parent
+	 * @param test the NodeTest to match
+	 * @param out where to add the matches
+	 */
+	static void descendants(final Parent parent, final NodeTest test,
+			final List<Object> out) {
+		final int sz = parent.getContentSize();
+		for (int i = 0; i < sz; i++) {
+			final Content c = parent.getContent(i);
+			if (test.matches(c, ELEMENT)) {
+				out.add(c);
+			}
+			if (c instanceof Element && ((Element)c).getContentSize() > 0) {
+				descendants((Element)c, test, out);
+			}
+		}
+	}
+
+	/**
+	 * Add the descendants of a Parent, in reverse document order, to the
+	 * output.
+	 */
+	private static void reverseDescendants(final Parent parent,
+			final NodeTest test, final List<Object> out) {
+		for (int i = parent.getContentSize() - 1; i >= 0; i--) {
+			final Content c = parent.getContent(i);
+			if (c instanceof Element) {
+				reverseDescendants((Element)c, test, out);
+			}
+			if (test.matches(c, ELEMENT)) {
+				out.add(c);
+			}
+		}
+	}
+
+	/**
+	 * Add the nodes on an axis that match a NodeTest. The nodes are added in
+	 * axis order: reverse document order for the reverse axes, and document
+	 * order for all others.
+	 * @param axis the axis to traverse
+	 * @param node the context node
+	 * @param test the test to match
+	 * @param out where to add the matches.
+	 */
+	static void axis(final Axis axis, final Object node, final NodeTest test,
+			final List<Object> out) {
+		switch (axis) {
+			case CHILD:
+				if (node instanceof Parent) {
+					children((Parent)node, test, out);
+				}
+				return;
+			case DESCENDANT:
+				if (node instanceof Parent) {
+					descendants((Parent)node, test, out);
+				}
+				return;
+			case DESCENDANT_OR_SELF:
+				if (test.matches(node, ELEMENT)) {
+					out.add(node);
+				}
+				if (node instanceof Parent) {
+					descendants((Parent)node, test, out);
+				}
+				return;
+			case SELF:
+				if (test.matches(node, ELEMENT)) {
+					out.add(node);
+				}
+				return;
+			case PARENT: {
+				final Object p = getParent(node);
+				if (p != null && test.matches(p, ELEMENT)) {
+					out.add(p);
+				}
+				return;
+			}
+			case ANCESTOR_OR_SELF:
+				if (test.matches(node, ELEMENT)) {
+					out.add(node);
+				}
+				//$FALL-THROUGH$
+			case ANCESTOR: {
+				Object p = getParent(node);
+				while (p != null) {
+					if (test.matches(p, ELEMENT)) {
+						out.add(p);
+					}
+					p = getParent(p);
+				}
+				return;
+			}
+			case ATTRIBUTE:
+				if (node instanceof Element && ((Element)node).hasAttributes()) {
+					for (final Attribute a : ((Element)node).getAttributes()) {
+						if (test.matches(a, ATTRIBUTE)) {
+							out.add(a);
+						}
+					}
+				}
+				return;
+			case NAMESPACE:
+				if (node instanceof Element) {
+					final Element emt = (Element)node;
+					for (final Namespace ns : emt.getNamespacesInScope()) {
+						if (ns == Namespace.NO_NAMESPACE) {
+							// xmlns="" is not a namespace node.
+							continue;
+						}
+						final NamespaceNode nn = new NamespaceNode(ns, emt);
+						if (test.matches(nn, NAMESPACE)) {
+							out.add(nn);
+						}
+					}
+				}
+				return;
+			case FOLLOWING_SIBLING:
+			case PRECEDING_SIBLING: {
+				if (!(node instanceof Content)) {
+					return;
+				}
+				final Parent p = ((Content)node).getParent();
+				if (p == null) {
+					return;
+				}
+				final int index = p.indexOf((Content)node);
+				if (axis == Axis.FOLLOWING_SIBLING) {
+					final int sz = p.getContentSize();
+					for (int i = index + 1; i < sz; i++) {
+						final Content c = p.getContent(i);
+						if (test.matches(c, ELEMENT)) {
+							out.add(c);
+						}
+					}
+				} else {
+					for (int i = index - 1; i >= 0; i--) {
+						final Content c = p.getContent(i);
+						if (test.matches(c, ELEMENT)) {
+							out.add(c);
+						}
+					}
+				}
+				return;
+			}
+			case FOLLOWING: {
+				Object cur = node;
+				if (!(node instanceof Content)) {
+					// attributes and namespace nodes are followed by the
+					// content of the Element they belong to.
+					cur = getParent(node);
+					if (cur instanceof Element) {
+						descendants((Element)cur, test, out);
+					}
+				}
+				while (cur instanceof Content) {
+					final Parent p = ((Content)cur).getParent();
+					if (p == null) {
+						break;
+					}
+					final int sz = p.getContentSize();
+					for (int i = p.indexOf((Content)cur) + 1; i < sz; i++) {
+						final Content c = p.getContent(i);
+						if (test.matches(c, ELEMENT)) {
+							out.add(c);
+						}
+						if (c instanceof Element) {
+							descendants((Element)c, test, out);
+						}
+					}
+					cur = p;
+				}
+				return;
+			}
+			case PRECEDING: {
+				Object cur = node;
+				if (!(node instanceof Content)) {
+					// the owner Element is an ancestor, not a preceding node.
+					cur = getParent(node);
+				}
+				while (cur instanceof Content) {
+					final Parent p = ((Content)cur).getParent();
+					if (p == null) {
+						break;
+					}
+					for (int i = p.indexOf((Content)cur) - 1; i >= 0; i--) {
+						final Content c = p.getContent(i);
+						if (c instanceof Element) {
+							reverseDescendants((Element)c, test, out);
+						}
+						if (test.matches(c, ELEMENT)) {
+							out.add(c);
+						}
+					}
+					cur = p;
+				}
+				return;
+			}
+		}
+	}
+
+	/* 
+	 * Document order.
+	 * The position of a node is expressed as the path of indexes from the
+	 * root. Namespace nodes and then attributes come before the children of
+	 * their Element, so they are encoded with negative offsets.
+	 */
+
+	private static final int NAMESPACE_OFFSET = Integer.MIN_VALUE / 2;
+	private static final int ATTRIBUTE_OFFSET = Integer.MIN_VALUE / 4;
+
+	/**
+	 * Calculates and caches the document-order positions of nodes.
+	 */
+	private static final class PathOrder implements Comparator<Object> {
+
+		private final IdentityHashMap<Object, int[]> paths =
+				new IdentityHashMap<Object, int[]>();
+
+		private final IdentityHashMap<Parent, IdentityHashMap<Content, Integer>>
+				indexes = new IdentityHashMap<Parent, IdentityHashMap<Content, Integer>>();
+
+		private int indexOf(final Parent parent, final Content child) {
+			IdentityHashMap<Content, Integer> idx = indexes.get(parent);
+			if (idx == null) {
+				// index all the siblings in one pass, they are likely to be
+				// needed too.
+				final int sz = parent.getContentSize();
+				idx = new IdentityHashMap<Content, Integer>(sz);
+				for (int i = 0; i < sz; i++) {
+					idx.put(parent.getContent(i), Integer.valueOf(i));
+				}
+				indexes.put(parent, idx);
+			}
+			return idx.get(child).intValue();
+		}
+
+		private int[] path(final Object node) {
+			int[] path = paths.get(node);
+			if (path != null) {
+				return path;
+			}
+			final Object parent = getParent(node);
+			if (parent == null) {
+				path = new int[0];
+			} else {
+				final int[] pp = path(parent);
+				path = new int[pp.length + 1];
+				System.arraycopy(pp, 0, path, 0, pp.length);
+				final int index;
+				if (node instanceof Content) {
+					index = indexOf((Parent)parent, (Content)node);
+				} else if (node instanceof Attribute) {
+					index = ATTRIBUTE_OFFSET + ((Element)parent).getAttributes()
+							.indexOf(node);
+				} else {
+					index = NAMESPACE_OFFSET + ((Element)parent)
+							.getNamespacesInScope()
+							.indexOf(((NamespaceNode)node).namespace);
+				}
+				path[pp.length] = index;
+			}
+			paths.put(node, path);
+			return path;
+		}
+
+		@Override
+		public int compare(final Object a, final Object b) {
+			if (a == b) {
+				return 0;
+			}
+			final int[] pa = path(a);
+			final int[] pb = path(b);
+			final int len = Math.min(pa.length, pb.length);
+			for (int i = 0; i < len; i++) {
+				if (pa[i] != pb[i]) {
+					return pa[i] < pb[i] ? -1 : 1;
+				}
+			}
+			if (pa.length != pb.length) {
+				return pa.length < pb.length ? -1 : 1;
+			}
+			// different trees. Order is implementation dependent, but stable.
+			final int ha = System.identityHashCode(getRoot(a));
+			final int hb = System.identityHashCode(getRoot(b));
+			return ha < hb ? -1 : (ha == hb ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Remove duplicates from a node list, and sort it in to document order.
+	 * @param nodes the nodes to sort
+	 * @return the sorted nodes (may be the same list instance).
+	 */
+	static List<Object> sort(final List<Object> nodes) {
+		if (nodes.size() < 2) {
+			return nodes;
+		}
+		final LinkedHashSet<Object> unique = new LinkedHashSet<Object>(nodes);
+		final List<Object> ret = new ArrayList<Object>(unique);
+		if (!sortNumbered(ret)) {
+			Collections.sort(ret, new PathOrder());
+		}
+		return ret;
+	}
+
+	/**
+	 * Sort nodes using the {@link DocumentOrder} installed on their
+	 * Document, if there is one and it numbers all the nodes.
+	 * @param nodes the unique nodes to sort, sorted in place.
+	 * @return true if the nodes were sorted.
+	 */
+	private static boolean sortNumbered(final List<Object> nodes) {
+		final Object root = getRoot(nodes.get(0));
+		if (!(root instanceof Document)) {
+			return false;
+		}
+		final DocumentOrder order = DocumentOrder.getInstance((Document)root);
+		if (order == null) {
+			return false;
+		}
+		final int sz = nodes.size();
+		// sort on the ordinal in the high bits, the list index in the low.
+		final long[] keys = new long[sz];
+		for (int i = 0; i < sz; i++) {
+			final int ord = order.getOrdinal(nodes.get(i));
+			if (ord < 0) {
+				// namespace nodes, or a node from a different tree.
+				return false;
+			}
+			keys[i] = ((long)ord << 32) | i;
+		}
+		Arrays.sort(keys);
+		final Object[] sorted = new Object[sz];
+		for (int i = 0; i < sz; i++) {
+			sorted[i] = nodes.get((int)keys[i]);
+		}
+		for (int i = 0; i < sz; i++) {
+			nodes.set(i, sorted[i]);
+		}
+		return true;
+	}
+
+}
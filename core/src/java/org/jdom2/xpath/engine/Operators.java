@@ -0,0 +1,386 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Namespace;
+
+/**
+ * The literal, variable and operator expressions.
+ */
+final class Operators {
+
+	private Operators() {
+		// nested classes only.
+	}
+
+	/**
+	 * A string literal.
+	 */
+	static final class Literal extends Expr {
+		final String value;
+		Literal(final String value) {
+			this.value = value;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return value;
+		}
+		@Override
+		public String toString() {
+			return value.indexOf('\'') >= 0 ? "\"" + value + "\"" 
+					: "'" + value + "'";
+		}
+	}
+
+	/**
+	 * A numeric literal.
+	 */
+	static final class NumberLiteral extends Expr {
+		final Double value;
+		NumberLiteral(final double value) {
+			this.value = Double.valueOf(value);
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return value;
+		}
+		@Override
+		double evaluateNumber(EvalContext ec, Object node, int position, int size) {
+			return value.doubleValue();
+		}
+		@Override
+		public String toString() {
+			return Expr.numberToString(value.doubleValue());
+		}
+	}
+
+	/**
+	 * A variable reference.
+	 */
+	static final class VariableRef extends Expr {
+		private final String name;
+		private final Namespace namespace;
+		private final String qname;
+		VariableRef(final String name, final Namespace namespace,
+				final String qname) {
+			this.name = name;
+			this.namespace = namespace;
+			this.qname = qname;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return ec.getVariable(name, namespace);
+		}
+		@Override
+		public String toString() {
+			return "$" + qname;
+		}
+	}
+
+	/**
+	 * The 'or' and 'and' operators, evaluated lazily.
+	 */
+	static final class Logical extends Expr {
+		private final boolean or;
+		private final Expr left, right;
+		Logical(final boolean or, final Expr left, final Expr right) {
+			this.or = or;
+			this.left = left;
+			this.right = right;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return Boolean.valueOf(evaluateBoolean(ec, node, position, size));
+		}
+		@Override
+		boolean evaluateBoolean(EvalContext ec, Object node, int position, int size) {
+			if (left.evaluateBoolean(ec, node, position, size) == or) {
+				return or;
+			}
+			return right.evaluateBoolean(ec, node, position, size);
+		}
+		@Override
+		public String toString() {
+			return "(" + left + (or ? " or " : " and ") + right + ")";
+		}
+	}
+
+	/** = */
+	static final int EQ = 0;
+	/** != */
+	static final int NE = 1;
+	/** &lt; */
+	static final int LT = 2;
+	/** &lt;= */
+	static final int LE = 3;
+	/** &gt; */
+	static final int GT = 4;
+	/** &gt;= */
+	static final int GE = 5;
+
+	private static final String[] COMPARENAMES = {"=", "!=", "<", "<=", ">", ">="};
+	/** The operator to use when the operands are swapped */
+	private static final int[] SWAPPED = {EQ, NE, GT, GE, LT, LE};
+
+	/**
+	 * The equality and relational operators.
+	 */
+	static final class Compare extends Expr {
+		final int op;
+		final Expr left, right;
+		Compare(final int op, final Expr left, final Expr right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return Boolean.valueOf(evaluateBoolean(ec, node, position, size));
+		}
+		@Override
+		boolean evaluateBoolean(EvalContext ec, Object node, int position, int size) {
+			return compare(op, left.evaluate(ec, node, position, size),
+					right.evaluate(ec, node, position, size));
+		}
+		@Override
+		public String toString() {
+			return "(" + left + " " + COMPARENAMES[op] + " " + right + ")";
+		}
+	}
+
+	/**
+	 * Compare two XPath values using the XPath 1.0 rules.
+	 * @param op the comparison
+	 * @param a the left value
+	 * @param b the right value
+	 * @return the comparison result.
+	 */
+	static boolean compare(final int op, final Object a, final Object b) {
+		if (a instanceof List) {
+			final List<?> la = (List<?>)a;
+			if (b instanceof List) {
+				final List<?> lb = (List<?>)b;
+				if (la.isEmpty() || lb.isEmpty()) {
+					return false;
+				}
+				final String[] sb = new String[lb.size()];
+				for (int i = 0; i < sb.length; i++) {
+					sb[i] = Nodes.stringValue(lb.get(i));
+				}
+				for (Object n : la) {
+					final String sa = Nodes.stringValue(n);
+					for (String s : sb) {
+						if (compareAtomic(op, sa, s)) {
+							return true;
+						}
+					}
+				}
+				return false;
+			}
+			if (b instanceof Boolean) {
+				return compareAtomic(op, Boolean.valueOf(!la.isEmpty()), b);
+			}
+			for (Object n : la) {
+				if (compareAtomic(op, Nodes.stringValue(n), b)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (b instanceof List) {
+			return compare(SWAPPED[op], b, a);
+		}
+		return compareAtomic(op, a, b);
+	}
+
+	private static boolean compareAtomic(final int op, final Object a, 
+			final Object b) {
+		if (op == EQ || op == NE) {
+			final boolean eq;
+			if (a instanceof Boolean || b instanceof Boolean) {
+				eq = Expr.toBoolean(a) == Expr.toBoolean(b);
+			} else if (a instanceof Double || b instanceof Double) {
+				eq = Expr.toNumber(a) == Expr.toNumber(b);
+			} else {
+				eq = a.equals(b);
+			}
+			return eq == (op == EQ);
+		}
+		final double da = Expr.toNumber(a);
+		final double db = Expr.toNumber(b);
+		switch (op) {
+			case LT:
+				return da < db;
+			case LE:
+				return da <= db;
+			case GT:
+				return da > db;
+			default:
+				return da >= db;
+		}
+	}
+
+	/** + */
+	static final int PLUS = 0;
+	/** - */
+	static final int MINUS = 1;
+	/** * */
+	static final int MULTIPLY = 2;
+	/** div */
+	static final int DIV = 3;
+	/** mod */
+	static final int MOD = 4;
+
+	private static final String[] ARITHNAMES = {"+", "-", "*", "div", "mod"};
+
+	/**
+	 * The arithmetic operators.
+	 */
+	static final class Arithmetic extends Expr {
+		private final int op;
+		private final Expr left, right;
+		Arithmetic(final int op, final Expr left, final Expr right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return Double.valueOf(evaluateNumber(ec, node, position, size));
+		}
+		@Override
+		double evaluateNumber(EvalContext ec, Object node, int position, int size) {
+			final double a = left.evaluateNumber(ec, node, position, size);
+			final double b = right.evaluateNumber(ec, node, position, size);
+			switch (op) {
+				case PLUS:
+					return a + b;
+				case MINUS:
+					return a - b;
+				case MULTIPLY:
+					return a * b;
+				case DIV:
+					return a / b;
+				default:
+					// Java % truncates, the same as the XPath mod.
+					return a % b;
+			}
+		}
+		@Override
+		public String toString() {
+			return "(" + left + " " + ARITHNAMES[op] + " " + right + ")";
+		}
+	}
+
+	/**
+	 * Unary minus.
+	 */
+	static final class Negate extends Expr {
+		private final Expr expr;
+		Negate(final Expr expr) {
+			this.expr = expr;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			return Double.valueOf(evaluateNumber(ec, node, position, size));
+		}
+		@Override
+		double evaluateNumber(EvalContext ec, Object node, int position, int size) {
+			return -expr.evaluateNumber(ec, node, position, size);
+		}
+		@Override
+		public String toString() {
+			return "-" + expr;
+		}
+	}
+
+	/**
+	 * The union '|' operator.
+	 */
+	static final class Union extends Expr {
+		private final Expr[] exprs;
+		Union(final List<Expr> exprs) {
+			this.exprs = exprs.toArray(new Expr[exprs.size()]);
+		}
+		@Override
+		boolean isNodeSet() {
+			return true;
+		}
+		@Override
+		Object evaluate(EvalContext ec, Object node, int position, int size) {
+			final List<Object> all = new ArrayList<Object>();
+			for (Expr e : exprs) {
+				all.addAll(e.evaluateNodeSet(ec, node, position, size));
+			}
+			return Nodes.sort(all);
+		}
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			for (Expr e : exprs) {
+				if (sb.length() > 0) {
+					sb.append(" | ");
+				}
+				sb.append(e);
+			}
+			return sb.toString();
+		}
+	}
+
+}
@@ -0,0 +1,494 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Parent;
+import org.jdom2.Text;
+import org.jdom2.xpath.engine.LocationPath.AttributePredicate;
+import org.jdom2.xpath.engine.LocationPath.PositionPredicate;
+import org.jdom2.xpath.engine.LocationPath.Step;
+import org.jdom2.xpath.engine.NodeTest.NameTest;
+
+/**
+ * A location path compiled to a chain of specialised stages. Each stage
+ * works directly on the JDOM types, and pushes each node it selects straight
+ * in to the next stage, so there are no intermediate node lists, no
+ * re-sorting, and no boxed positions. The last stage adds the nodes to the
+ * result.
+ * <p>
+ * Only paths where pushing the nodes depth-first produces them in document
+ * order can be compiled: any number of child steps that select Elements,
+ * then optionally one descendant (or descendant-or-self) step that selects
+ * Elements, and then optionally a final attribute or <code>text()</code>
+ * step (<code>text()</code> cannot follow a descendant step). Element steps
+ * can have attribute predicates followed by at most one literal position.
+ * Everything else is left to the general {@link LocationPath} evaluation.
+ * <p>
+ * Plans hold no evaluation state, so they can be used concurrently.
+ */
+final class PathPlan {
+
+	/**
+	 * Compile location steps to a plan.
+	 * @param steps The steps to compile
+	 * @return The plan, or null if the steps are not suitable.
+	 */
+	static PathPlan compile(final Step[] steps) {
+		if (steps.length == 0) {
+			return null;
+		}
+		// check the shape of the path first.
+		boolean descendant = false;
+		for (int i = 0; i < steps.length; i++) {
+			final Step s = steps[i];
+			final boolean last = i == steps.length - 1;
+			switch (s.axis) {
+				case CHILD:
+					if (descendant || (s.test == NodeTest.TEXT 
+							&& (!last || s.predicates.length > 0))) {
+						return null;
+					}
+					break;
+				case DESCENDANT:
+				case DESCENDANT_OR_SELF:
+					if (descendant) {
+						return null;
+					}
+					descendant = true;
+					break;
+				case ATTRIBUTE:
+					if (!last || s.predicates.length > 0) {
+						return null;
+					}
+					break;
+				default:
+					return null;
+			}
+		}
+		Stage stage = COLLECT;
+		for (int i = steps.length - 1; i >= 0; i--) {
+			final Step s = steps[i];
+			if (s.axis == Axis.ATTRIBUTE) {
+				if (s.test instanceof NameTest) {
+					final NameTest nt = (NameTest)s.test;
+					stage = new Attributes(nt.uri, nt.name, stage);
+				} else if (s.test == NodeTest.ANYNAME) {
+					stage = new Attributes(null, null, stage);
+				} else {
+					return null;
+				}
+				continue;
+			}
+			if (s.test == NodeTest.TEXT) {
+				if (s.axis != Axis.CHILD) {
+					// descendant text is not a shape we plan for.
+					return null;
+				}
+				stage = new TextChildren(stage);
+				continue;
+			}
+			final ElementTest test = ElementTest.compile(s);
+			if (test == null) {
+				return null;
+			}
+			if (s.axis == Axis.CHILD) {
+				stage = new ChildElements(test, stage);
+			} else {
+				stage = new DescendantElements(test, 
+						s.axis == Axis.DESCENDANT_OR_SELF, stage);
+			}
+		}
+		return new PathPlan(stage);
+	}
+
+	private final Stage first;
+
+	private PathPlan(final Stage first) {
+		this.first = first;
+	}
+
+	/**
+	 * Select the nodes from the context node.
+	 * @param node The context node.
+	 * @return The selected nodes, in document order.
+	 */
+	List<Object> select(final Object node) {
+		final List<Object> out = new ArrayList<Object>();
+		first.push(node, out);
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return "plan: " + first;
+	}
+
+	/**
+	 * The Element name test, attribute predicates, and position of an
+	 * Element step.
+	 */
+	private static final class ElementTest {
+		/** Null for any namespace */
+		private final String uri;
+		/** Null for any name */
+		private final String name;
+		private final String[] atturis;
+		private final String[] attnames;
+		/** Null entries test for the attribute only */
+		private final String[] attvalues;
+		/** Zero for any position */
+		private final int position;
+
+		static ElementTest compile(final Step step) {
+			String uri = null;
+			String name = null;
+			if (step.test instanceof NameTest) {
+				uri = ((NameTest)step.test).uri;
+				name = ((NameTest)step.test).name;
+			} else if (step.test != NodeTest.ANYNAME) {
+				return null;
+			}
+			final int cnt = step.predicates.length;
+			int position = 0;
+			int atts = cnt;
+			if (cnt > 0 && step.predicates[cnt - 1] instanceof PositionPredicate) {
+				position = ((PositionPredicate)step.predicates[cnt - 1]).position;
+				if (position < 1) {
+					// can never match, leave it to the interpreter.
+					return null;
+				}
+				atts--;
+			}
+			final String[] atturis = new String[atts];
+			final String[] attnames = new String[atts];
+			final String[] attvalues = new String[atts];
+			for (int i = 0; i < atts; i++) {
+				if (!(step.predicates[i] instanceof AttributePredicate)) {
+					return null;
+				}
+				final AttributePredicate ap = (AttributePredicate)step.predicates[i];
+				atturis[i] = ap.att.uri;
+				attnames[i] = ap.att.name;
+				attvalues[i] = ap.value;
+			}
+			return new ElementTest(uri, name, atturis, attnames, attvalues,
+					position);
+		}
+
+		private ElementTest(final String uri, final String name,
+				final String[] atturis, final String[] attnames, 
+				final String[] attvalues, final int position) {
+			this.uri = uri;
+			this.name = name;
+			this.atturis = atturis;
+			this.attnames = attnames;
+			this.attvalues = attvalues;
+			this.position = position;
+		}
+
+		boolean matches(final Element e) {
+			if (name != null && !name.equals(e.getName())) {
+				return false;
+			}
+			if (uri != null && !uri.equals(e.getNamespaceURI())) {
+				return false;
+			}
+			for (int i = 0; i < attnames.length; i++) {
+				final Attribute a = attribute(e, atturis[i], attnames[i]);
+				if (a == null) {
+					return false;
+				}
+				if (attvalues[i] != null && !attvalues[i].equals(a.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static Attribute attribute(final Element e, final String uri,
+				final String name) {
+			if (!e.hasAttributes()) {
+				return null;
+			}
+			final List<Attribute> atts = e.getAttributes();
+			final int sz = atts.size();
+			for (int i = 0; i < sz; i++) {
+				final Attribute a = atts.get(i);
+				if (name.equals(a.getName()) && uri.equals(a.getNamespaceURI())) {
+					return a;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			sb.append(uri == null ? "*" : "{" + uri + "}");
+			sb.append(name == null ? "*" : name);
+			for (int i = 0; i < attnames.length; i++) {
+				sb.append("[@{").append(atturis[i]).append('}').append(attnames[i]);
+				if (attvalues[i] != null) {
+					sb.append("='").append(attvalues[i]).append('\'');
+				}
+				sb.append(']');
+			}
+			if (position > 0) {
+				sb.append('[').append(position).append(']');
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * A step in the plan.
+	 */
+	private static abstract class Stage {
+		/**
+		 * Process a node selected by the previous stage.
+		 * @param node The node to process.
+		 * @param out The result nodes.
+		 */
+		abstract void push(Object node, List<Object> out);
+	}
+
+	/** The last stage, which adds to the result */
+	private static final Stage COLLECT = new Stage() {
+		@Override
+		void push(final Object node, final List<Object> out) {
+			out.add(node);
+		}
+		@Override
+		public String toString() {
+			return "collect";
+		}
+	};
+
+	private static final class ChildElements extends Stage {
+		private final ElementTest test;
+		private final Stage next;
+
+		ChildElements(final ElementTest test, final Stage next) {
+			this.test = test;
+			this.next = next;
+		}
+
+		@Override
+		void push(final Object node, final List<Object> out) {
+			if (!(node instanceof Parent)) {
+				return;
+			}
+			final Parent p = (Parent)node;
+			final int sz = p.getContentSize();
+			final int position = test.position;
+			int count = 0;
+			for (int i = 0; i < sz; i++) {
+				final Content c = p.getContent(i);
+				if (c instanceof Element && test.matches((Element)c)) {
+					if (position == 0) {
+						next.push(c, out);
+					} else if (++count == position) {
+						next.push(c, out);
+						return;
+					}
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "child::" + test + " -> " + next;
+		}
+	}
+
+	private static final class DescendantElements extends Stage {
+		private final ElementTest test;
+		private final boolean self;
+		private final Stage next;
+
+		DescendantElements(final ElementTest test, final boolean self,
+				final Stage next) {
+			this.test = test;
+			this.self = self;
+			this.next = next;
+		}
+
+		@Override
+		void push(final Object node, final List<Object> out) {
+			int count = 0;
+			if (self && node instanceof Element && test.matches((Element)node)) {
+				count++;
+				next.push(node, out);
+				if (count == test.position) {
+					return;
+				}
+			}
+			if (node instanceof Parent) {
+				walk((Parent)node, count, out);
+			}
+		}
+
+		/**
+		 * Push the matching descendants of the parent.
+		 * @return the updated count of matches, or -1 once the position
+		 *         has been found.
+		 */
+		private int walk(final Parent p, final int start, final List<Object> out) {
+			int count = start;
+			final int position = test.position;
+			final int sz = p.getContentSize();
+			for (int i = 0; i < sz; i++) {
+				final Content c = p.getContent(i);
+				if (!(c instanceof Element)) {
+					continue;
+				}
+				final Element e = (Element)c;
+				if (test.matches(e)) {
+					if (position == 0) {
+						next.push(e, out);
+					} else if (++count == position) {
+						next.push(e, out);
+						return -1;
+					}
+				}
+				if (e.getContentSize() > 0) {
+					count = walk(e, count, out);
+					if (count < 0) {
+						return count;
+					}
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return (self ? "descendant-or-self::" : "descendant::") + test
+					+ " -> " + next;
+		}
+	}
+
+	private static final class Attributes extends Stage {
+		/** Null for any namespace */
+		private final String uri;
+		/** Null for any name */
+		private final String name;
+		private final Stage next;
+
+		Attributes(final String uri, final String name, final Stage next) {
+			this.uri = uri;
+			this.name = name;
+			this.next = next;
+		}
+
+		@Override
+		void push(final Object node, final List<Object> out) {
+			if (!(node instanceof Element) || !((Element)node).hasAttributes()) {
+				return;
+			}
+			final List<Attribute> atts = ((Element)node).getAttributes();
+			final int sz = atts.size();
+			for (int i = 0; i < sz; i++) {
+				final Attribute a = atts.get(i);
+				if ((name == null || name.equals(a.getName()))
+						&& (uri == null || uri.equals(a.getNamespaceURI()))) {
+					next.push(a, out);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "attribute::" + (uri == null ? "*" : "{" + uri + "}")
+					+ (name == null ? "*" : name) + " -> " + next;
+		}
+	}
+
+	private static final class TextChildren extends Stage {
+		private final Stage next;
+
+		TextChildren(final Stage next) {
+			this.next = next;
+		}
+
+		@Override
+		void push(final Object node, final List<Object> out) {
+			if (!(node instanceof Parent)) {
+				return;
+			}
+			final Parent p = (Parent)node;
+			final int sz = p.getContentSize();
+			for (int i = 0; i < sz; i++) {
+				final Content c = p.getContent(i);
+				if (c instanceof Text) {
+					next.push(c, out);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "child::text() -> " + next;
+		}
+	}
+
+}
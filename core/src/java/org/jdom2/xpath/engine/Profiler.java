@@ -0,0 +1,164 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.xpath.XPathProfile;
+import org.jdom2.xpath.engine.LocationPath.Step;
+import org.jdom2.xpath.util.XPathProfileImpl;
+
+/**
+ * Accumulates the work done by each location step during a profiled
+ * evaluation. A Profiler is used by a single evaluation, in one thread.
+ */
+final class Profiler {
+
+	/**
+	 * The counters for one step.
+	 */
+	static final class StepStats {
+		private final String path;
+		private final String step;
+		long evaluations = 0L;
+		long contexts = 0L;
+		long predicates = 0L;
+		long results = 0L;
+		long elapsed = 0L;
+		/** counts the nodes the axis visits */
+		final CountingTest test;
+
+		StepStats(final String path, final String step, final NodeTest test) {
+			this.path = path;
+			this.step = step;
+			this.test = new CountingTest(test);
+		}
+
+		XPathProfile.Step toStep() {
+			return new XPathProfileImpl.StepImpl(path, step, evaluations,
+					contexts, test.visited, predicates, results, elapsed);
+		}
+	}
+
+	/**
+	 * A NodeTest that counts the nodes it is asked about.
+	 */
+	static final class CountingTest extends NodeTest {
+		private final NodeTest test;
+		long visited = 0L;
+
+		CountingTest(final NodeTest test) {
+			this.test = test;
+		}
+
+		@Override
+		boolean matches(final Object node, final int principal) {
+			visited++;
+			return test.matches(node, principal);
+		}
+
+		@Override
+		public String toString() {
+			return test.toString();
+		}
+	}
+
+	private final Map<Step, StepStats> steps = 
+			new IdentityHashMap<Step, StepStats>();
+	private final Map<Step, StepStats> indexed = 
+			new IdentityHashMap<Step, StepStats>();
+	private final List<StepStats> order = new ArrayList<StepStats>();
+
+	/**
+	 * Get the counters for a step, creating them the first time the step is
+	 * run.
+	 * @param path The location path the step belongs to.
+	 * @param step The step.
+	 * @param index true if the step is answered from an XPathIndex.
+	 * @return the counters.
+	 */
+	StepStats get(final LocationPath path, final Step step, final boolean index) {
+		final Map<Step, StepStats> map = index ? indexed : steps;
+		StepStats s = map.get(step);
+		if (s == null) {
+			s = new StepStats(path.toString(), 
+					index ? "index lookup for " + step : step.toString(), 
+					step.test);
+			map.put(step, s);
+			order.add(s);
+		}
+		return s;
+	}
+
+	/**
+	 * Build the profile of the evaluation.
+	 * @param elapsed The total time.
+	 * @param resultsize The number of results.
+	 * @return the profile.
+	 */
+	XPathProfile toProfile(final long elapsed, final int resultsize) {
+		final List<XPathProfile.Step> steps = 
+				new ArrayList<XPathProfile.Step>(order.size());
+		for (StepStats s : order) {
+			steps.add(s.toStep());
+		}
+		return new XPathProfileImpl(elapsed, resultsize, steps);
+	}
+
+}
@@ -0,0 +1,243 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.engine.LocationPath.Step;
+
+/**
+ * A location path reduced to the forward-only form that can be matched
+ * while a document is parsed: a sequence of child or descendant Element
+ * steps with attribute predicates, optionally followed by an attribute step
+ * or a <code>text()</code> step.
+ */
+final class StreamingPlan {
+
+	/** The plan selects Elements */
+	static final int ELEMENTS = 0;
+	/** The plan selects Attributes of the matched Elements */
+	static final int ATTRIBUTES = 1;
+	/** The plan selects the Text children of the matched Elements */
+	static final int TEXT = 2;
+
+	/** The most element steps a plan can have */
+	static final int MAXSTEPS = 63;
+
+	final XPathExpression<?> expression;
+	final int target;
+	private final NodeTest[] tests;
+	private final boolean[] descendant;
+	private final Expr[][] predicates;
+	private final NodeTest attribute;
+	private final EvalContext ec;
+
+	/**
+	 * Reduce an expression to a streaming plan.
+	 * @param expression The expression to stream
+	 * @throws IllegalArgumentException if the expression is not in the
+	 *         streamable subset of XPath.
+	 */
+	StreamingPlan(final XPathExpression<?> expression) {
+		if (!(expression instanceof NativeXPathCompiled)) {
+			throw new IllegalArgumentException("Only expressions compiled by " 
+					+ NativeXPathFactory.class.getName() + " can be streamed");
+		}
+		final NativeXPathCompiled<?> nxp = (NativeXPathCompiled<?>)expression;
+		this.expression = expression;
+		this.ec = new EvalContext(nxp, null);
+		final Expr expr = nxp.getExpr();
+		if (!(expr instanceof LocationPath) 
+				|| ((LocationPath)expr).getFilter() != null
+				|| !((LocationPath)expr).isAbsolute()) {
+			throw notStreamable("only absolute location paths can be streamed");
+		}
+		final Step[] steps = ((LocationPath)expr).getSteps();
+		final List<NodeTest> tlist = new ArrayList<NodeTest>();
+		final List<Boolean> dlist = new ArrayList<Boolean>();
+		final List<Expr[]> plist = new ArrayList<Expr[]>();
+		int tgt = ELEMENTS;
+		NodeTest att = null;
+		boolean pending = false;
+		for (int i = 0; i < steps.length; i++) {
+			final Step s = steps[i];
+			final boolean last = i == steps.length - 1;
+			if (s.axis == Axis.DESCENDANT_OR_SELF && s.test == NodeTest.ANYNODE
+					&& s.predicates.length == 0 && !last) {
+				// the '//' between two steps.
+				pending = true;
+				continue;
+			}
+			if (last && !pending && s.predicates.length == 0
+					&& s.axis == Axis.ATTRIBUTE) {
+				tgt = ATTRIBUTES;
+				att = s.test;
+				break;
+			}
+			if (last && !pending && s.predicates.length == 0
+					&& s.axis == Axis.CHILD && s.test == NodeTest.TEXT) {
+				tgt = TEXT;
+				break;
+			}
+			if (s.axis != Axis.CHILD && s.axis != Axis.DESCENDANT) {
+				throw notStreamable("the " + s.axis.getAxisName() 
+						+ " axis is not supported");
+			}
+			if (!(s.test instanceof NodeTest.NameTest) 
+					&& s.test != NodeTest.ANYNAME) {
+				throw notStreamable("only Element name tests are supported, not "
+						+ s.test);
+			}
+			for (Expr p : s.predicates) {
+				if (!LocationPath.isAttributePredicate(p)) {
+					throw notStreamable("only [@name] and [@name='value'] "
+							+ "predicates are supported, not [" + p + "]");
+				}
+			}
+			tlist.add(s.test);
+			dlist.add(Boolean.valueOf(pending || s.axis == Axis.DESCENDANT));
+			plist.add(s.predicates);
+			pending = false;
+		}
+		if (tlist.isEmpty()) {
+			throw notStreamable("there must be at least one Element step");
+		}
+		if (tlist.size() > MAXSTEPS) {
+			throw notStreamable("there are more than " + MAXSTEPS + " steps");
+		}
+		target = tgt;
+		attribute = att;
+		tests = tlist.toArray(new NodeTest[tlist.size()]);
+		descendant = new boolean[tests.length];
+		for (int i = 0; i < descendant.length; i++) {
+			descendant[i] = dlist.get(i).booleanValue();
+		}
+		predicates = plist.toArray(new Expr[plist.size()][]);
+	}
+
+	private IllegalArgumentException notStreamable(final String why) {
+		return new IllegalArgumentException("The XPath expression '" 
+				+ expression.getExpression() + "' cannot be streamed: " + why);
+	}
+
+	/**
+	 * The match state before any Element has been seen.
+	 * @return the initial state.
+	 */
+	static long initialState() {
+		return 1L;
+	}
+
+	/**
+	 * Calculate the match state of an Element from the state of its parent.
+	 * Bit <code>i</code> of the state is set when the Element and its
+	 * ancestors have matched the first <code>i</code> steps.
+	 * @param parent The state of the parent.
+	 * @param element The Element that has just been started.
+	 * @return The state of the Element.
+	 */
+	long state(final long parent, final Element element) {
+		long state = 0L;
+		for (int i = 0; i < tests.length; i++) {
+			if ((parent & (1L << i)) == 0) {
+				continue;
+			}
+			if (descendant[i]) {
+				// the step can still match further down.
+				state |= 1L << i;
+			}
+			if (matches(i, element)) {
+				state |= 1L << (i + 1);
+			}
+		}
+		return state;
+	}
+
+	private boolean matches(final int step, final Element element) {
+		if (!tests[step].matches(element, Nodes.ELEMENT)) {
+			return false;
+		}
+		for (Expr p : predicates[step]) {
+			if (!p.evaluateBoolean(ec, element, 1, 1)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Has the Element with the given state matched all the Element steps.
+	 * @param state The Element state
+	 * @return true if the element is matched.
+	 */
+	boolean isMatched(final long state) {
+		return (state & (1L << tests.length)) != 0;
+	}
+
+	/**
+	 * Does the attribute step select the given Attribute.
+	 * @param att The attribute to check
+	 * @return true if it is selected.
+	 */
+	boolean isSelected(final Attribute att) {
+		return attribute.matches(att, Nodes.ATTRIBUTE);
+	}
+
+}
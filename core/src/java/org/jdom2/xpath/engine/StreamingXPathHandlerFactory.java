@@ -0,0 +1,397 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.JDOMFactory;
+import org.jdom2.Text;
+import org.jdom2.input.sax.SAXHandler;
+import org.jdom2.input.sax.SAXHandlerFactory;
+import org.jdom2.internal.ArrayCopy;
+import org.jdom2.xpath.XPathExpression;
+
+/**
+ * A SAXHandlerFactory that evaluates XPath expressions while the document is
+ * being parsed, and discards the parts of the document that are not needed
+ * by any of the results.
+ * <p>
+ * Use it with a {@link org.jdom2.input.SAXBuilder}:
+ * <pre>
+ * XPathFactory xpf = new NativeXPathFactory();
+ * XPathExpression&lt;Element&gt; items = xpf.compile("//order/item[@status='open']", Filters.element());
+ * StreamingXPathHandlerFactory shf = new StreamingXPathHandlerFactory(listener, items);
+ * SAXBuilder builder = new SAXBuilder(null, shf, null);
+ * builder.build(input);
+ * </pre>
+ * Each result is passed to the {@link XPathMatchListener} as soon as it is
+ * complete: Attributes when the start tag of their Element is parsed, and
+ * Elements and Text when the end tag of the (parent) Element is parsed.
+ * Each matched Element is reported as a complete subtree. Unless it is
+ * inside another matched Element it is detached from the document before it
+ * is reported. A match nested inside another match (of the same or of
+ * another expression) is reported while it is still attached to the
+ * enclosing match, and remains part of that result. Everything that is not
+ * part of a result (including EntityRefs, when entities are not expanded)
+ * is pruned as it is parsed, and the Document returned by the builder is
+ * just the (empty) root Element.
+ * <p>
+ * Only the forward-only subset of XPath can be streamed. An expression must
+ * be compiled by {@link NativeXPathFactory}, and must be an absolute location
+ * path made of:
+ * <ul>
+ * <li>child (<code>/name</code>) or descendant (<code>//name</code>) steps
+ *     that select Elements by name or with <code>*</code>;
+ * <li>where each step may have predicates of the form <code>[@name]</code>
+ *     or <code>[@name='value']</code>;
+ * <li>optionally followed by a final attribute step (<code>/@name</code>
+ *     or <code>/@*</code>) or a final <code>/text()</code> step.
+ * </ul>
+ * Anything else is rejected with an IllegalArgumentException when the
+ * factory is created.
+ * <p>
+ * A factory may be used for many parses, but, like SAXBuilder, it is not
+ * safe to use the same instance for concurrent parses.
+ * 
+ * @since JDOM 2.1
+ */
+public final class StreamingXPathHandlerFactory implements SAXHandlerFactory {
+
+	private final XPathMatchListener listener;
+	private final StreamingPlan[] plans;
+
+	/**
+	 * Create a factory for handlers that stream the given expressions.
+	 * @param listener The listener to notify of the results.
+	 * @param expressions The expressions to evaluate.
+	 * @throws NullPointerException if the listener or an expression is null.
+	 * @throws IllegalArgumentException if there are no expressions, or an
+	 *         expression cannot be streamed.
+	 */
+	public StreamingXPathHandlerFactory(final XPathMatchListener listener,
+			final XPathExpression<?>... expressions) {
+		if (listener == null) {
+			throw new NullPointerException("Null listener");
+		}
+		if (expressions == null || expressions.length == 0) {
+			throw new IllegalArgumentException(
+					"At least one expression is required");
+		}
+		this.listener = listener;
+		this.plans = new StreamingPlan[expressions.length];
+		for (int i = 0; i < expressions.length; i++) {
+			if (expressions[i] == null) {
+				throw new NullPointerException("Null expression at index " + i);
+			}
+			plans[i] = new StreamingPlan(expressions[i]);
+		}
+	}
+
+	/**
+	 * Get the expressions this factory streams.
+	 * @return the expressions, in the order they were supplied.
+	 */
+	public List<XPathExpression<?>> getExpressions() {
+		final List<XPathExpression<?>> ret = 
+				new ArrayList<XPathExpression<?>>(plans.length);
+		for (StreamingPlan p : plans) {
+			ret.add(p.expression);
+		}
+		return ret;
+	}
+
+	@Override
+	public SAXHandler createSAXHandler(final JDOMFactory factory) {
+		return new StreamingSAXHandler(factory, listener, plans);
+	}
+
+	/**
+	 * The SAXHandler that tracks the match state of each open Element and
+	 * prunes the content no result needs.
+	 */
+	private static final class StreamingSAXHandler extends SAXHandler {
+
+		private final XPathMatchListener listener;
+		private final StreamingPlan[] plans;
+
+		/** The open Elements, elements[0] is the root */
+		private Element[] elements = new Element[16];
+		/** The plan states of the open Elements, states[0] is the Document */
+		private long[][] states = new long[17][];
+		/** Is the Element (or an ancestor) a result that must be kept whole */
+		private boolean[] retain = new boolean[17];
+		/** Are the Text children of the Element a result */
+		private boolean[] keepText = new boolean[17];
+		/** The number of open Elements */
+		private int depth = 0;
+		/** Elements started while SAXHandler suppresses content */
+		private int suppressed = 0;
+
+		public StreamingSAXHandler(final JDOMFactory factory,
+				final XPathMatchListener listener, final StreamingPlan[] plans) {
+			super(factory);
+			this.listener = listener;
+			this.plans = plans;
+			init();
+		}
+
+		private void init() {
+			if (plans == null) {
+				// called from the SAXHandler constructor, we init() later.
+				return;
+			}
+			final long[] docstate = new long[plans.length];
+			Arrays.fill(docstate, StreamingPlan.initialState());
+			states[0] = docstate;
+			retain[0] = false;
+			keepText[0] = false;
+			Arrays.fill(elements, null);
+			depth = 0;
+			suppressed = 0;
+		}
+
+		@Override
+		protected void resetSubCLass() {
+			init();
+		}
+
+		private void deliver(final StreamingPlan plan, final Object value) {
+			final Object v = plan.expression.getFilter().filter(value);
+			if (v != null) {
+				listener.matched(plan.expression, v);
+			}
+		}
+
+		/**
+		 * Is content added to the current Element kept.
+		 */
+		private boolean keepContent() {
+			return depth == 0 || retain[depth] || keepText[depth];
+		}
+
+		@Override
+		public void startElement(final String namespaceURI,
+				final String localName, final String qName,
+				final Attributes atts) throws SAXException {
+			final Element before = depth == 0 ? null : elements[depth - 1];
+			super.startElement(namespaceURI, localName, qName, atts);
+			final Element element = depth == 0 
+					? (getDocument().hasRootElement() 
+							? getDocument().getRootElement() : null)
+					: getCurrentElement();
+			if (element == null || element == before) {
+				// SAXHandler did not build it.
+				suppressed++;
+				return;
+			}
+			if (depth == elements.length) {
+				final int len = depth * 2;
+				elements = ArrayCopy.copyOf(elements, len);
+				states = ArrayCopy.copyOf(states, len + 1);
+				retain = ArrayCopy.copyOf(retain, len + 1);
+				keepText = ArrayCopy.copyOf(keepText, len + 1);
+			}
+			final long[] parent = states[depth];
+			long[] state = states[depth + 1];
+			if (state == null) {
+				state = new long[plans.length];
+				states[depth + 1] = state;
+			}
+			boolean hold = retain[depth];
+			boolean text = false;
+			for (int i = 0; i < plans.length; i++) {
+				final StreamingPlan plan = plans[i];
+				state[i] = parent[i] == 0L ? 0L : plan.state(parent[i], element);
+				if (!plan.isMatched(state[i])) {
+					continue;
+				}
+				switch (plan.target) {
+					case StreamingPlan.ELEMENTS:
+						hold = true;
+						break;
+					case StreamingPlan.TEXT:
+						text = true;
+						break;
+					default:
+						if (element.hasAttributes()) {
+							for (Attribute a : element.getAttributes()) {
+								if (plan.isSelected(a)) {
+									deliver(plan, a);
+								}
+							}
+						}
+				}
+			}
+			elements[depth] = element;
+			depth++;
+			retain[depth] = hold;
+			keepText[depth] = text;
+		}
+
+		@Override
+		public void endElement(final String namespaceURI,
+				final String localName, final String qName)
+				throws SAXException {
+			if (suppressed > 0) {
+				suppressed--;
+				super.endElement(namespaceURI, localName, qName);
+				return;
+			}
+			super.endElement(namespaceURI, localName, qName);
+			if (depth == 0) {
+				return;
+			}
+			final Element element = elements[--depth];
+			elements[depth] = null;
+			final long[] state = states[depth + 1];
+			final boolean detach = depth > 0 && !retain[depth];
+			if (detach) {
+				// the result is a stand-alone subtree, and the parent
+				// does not need it.
+				element.detach();
+			}
+			for (int i = 0; i < plans.length; i++) {
+				final StreamingPlan plan = plans[i];
+				if (!plan.isMatched(state[i])) {
+					continue;
+				}
+				if (plan.target == StreamingPlan.ELEMENTS) {
+					deliver(plan, element);
+				} else if (plan.target == StreamingPlan.TEXT) {
+					for (Content c : element.getContent()) {
+						if (c instanceof Text) {
+							deliver(plan, c);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Remove the content SAXHandler just added to the current Element if
+		 * it is not needed.
+		 */
+		private void prune(final int before) throws SAXException {
+			if (keepContent()) {
+				return;
+			}
+			final Element current = getCurrentElement();
+			for (int i = current.getContentSize() - 1; i >= before; i--) {
+				current.removeContent(i);
+			}
+		}
+
+		private int contentSize() throws SAXException {
+			return keepContent() ? 0 : getCurrentElement().getContentSize();
+		}
+
+		@Override
+		protected void flushCharacters(final String data) throws SAXException {
+			if (suppressed > 0) {
+				super.flushCharacters(data);
+				return;
+			}
+			final int before = contentSize();
+			super.flushCharacters(data);
+			prune(before);
+		}
+
+		@Override
+		public void comment(final char[] ch, final int start, final int length)
+				throws SAXException {
+			if (suppressed > 0) {
+				super.comment(ch, start, length);
+				return;
+			}
+			final int before = contentSize();
+			super.comment(ch, start, length);
+			prune(before);
+		}
+
+		@Override
+		public void startEntity(final String name) throws SAXException {
+			if (suppressed > 0) {
+				super.startEntity(name);
+				return;
+			}
+			final int before = contentSize();
+			super.startEntity(name);
+			prune(before);
+		}
+
+		@Override
+		public void processingInstruction(final String target,
+				final String data) throws SAXException {
+			if (suppressed > 0) {
+				super.processingInstruction(target, data);
+				return;
+			}
+			final int before = contentSize();
+			super.processingInstruction(target, data);
+			prune(before);
+		}
+
+	}
+
+}
@@ -0,0 +1,429 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Parent;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.engine.LocationPath.Step;
+
+/**
+ * Evaluate many XPath expressions against the same context in a shared
+ * evaluation plan.
+ * <p>
+ * The location paths of expressions compiled by the
+ * {@link NativeXPathFactory} are merged in to a tree of location steps, so a
+ * common prefix like <code>/feed/entry</code> is evaluated only once for all
+ * the expressions that start with it. At each point in the plan, all the
+ * child and descendant steps that follow it are evaluated in a single walk
+ * of the content, so <code>//title</code>, <code>//link</code> and
+ * <code>//author/name</code> together cost one traversal of the document
+ * rather than three.
+ * <p>
+ * Expressions that are not plain location paths (functions, unions, filter
+ * expressions), and expressions compiled by other XPathFactory
+ * implementations, are still supported, but are evaluated on their own.
+ * <p>
+ * The results are exactly those that {@link XPathExpression#evaluate(Object)}
+ * would return for each expression, using the variable values set on each
+ * expression. An XPathBatch is immutable once built, and may be evaluated
+ * from many threads at the same time.
+ * <p>
+ * <pre>
+ * XPathFactory xpf = new NativeXPathFactory();
+ * XPathExpression&lt;Element&gt; titles = xpf.compile("/feed/entry/title", Filters.element());
+ * XPathExpression&lt;Attribute&gt; links = xpf.compile("/feed/entry/link/@href", Filters.attribute());
+ * XPathBatch batch = new XPathBatch(titles, links);
+ * XPathBatch.Results results = batch.evaluate(doc);
+ * List&lt;Element&gt; t = results.get(titles);
+ * List&lt;Attribute&gt; l = results.get(links);
+ * </pre>
+ * 
+ * @since JDOM 2.1
+ */
+public final class XPathBatch {
+
+	/**
+	 * The results from evaluating an XPathBatch.
+	 */
+	public static final class Results {
+		private final List<XPathExpression<?>> expressions;
+		private final List<?>[] results;
+
+		private Results(final List<XPathExpression<?>> expressions,
+				final List<?>[] results) {
+			this.expressions = expressions;
+			this.results = results;
+		}
+
+		/**
+		 * The number of expressions (and results).
+		 * @return the number of expressions in the batch.
+		 */
+		public int size() {
+			return results.length;
+		}
+
+		/**
+		 * Get the results of the expression at the given index in the batch.
+		 * @param index The index of the expression in the batch.
+		 * @return The results for that expression.
+		 * @throws IndexOutOfBoundsException if there is no such expression.
+		 */
+		public List<?> get(final int index) {
+			return results[index];
+		}
+
+		/**
+		 * Get the results of an expression in the batch.
+		 * @param <T> The generic type of the results.
+		 * @param expression The expression (the same instance as was used to
+		 *        build the batch).
+		 * @return The results for that expression.
+		 * @throws IllegalArgumentException if the expression is not in the
+		 *         batch.
+		 */
+		@SuppressWarnings("unchecked")
+		public <T> List<T> get(final XPathExpression<T> expression) {
+			for (int i = 0; i < results.length; i++) {
+				if (expressions.get(i) == expression) {
+					return (List<T>)results[i];
+				}
+			}
+			throw new IllegalArgumentException(
+					"The expression is not part of this batch: " + expression);
+		}
+	}
+
+	/**
+	 * A point in the shared plan: the nodes selected by a sequence of steps.
+	 */
+	private static final class PlanNode {
+		/** The step that leads here (null at the start of the plan) */
+		final Step step;
+		/** The expression whose variables the step's predicates use */
+		final NativeXPathCompiled<?> owner;
+		final Map<String, PlanNode> shared = new LinkedHashMap<String, PlanNode>();
+		final List<PlanNode> children = new ArrayList<PlanNode>();
+		/** The indexes of the expressions that end here */
+		final List<Integer> terminals = new ArrayList<Integer>();
+
+		PlanNode(final Step step, final NativeXPathCompiled<?> owner) {
+			this.step = step;
+			this.owner = owner;
+		}
+
+		PlanNode child(final Step s, final NativeXPathCompiled<?> xp) {
+			final String key = s.key();
+			if (key != null) {
+				PlanNode pn = shared.get(key);
+				if (pn == null) {
+					pn = new PlanNode(s, xp);
+					shared.put(key, pn);
+					children.add(pn);
+				}
+				return pn;
+			}
+			final PlanNode pn = new PlanNode(s, xp);
+			children.add(pn);
+			return pn;
+		}
+	}
+
+	private final List<XPathExpression<?>> expressions;
+	private final PlanNode absolute = new PlanNode(null, null);
+	private final PlanNode relative = new PlanNode(null, null);
+	/** true for the expressions that are part of the shared plan */
+	private final boolean[] planned;
+
+	/**
+	 * Build a batch from the given expressions.
+	 * @param expressions The expressions to evaluate together.
+	 * @throws NullPointerException if any expression is null.
+	 */
+	public XPathBatch(final XPathExpression<?>... expressions) {
+		this(Arrays.asList(expressions));
+	}
+
+	/**
+	 * Build a batch from the given expressions.
+	 * @param expressions The expressions to evaluate together.
+	 * @throws NullPointerException if any expression is null.
+	 */
+	public XPathBatch(final Collection<? extends XPathExpression<?>> expressions) {
+		this.expressions = Collections.unmodifiableList(
+				new ArrayList<XPathExpression<?>>(expressions));
+		planned = new boolean[this.expressions.size()];
+		for (int i = 0; i < planned.length; i++) {
+			final XPathExpression<?> xp = this.expressions.get(i);
+			if (xp == null) {
+				throw new NullPointerException("Null expression at index " + i);
+			}
+			planned[i] = plan(xp, i);
+		}
+	}
+
+	/**
+	 * Add an expression to the shared plan.
+	 * @return false if the expression cannot be part of the plan.
+	 */
+	private boolean plan(final XPathExpression<?> xp, final int index) {
+		if (!(xp instanceof NativeXPathCompiled)) {
+			return false;
+		}
+		final NativeXPathCompiled<?> nxp = (NativeXPathCompiled<?>)xp;
+		if (!(nxp.getExpr() instanceof LocationPath)) {
+			return false;
+		}
+		final LocationPath lp = (LocationPath)nxp.getExpr();
+		if (lp.getFilter() != null) {
+			return false;
+		}
+		PlanNode pn = lp.isAbsolute() ? absolute : relative;
+		for (Step s : lp.getSteps()) {
+			pn = pn.child(s, nxp);
+		}
+		pn.terminals.add(Integer.valueOf(index));
+		return true;
+	}
+
+	/**
+	 * The expressions in this batch.
+	 * @return the expressions, in the order they were supplied.
+	 */
+	public List<XPathExpression<?>> getExpressions() {
+		return expressions;
+	}
+
+	/**
+	 * Evaluate all the expressions against the given context.
+	 * @param context The context to evaluate against.
+	 * @return The results for each expression.
+	 * @throws NullPointerException if the context is null.
+	 * @throws IllegalStateException if an expression cannot be evaluated
+	 *         against the context.
+	 */
+	public Results evaluate(final Object context) {
+		if (context == null) {
+			throw new NullPointerException("Null context");
+		}
+		final List<?>[] raw = new List<?>[expressions.size()];
+		if (context instanceof List) {
+			// multiple context nodes are not planned.
+			for (int i = 0; i < raw.length; i++) {
+				raw[i] = expressions.get(i).evaluate(context);
+			}
+			return new Results(expressions, raw);
+		}
+		if (!Nodes.isNode(context)) {
+			throw new IllegalArgumentException(
+					"Unable to evaluate XPath against context " + context);
+		}
+		for (int i = 0; i < raw.length; i++) {
+			if (!planned[i]) {
+				raw[i] = expressions.get(i).evaluate(context);
+			}
+		}
+		final Object node = Nodes.wrap(context);
+		final Map<NativeXPathCompiled<?>, EvalContext> ecs = 
+				new IdentityHashMap<NativeXPathCompiled<?>, EvalContext>();
+		run(absolute, single(Nodes.getRoot(node)), true, raw, ecs);
+		run(relative, single(node), true, raw, ecs);
+		for (int i = 0; i < raw.length; i++) {
+			if (!planned[i]) {
+				continue;
+			}
+			final List<?> nodes = raw[i];
+			final List<Object> unwrapped = new ArrayList<Object>(nodes.size());
+			for (Object o : nodes) {
+				unwrapped.add(Nodes.unwrap(o));
+			}
+			raw[i] = expressions.get(i).getFilter().filter(unwrapped);
+		}
+		return new Results(expressions, raw);
+	}
+
+	private static List<Object> single(final Object node) {
+		final List<Object> ret = new ArrayList<Object>(1);
+		ret.add(node);
+		return ret;
+	}
+
+	private static EvalContext context(final NativeXPathCompiled<?> xp,
+			final Map<NativeXPathCompiled<?>, EvalContext> ecs) {
+		EvalContext ec = ecs.get(xp);
+		if (ec == null) {
+			ec = new EvalContext(xp, null);
+			ecs.put(xp, ec);
+		}
+		return ec;
+	}
+
+	private static boolean isWalked(final Axis axis) {
+		return axis == Axis.CHILD || axis == Axis.DESCENDANT 
+				|| axis == Axis.DESCENDANT_OR_SELF;
+	}
+
+	/**
+	 * Evaluate the plan from a point where the nodes are known.
+	 */
+	private static void run(final PlanNode pn, final List<Object> nodes,
+			final boolean flat, final List<?>[] raw,
+			final Map<NativeXPathCompiled<?>, EvalContext> ecs) {
+		for (Integer t : pn.terminals) {
+			raw[t.intValue()] = nodes;
+		}
+		final int cnt = pn.children.size();
+		if (cnt == 0) {
+			return;
+		}
+		final PlanNode[] kids = pn.children.toArray(new PlanNode[cnt]);
+		@SuppressWarnings("unchecked")
+		final List<Object>[] out = new List[cnt];
+		for (int k = 0; k < cnt; k++) {
+			out[k] = new ArrayList<Object>();
+		}
+		if (!nodes.isEmpty()) {
+			// the child and descendant steps share one walk of each node.
+			int walked = 0;
+			boolean deep = false;
+			for (PlanNode k : kids) {
+				if (isWalked(k.step.axis)) {
+					walked++;
+					deep |= k.step.axis != Axis.CHILD;
+				}
+			}
+			final int[] walkers = new int[walked];
+			for (int k = 0, w = 0; k < cnt; k++) {
+				if (isWalked(kids[k].step.axis)) {
+					walkers[w++] = k;
+				}
+			}
+			@SuppressWarnings("unchecked")
+			final List<Object>[] found = new List[cnt];
+			for (Object n : nodes) {
+				for (int w : walkers) {
+					found[w] = new ArrayList<Object>();
+					if (kids[w].step.axis == Axis.DESCENDANT_OR_SELF 
+							&& kids[w].step.test.matches(n, Nodes.ELEMENT)) {
+						found[w].add(n);
+					}
+				}
+				if (walked > 0 && n instanceof Parent) {
+					walk((Parent)n, 1, deep, kids, walkers, found);
+				}
+				for (int k = 0; k < cnt; k++) {
+					final Step s = kids[k].step;
+					if (isWalked(s.axis)) {
+						List<Object> sel = found[k];
+						for (Expr p : s.predicates) {
+							if (sel.isEmpty()) {
+								break;
+							}
+							sel = LocationPath.filter(
+									context(kids[k].owner, ecs), sel, p);
+						}
+						out[k].addAll(sel);
+					} else {
+						s.select(context(kids[k].owner, ecs), n, out[k]);
+					}
+				}
+			}
+		}
+		final int inputs = nodes.size();
+		for (int k = 0; k < cnt; k++) {
+			final Axis axis = kids[k].step.axis;
+			run(kids[k], inputs == 0 ? out[k] 
+					: LocationPath.order(axis, out[k], inputs, flat),
+					LocationPath.isFlat(axis, inputs, flat), raw, ecs);
+		}
+	}
+
+	/**
+	 * One walk of the content of a Parent, testing every node against all
+	 * the child and descendant steps.
+	 */
+	private static void walk(final Parent parent, final int depth,
+			final boolean deep, final PlanNode[] kids, final int[] walkers,
+			final List<Object>[] found) {
+		final int sz = parent.getContentSize();
+		for (int i = 0; i < sz; i++) {
+			final Content c = parent.getContent(i);
+			for (int w : walkers) {
+				final Step s = kids[w].step;
+				if ((depth == 1 || s.axis != Axis.CHILD) 
+						&& s.test.matches(c, Nodes.ELEMENT)) {
+					found[w].add(c);
+				}
+			}
+			if (deep && c instanceof Element 
+					&& ((Element)c).getContentSize() > 0) {
+				walk((Element)c, depth + 1, deep, kids, walkers, found);
+			}
+		}
+	}
+
+}
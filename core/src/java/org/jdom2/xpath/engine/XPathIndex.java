@@ -0,0 +1,375 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+
+/**
+ * An opt-in index of the Elements in a Document, used by the
+ * {@link NativeXPathFactory} expressions to answer descendant queries in
+ * time proportional to the number of matches rather than the size of the
+ * Document.
+ * <p>
+ * The index maps each Element name to the Elements with that name, and for
+ * selected attribute names, each attribute value to the Elements with that
+ * value, all in document order. Once an index is installed on a Document,
+ * absolute expressions that start with a descendant step selecting Elements
+ * by name, or by an indexed attribute value, use it. For example, with an
+ * index on the <code>id</code> attribute:
+ * <pre>
+ * XPathIndex.install(doc, "id");
+ * XPathExpression&lt;Element&gt; xp = new NativeXPathFactory().compile(
+ *         "//order[@id='123']/item", Filters.element());
+ * List&lt;Element&gt; items = xp.evaluate(doc);
+ * </pre>
+ * The index is tied to the Document's root Element
+ * {@link Element#getModificationStamp() modification stamp}: the first
+ * query after any change to the Document rebuilds the index, and queries
+ * against an unchanged (frozen) Document always reuse it. Interleaving
+ * many small modifications with indexed queries is therefore slower than
+ * no index at all.
+ * <p>
+ * The index is stored as a property of the Document (see
+ * {@link Document#setProperty(String, Object)}). The index can be used by
+ * concurrent queries, but, as with all JDOM content, the Document must not
+ * be modified while it is being queried.
+ * 
+ * @since JDOM 2.1
+ */
+public final class XPathIndex {
+
+	/** The Document property the index is stored in */
+	private static final String PROPERTY = XPathIndex.class.getName();
+
+	/**
+	 * Create an index for the Document and install it so that XPath
+	 * expressions use it. Any previous index on the Document is replaced.
+	 * <p>
+	 * The attribute names to index values for are either a plain name for
+	 * attributes in no namespace, or <code>{uri}name</code> for attributes
+	 * in a namespace (the same notation as
+	 * {@link javax.xml.namespace.QName#toString()}).
+	 * 
+	 * @param document The Document to index.
+	 * @param attributes The names of the attributes to index the values of.
+	 * @return The installed index.
+	 * @throws NullPointerException if the document is null.
+	 * @throws IllegalArgumentException if an attribute name is not valid.
+	 */
+	public static XPathIndex install(final Document document,
+			final String... attributes) {
+		if (document == null) {
+			throw new NullPointerException("Cannot index a null Document");
+		}
+		final XPathIndex index = new XPathIndex(document, attributes);
+		document.setProperty(PROPERTY, index);
+		return index;
+	}
+
+	/**
+	 * Get the index installed on a Document.
+	 * @param document The Document to check.
+	 * @return The index, or null if there is none.
+	 */
+	public static XPathIndex getIndex(final Document document) {
+		final Object index = document.getProperty(PROPERTY);
+		// cloned Documents share their properties, check it is ours.
+		if (index instanceof XPathIndex 
+				&& ((XPathIndex)index).document == document) {
+			return (XPathIndex)index;
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the index from a Document, so that XPath expressions traverse
+	 * the Document again.
+	 * @param document The Document to remove the index from.
+	 * @return true if there was an index to remove.
+	 */
+	public static boolean remove(final Document document) {
+		if (getIndex(document) == null) {
+			return false;
+		}
+		document.setProperty(PROPERTY, null);
+		return true;
+	}
+
+	/**
+	 * The index data for one version of the Document.
+	 */
+	private static final class Snapshot {
+		private final Element root;
+		private final int stamp;
+		/** uri -> name -> Elements */
+		private final Map<String, Map<String, List<Element>>> names =
+				new HashMap<String, Map<String, List<Element>>>();
+		/** attribute key -> value -> Elements */
+		private final Map<String, Map<String, List<Element>>> values =
+				new HashMap<String, Map<String, List<Element>>>();
+
+		Snapshot(final Document document, final String[] attributes) {
+			root = document.hasRootElement() ? document.getRootElement() : null;
+			stamp = root == null ? 0 : root.getModificationStamp();
+			for (String key : attributes) {
+				values.put(key, new HashMap<String, List<Element>>());
+			}
+			if (root == null) {
+				return;
+			}
+			for (Element e : document.getDescendants(Filters.element())) {
+				add(names, e.getNamespaceURI(), e.getName(), e);
+				if (attributes.length == 0 || !e.hasAttributes()) {
+					continue;
+				}
+				for (Attribute a : e.getAttributes()) {
+					final Map<String, List<Element>> vals = 
+							values.get(key(a.getNamespaceURI(), a.getName()));
+					if (vals != null) {
+						add(vals, a.getValue(), e);
+					}
+				}
+			}
+		}
+
+		private static void add(final Map<String, Map<String, List<Element>>> map,
+				final String first, final String second, final Element e) {
+			Map<String, List<Element>> inner = map.get(first);
+			if (inner == null) {
+				inner = new HashMap<String, List<Element>>();
+				map.put(first, inner);
+			}
+			add(inner, second, e);
+		}
+
+		private static void add(final Map<String, List<Element>> map,
+				final String key, final Element e) {
+			List<Element> list = map.get(key);
+			if (list == null) {
+				list = new ArrayList<Element>(4);
+				map.put(key, list);
+			}
+			list.add(e);
+		}
+
+		boolean isCurrent(final Document document) {
+			if (root == null) {
+				return !document.hasRootElement();
+			}
+			return document.hasRootElement() 
+					&& document.getRootElement() == root
+					&& root.getModificationStamp() == stamp;
+		}
+	}
+
+	private static String key(final String uri, final String name) {
+		return uri.length() == 0 ? name : "{" + uri + "}" + name;
+	}
+
+	private final Document document;
+	private final String[] attributes;
+	private Snapshot snapshot = null;
+
+	private XPathIndex(final Document document, final String[] attributes) {
+		this.document = document;
+		this.attributes = new String[attributes == null ? 0 : attributes.length];
+		for (int i = 0; i < this.attributes.length; i++) {
+			this.attributes[i] = checkName(attributes[i]);
+		}
+	}
+
+	private static String checkName(final String att) {
+		if (att == null) {
+			throw new IllegalArgumentException(
+					"Null attribute names cannot be indexed");
+		}
+		if (att.startsWith("{")) {
+			final int close = att.indexOf('}');
+			if (close < 0 || close == att.length() - 1) {
+				throw new IllegalArgumentException("The attribute name '" 
+						+ att + "' is not in {uri}name notation");
+			}
+			// normalise the no-namespace form.
+			return key(att.substring(1, close), att.substring(close + 1));
+		}
+		if (att.length() == 0 || att.indexOf('}') >= 0) {
+			throw new IllegalArgumentException("The attribute name '" 
+					+ att + "' is not valid");
+		}
+		return att;
+	}
+
+	/**
+	 * Get the index data, rebuilding it if the Document has changed.
+	 */
+	private synchronized Snapshot current() {
+		if (snapshot == null || !snapshot.isCurrent(document)) {
+			snapshot = new Snapshot(document, attributes);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * The Document this index is for.
+	 * @return the indexed Document.
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * The attributes that have their values indexed.
+	 * @return the attribute names, in <code>{uri}name</code> notation for
+	 *         attributes in a namespace.
+	 */
+	public List<String> getIndexedAttributes() {
+		final List<String> ret = new ArrayList<String>(attributes.length);
+		Collections.addAll(ret, attributes);
+		return Collections.unmodifiableList(ret);
+	}
+
+	/**
+	 * Get all the Elements with the given name in the Document.
+	 * @param name The Element name.
+	 * @param namespace The Element Namespace (null is the same as 
+	 *        {@link Namespace#NO_NAMESPACE}).
+	 * @return The matching Elements in document order (the list is
+	 *         unmodifiable).
+	 */
+	public List<Element> getElements(final String name, 
+			final Namespace namespace) {
+		return unmodifiable(getElements(
+				namespace == null ? "" : namespace.getURI(), name));
+	}
+
+	/**
+	 * Get all the Elements with the given value for an indexed attribute.
+	 * @param name The attribute name, as it was given when the index was
+	 *        installed.
+	 * @param value The attribute value.
+	 * @return The matching Elements in document order (the list is
+	 *         unmodifiable).
+	 * @throws IllegalArgumentException if the attribute is not indexed.
+	 */
+	public List<Element> getElementsByAttribute(final String name, 
+			final String value) {
+		final String key = checkName(name);
+		final List<Element> ret = lookup(key, value);
+		if (ret == null) {
+			throw new IllegalArgumentException("The attribute '" + name 
+					+ "' is not indexed");
+		}
+		return unmodifiable(ret);
+	}
+
+	private static List<Element> unmodifiable(final List<Element> list) {
+		if (list.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Get the Elements with the given name.
+	 * @param uri The namespace URI
+	 * @param name The local name
+	 * @return the (shared) list of Elements, never null.
+	 */
+	List<Element> getElements(final String uri, final String name) {
+		final Map<String, List<Element>> byname = current().names.get(uri);
+		final List<Element> ret = byname == null ? null : byname.get(name);
+		if (ret == null) {
+			return Collections.emptyList();
+		}
+		return ret;
+	}
+
+	/**
+	 * Get the Elements with the given attribute value.
+	 * @param uri The attribute namespace URI
+	 * @param name The attribute local name
+	 * @param value The attribute value
+	 * @return the (shared) list of Elements, or null if the attribute is not
+	 *         indexed.
+	 */
+	List<Element> getElementsByAttribute(final String uri, final String name,
+			final String value) {
+		return lookup(key(uri, name), value);
+	}
+
+	private List<Element> lookup(final String key, final String value) {
+		final Map<String, List<Element>> vals = current().values.get(key);
+		if (vals == null) {
+			return null;
+		}
+		final List<Element> ret = vals.get(value);
+		if (ret == null) {
+			return Collections.emptyList();
+		}
+		return ret;
+	}
+
+}
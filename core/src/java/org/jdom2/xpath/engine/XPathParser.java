@@ -0,0 +1,726 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jdom2.Namespace;
+import org.jdom2.xpath.engine.LocationPath.Step;
+import org.jdom2.xpath.util.AbstractXPathCompiled;
+
+/**
+ * Compile an XPath 1.0 expression in to an {@link Expr} tree. This is a
+ * simple recursive-descent parser over the XPath 1.0 grammar, with the
+ * lexical disambiguation rules from section 3.7 of the specification applied
+ * in the tokenizer.
+ */
+final class XPathParser {
+
+	/* Token types */
+	private static final int EOF = 0;
+	private static final int LPAREN = 1;
+	private static final int RPAREN = 2;
+	private static final int LBRACKET = 3;
+	private static final int RBRACKET = 4;
+	private static final int DOT = 5;
+	private static final int DOTDOT = 6;
+	private static final int AT = 7;
+	private static final int COMMA = 8;
+	private static final int COLONCOLON = 9;
+	private static final int SLASH = 10;
+	private static final int DSLASH = 11;
+	private static final int PIPE = 12;
+	private static final int PLUS = 13;
+	private static final int MINUS = 14;
+	private static final int EQ = 15;
+	private static final int NE = 16;
+	private static final int LT = 17;
+	private static final int LE = 18;
+	private static final int GT = 19;
+	private static final int GE = 20;
+	private static final int MULTIPLY = 21;
+	private static final int AND = 22;
+	private static final int OR = 23;
+	private static final int MOD = 24;
+	private static final int DIV = 25;
+	/** a name test '*' */
+	private static final int STAR = 26;
+	/** NCName, QName or prefix:* */
+	private static final int NAME = 27;
+	private static final int LITERAL = 28;
+	private static final int NUMBER = 29;
+	/** $QName, the text excludes the $ */
+	private static final int VARIABLE = 30;
+
+	private final String expression;
+	private final AbstractXPathCompiled<?> scope;
+	private final List<Integer> types = new ArrayList<Integer>();
+	private final List<String> texts = new ArrayList<String>();
+	private final List<Integer> offsets = new ArrayList<Integer>();
+	private int cursor = 0;
+
+	/**
+	 * Prepare to parse an expression.
+	 * @param expression The expression to parse.
+	 * @param scope The compiled expression, which supplies the namespace
+	 *        prefixes.
+	 */
+	XPathParser(final String expression, final AbstractXPathCompiled<?> scope) {
+		this.expression = expression;
+		this.scope = scope;
+	}
+
+	/**
+	 * Parse the expression.
+	 * @return the compiled Expr.
+	 * @throws IllegalArgumentException if the expression is not valid.
+	 */
+	Expr parse() {
+		try {
+			tokenize();
+			final Expr expr = parseOr();
+			if (type() != EOF) {
+				throw error("Unexpected '" + text() + "'");
+			}
+			return expr;
+		} catch (IllegalArgumentException e) {
+			if (e.getMessage() != null 
+					&& e.getMessage().startsWith("Unable to compile")) {
+				throw e;
+			}
+			throw error(e.getMessage());
+		}
+	}
+
+	private IllegalArgumentException error(final String msg) {
+		final int pos = cursor < offsets.size() ? offsets.get(cursor).intValue()
+				: expression.length();
+		return new IllegalArgumentException("Unable to compile XPath expression '"
+				+ expression + "' at position " + pos + ": " + msg);
+	}
+
+	/*
+	 * =====================================================================
+	 * Tokenizer
+	 * =====================================================================
+	 */
+
+	private void add(final int type, final String text, final int offset) {
+		types.add(Integer.valueOf(type));
+		texts.add(text);
+		offsets.add(Integer.valueOf(offset));
+	}
+
+	/**
+	 * XPath 3.7: if there is a preceding token and it is not one of @, ::,
+	 * (, [, , or an Operator, then * is the multiply operator and an NCName
+	 * is an operator name.
+	 */
+	private boolean isOperatorContext() {
+		if (types.isEmpty()) {
+			return false;
+		}
+		final int prev = types.get(types.size() - 1).intValue();
+		switch (prev) {
+			case AT:
+			case COLONCOLON:
+			case LPAREN:
+			case LBRACKET:
+			case COMMA:
+				return false;
+			default:
+				return prev < SLASH || prev > DIV;
+		}
+	}
+
+	private static boolean isNameStart(final char c) {
+		return Character.isLetter(c) || c == '_';
+	}
+
+	private static boolean isNameChar(final char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.'
+				|| (c > 0x7f && !Character.isWhitespace(c) 
+						&& Character.getType(c) != Character.OTHER_PUNCTUATION);
+	}
+
+	private int scanNCName(final int start) {
+		int i = start + 1;
+		while (i < expression.length() && isNameChar(expression.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private void tokenize() {
+		final String s = expression;
+		final int len = s.length();
+		int i = 0;
+		while (i < len) {
+			final char c = s.charAt(i);
+			final int start = i;
+			switch (c) {
+				case ' ':
+				case '\t':
+				case '\r':
+				case '\n':
+					i++;
+					continue;
+				case '(':
+					add(LPAREN, "(", i++);
+					continue;
+				case ')':
+					add(RPAREN, ")", i++);
+					continue;
+				case '[':
+					add(LBRACKET, "[", i++);
+					continue;
+				case ']':
+					add(RBRACKET, "]", i++);
+					continue;
+				case '@':
+					add(AT, "@", i++);
+					continue;
+				case ',':
+					add(COMMA, ",", i++);
+					continue;
+				case '|':
+					add(PIPE, "|", i++);
+					continue;
+				case '+':
+					add(PLUS, "+", i++);
+					continue;
+				case '-':
+					add(MINUS, "-", i++);
+					continue;
+				case '=':
+					add(EQ, "=", i++);
+					continue;
+				case '!':
+					if (i + 1 < len && s.charAt(i + 1) == '=') {
+						add(NE, "!=", i);
+						i += 2;
+						continue;
+					}
+					cursor = types.size();
+					throw new IllegalArgumentException("Unexpected '!'");
+				case '<':
+					if (i + 1 < len && s.charAt(i + 1) == '=') {
+						add(LE, "<=", i);
+						i += 2;
+					} else {
+						add(LT, "<", i++);
+					}
+					continue;
+				case '>':
+					if (i + 1 < len && s.charAt(i + 1) == '=') {
+						add(GE, ">=", i);
+						i += 2;
+					} else {
+						add(GT, ">", i++);
+					}
+					continue;
+				case '/':
+					if (i + 1 < len && s.charAt(i + 1) == '/') {
+						add(DSLASH, "//", i);
+						i += 2;
+					} else {
+						add(SLASH, "/", i++);
+					}
+					continue;
+				case ':':
+					if (i + 1 < len && s.charAt(i + 1) == ':') {
+						add(COLONCOLON, "::", i);
+						i += 2;
+						continue;
+					}
+					cursor = types.size();
+					throw new IllegalArgumentException("Unexpected ':'");
+				case '*':
+					add(isOperatorContext() ? MULTIPLY : STAR, "*", i++);
+					continue;
+				case '\'':
+				case '"': {
+					final int end = s.indexOf(c, i + 1);
+					if (end < 0) {
+						cursor = types.size();
+						throw new IllegalArgumentException("Unterminated literal");
+					}
+					add(LITERAL, s.substring(i + 1, end), i);
+					i = end + 1;
+					continue;
+				}
+				case '$': {
+					if (i + 1 >= len || !isNameStart(s.charAt(i + 1))) {
+						cursor = types.size();
+						throw new IllegalArgumentException("Bad variable name");
+					}
+					int end = scanNCName(i + 1);
+					if (end + 1 < len && s.charAt(end) == ':' 
+							&& isNameStart(s.charAt(end + 1))) {
+						end = scanNCName(end + 1);
+					}
+					add(VARIABLE, s.substring(i + 1, end), i);
+					i = end;
+					continue;
+				}
+				case '.':
+					if (i + 1 < len && s.charAt(i + 1) == '.') {
+						add(DOTDOT, "..", i);
+						i += 2;
+						continue;
+					}
+					if (i + 1 < len && Character.isDigit(s.charAt(i + 1))) {
+						break;
+					}
+					add(DOT, ".", i++);
+					continue;
+				default:
+					break;
+			}
+			if (c == '.' || (c >= '0' && c <= '9')) {
+				while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+					i++;
+				}
+				if (i < len && s.charAt(i) == '.') {
+					i++;
+					while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+						i++;
+					}
+				}
+				add(NUMBER, s.substring(start, i), start);
+				continue;
+			}
+			if (!isNameStart(c)) {
+				cursor = types.size();
+				throw new IllegalArgumentException("Unexpected character '"
+						+ c + "'");
+			}
+			i = scanNCName(i);
+			if (isOperatorContext()) {
+				final String op = s.substring(start, i);
+				if ("and".equals(op)) {
+					add(AND, op, start);
+				} else if ("or".equals(op)) {
+					add(OR, op, start);
+				} else if ("mod".equals(op)) {
+					add(MOD, op, start);
+				} else if ("div".equals(op)) {
+					add(DIV, op, start);
+				} else {
+					cursor = types.size();
+					throw new IllegalArgumentException("Expected an operator but found '"
+							+ op + "'");
+				}
+				continue;
+			}
+			if (i + 1 < len && s.charAt(i) == ':' && s.charAt(i + 1) != ':') {
+				if (s.charAt(i + 1) == '*') {
+					i += 2;
+				} else if (isNameStart(s.charAt(i + 1))) {
+					i = scanNCName(i + 1);
+				}
+			}
+			add(NAME, s.substring(start, i), start);
+		}
+		add(EOF, "", len);
+	}
+
+	/*
+	 * =====================================================================
+	 * Parser
+	 * =====================================================================
+	 */
+
+	private int type() {
+		return types.get(cursor).intValue();
+	}
+
+	private int type(final int ahead) {
+		final int pos = cursor + ahead;
+		return pos < types.size() ? types.get(pos).intValue() : EOF;
+	}
+
+	private String text() {
+		return texts.get(cursor);
+	}
+
+	private String next() {
+		return texts.get(cursor++);
+	}
+
+	private void expect(final int type, final String what) {
+		if (type() != type) {
+			throw error("Expected " + what + " but found '" + text() + "'");
+		}
+		cursor++;
+	}
+
+	private Expr parseOr() {
+		Expr left = parseAnd();
+		while (type() == OR) {
+			cursor++;
+			left = new Operators.Logical(true, left, parseAnd());
+		}
+		return left;
+	}
+
+	private Expr parseAnd() {
+		Expr left = parseEquality();
+		while (type() == AND) {
+			cursor++;
+			left = new Operators.Logical(false, left, parseEquality());
+		}
+		return left;
+	}
+
+	private Expr parseEquality() {
+		Expr left = parseRelational();
+		while (type() == EQ || type() == NE) {
+			final int op = type() == EQ ? Operators.EQ : Operators.NE;
+			cursor++;
+			left = new Operators.Compare(op, left, parseRelational());
+		}
+		return left;
+	}
+
+	private Expr parseRelational() {
+		Expr left = parseAdditive();
+		while (type() >= LT && type() <= GE) {
+			final int op;
+			switch (type()) {
+				case LT:
+					op = Operators.LT;
+					break;
+				case LE:
+					op = Operators.LE;
+					break;
+				case GT:
+					op = Operators.GT;
+					break;
+				default:
+					op = Operators.GE;
+			}
+			cursor++;
+			left = new Operators.Compare(op, left, parseAdditive());
+		}
+		return left;
+	}
+
+	private Expr parseAdditive() {
+		Expr left = parseMultiplicative();
+		while (type() == PLUS || type() == MINUS) {
+			final int op = type() == PLUS ? Operators.PLUS : Operators.MINUS;
+			cursor++;
+			left = new Operators.Arithmetic(op, left, parseMultiplicative());
+		}
+		return left;
+	}
+
+	private Expr parseMultiplicative() {
+		Expr left = parseUnary();
+		while (type() == MULTIPLY || type() == DIV || type() == MOD) {
+			final int op = type() == MULTIPLY ? Operators.MULTIPLY
+					: type() == DIV ? Operators.DIV : Operators.MOD;
+			cursor++;
+			left = new Operators.Arithmetic(op, left, parseUnary());
+		}
+		return left;
+	}
+
+	private Expr parseUnary() {
+		if (type() == MINUS) {
+			cursor++;
+			return new Operators.Negate(parseUnary());
+		}
+		return parseUnion();
+	}
+
+	private Expr parseUnion() {
+		final Expr first = parsePath();
+		if (type() != PIPE) {
+			return first;
+		}
+		final List<Expr> paths = new ArrayList<Expr>();
+		paths.add(first);
+		while (type() == PIPE) {
+			cursor++;
+			paths.add(parsePath());
+		}
+		return new Operators.Union(paths);
+	}
+
+	/**
+	 * Is the current token the start of a location step.
+	 */
+	private boolean isStepStart() {
+		switch (type()) {
+			case DOT:
+			case DOTDOT:
+			case AT:
+			case STAR:
+				return true;
+			case NAME:
+				// function calls are not steps, but node type tests are.
+				return type(1) != LPAREN || isNodeType(text());
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isNodeType(final String name) {
+		return "node".equals(name) || "text".equals(name) 
+				|| "comment".equals(name) 
+				|| "processing-instruction".equals(name);
+	}
+
+	private Expr parsePath() {
+		final List<Step> steps = new ArrayList<Step>();
+		if (type() == SLASH) {
+			cursor++;
+			if (isStepStart()) {
+				parseRelative(steps);
+			}
+			return new LocationPath(null, Collections.<Expr>emptyList(), true, steps);
+		}
+		if (type() == DSLASH) {
+			cursor++;
+			steps.add(descendantOrSelf());
+			parseRelative(steps);
+			return new LocationPath(null, Collections.<Expr>emptyList(), true, steps);
+		}
+		if (isStepStart()) {
+			parseRelative(steps);
+			return new LocationPath(null, Collections.<Expr>emptyList(), false, steps);
+		}
+		final Expr primary = parsePrimary();
+		final List<Expr> predicates = new ArrayList<Expr>();
+		while (type() == LBRACKET) {
+			predicates.add(parsePredicate());
+		}
+		if (type() != SLASH && type() != DSLASH) {
+			if (predicates.isEmpty()) {
+				return primary;
+			}
+			return new LocationPath(primary, predicates, false, steps);
+		}
+		if (type() == DSLASH) {
+			steps.add(descendantOrSelf());
+		}
+		cursor++;
+		parseRelative(steps);
+		return new LocationPath(primary, predicates, false, steps);
+	}
+
+	private static Step descendantOrSelf() {
+		return new Step(Axis.DESCENDANT_OR_SELF, NodeTest.ANYNODE,
+				Collections.<Expr>emptyList());
+	}
+
+	/**
+	 * Parse steps separated by / and //. A // followed by a child step
+	 * without predicates is compiled as a single descendant step.
+	 */
+	private void parseRelative(final List<Step> steps) {
+		addStep(steps, parseStep());
+		while (type() == SLASH || type() == DSLASH) {
+			if (type() == DSLASH) {
+				steps.add(descendantOrSelf());
+			}
+			cursor++;
+			addStep(steps, parseStep());
+		}
+	}
+
+	private static void addStep(final List<Step> steps, final Step step) {
+		final int last = steps.size() - 1;
+		if (last >= 0 && step.axis == Axis.CHILD && step.predicates.length == 0) {
+			final Step prev = steps.get(last);
+			if (prev.axis == Axis.DESCENDANT_OR_SELF 
+					&& prev.test == NodeTest.ANYNODE 
+					&& prev.predicates.length == 0) {
+				steps.set(last, new Step(Axis.DESCENDANT, step.test,
+						Collections.<Expr>emptyList()));
+				return;
+			}
+		}
+		steps.add(step);
+	}
+
+	private Expr parsePredicate() {
+		expect(LBRACKET, "'['");
+		final Expr pred = parseOr();
+		expect(RBRACKET, "']'");
+		return pred;
+	}
+
+	private Step parseStep() {
+		if (type() == DOT) {
+			cursor++;
+			return new Step(Axis.SELF, NodeTest.ANYNODE,
+					Collections.<Expr>emptyList());
+		}
+		if (type() == DOTDOT) {
+			cursor++;
+			return new Step(Axis.PARENT, NodeTest.ANYNODE,
+					Collections.<Expr>emptyList());
+		}
+		Axis axis = Axis.CHILD;
+		if (type() == AT) {
+			cursor++;
+			axis = Axis.ATTRIBUTE;
+		} else if (type() == NAME && type(1) == COLONCOLON) {
+			axis = Axis.forName(text());
+			if (axis == null) {
+				throw error("Unknown axis '" + text() + "'");
+			}
+			cursor += 2;
+		}
+		final NodeTest test = parseNodeTest(axis);
+		final List<Expr> predicates = new ArrayList<Expr>();
+		while (type() == LBRACKET) {
+			predicates.add(parsePredicate());
+		}
+		return new Step(axis, test, predicates);
+	}
+
+	private NodeTest parseNodeTest(final Axis axis) {
+		if (type() == STAR) {
+			cursor++;
+			return NodeTest.ANYNAME;
+		}
+		if (type() != NAME) {
+			throw error("Expected a node test but found '" + text() + "'");
+		}
+		final String name = next();
+		if (type() == LPAREN && isNodeType(name)) {
+			cursor++;
+			NodeTest test;
+			if ("node".equals(name)) {
+				test = NodeTest.ANYNODE;
+			} else if ("text".equals(name)) {
+				test = NodeTest.TEXT;
+			} else if ("comment".equals(name)) {
+				test = NodeTest.COMMENT;
+			} else if (type() == LITERAL) {
+				test = new NodeTest.PITargetTest(next());
+			} else {
+				test = NodeTest.PI;
+			}
+			expect(RPAREN, "')'");
+			return test;
+		}
+		final int colon = name.indexOf(':');
+		if (colon < 0) {
+			// unprefixed names are in no namespace, even for elements.
+			return new NodeTest.NameTest("", name, name);
+		}
+		final Namespace ns = scope.getNamespace(name.substring(0, colon));
+		final String local = name.substring(colon + 1);
+		return new NodeTest.NameTest(ns.getURI(), 
+				"*".equals(local) ? null : local, name);
+	}
+
+	private Expr parsePrimary() {
+		switch (type()) {
+			case VARIABLE: {
+				final String qname = next();
+				final int colon = qname.indexOf(':');
+				if (colon < 0) {
+					return new Operators.VariableRef(qname, Namespace.NO_NAMESPACE,
+							qname);
+				}
+				return new Operators.VariableRef(qname.substring(colon + 1), 
+						scope.getNamespace(qname.substring(0, colon)), qname);
+			}
+			case LPAREN: {
+				cursor++;
+				final Expr expr = parseOr();
+				expect(RPAREN, "')'");
+				return expr;
+			}
+			case LITERAL:
+				return new Operators.Literal(next());
+			case NUMBER:
+				return new Operators.NumberLiteral(Double.parseDouble(next()));
+			case NAME: {
+				if (type(1) != LPAREN) {
+					break;
+				}
+				final String name = next();
+				if (name.indexOf(':') >= 0) {
+					throw error("Extension functions are not supported: " + name);
+				}
+				cursor++;
+				final List<Expr> args = new ArrayList<Expr>();
+				if (type() != RPAREN) {
+					args.add(parseOr());
+					while (type() == COMMA) {
+						cursor++;
+						args.add(parseOr());
+					}
+				}
+				expect(RPAREN, "')'");
+				return new FunctionCall(name, args);
+			}
+			default:
+				break;
+		}
+		throw error("Unexpected '" + text() + "'");
+	}
+
+}
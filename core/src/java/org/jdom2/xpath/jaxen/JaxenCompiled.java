@@ -55,16 +55,20 @@
 package org.jdom2.xpath.jaxen;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.jaxen.BaseXPath;
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
 import org.jaxen.JaxenException;
 import org.jaxen.NamespaceContext;
 import org.jaxen.UnresolvableException;
 import org.jaxen.VariableContext;
 import org.jaxen.XPath;
+import org.jaxen.XPathFunctionContext;
 
 import org.jdom2.Namespace;
 import org.jdom2.filter.Filter;
@@ -120,23 +124,33 @@ class JaxenCompiled<T> extends AbstractXPathCompiled<T> implements
 	private final XPath xPath;
 
 	/**
-	 * The current context for XPath expression evaluation. The navigator is
-	 * responsible for exposing JDOM content to Jaxen, including the wrapping of
-	 * Namespace instances in NamespaceContainer
-	 * <p>
-	 * Because of the need to wrap Namespace, we also need to unwrap namespace.
-	 * Further, we can't re-use the details from one 'selectNodes' to another
-	 * because the Document tree may have been modfied between, and also, we do
-	 * not want to be holding on to memory.
-	 * <p>
-	 * Finally, we want to pre-load the NamespaceContext with the namespaces
-	 * that are in scope for the contextNode being searched.
-	 * <p>
-	 * So, we need to reset the Navigator before and after each use. try{}
-	 * finally {} to the rescue.
+	 * The Navigator used to compile the expression. Evaluations do not use
+	 * this instance: the navigator caches the Namespace wrappers for the
+	 * Elements it has visited, so each evaluation gets its own navigator in a
+	 * stack-confined Jaxen Context. That makes concurrent evaluations safe,
+	 * and means nothing is held on to after an evaluation completes.
 	 */
 	private final JDOM2Navigator navigator = new JDOM2Navigator();
 
+	/**
+	 * The VariableContext for a single evaluation that has its own variable
+	 * values.
+	 */
+	private final class EvaluationVariables implements VariableContext {
+		private final Map<String, Map<String, Object>> variables;
+
+		EvaluationVariables(final Map<String, Map<String, Object>> variables) {
+			this.variables = variables;
+		}
+
+		@Override
+		public Object getVariableValue(final String namespaceURI,
+				final String prefix, final String localName)
+				throws UnresolvableException {
+			return resolveVariable(namespaceURI, prefix, localName, variables);
+		}
+	}
+
 	/**
 	 * @param expression The XPath expression
 	 * @param filter The coercion filter
@@ -158,12 +172,18 @@ class JaxenCompiled<T> extends AbstractXPathCompiled<T> implements
 
 	/**
 	 * Make a copy-constructor available to the clone() method.
-	 * This is simpler than trying to do a deep clone anyway.
+	 * <p>
+	 * The parsed Jaxen XPath is shared with the original instead of parsing
+	 * the expression again. Evaluations never use the XPath's own namespace
+	 * and variable contexts: each one supplies a ContextSupport that refers
+	 * to the JaxenCompiled being evaluated (see {@link #buildSupport(Map)}),
+	 * so the clone's variables and namespaces are independent.
 	 * 
 	 * @param toclone The JaxenCompiled instance to clone
 	 */
 	private JaxenCompiled(JaxenCompiled<T> toclone) {
-		this(toclone.getExpression(), toclone.getFilter(), toclone.getVariables(), toclone.getNamespaces());
+		super(toclone.getExpression(), toclone.getFilter(), toclone.getVariables(), toclone.getNamespaces());
+		xPath = toclone.xPath;
 	}
 
 	@Override
@@ -174,6 +194,12 @@ class JaxenCompiled<T> extends AbstractXPathCompiled<T> implements
 	@Override
 	public Object getVariableValue(String namespaceURI, String prefix,
 			String localName) throws UnresolvableException {
+		return resolveVariable(namespaceURI, prefix, localName, null);
+	}
+
+	private Object resolveVariable(String namespaceURI, String prefix,
+			String localName, Map<String, Map<String, Object>> variables)
+			throws UnresolvableException {
 		if (namespaceURI == null) {
 			namespaceURI = "";
 		}
@@ -184,7 +210,8 @@ class JaxenCompiled<T> extends AbstractXPathCompiled<T> implements
 			if ("".equals(namespaceURI)) {
 				namespaceURI = getNamespace(prefix).getURI();
 			}
-			return getVariable(localName, Namespace.getNamespace(namespaceURI));
+			return getVariable(localName, Namespace.getNamespace(namespaceURI),
+					variables);
 		} catch (IllegalArgumentException e) {
 			throw new UnresolvableException("Unable to resolve variable " + 
 					localName + " in namespace '" + namespaceURI + 
@@ -192,32 +219,143 @@ class JaxenCompiled<T> extends AbstractXPathCompiled<T> implements
 		}
 	}
 
+	/**
+	 * Build a Jaxen Context for one evaluation, with its own Navigator.
+	 * 
+	 * @param context
+	 *        The JDOM context node (or List of nodes).
+	 * @param variables
+	 *        The variables for this evaluation (may be null).
+	 * @return The Jaxen Context.
+	 */
+	private Context buildContext(final Object context,
+			final Map<String, Map<String, Object>> variables) {
+		return buildContext(context, buildSupport(variables));
+	}
+
+	/**
+	 * Build the Jaxen ContextSupport for one evaluation, or for a group of
+	 * evaluations in the same thread.
+	 * 
+	 * @param variables
+	 *        The variables for the evaluation (may be null).
+	 * @return The Jaxen ContextSupport.
+	 */
+	private ContextSupport buildSupport(
+			final Map<String, Map<String, Object>> variables) {
+		return new ContextSupport(this,
+				XPathFunctionContext.getInstance(),
+				variables == null ? this : new EvaluationVariables(variables),
+				new JDOM2Navigator());
+	}
+
+	/**
+	 * Build a Jaxen Context for the JDOM context node (or List of nodes).
+	 */
+	private static Context buildContext(final Object context,
+			final ContextSupport support) {
+		final Context ctx = new Context(support);
+		if (context instanceof List) {
+			ctx.setNodeSet((List<?>)context);
+		} else {
+			ctx.setNodeSet(Collections.singletonList(context));
+		}
+		return ctx;
+	}
+
 	@Override
 	protected List<?> evaluateRawAll(Object context) {
+		return evaluateRawAll(context, null);
+	}
+
+	@Override
+	protected Object evaluateRawFirst(Object context) {
+		return evaluateRawFirst(context, null);
+	}
+
+	@Override
+	protected List<?> evaluateRawAll(Object context,
+			Map<String, Map<String, Object>> variables) {
 		try {
-			return unWrap(xPath.selectNodes(context));
+			return unWrap(xPath.selectNodes(buildContext(context, variables)));
 		} catch (JaxenException e) {
 			throw new IllegalStateException(
 					"Unable to evaluate expression. See cause", e);
 		}
 	}
 
+	/**
+	 * All the contexts share one Navigator, and the function and variable
+	 * contexts.
+	 */
 	@Override
-	protected Object evaluateRawFirst(Object context) {
+	protected List<List<?>> evaluateRawEach(List<?> contexts) {
+		final ContextSupport support = buildSupport(null);
+		final List<List<?>> ret = new ArrayList<List<?>>(contexts.size());
+		try {
+			for (Object context : contexts) {
+				ret.add(unWrap(xPath.selectNodes(buildContext(context, support))));
+			}
+		} catch (JaxenException e) {
+			throw new IllegalStateException(
+					"Unable to evaluate expression. See cause", e);
+		}
+		return ret;
+	}
+
+	@Override
+	protected boolean isConcurrent() {
+		return true;
+	}
+
+	@Override
+	protected Object evaluateRawFirst(Object context,
+			Map<String, Map<String, Object>> variables) {
 		try {
-			return unWrapNS(xPath.selectSingleNode(context));
+			return unWrapNS(xPath.selectSingleNode(
+					buildContext(context, variables)));
 		} catch (JaxenException e) {
 			throw new IllegalStateException(
 					"Unable to evaluate expression. See cause", e);
 		}
 	}
 	
+	/**
+	 * Jaxen always finds all the results, but they are unwrapped lazily
+	 * instead of being copied to another List.
+	 */
+	@Override
+	protected Iterator<?> evaluateRawIterator(Object context,
+			Map<String, Map<String, Object>> variables) {
+		final Iterator<?> raw;
+		try {
+			raw = xPath.selectNodes(buildContext(context, variables)).iterator();
+		} catch (JaxenException e) {
+			throw new IllegalStateException(
+					"Unable to evaluate expression. See cause", e);
+		}
+		return new Iterator<Object>() {
+			@Override
+			public boolean hasNext() {
+				return raw.hasNext();
+			}
+			@Override
+			public Object next() {
+				return unWrapNS(raw.next());
+			}
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException(
+						"XPath results cannot be removed");
+			}
+		};
+	}
+
 	@Override
 	public JaxenCompiled<T> clone() {
 		// Use a copy-constructor instead of a deep clone.
 		// we have a couple of final variables on this class that we cannot share
-		// between instances, and the Jaxen xpath variable is pretty complicated to reconstruct
-		// anyway. Easier to just reconstruct it.
+		// between instances. The parsed Jaxen xpath is shared, not re-parsed.
 		return new JaxenCompiled<T>(this);
 	}
 
@@ -54,21 +54,31 @@
 
 package org.jdom2.xpath.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.jdom2.Namespace;
 import org.jdom2.Verifier;
 import org.jdom2.filter.Filter;
 import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathExpression2;
 import org.jdom2.xpath.XPathDiagnostic;
+import org.jdom2.xpath.XPathProfile;
 
 /**
- * A mostly-implemented XPathExpression that only needs two methods to be
+ * A mostly-implemented XPathExpression2 that only needs two methods to be
  * implemented in order to satisfy the complete API. Subclasses of this
  * <strong>MUST</strong> correctly override the clone() method which in turn
  * should call <code>super.clone();</code>
@@ -77,7 +87,7 @@ import org.jdom2.xpath.XPathDiagnostic;
  *        The generic type of the returned values.
  * @author Rolf Lear
  */
-public abstract class AbstractXPathCompiled<T> implements XPathExpression<T> {
+public abstract class AbstractXPathCompiled<T> implements XPathExpression2<T> {
 	
 	private static final class NamespaceComparator implements Comparator<Namespace> {
 		@Override
@@ -368,6 +378,117 @@ public abstract class AbstractXPathCompiled<T> implements XPathExpression<T> {
 		return xfilter.filter(raw);
 	}
 
+	@Override
+	public List<T> evaluate(Object context, Map<String, Object> variables) {
+		return xfilter.filter(evaluateRawAll(context,
+				resolveVariables(variables)));
+	}
+
+	@Override
+	public T evaluateFirst(Object context, Map<String, Object> variables) {
+		Object raw = evaluateRawFirst(context, resolveVariables(variables));
+		if (raw == null) {
+			return null;
+		}
+		return xfilter.filter(raw);
+	}
+
+	@Override
+	public Iterator<T> evaluateIterator(Object context) {
+		return new FilteredIterator<T>(xfilter, 
+				evaluateRawIterator(context, null));
+	}
+
+	@Override
+	public Iterator<T> evaluateIterator(Object context,
+			Map<String, Object> variables) {
+		return new FilteredIterator<T>(xfilter, 
+				evaluateRawIterator(context, resolveVariables(variables)));
+	}
+
+	@Override
+	public List<List<T>> evaluateEach(final Collection<?> contexts) {
+		return filterEach(evaluateRawEach(checkContexts(contexts)));
+	}
+
+	@Override
+	public List<List<T>> evaluateEach(final Collection<?> contexts,
+			final Executor executor) {
+		final List<?> all = checkContexts(contexts);
+		final int size = all.size();
+		final int groups = Math.min(size, 
+				Runtime.getRuntime().availableProcessors());
+		if (executor == null || groups < 2 || !isConcurrent()) {
+			return filterEach(evaluateRawEach(all));
+		}
+		final List<FutureTask<List<List<?>>>> tasks = 
+				new ArrayList<FutureTask<List<List<?>>>>(groups);
+		for (int g = 0; g < groups; g++) {
+			final List<?> group = all.subList(
+					(int)((long)size * g / groups),
+					(int)((long)size * (g + 1) / groups));
+			final FutureTask<List<List<?>>> task = new FutureTask<List<List<?>>>(
+					new Callable<List<List<?>>>() {
+						@Override
+						public List<List<?>> call() {
+							return evaluateRawEach(group);
+						}
+					});
+			tasks.add(task);
+			executor.execute(task);
+		}
+		final List<List<T>> ret = new ArrayList<List<T>>(size);
+		try {
+			for (FutureTask<List<List<?>>> task : tasks) {
+				ret.addAll(filterEach(task.get()));
+			}
+		} catch (InterruptedException e) {
+			cancel(tasks);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while evaluating expression " + xquery, e);
+		} catch (ExecutionException e) {
+			cancel(tasks);
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(
+					"Unable to evaluate expression. See cause", cause);
+		}
+		return ret;
+	}
+
+	private static void cancel(final List<? extends FutureTask<?>> tasks) {
+		for (FutureTask<?> task : tasks) {
+			task.cancel(true);
+		}
+	}
+
+	private static List<?> checkContexts(final Collection<?> contexts) {
+		if (contexts == null) {
+			throw new NullPointerException("Null contexts");
+		}
+		final List<Object> ret = new ArrayList<Object>(contexts);
+		for (Object o : ret) {
+			if (o == null) {
+				throw new NullPointerException("Null context");
+			}
+		}
+		return ret;
+	}
+
+	private List<List<T>> filterEach(final List<List<?>> raw) {
+		final List<List<T>> ret = new ArrayList<List<T>>(raw.size());
+		for (List<?> r : raw) {
+			ret.add(xfilter.filter(r));
+		}
+		return ret;
+	}
+
 	@Override
 	public XPathDiagnostic<T> diagnose(Object context, boolean firstonly) {
 		final List<?> result = firstonly ? Collections
@@ -376,6 +497,40 @@ public abstract class AbstractXPathCompiled<T> implements XPathExpression<T> {
 		return new XPathDiagnosticImpl<T>(context, this, result, firstonly);
 	}
 
+	@Override
+	public XPathDiagnostic<T> diagnose(Object context, boolean firstonly,
+			boolean profile) {
+		if (!profile) {
+			return diagnose(context, firstonly);
+		}
+		return diagnoseProfiled(context, firstonly);
+	}
+
+	/**
+	 * Evaluate the expression and record an {@link XPathProfile} of the
+	 * evaluation. XPath libraries that can profile the steps of an
+	 * expression should override this. The default implementation records
+	 * only the total time and the number of results.
+	 * 
+	 * @param context
+	 *        The context against which to evaluate the query
+	 * @param firstonly
+	 *        Whether the evaluation can stop after the first result.
+	 * @return the diagnostic, including the profile.
+	 * @since JDOM 2.1
+	 */
+	protected XPathDiagnostic<T> diagnoseProfiled(Object context, 
+			boolean firstonly) {
+		final long start = System.nanoTime();
+		final List<?> result = firstonly ? Collections
+				.singletonList(evaluateRawFirst(context))
+				: evaluateRawAll(context);
+		final XPathProfile profile = new XPathProfileImpl(
+				System.nanoTime() - start, result.size(), null);
+		return new XPathDiagnosticImpl<T>(context, this, result, firstonly,
+				profile);
+	}
+
 	@Override
 	public String toString() {
 		int nscnt = xnamespaces.size();
@@ -413,4 +568,238 @@ public abstract class AbstractXPathCompiled<T> implements XPathExpression<T> {
 	 */
 	protected abstract Object evaluateRawFirst(Object context);
 
+	/**
+	 * Validate the variable values supplied for a single evaluation, and
+	 * convert them to a map keyed by namespace URI and then local name.
+	 * 
+	 * @param variables
+	 *        The qname-to-value variables (may be null).
+	 * @return The variables keyed by URI and then local name, or null if
+	 *         there are no variables.
+	 * @throws IllegalArgumentException
+	 *         if a variable is not declared on this expression.
+	 * @since JDOM 2.1
+	 */
+	protected final Map<String, Map<String, Object>> resolveVariables(
+			final Map<String, Object> variables) {
+		if (variables == null || variables.isEmpty()) {
+			return null;
+		}
+		final Map<String, Map<String, Object>> ret = 
+				new HashMap<String, Map<String, Object>>();
+		for (Map.Entry<String, Object> me : variables.entrySet()) {
+			final String qname = me.getKey();
+			if (qname == null) {
+				throw new NullPointerException("Variable with a null name");
+			}
+			final int pos = qname.indexOf(':');
+			final Namespace ns = pos < 0 ? Namespace.NO_NAMESPACE
+					: getNamespace(qname.substring(0, pos));
+			final String lname = pos < 0 ? qname : qname.substring(pos + 1);
+			// throws IllegalArgumentException if it is not declared.
+			getVariable(lname, ns);
+			Map<String, Object> vmap = ret.get(ns.getURI());
+			if (vmap == null) {
+				vmap = new HashMap<String, Object>();
+				ret.put(ns.getURI(), vmap);
+			}
+			vmap.put(lname, me.getValue());
+		}
+		return ret;
+	}
+
+	/**
+	 * Get a variable value, looking first in the variables for a single
+	 * evaluation, and then in the variables set on this expression.
+	 * 
+	 * @param name
+	 *        The variable's local name.
+	 * @param uri
+	 *        The variable's namespace.
+	 * @param variables
+	 *        The evaluation variables from
+	 *        {@link #resolveVariables(Map)} (may be null).
+	 * @return The variable value.
+	 * @throws IllegalArgumentException
+	 *         if the variable is not declared.
+	 * @since JDOM 2.1
+	 */
+	protected final Object getVariable(final String name, final Namespace uri,
+			final Map<String, Map<String, Object>> variables) {
+		if (variables != null) {
+			final Map<String, Object> vmap =
+					variables.get(uri == null ? "" : uri.getURI());
+			if (vmap != null && vmap.containsKey(name)) {
+				return vmap.get(name);
+			}
+		}
+		return getVariable(name, uri);
+	}
+
+	/**
+	 * The raw expression evaluator using variable values for one evaluation
+	 * only. XPath libraries that can evaluate expressions concurrently should
+	 * override this. The default implementation locks this expression, sets
+	 * the variables on it for the duration of the evaluation, and then
+	 * restores the previous values.
+	 * 
+	 * @param context
+	 *        The context against which to evaluate the query
+	 * @param variables
+	 *        The variables from {@link #resolveVariables(Map)} (may be null).
+	 * @return A list of XPath results.
+	 * @since JDOM 2.1
+	 */
+	protected List<?> evaluateRawAll(Object context,
+			Map<String, Map<String, Object>> variables) {
+		if (variables == null) {
+			return evaluateRawAll(context);
+		}
+		synchronized (this) {
+			final Map<String, Map<String, Object>> saved = swapVariables(variables);
+			try {
+				return evaluateRawAll(context);
+			} finally {
+				swapVariables(saved);
+			}
+		}
+	}
+
+	/**
+	 * The raw first-result evaluator using variable values for one evaluation
+	 * only. XPath libraries that can evaluate expressions concurrently should
+	 * override this. The default implementation locks this expression, sets
+	 * the variables on it for the duration of the evaluation, and then
+	 * restores the previous values.
+	 * 
+	 * @param context
+	 *        The context against which to evaluate the query
+	 * @param variables
+	 *        The variables from {@link #resolveVariables(Map)} (may be null).
+	 * @return The first item in the XPath results, or null if there are no
+	 *         results.
+	 * @since JDOM 2.1
+	 */
+	protected Object evaluateRawFirst(Object context,
+			Map<String, Map<String, Object>> variables) {
+		if (variables == null) {
+			return evaluateRawFirst(context);
+		}
+		synchronized (this) {
+			final Map<String, Map<String, Object>> saved = swapVariables(variables);
+			try {
+				return evaluateRawFirst(context);
+			} finally {
+				swapVariables(saved);
+			}
+		}
+	}
+
+	/**
+	 * The raw expression evaluator for lazy iteration. XPath libraries that
+	 * can find results incrementally should override this. The default
+	 * implementation returns an Iterator over the
+	 * {@link #evaluateRawAll(Object, Map)} results.
+	 * 
+	 * @param context
+	 *        The context against which to evaluate the query
+	 * @param variables
+	 *        The variables from {@link #resolveVariables(Map)} (may be null).
+	 * @return An Iterator over the XPath results.
+	 * @since JDOM 2.1
+	 */
+	protected Iterator<?> evaluateRawIterator(Object context,
+			Map<String, Map<String, Object>> variables) {
+		return evaluateRawAll(context, variables).iterator();
+	}
+
+	/**
+	 * The raw expression evaluator for many separate contexts. XPath
+	 * libraries that have per-evaluation setup which can be shared between
+	 * the contexts should override this. The default implementation calls
+	 * {@link #evaluateRawAll(Object)} for each context.
+	 * 
+	 * @param contexts
+	 *        The contexts against which to evaluate the query (no nulls).
+	 * @return The XPath results for each context, in the order of the
+	 *         contexts.
+	 * @since JDOM 2.1
+	 */
+	protected List<List<?>> evaluateRawEach(List<?> contexts) {
+		final List<List<?>> ret = new ArrayList<List<?>>(contexts.size());
+		for (Object context : contexts) {
+			ret.add(evaluateRawAll(context));
+		}
+		return ret;
+	}
+
+	/**
+	 * Indicate whether {@link #evaluateRawEach(List)} can be called from
+	 * several threads at the same time. The default is false, and XPath
+	 * libraries that can evaluate concurrently should override this.
+	 * 
+	 * @return true if the raw evaluators are thread-safe.
+	 * @since JDOM 2.1
+	 */
+	protected boolean isConcurrent() {
+		return false;
+	}
+
+	/**
+	 * Coerce raw results with the Filter as they are pulled, skipping the
+	 * ones that do not match.
+	 */
+	private static final class FilteredIterator<F> implements Iterator<F> {
+		private final Filter<F> filter;
+		private final Iterator<?> raw;
+		private F next = null;
+
+		FilteredIterator(final Filter<F> filter, final Iterator<?> raw) {
+			this.filter = filter;
+			this.raw = raw;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && raw.hasNext()) {
+				next = filter.filter(raw.next());
+			}
+			return next != null;
+		}
+
+		@Override
+		public F next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final F ret = next;
+			next = null;
+			return ret;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"XPath results cannot be removed");
+		}
+	}
+
+	/**
+	 * Set the variable values, and return the values they replaced.
+	 */
+	private Map<String, Map<String, Object>> swapVariables(
+			final Map<String, Map<String, Object>> variables) {
+		final Map<String, Map<String, Object>> saved =
+				new HashMap<String, Map<String, Object>>();
+		for (Map.Entry<String, Map<String, Object>> me : variables.entrySet()) {
+			final Map<String, Object> vmap = xvariables.get(me.getKey());
+			final Map<String, Object> smap = new HashMap<String, Object>();
+			for (Map.Entry<String, Object> ve : me.getValue().entrySet()) {
+				smap.put(ve.getKey(), vmap.put(ve.getKey(), ve.getValue()));
+			}
+			saved.put(me.getKey(), smap);
+		}
+		return saved;
+	}
+
 }
@@ -61,6 +61,7 @@ import java.util.List;
 import org.jdom2.filter.Filter;
 import org.jdom2.xpath.XPathExpression;
 import org.jdom2.xpath.XPathDiagnostic;
+import org.jdom2.xpath.XPathProfile;
 
 /**
  * A diagnostic implementation useful for diagnosing problems in XPath results.
@@ -85,6 +86,7 @@ public class XPathDiagnosticImpl<T> implements XPathDiagnostic<T> {
 	private final List<Object> dfiltered;
 	private final List<T> dresult;
 	private final boolean dfirstonly;
+	private final XPathProfile dprofile;
 	
 	/**
 	 * Create a useful Diagnostic instance for tracing XPath query results.
@@ -95,6 +97,21 @@ public class XPathDiagnosticImpl<T> implements XPathDiagnostic<T> {
 	 */
 	public XPathDiagnosticImpl(Object dcontext, XPathExpression<T> dxpath,
 			List<?> inraw, boolean dfirstonly) {
+		this(dcontext, dxpath, inraw, dfirstonly, null);
+	}
+
+	/**
+	 * Create a useful Diagnostic instance for tracing XPath query results,
+	 * with the profile of the evaluation.
+	 * @param dcontext The context against which the XPath query was run.
+	 * @param dxpath The {@link XPathExpression} instance which created this diagnostic.
+	 * @param inraw The data as returned from the XPath library. 
+	 * @param dfirstonly If the XPath library was allowed to terminate after the first result.
+	 * @param dprofile The profile of the evaluation (may be null).
+	 * @since JDOM 2.1
+	 */
+	public XPathDiagnosticImpl(Object dcontext, XPathExpression<T> dxpath,
+			List<?> inraw, boolean dfirstonly, XPathProfile dprofile) {
 		
 		final int sz = inraw.size();
 		final List<Object> raw = new ArrayList<Object>(sz);
@@ -115,6 +132,7 @@ public class XPathDiagnosticImpl<T> implements XPathDiagnostic<T> {
 		this.dcontext = dcontext;
 		this.dxpath = dxpath;
 		this.dfirstonly = dfirstonly;
+		this.dprofile = dprofile;
 		
 		this.dfiltered = Collections.unmodifiableList(filtered);
 		this.draw = Collections.unmodifiableList(raw);
@@ -152,6 +170,11 @@ public class XPathDiagnosticImpl<T> implements XPathDiagnostic<T> {
 		return dfirstonly;
 	}
 	
+	@Override
+	public XPathProfile getProfile() {
+		return dprofile;
+	}
+	
 	@Override
 	public String toString() {
 		return String.format("[XPathDiagnostic: '%s' evaluated (%s) against " +
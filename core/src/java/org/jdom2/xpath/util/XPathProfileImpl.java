@@ -0,0 +1,206 @@
+/*--
+
+ Copyright (C) 2011-2012 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+
+package org.jdom2.xpath.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jdom2.xpath.XPathProfile;
+
+/**
+ * A simple immutable {@link XPathProfile} for XPath libraries to return
+ * from their profiled evaluations.
+ * 
+ * @since JDOM 2.1
+ */
+public class XPathProfileImpl implements XPathProfile {
+
+	/**
+	 * A simple immutable {@link XPathProfile.Step}.
+	 */
+	public static class StepImpl implements XPathProfile.Step {
+		private final String path;
+		private final String step;
+		private final long evaluations;
+		private final long contexts;
+		private final long visited;
+		private final long predicates;
+		private final long results;
+		private final long elapsed;
+
+		/**
+		 * Create the profile of a step.
+		 * @param path The location path the step is part of.
+		 * @param step The step, and how it was evaluated.
+		 * @param evaluations The number of times the step was run.
+		 * @param contexts The number of context nodes the step was applied to.
+		 * @param visited The number of nodes the step's axis visited.
+		 * @param predicates The number of predicate evaluations.
+		 * @param results The number of nodes the step selected.
+		 * @param elapsed The time in the step, in nanoseconds.
+		 */
+		public StepImpl(String path, String step, long evaluations,
+				long contexts, long visited, long predicates, long results,
+				long elapsed) {
+			this.path = path;
+			this.step = step;
+			this.evaluations = evaluations;
+			this.contexts = contexts;
+			this.visited = visited;
+			this.predicates = predicates;
+			this.results = results;
+			this.elapsed = elapsed;
+		}
+
+		@Override
+		public String getPath() {
+			return path;
+		}
+
+		@Override
+		public String getStep() {
+			return step;
+		}
+
+		@Override
+		public long getEvaluations() {
+			return evaluations;
+		}
+
+		@Override
+		public long getContextNodes() {
+			return contexts;
+		}
+
+		@Override
+		public long getNodesVisited() {
+			return visited;
+		}
+
+		@Override
+		public long getPredicateEvaluations() {
+			return predicates;
+		}
+
+		@Override
+		public long getResultSize() {
+			return results;
+		}
+
+		@Override
+		public long getElapsedNanos() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("[%s] %s: runs=%d contexts=%d visited=%d " +
+					"predicates=%d results=%d time=%.3fms", path, step, 
+					evaluations, contexts, visited, predicates, results,
+					elapsed / 1000000.0);
+		}
+	}
+
+	private final long elapsed;
+	private final int resultsize;
+	private final List<XPathProfile.Step> steps;
+
+	/**
+	 * Create a profile.
+	 * @param elapsed The total evaluation time, in nanoseconds.
+	 * @param resultsize The number of raw results.
+	 * @param steps The step profiles (may be null if steps are not profiled).
+	 */
+	public XPathProfileImpl(long elapsed, int resultsize, 
+			List<? extends XPathProfile.Step> steps) {
+		this.elapsed = elapsed;
+		this.resultsize = resultsize;
+		if (steps == null || steps.isEmpty()) {
+			this.steps = Collections.emptyList();
+		} else {
+			this.steps = Collections.unmodifiableList(
+					new ArrayList<XPathProfile.Step>(steps));
+		}
+	}
+
+	@Override
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+
+	@Override
+	public int getResultSize() {
+		return resultsize;
+	}
+
+	@Override
+	public List<XPathProfile.Step> getSteps() {
+		return steps;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("[XPathProfile: %d results in %.3fms]", 
+				resultsize, elapsed / 1000000.0));
+		for (XPathProfile.Step s : steps) {
+			sb.append("\n  ").append(s);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.jdom2;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestWeakIdentitySet {
+
+	@Test
+	public void testAddRemove() {
+		final WeakIdentitySet set = new WeakIdentitySet();
+		assertTrue(set.isEmpty());
+		final Element a = new Element("a");
+		final Element b = new Element("a");
+		set.add(a);
+		assertFalse(set.isEmpty());
+		set.add(a);
+		set.remove(a);
+		assertTrue(set.isEmpty());
+		set.add(a);
+		set.add(b);
+		set.remove(a);
+		assertFalse(set.isEmpty());
+		set.remove(a);
+		assertFalse(set.isEmpty());
+		set.remove(b);
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testCollectedMembersAreDropped() throws InterruptedException {
+		final WeakIdentitySet set = new WeakIdentitySet();
+		set.add(new Document(new Element("root")));
+		assertFalse(set.isEmpty());
+		for (int i = 0; i < 500 && !set.isEmpty(); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue(set.isEmpty());
+	}
+
+}
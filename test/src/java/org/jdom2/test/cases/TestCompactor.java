@@ -0,0 +1,89 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Comment;
+import org.jdom2.Compactor;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+import org.jdom2.input.SAXBuilder;
+
+@SuppressWarnings("javadoc")
+public class TestCompactor {
+
+	private static final String XML = "<!--c--><?pi data?><root xmlns:p=\"urn:p\">"
+			+ "<item><unit>EA</unit><flag type=\"x\"/><!--c--></item>"
+			+ "<item><unit>EA</unit><flag type=\"x\"/><!--c--><?pi data?></item>"
+			+ "<p:item p:type=\"x\"><unit>EA</unit></p:item>"
+			+ "</root>";
+
+	private static Document build() throws Exception {
+		return new SAXBuilder().build(new StringReader(XML));
+	}
+
+	@Test
+	public void testSharedStrings() throws Exception {
+		final Document doc = build();
+		final Document copy = doc.clone();
+		final List<Element> items = doc.getRootElement().getChildren();
+		final Text ea1 = (Text)items.get(0).getChild("unit").getContent(0);
+		final Text ea2 = (Text)items.get(1).getChild("unit").getContent(0);
+		assertNotSame(ea1.getText(), ea2.getText());
+
+		final Compactor compactor = new Compactor();
+		assertTrue(doc == compactor.compact(doc));
+		assertTrue(doc.deepEquals(copy));
+		assertSame(ea1.getText(), ea2.getText());
+		assertSame(items.get(0).getName(), items.get(2).getName());
+		assertSame(items.get(0).getChild("flag").getAttributeValue("type"),
+				items.get(1).getChild("flag").getAttributeValue("type"));
+		assertSame(items.get(0).getChild("flag").getAttributeValue("type"),
+				items.get(2).getAttribute("type", items.get(2).getNamespace()).getValue());
+		assertSame(((Comment)items.get(0).getContent(2)).getText(),
+				((Comment)doc.getContent(0)).getText());
+		assertSame(((ProcessingInstruction)items.get(1).getContent(3)).getData(),
+				((ProcessingInstruction)doc.getContent(1)).getData());
+		assertTrue(compactor.getCacheSize() > 0);
+
+		// other Documents compacted with the same Compactor share too.
+		final Element other = new Element("item").addContent(new Element("unit").setText("EA"));
+		other.addContent(new EntityRef("ent"));
+		assertTrue(other == compactor.compact(other));
+		assertSame(ea1.getText(), other.getChild("unit").getText());
+		assertSame(items.get(0).getName(), other.getName());
+
+		compactor.clearCache();
+		assertEquals(0, compactor.getCacheSize());
+	}
+
+	@Test
+	public void testStillMutable() throws Exception {
+		final Document doc = build();
+		final Element root = doc.getRootElement();
+		final Element flag = root.getChildren().get(0).getChild("flag");
+		flag.removeAttribute("type");
+		root.getChildren().get(0).getChild("unit").removeContent();
+		new Compactor().compact(doc);
+		assertFalse(flag.hasAttributes());
+		assertEquals(0, root.getChildren().get(0).getChild("unit").getContentSize());
+		flag.setAttribute("a", "b").setAttribute("c", "d");
+		flag.addContent(new Text("t")).addContent(new Element("e"));
+		root.addContent(new Element("x"));
+		root.getChildren().get(1).getChild("unit").setText("changed");
+		assertEquals("b", flag.getAttributeValue("a"));
+		assertEquals("d", flag.getAttributeValue("c"));
+		assertEquals(2, flag.getContentSize());
+		assertEquals(4, root.getChildren().size());
+		assertEquals("changed", root.getChildren().get(1).getChildText("unit"));
+		assertEquals("EA", root.getChildren().get(2).getChildText("unit"));
+	}
+
+}
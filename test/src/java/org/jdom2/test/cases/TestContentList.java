@@ -2,7 +2,10 @@ package org.jdom2.test.cases;
 
 import static org.jdom2.test.util.UnitTestUtil.checkException;
 import static org.jdom2.test.util.UnitTestUtil.failNoException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -12,6 +15,7 @@ import java.util.List;
 import org.jdom2.Content;
 import org.jdom2.DocType;
 import org.jdom2.Element;
+import org.jdom2.Text;
 import org.jdom2.internal.ArrayCopy;
 import org.jdom2.test.util.AbstractTestList;
 
@@ -147,4 +151,78 @@ public class TestContentList extends AbstractTestList<Content> {
 		assertTrue(content[1] == it.next());
 	}
 	
+	@Test
+	public void testSiblings() {
+		final Element root = new Element("root");
+		final Content[] content = buildSampleContent();
+		assertNull(content[0].getNextSibling());
+		assertNull(content[0].getPreviousSibling());
+		for (Content c : content) {
+			root.addContent(c);
+		}
+		for (int i = 0; i < content.length; i++) {
+			assertTrue(content[i].getPreviousSibling() == (i == 0 ? null : content[i - 1]));
+			assertTrue(content[i].getNextSibling() == (i == content.length - 1 ? null : content[i + 1]));
+		}
+		// walk the siblings while inserting content ahead of the walk.
+		final Text txt = new Text("txt");
+		root.addContent(0, txt);
+		assertTrue(txt.getNextSibling() == content[0]);
+		assertTrue(content[0].getPreviousSibling() == txt);
+		assertTrue(content[3].getNextSibling() == content[4]);
+		assertEquals(4, root.indexOf(content[3]));
+		// replace and sort
+		final Element rep = new Element("rep");
+		root.setContent(4, rep);
+		assertEquals(-1, root.indexOf(content[3]));
+		assertEquals(4, root.indexOf(rep));
+		assertTrue(rep.getPreviousSibling() == content[2]);
+		root.sortContent(new java.util.Comparator<Content>() {
+			@Override
+			public int compare(Content o1, Content o2) {
+				return key(o1).compareTo(key(o2));
+			}
+			private String key(Content c) {
+				return c instanceof Element ? ((Element)c).getName() : c.getValue();
+			}
+		});
+		// five, four, one, rep, six, two, txt, zero
+		assertEquals(6, root.indexOf(txt));
+		assertTrue(content[0].getPreviousSibling() == txt);
+		assertEquals(root.getContentSize() - 1, root.indexOf(content[0]));
+		assertNull(content[0].getNextSibling());
+	}
+
+	@Test
+	public void testIndexOfDetach() {
+		final Element root = new Element("root");
+		final Element other = new Element("other");
+		final int sz = 1000;
+		final Element[] kids = new Element[sz];
+		for (int i = 0; i < sz; i++) {
+			kids[i] = new Element("kid");
+			root.addContent(kids[i]);
+		}
+		assertEquals(-1, other.indexOf(kids[10]));
+		assertFalse(other.removeContent(kids[10]));
+		assertTrue(root.getContent().contains(kids[10]));
+		assertEquals(10, root.getContent().lastIndexOf(kids[10]));
+		// detach every second child, front to back.
+		for (int i = 0; i < sz; i += 2) {
+			assertTrue(kids[i] == kids[i].detach());
+			assertNull(kids[i].getParent());
+			assertEquals(-1, root.indexOf(kids[i]));
+		}
+		assertEquals(sz / 2, root.getContentSize());
+		for (int i = 1; i < sz; i += 2) {
+			assertEquals(i / 2, root.indexOf(kids[i]));
+		}
+		// a detached element re-added elsewhere has a stale position.
+		other.addContent(kids[0]);
+		other.addContent(0, kids[2]);
+		assertEquals(1, other.indexOf(kids[0]));
+		assertEquals(-1, root.indexOf(kids[0]));
+		assertTrue(kids[2].getNextSibling() == kids[0]);
+	}
+
 }
@@ -0,0 +1,187 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.CDATA;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.DocType;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.Namespace;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+import org.jdom2.input.SAXBuilder;
+
+@SuppressWarnings("javadoc")
+public class TestDeepEquals {
+
+	private static final String XML = "<!DOCTYPE root [<!ELEMENT root ANY>]>"
+			+ "<!--head--><?pi data?>"
+			+ "<root xmlns:p=\"urn:p\" a=\"1\" p:b=\"2\">"
+			+ "<a id=\"x\">text<b>bee</b><![CDATA[cdata]]></a>"
+			+ "<p:c><d/><e>eee</e></p:c>"
+			+ "tail"
+			+ "</root>";
+
+	private static Document build(String xml) throws Exception {
+		return new SAXBuilder().build(new StringReader(xml));
+	}
+
+	private static void checkEqual(Content a, Content b) {
+		assertTrue(a.deepEquals(b));
+		assertTrue(b.deepEquals(a));
+		assertEquals(a.structuralHash(), b.structuralHash());
+		assertFalse(a.equals(b));
+	}
+
+	private static void checkDifferent(Content a, Content b) {
+		assertFalse(a.deepEquals(b));
+		assertFalse(b.deepEquals(a));
+	}
+
+	@Test
+	public void testLeaves() {
+		checkEqual(new Text("x"), new Text("x"));
+		checkDifferent(new Text("x"), new Text("y"));
+		checkDifferent(new Text("x"), new CDATA("x"));
+		checkDifferent(new Text("x"), new Comment("x"));
+		checkEqual(new CDATA("x"), new CDATA("x"));
+		checkEqual(new Comment("x"), new Comment("x"));
+		checkEqual(new ProcessingInstruction("t", "d"), new ProcessingInstruction("t", "d"));
+		checkDifferent(new ProcessingInstruction("t", "d"), new ProcessingInstruction("u", "d"));
+		checkDifferent(new ProcessingInstruction("t", "d"), new ProcessingInstruction("t", "e"));
+		checkEqual(new EntityRef("e", "p", "s"), new EntityRef("e", "p", "s"));
+		checkEqual(new EntityRef("e"), new EntityRef("e"));
+		checkDifferent(new EntityRef("e", "p", "s"), new EntityRef("e", "s"));
+		checkDifferent(new EntityRef("e"), new EntityRef("f"));
+		checkEqual(new DocType("r", "p", "s"), new DocType("r", "p", "s"));
+		checkDifferent(new DocType("r", "p", "s"), new DocType("r", "s"));
+		final DocType dt = new DocType("r");
+		dt.setInternalSubset("<!ELEMENT r ANY>");
+		checkDifferent(dt, new DocType("r"));
+		final Text t = new Text("x");
+		assertTrue(t.deepEquals(t));
+		assertFalse(t.deepEquals(null));
+		assertFalse(new Element("x").deepEquals(null));
+		assertFalse(new Element("x").deepEquals(new Text("x")));
+	}
+
+	@Test
+	public void testElements() {
+		final Namespace ns = Namespace.getNamespace("p", "urn:p");
+		checkEqual(new Element("x"), new Element("x"));
+		checkDifferent(new Element("x"), new Element("y"));
+		checkDifferent(new Element("x"), new Element("x", ns));
+		// prefixes are not compared
+		checkEqual(new Element("x", ns), new Element("x", Namespace.getNamespace("q", "urn:p")));
+
+		// attribute order is not significant
+		final Element a = new Element("e").setAttribute("a", "1").setAttribute("b", "2", ns);
+		final Element b = new Element("e").setAttribute("b", "2", ns).setAttribute("a", "1");
+		checkEqual(a, b);
+		b.getAttribute("a").setValue("3");
+		checkDifferent(a, b);
+		b.getAttribute("a").setValue("1");
+		checkEqual(a, b);
+		b.setAttribute(new Attribute("b", "2"));
+		checkDifferent(a, b);
+		b.removeAttribute("b");
+		checkEqual(a, b);
+		a.addNamespaceDeclaration(Namespace.getNamespace("z", "urn:z"));
+		checkEqual(a, b);
+
+		// content order is significant
+		a.addContent(new Element("c1")).addContent(new Text("t"));
+		b.addContent(new Text("t")).addContent(0, new Element("c1"));
+		checkEqual(a, b);
+		b.getChild("c1").addContent(new Comment("deep"));
+		checkDifferent(a, b);
+		a.getChild("c1").addContent(new Comment("deep"));
+		checkEqual(a, b);
+		b.sortContent(new Comparator<Content>() {
+			@Override
+			public int compare(Content o1, Content o2) {
+				return o2.getCType().compareTo(o1.getCType());
+			}
+		});
+		checkDifferent(a, b);
+	}
+
+	@Test
+	public void testHashCache() {
+		final Element root = new Element("root");
+		final Element kid = new Element("kid");
+		final Element leaf = new Element("leaf");
+		root.addContent(kid);
+		kid.addContent(leaf);
+		final Text text = new Text("one");
+		leaf.addContent(text);
+		final int h1 = root.structuralHash();
+		assertEquals(h1, root.structuralHash());
+		text.setText("two");
+		final int h2 = root.structuralHash();
+		assertTrue(h1 != h2);
+		text.setText("one");
+		assertEquals(h1, root.structuralHash());
+		leaf.setAttribute("a", "b");
+		assertTrue(h1 != root.structuralHash());
+		leaf.getAttribute("a").setValue("c");
+		final int h3 = root.structuralHash();
+		leaf.removeAttribute("a");
+		assertEquals(h1, root.structuralHash());
+		leaf.setAttribute("a", "c");
+		assertEquals(h3, root.structuralHash());
+		leaf.setName("other");
+		assertTrue(h3 != root.structuralHash());
+
+		// a cached hash that differs is used to detect the difference.
+		final Element copy = root.clone();
+		assertEquals(root.structuralHash(), copy.structuralHash());
+		checkEqual(root, copy);
+		copy.getChild("kid").getChild("other").setText("x");
+		copy.structuralHash();
+		checkDifferent(root, copy);
+	}
+
+	@Test
+	public void testDocuments() throws Exception {
+		final Document d1 = build(XML);
+		final Document d2 = build(XML);
+		assertTrue(d1.deepEquals(d2));
+		assertTrue(d2.deepEquals(d1));
+		assertTrue(d1.deepEquals(d1));
+		assertFalse(d1.deepEquals(null));
+		assertFalse(d1.equals(d2));
+		assertEquals(d1.structuralHash(), d2.structuralHash());
+		assertEquals(d1.structuralHash(), d1.clone().structuralHash());
+		assertTrue(d1.deepEquals(d1.clone()));
+
+		d2.setBaseURI("http://example.com/");
+		assertTrue(d1.deepEquals(d2));
+
+		final int h = d2.structuralHash();
+		d2.getRootElement().getChild("a").getChild("b").setText("other");
+		assertTrue(h != d2.structuralHash());
+		assertFalse(d1.deepEquals(d2));
+		d2.getRootElement().getChild("a").getChild("b").setText("bee");
+		assertEquals(h, d2.structuralHash());
+		assertTrue(d1.deepEquals(d2));
+
+		d2.getDocType().setInternalSubset(null);
+		assertFalse(d1.deepEquals(d2));
+
+		assertFalse(d1.deepEquals(build(XML.replace("<!--head-->", ""))));
+		assertFalse(d1.deepEquals(build(XML.replace("tail", "tale"))));
+		assertFalse(d1.deepEquals(build(XML.replace("a=\"1\"", "a=\"2\""))));
+		assertTrue(d1.deepEquals(build(XML.replace("a=\"1\" p:b=\"2\"", "p:b=\"2\" a=\"1\""))));
+	}
+
+}
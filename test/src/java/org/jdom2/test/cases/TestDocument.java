@@ -1003,4 +1003,92 @@ public final class TestDocument {
 //		}
 //	}
 	
+	@Test
+	public void testRetainContent() {
+		final Element root = new Element("root");
+		final Comment c1 = new Comment("one");
+		final ProcessingInstruction pi = new ProcessingInstruction("pi", "data");
+		final Comment c2 = new Comment("two");
+		final Document doc = new Document();
+		doc.addContent(c1);
+		doc.addContent(pi);
+		doc.addContent(root);
+		doc.addContent(c2);
+		final List<Content> removed = doc.retainContent(new ContentFilter(ContentFilter.ELEMENT | ContentFilter.PI));
+		assertEquals(2, removed.size());
+		assertTrue(c1 == removed.get(0));
+		assertTrue(c2 == removed.get(1));
+		assertNull(c1.getParent());
+		assertEquals(2, doc.getContentSize());
+		assertTrue(doc.getRootElement() == root);
+		assertEquals(1, doc.indexOf(root));
+		assertTrue(root.getPreviousSibling() == pi);
+	}
+
+	@Test
+	public void testTransferContent() {
+		final Document src = new Document();
+		final Comment c = new Comment("c");
+		final Element root = new Element("root");
+		src.addContent(new DocType("root"));
+		src.addContent(c);
+		src.addContent(root);
+		final Document dest = new Document();
+		dest.transferContent(src);
+		assertEquals(0, src.getContentSize());
+		assertEquals(3, dest.getContentSize());
+		assertTrue(dest.getRootElement() == root);
+		assertTrue(c.getParent() == dest);
+
+		// a second root element is refused, and nothing moves
+		final Element other = new Element("other");
+		other.addContent(new Comment("x"));
+		other.addContent(new Element("second"));
+		try {
+			dest.transferContent(other);
+			fail("Should not be able to add a second root element");
+		} catch (IllegalAddException iae) {
+			// good
+		}
+		assertEquals(2, other.getContentSize());
+		assertEquals(3, dest.getContentSize());
+		assertTrue(other.getContent(1).getParent() == other);
+
+		// the comment alone is fine.
+		dest.transferContent(0, other, 0, 1);
+		assertEquals(4, dest.getContentSize());
+		assertEquals("x", dest.getContent(0).getValue());
+		assertEquals(1, other.getContentSize());
+	}
+
+	@Test
+	public void testModificationStamp() {
+		final Element root = new Element("root");
+		final Element kid = new Element("kid");
+		root.addContent(kid);
+		final Document doc = new Document();
+		int ds = doc.getModificationStamp();
+		doc.setRootElement(root);
+		assertTrue(ds != doc.getModificationStamp());
+		ds = doc.getModificationStamp();
+		doc.addContent(new Comment("c"));
+		assertTrue(ds != doc.getModificationStamp());
+		ds = doc.getModificationStamp();
+		kid.setAttribute("a", "b");
+		assertTrue(ds != doc.getModificationStamp());
+		ds = doc.getModificationStamp();
+		((Comment)doc.getContent(1)).setText("changed");
+		assertTrue(ds != doc.getModificationStamp());
+		ds = doc.getModificationStamp();
+		doc.getContent(1).detach();
+		assertTrue(ds != doc.getModificationStamp());
+		// detached content no longer affects the Document
+		ds = doc.getModificationStamp();
+		kid.detach();
+		assertTrue(ds != doc.getModificationStamp());
+		ds = doc.getModificationStamp();
+		kid.setAttribute("a", "c");
+		assertEquals(ds, doc.getModificationStamp());
+	}
+
 }
@@ -100,6 +100,7 @@ import org.jdom2.Namespace;
 import org.jdom2.ProcessingInstruction;
 import org.jdom2.Text;
 import org.jdom2.Content.CType;
+import org.jdom2.filter.AbstractFilter;
 import org.jdom2.filter.ContentFilter;
 import org.jdom2.filter.ElementFilter;
 import org.jdom2.filter.Filters;
@@ -2573,6 +2574,75 @@ public final class TestElement {
 		assertNull(clone.getParent());
 	}
 
+	@Test
+	public void testCloneDeepTree() {
+		// deep enough to overflow the stack with a recursive clone.
+		// built bottom-up, so each add does not walk the whole ancestry.
+		Element root = null;
+		for (int i = 100000; i >= 0; i--) {
+			final Element e = new Element("kid");
+			e.setAttribute("depth", "" + i);
+			if (root != null) {
+				e.addContent(new Text("t" + i));
+				e.addContent(root);
+			}
+			root = e;
+		}
+		final Element clone = root.clone();
+		Element s = root;
+		Element c = clone;
+		while (s != null) {
+			assertTrue(s != c);
+			assertEquals(s.getAttributeValue("depth"), c.getAttributeValue("depth"));
+			assertEquals(s.getContentSize(), c.getContentSize());
+			if (s.getContentSize() == 0) {
+				break;
+			}
+			assertEquals(s.getText(), c.getText());
+			assertTrue(c == c.getContent(0).getParent());
+			assertTrue(c == c.getAttribute("depth").getParent());
+			s = s.getChild("kid");
+			c = c.getChild("kid");
+			assertTrue(s.getParent() != c.getParent());
+		}
+	}
+
+	@Test
+	public void testCloneStructure() {
+		final Namespace ns = Namespace.getNamespace("p", "urn:p");
+		final Element root = new Element("root", ns);
+		root.addNamespaceDeclaration(Namespace.getNamespace("q", "urn:q"));
+		root.setAttribute("a", "1");
+		root.getAttributes();
+		final Element kid = new Element("kid");
+		kid.getAttributes();
+		root.addContent(new Comment("c"));
+		root.addContent(kid);
+		root.addContent(new CDATA("cd"));
+		root.addContent(new EntityRef("ent"));
+		root.addContent(new ProcessingInstruction("pi", "data"));
+		kid.addContent(new Element("grandkid").setText("gk"));
+		final Element clone = root.clone();
+		assertTrue(root.deepEquals(clone));
+		assertEquals(root.getAdditionalNamespaces(), clone.getAdditionalNamespaces());
+		assertTrue(root.getAdditionalNamespaces() != clone.getAdditionalNamespaces());
+		assertFalse(clone.getChild("kid").hasAttributes());
+		for (int i = 0; i < root.getContentSize(); i++) {
+			final Content c = clone.getContent(i);
+			assertTrue(c != root.getContent(i));
+			assertTrue(c.getClass() == root.getContent(i).getClass());
+			assertEquals(i, clone.indexOf(c));
+			assertTrue(clone == c.getParent());
+		}
+		// the clone is independent, and can be modified normally.
+		clone.getChild("kid").getChild("grandkid").setText("changed");
+		clone.addContent(1, new Element("added"));
+		clone.getChild("kid").detach();
+		assertEquals("gk", root.getChild("kid").getChild("grandkid").getText());
+		assertEquals(5, root.getContentSize());
+		assertFalse(root.deepEquals(clone));
+	}
+
     @Test
     public void testContentCType() {
     	assertTrue(Content.CType.Element == new Element("root").getCType());
@@ -3320,4 +3390,333 @@ public final class TestElement {
 		}
 	}
 
+	@Test
+	public void testModificationStampBetweenReads() {
+		Element root = new Element("root");
+		Element kid = new Element("kid");
+		Element leaf = new Element("leaf");
+		Text text = new Text("text");
+		root.addContent(kid);
+		kid.addContent(leaf);
+		leaf.addContent(text);
+
+		// several changes between reads of the root
+		int rs = root.getModificationStamp();
+		text.setText("a");
+		text.setText("b");
+		leaf.setAttribute("att", "val");
+		assertTrue(rs != root.getModificationStamp());
+
+		// reading a descendant must not hide later changes from the root
+		rs = root.getModificationStamp();
+		text.setText("c");
+		int ls = leaf.getModificationStamp();
+		text.setText("d");
+		assertTrue(ls != leaf.getModificationStamp());
+		assertTrue(rs != root.getModificationStamp());
+
+		// reading an ancestor must not hide later changes from a descendant
+		ls = leaf.getModificationStamp();
+		int ks = kid.getModificationStamp();
+		text.setText("e");
+		rs = root.getModificationStamp();
+		text.setText("f");
+		assertTrue(ls != leaf.getModificationStamp());
+		assertTrue(ks != kid.getModificationStamp());
+		assertTrue(rs != root.getModificationStamp());
+
+		// a moved subtree must still update its new ancestors
+		Element other = new Element("other");
+		rs = root.getModificationStamp();
+		leaf.detach();
+		other.addContent(leaf);
+		assertTrue(rs != root.getModificationStamp());
+		int os = other.getModificationStamp();
+		text.setText("g");
+		assertTrue(os != other.getModificationStamp());
+	}
+
+	@Test
+	public void testModificationStamp() {
+		Element root = new Element("root");
+		Element kid = new Element("kid");
+		Element leaf = new Element("leaf");
+		Text text = new Text("text");
+		root.addContent(kid);
+		kid.addContent(leaf);
+		leaf.addContent(text);
+		
+		int rs = root.getModificationStamp();
+		int ks = kid.getModificationStamp();
+		int ls = leaf.getModificationStamp();
+		
+		text.setText("changed");
+		assertTrue(rs != root.getModificationStamp());
+		assertTrue(ks != kid.getModificationStamp());
+		assertTrue(ls != leaf.getModificationStamp());
+		
+		rs = root.getModificationStamp();
+		ks = kid.getModificationStamp();
+		ls = leaf.getModificationStamp();
+		leaf.setAttribute("att", "val");
+		assertTrue(rs != root.getModificationStamp());
+		assertTrue(ls != leaf.getModificationStamp());
+		
+		rs = root.getModificationStamp();
+		ls = leaf.getModificationStamp();
+		leaf.getAttribute("att").setValue("other");
+		assertTrue(rs != root.getModificationStamp());
+		assertTrue(ls != leaf.getModificationStamp());
+		
+		// changes to the parent do not affect the child.
+		rs = root.getModificationStamp();
+		ks = kid.getModificationStamp();
+		ls = leaf.getModificationStamp();
+		root.setName("newroot");
+		root.addContent(new Comment("comment"));
+		assertTrue(rs != root.getModificationStamp());
+		assertEquals(ks, kid.getModificationStamp());
+		assertEquals(ls, leaf.getModificationStamp());
+		
+		// detaching changes the old parent only
+		ks = kid.getModificationStamp();
+		ls = leaf.getModificationStamp();
+		leaf.detach();
+		assertTrue(ks != kid.getModificationStamp());
+		assertEquals(ls, leaf.getModificationStamp());
+		
+		ls = leaf.getModificationStamp();
+		leaf.addNamespaceDeclaration(Namespace.getNamespace("pfx", "urn:x"));
+		assertTrue(ls != leaf.getModificationStamp());
+		
+		rs = root.getModificationStamp();
+		root.sortContent(new Comparator<Content>() {
+			@Override
+			public int compare(Content o1, Content o2) {
+				return o1.getCType().compareTo(o2.getCType());
+			}
+		});
+		assertTrue(rs != root.getModificationStamp());
+	}
+
+	@Test
+	public void testRemoveRetainContentFilter() {
+		final Element root = new Element("root");
+		final List<Content> all = new ArrayList<Content>();
+		for (int i = 0; i < 100; i++) {
+			all.add(new Element("e" + i));
+			all.add(new Comment("c" + i));
+			all.add(new Text(" "));
+		}
+		root.addContent(all);
+		final Element first = (Element)all.get(0);
+		final Comment c5 = (Comment)all.get(16);
+
+		int stamp = root.getModificationStamp();
+		final List<Comment> comments = root.removeContent(Filters.comment());
+		assertEquals(100, comments.size());
+		assertTrue(c5 == comments.get(5));
+		assertNull(c5.getParent());
+		assertEquals(200, root.getContentSize());
+		assertTrue(stamp != root.getModificationStamp());
+		assertEquals(0, root.indexOf(first));
+		assertTrue(first.getNextSibling() == all.get(2));
+		assertEquals(-1, root.indexOf(c5));
+
+		stamp = root.getModificationStamp();
+		assertTrue(root.removeContent(Filters.comment()).isEmpty());
+		assertEquals(stamp, root.getModificationStamp());
+
+		final List<Content> texts = root.retainContent(Filters.element());
+		assertEquals(100, texts.size());
+		assertEquals(100, root.getContentSize());
+		for (Content t : texts) {
+			assertTrue(t instanceof Text);
+			assertNull(t.getParent());
+		}
+		assertEquals(99, root.indexOf(all.get(297)));
+		assertTrue(root.retainContent(Filters.element()).isEmpty());
+
+		// an exception from the filter leaves the content unchanged.
+		try {
+			root.removeContent(Filters.element().refine(new AbstractFilter<Element>() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public Element filter(Object content) {
+					if ("e50".equals(((Element)content).getName())) {
+						throw new IllegalStateException("boom");
+					}
+					return (Element)content;
+				}
+			}));
+			failNoException(IllegalStateException.class);
+		} catch (Exception e) {
+			checkException(IllegalStateException.class, e);
+		}
+		assertEquals(100, root.getContentSize());
+		assertTrue(first.getParent() == root);
+
+		final List<Content> some = new ArrayList<Content>(root.getContent().subList(10, 20));
+		assertTrue(root.getContent().removeAll(some));
+		assertEquals(90, root.getContentSize());
+		assertNull(some.get(0).getParent());
+		assertTrue(root.getContent().retainAll(Collections.singleton(first)));
+		assertEquals(1, root.getContentSize());
+		assertFalse(root.getContent().retainAll(Collections.singleton(first)));
+	}
+
+	@Test
+	public void testRemoveRetainAttributes() {
+		final Element emt = new Element("root");
+		assertTrue(emt.removeAttributes(Filters.attribute()).isEmpty());
+		assertTrue(emt.retainAttributes(Filters.attribute()).isEmpty());
+		final Namespace ns = Namespace.getNamespace("pfx", "urn:x");
+		emt.setAttribute("a", "1");
+		emt.setAttribute("b", "2", ns);
+		emt.setAttribute("c", "3");
+		emt.setAttribute("d", "4", ns);
+		final Attribute b = emt.getAttribute("b", ns);
+
+		final List<Attribute> nsatts = emt.removeAttributes(Filters.attribute(ns));
+		assertEquals(2, nsatts.size());
+		assertTrue(b == nsatts.get(0));
+		assertNull(b.getParent());
+		assertEquals(2, emt.getAttributes().size());
+		assertEquals("1", emt.getAttributeValue("a"));
+		assertEquals("3", emt.getAttributeValue("c"));
+
+		final List<Attribute> gone = emt.retainAttributes(Filters.attribute("c"));
+		assertEquals(1, gone.size());
+		assertEquals("a", gone.get(0).getName());
+		assertEquals(1, emt.getAttributes().size());
+		assertEquals("3", emt.getAttributeValue("c"));
+
+		emt.setAttribute("e", "5");
+		assertTrue(emt.getAttributes().removeAll(Collections.singleton(emt.getAttribute("c"))));
+		assertEquals(1, emt.getAttributes().size());
+		assertEquals("5", emt.getAttributeValue("e"));
+	}
+
+	@Test
+	public void testTransferContent() {
+		final Element src = new Element("src");
+		final Element dest = new Element("dest");
+		final Element[] kids = new Element[10];
+		for (int i = 0; i < kids.length; i++) {
+			kids[i] = new Element("k" + i);
+			src.addContent(kids[i]);
+			src.addContent(new Text("t" + i));
+		}
+		dest.addContent(new Comment("a"));
+		dest.addContent(new Comment("b"));
+
+		// move k2..k4 (with their text) between the two comments
+		assertTrue(dest == dest.transferContent(1, src, 4, 10));
+		assertEquals(14, src.getContentSize());
+		assertEquals(8, dest.getContentSize());
+		assertTrue(kids[2].getParent() == dest);
+		assertEquals(1, dest.indexOf(kids[2]));
+		assertEquals(5, dest.indexOf(kids[4]));
+		assertEquals(-1, src.indexOf(kids[2]));
+		assertEquals(4, src.indexOf(kids[5]));
+		assertTrue(kids[1].getNextSibling().getNextSibling() == kids[5]);
+		assertEquals("t4", dest.getContent(6).getValue());
+		assertEquals("b", dest.getContent(7).getValue());
+
+		// nothing to move
+		int stamp = dest.getModificationStamp();
+		dest.transferContent(0, src, 3, 3);
+		assertEquals(stamp, dest.getModificationStamp());
+
+		// everything else, at the end
+		dest.transferContent(src);
+		assertEquals(0, src.getContentSize());
+		assertEquals(22, dest.getContentSize());
+		assertTrue(kids[9].getParent() == dest);
+		assertEquals(8, dest.indexOf(kids[0]));
+
+		// cycles are refused, and nothing moves
+		kids[0].addContent(src);
+		src.addContent(new Element("leaf"));
+		try {
+			src.transferContent(0, dest, 8, 9);
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+		try {
+			kids[0].transferContent(dest);
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+		assertEquals(22, dest.getContentSize());
+		assertTrue(src.getParent() == kids[0]);
+		// but it is fine to move content up the tree
+		dest.transferContent(0, src, 0, 1);
+		assertEquals("leaf", ((Element)dest.getContent(0)).getName());
+
+		try {
+			dest.transferContent(0, dest, 0, 1);
+			failNoException(IllegalArgumentException.class);
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+		try {
+			src.transferContent(0, dest, 5, 50);
+			failNoException(IndexOutOfBoundsException.class);
+		} catch (Exception e) {
+			checkException(IndexOutOfBoundsException.class, e);
+		}
+
+		// a DocType can not be moved from a Document to an Element
+		final Document doc = new Document(new Element("root"), new DocType("root"));
+		try {
+			dest.transferContent(doc);
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+		assertTrue(doc.hasRootElement());
+		final Element root = doc.getRootElement();
+		dest.transferContent(0, doc, 1, 2);
+		assertFalse(doc.hasRootElement());
+		assertTrue(root.getParent() == dest);
+	}
+
+	@Test
+	public void testTransferAttributes() {
+		final Namespace ns = Namespace.getNamespace("pfx", "urn:x");
+		final Element src = new Element("src");
+		src.setAttribute("a", "1");
+		src.setAttribute("b", "2", ns);
+		final Attribute a = src.getAttribute("a");
+		final Element dest = new Element("dest");
+		dest.setAttribute("a", "old");
+		dest.setAttribute("c", "3");
+		final Attribute olda = dest.getAttribute("a");
+
+		assertTrue(dest == dest.transferAttributes(src));
+		assertFalse(src.hasAttributes());
+		assertEquals(3, dest.getAttributes().size());
+		assertTrue(a == dest.getAttribute("a"));
+		assertTrue(a.getParent() == dest);
+		assertNull(olda.getParent());
+		assertEquals("2", dest.getAttributeValue("b", ns));
+
+		// nothing to do
+		dest.transferAttributes(src);
+		assertEquals(3, dest.getAttributes().size());
+
+		final Element clash = new Element("clash", Namespace.getNamespace("pfx", "urn:y"));
+		try {
+			clash.transferAttributes(dest);
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+		assertEquals(3, dest.getAttributes().size());
+		assertFalse(clash.hasAttributes());
+	}
+
 }
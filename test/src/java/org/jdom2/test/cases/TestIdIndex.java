@@ -0,0 +1,165 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.IdIndex;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+
+@SuppressWarnings("javadoc")
+public class TestIdIndex {
+
+	private static final String XML = 
+			"<!DOCTYPE root [\n" +
+			"<!ELEMENT root (item*)>\n" +
+			"<!ELEMENT item (item*)>\n" +
+			"<!ATTLIST item key ID #IMPLIED name CDATA #IMPLIED>\n" +
+			"]>\n" +
+			"<root><item key='a' name='x'><item key='b' name='y'/></item>" +
+			"<item key='c'/></root>";
+
+	@Test
+	public void testDTDIds() throws Exception {
+		final Document doc = new SAXBuilder().build(new StringReader(XML));
+		final Element a = doc.getRootElement().getChild("item");
+		assertEquals(AttributeType.ID, a.getAttribute("key").getAttributeType());
+		// no index, found by searching.
+		assertNull(IdIndex.getIndex(doc));
+		assertTrue(a == doc.getElementById("a"));
+		assertTrue(a.getChild("item") == doc.getElementById("b"));
+		assertNull(doc.getElementById("x"));
+
+		final IdIndex index = IdIndex.install(doc);
+		assertTrue(index == IdIndex.getIndex(doc));
+		assertTrue(doc == index.getDocument());
+		assertEquals(3, index.size());
+		assertTrue(a == doc.getElementById("a"));
+		assertTrue(a.getChild("item") == index.getElement("b"));
+		assertNull(doc.getElementById("x"));
+		assertTrue(IdIndex.remove(doc));
+		assertFalse(IdIndex.remove(doc));
+		assertNull(IdIndex.getIndex(doc));
+	}
+
+	@Test
+	public void testMaintenance() {
+		final Element root = new Element("root");
+		final Document doc = new Document(root);
+		final IdIndex index = IdIndex.install(doc, "id", "{urn:x}ref");
+		assertEquals(0, index.size());
+		assertEquals(2, index.getAttributeNames().size());
+
+		// add a subtree
+		final Element a = new Element("a").setAttribute("id", "a1");
+		final Element b = new Element("b").setAttribute("id", "b1");
+		a.addContent(b);
+		root.addContent(a);
+		assertTrue(a == doc.getElementById("a1"));
+		assertTrue(b == doc.getElementById("b1"));
+
+		// change values, names, types
+		b.getAttribute("id").setValue("b2");
+		assertNull(doc.getElementById("b1"));
+		assertTrue(b == doc.getElementById("b2"));
+		b.getAttribute("id").setName("other");
+		assertNull(doc.getElementById("b2"));
+		b.getAttribute("other").setAttributeType(AttributeType.ID);
+		assertTrue(b == doc.getElementById("b2"));
+		b.getAttribute("other").setAttributeType(AttributeType.CDATA);
+		assertNull(doc.getElementById("b2"));
+		final Namespace x = Namespace.getNamespace("x", "urn:x");
+		b.setAttribute("ref", "r1", x);
+		assertTrue(b == doc.getElementById("r1"));
+		b.getAttribute("ref", x).setNamespace(Namespace.getNamespace("y", "urn:y"));
+		assertNull(doc.getElementById("r1"));
+
+		// attribute removal and replacement
+		a.setAttribute("id", "a2");
+		assertNull(doc.getElementById("a1"));
+		assertTrue(a == doc.getElementById("a2"));
+		a.removeAttribute("id");
+		assertNull(doc.getElementById("a2"));
+		a.setAttribute(new Attribute("id", "a3"));
+		assertTrue(a == doc.getElementById("a3"));
+
+		// detach, then re-attach a subtree.
+		b.setAttribute("id", "b3");
+		a.detach();
+		assertNull(doc.getElementById("a3"));
+		assertNull(doc.getElementById("b3"));
+		assertEquals(0, index.size());
+		// changes to detached content do not affect the index.
+		a.setAttribute("id", "a4");
+		assertNull(doc.getElementById("a4"));
+		root.addContent(a);
+		assertTrue(a == doc.getElementById("a4"));
+		assertTrue(b == doc.getElementById("b3"));
+
+		// bulk operations
+		root.removeContent(Filters.element());
+		assertEquals(0, index.size());
+		final Element holder = new Element("holder");
+		holder.addContent(a);
+		root.transferContent(holder);
+		assertTrue(b == doc.getElementById("b3"));
+		root.setContent(new Element("c").setAttribute("id", "c1"));
+		assertNull(doc.getElementById("a4"));
+		assertEquals("c", doc.getElementById("c1").getName());
+
+		// replacing the root element
+		doc.setRootElement(a);
+		assertNull(doc.getElementById("c1"));
+		assertTrue(a == doc.getElementById("a4"));
+	}
+
+	@Test
+	public void testDuplicates() {
+		final Element root = new Element("root");
+		final Element e1 = new Element("e").setAttribute("id", "dup");
+		final Element e2 = new Element("e").setAttribute("id", "dup");
+		root.addContent(e1);
+		root.addContent(e2);
+		final Document doc = new Document(root);
+		final IdIndex index = IdIndex.install(doc, "id");
+		assertEquals(1, index.size());
+		assertTrue(e1 == doc.getElementById("dup"));
+		assertEquals(Arrays.asList(e1, e2), index.getElements("dup"));
+		e1.detach();
+		assertTrue(e2 == doc.getElementById("dup"));
+		assertEquals(Arrays.asList(e2), index.getElements("dup"));
+		e2.detach();
+		assertTrue(index.getElements("dup").isEmpty());
+	}
+
+	@Test
+	public void testClone() {
+		final Element root = new Element("root");
+		root.addContent(new Element("e").setAttribute("id", "one"));
+		final Document doc = new Document(root);
+		IdIndex.install(doc, "id");
+		final Document copy = doc.clone();
+		assertNull(IdIndex.getIndex(copy));
+		// the copy's content is not indexed in the original's index.
+		copy.getRootElement().addContent(new Element("e").setAttribute("id", "two"));
+		assertNull(doc.getElementById("two"));
+		assertTrue(root.getChild("e") == doc.getElementById("one"));
+		// the copy falls back to searching, which only sees ID types.
+		assertNull(copy.getElementById("one"));
+		IdIndex.install(copy, "id");
+		assertEquals("e", copy.getElementById("two").getName());
+		assertTrue(copy.getElementById("one") != doc.getElementById("one"));
+		IdIndex.remove(copy);
+		IdIndex.remove(doc);
+	}
+
+}
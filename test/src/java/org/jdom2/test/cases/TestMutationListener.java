@@ -0,0 +1,260 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.MutationEvent;
+import org.jdom2.MutationEvent.Type;
+import org.jdom2.MutationJournal;
+import org.jdom2.MutationListener;
+import org.jdom2.Namespace;
+import org.jdom2.Text;
+import org.jdom2.filter.Filters;
+
+@SuppressWarnings("javadoc")
+public class TestMutationListener {
+
+	private static final class Recorder implements MutationListener {
+		private final List<MutationEvent> events = new ArrayList<MutationEvent>();
+		@Override
+		public void mutated(MutationEvent event) {
+			events.add(event);
+		}
+		MutationEvent take(Type type, Object node, int index) {
+			assertFalse("No events left, expected " + type, events.isEmpty());
+			final MutationEvent e = events.remove(0);
+			assertEquals(type, e.getType());
+			assertTrue("Expected " + node + " but was " + e.getNode(), node == e.getNode());
+			assertEquals(index, e.getIndex());
+			return e;
+		}
+		void none() {
+			assertTrue(events.toString(), events.isEmpty());
+		}
+	}
+
+	@Test
+	public void testContentEvents() {
+		final Element root = new Element("root");
+		final Recorder rec = new Recorder();
+		root.addMutationListener(rec);
+		final Element kid = new Element("kid");
+		final Text txt = new Text("t");
+		root.addContent(kid);
+		rec.take(Type.CONTENT_ADDED, kid, 0);
+		root.addContent(0, txt);
+		assertTrue(root == rec.take(Type.CONTENT_ADDED, txt, 0).getParent());
+		txt.setText("changed");
+		rec.take(Type.CONTENT_CHANGED, txt, -1);
+		final Comment c = new Comment("c");
+		root.setContent(1, c);
+		rec.take(Type.CONTENT_REMOVED, kid, 1);
+		rec.take(Type.CONTENT_ADDED, c, 1);
+		c.detach();
+		rec.take(Type.CONTENT_REMOVED, c, 1);
+		rec.none();
+
+		// changes deep in the tree reach listeners on all ancestors.
+		root.addContent(kid);
+		rec.take(Type.CONTENT_ADDED, kid, 1);
+		final Recorder deep = new Recorder();
+		kid.addMutationListener(deep);
+		final Element leaf = new Element("leaf");
+		kid.addContent(leaf);
+		leaf.setAttribute("a", "1");
+		for (Recorder r : new Recorder[] {rec, deep}) {
+			assertTrue(kid == r.take(Type.CONTENT_ADDED, leaf, 0).getParent());
+			assertTrue(leaf == r.take(Type.ATTRIBUTE_ADDED, leaf.getAttribute("a"), 0).getParent());
+			r.none();
+		}
+		assertTrue(kid.removeMutationListener(deep));
+		assertFalse(kid.removeMutationListener(deep));
+		leaf.setName("renamed");
+		rec.take(Type.ELEMENT_CHANGED, leaf, -1);
+		deep.none();
+
+		// bulk removal is reported last to first.
+		root.addContent(new Comment("x"));
+		rec.take(Type.CONTENT_ADDED, root.getContent(2), 2);
+		final List<Content> all = new ArrayList<Content>(root.getContent());
+		root.removeContent();
+		rec.take(Type.CONTENT_REMOVED, all.get(2), 2);
+		rec.take(Type.CONTENT_REMOVED, all.get(1), 1);
+		rec.take(Type.CONTENT_REMOVED, all.get(0), 0);
+		rec.none();
+
+		root.addContent(all);
+		for (int i = 0; i < all.size(); i++) {
+			rec.take(Type.CONTENT_ADDED, all.get(i), i);
+		}
+		root.removeContent(Filters.textOnly());
+		rec.take(Type.CONTENT_REMOVED, all.get(0), 0);
+		rec.none();
+		root.sortContent(new Comparator<Content>() {
+			@Override
+			public int compare(Content o1, Content o2) {
+				return o1.getCType().compareTo(o2.getCType());
+			}
+		});
+		rec.take(Type.CONTENT_REORDERED, null, -1);
+		rec.none();
+
+		// events are not created for detached trees, or after removal.
+		assertTrue(root.removeMutationListener(rec));
+		root.addContent(new Element("quiet"));
+		rec.none();
+	}
+
+	@Test
+	public void testAttributeAndNamespaceEvents() {
+		final Element emt = new Element("emt");
+		final Recorder rec = new Recorder();
+		emt.addMutationListener(rec);
+		emt.setAttribute("a", "1");
+		final Attribute a = emt.getAttribute("a");
+		rec.take(Type.ATTRIBUTE_ADDED, a, 0);
+		a.setValue("2");
+		rec.take(Type.ATTRIBUTE_CHANGED, a, -1);
+		emt.setAttribute("b", "1");
+		final Attribute b = emt.getAttribute("b");
+		rec.take(Type.ATTRIBUTE_ADDED, b, 1);
+		final Attribute a2 = new Attribute("a", "3");
+		emt.setAttribute(a2);
+		rec.take(Type.ATTRIBUTE_REMOVED, a, 0);
+		rec.take(Type.ATTRIBUTE_ADDED, a2, 0);
+		emt.removeAttribute("b");
+		rec.take(Type.ATTRIBUTE_REMOVED, b, 1);
+		final Namespace ns = Namespace.getNamespace("p", "urn:p");
+		emt.addNamespaceDeclaration(ns);
+		rec.take(Type.NAMESPACE_ADDED, ns, -1);
+		emt.removeNamespaceDeclaration(ns);
+		rec.take(Type.NAMESPACE_REMOVED, ns, -1);
+		emt.setNamespace(ns);
+		rec.take(Type.ELEMENT_CHANGED, emt, -1);
+
+		final Element other = new Element("other");
+		other.setAttribute("a", "4");
+		other.setAttribute("c", "5");
+		final Attribute a4 = other.getAttribute("a");
+		final Attribute c = other.getAttribute("c");
+		emt.transferAttributes(other);
+		rec.take(Type.ATTRIBUTE_REMOVED, a2, 0);
+		rec.take(Type.ATTRIBUTE_ADDED, a4, 0);
+		rec.take(Type.ATTRIBUTE_ADDED, c, 1);
+		rec.none();
+		emt.removeMutationListener(rec);
+	}
+
+	@Test
+	public void testDocumentJournal() {
+		final Document doc = new Document(new Element("root"));
+		final MutationJournal journal = new MutationJournal();
+		doc.addMutationListener(journal);
+		assertEquals(0, journal.size());
+		doc.addContent(0, new Comment("c"));
+		final Element root = doc.getRootElement();
+		final Element kid = new Element("kid");
+		root.addContent(kid);
+		kid.setAttribute("x", "y");
+		assertEquals(3, journal.size());
+		final List<MutationEvent> events = journal.getEvents(0);
+		assertEquals(Arrays.asList(Type.CONTENT_ADDED, Type.CONTENT_ADDED, Type.ATTRIBUTE_ADDED),
+				Arrays.asList(events.get(0).getType(), events.get(1).getType(), events.get(2).getType()));
+		assertTrue(doc == events.get(0).getParent());
+
+		final int seen = journal.size();
+		doc.setRootElement(new Element("newroot"));
+		final List<MutationEvent> recent = journal.getEvents(seen);
+		assertEquals(2, recent.size());
+		assertEquals(Type.CONTENT_REMOVED, recent.get(0).getType());
+		assertTrue(root == recent.get(0).getNode());
+		assertEquals(1, recent.get(0).getIndex());
+		assertEquals(Type.CONTENT_ADDED, recent.get(1).getType());
+		assertTrue(journal.getEvents(journal.size()).isEmpty());
+
+		journal.truncate(seen);
+		assertEquals(5, journal.size());
+		assertEquals(2, journal.getEvents(seen).size());
+		try {
+			journal.getEvents(0);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// good
+		}
+
+		// clones do not copy listeners.
+		final Document copy = doc.clone();
+		copy.getRootElement().addContent(new Element("x"));
+		assertEquals(5, journal.size());
+		assertTrue(doc.removeMutationListener(journal));
+	}
+
+	@Test
+	public void testSetContentOnEmpty() {
+		final Document doc = new Document();
+		final Recorder rec = new Recorder();
+		doc.addMutationListener(rec);
+		final Element root = new Element("root");
+		doc.setContent(root);
+		rec.take(Type.CONTENT_ADDED, root, 0);
+		rec.none();
+		final Attribute att = new Attribute("a", "b");
+		root.setAttributes(Arrays.asList(att));
+		rec.take(Type.ATTRIBUTE_ADDED, att, 0);
+		rec.none();
+		doc.removeMutationListener(rec);
+	}
+
+	@Test
+	public void testReplay() {
+		// replaying the events on a copy gives the same content.
+		final Element root = new Element("root");
+		for (int i = 0; i < 10; i++) {
+			root.addContent(new Element("e" + i));
+			root.addContent(new Text(" "));
+		}
+		final List<String> mirror = new ArrayList<String>();
+		for (Content c : root.getContent()) {
+			mirror.add(c.getCType() + c.getValue() + (c instanceof Element ? ((Element)c).getName() : ""));
+		}
+		final MutationJournal journal = new MutationJournal();
+		root.addMutationListener(journal);
+		root.removeContent(Filters.text());
+		root.addContent(3, new Comment("c"));
+		final Element holder = new Element("holder");
+		holder.addContent(new Element("moved1"));
+		holder.addContent(new Element("moved2"));
+		root.transferContent(5, holder, 0, 2);
+		root.getContent().subList(0, 2).clear();
+		root.getContent().retainAll(root.getContent().subList(1, 6));
+		for (MutationEvent e : journal.getEvents(0)) {
+			final Content c = (Content)e.getNode();
+			if (e.getType() == Type.CONTENT_ADDED) {
+				mirror.add(e.getIndex(), c.getCType() + c.getValue() + (c instanceof Element ? ((Element)c).getName() : ""));
+			} else if (e.getType() == Type.CONTENT_REMOVED) {
+				mirror.remove(e.getIndex());
+			} else {
+				fail("Unexpected " + e);
+			}
+		}
+		final List<String> actual = new ArrayList<String>();
+		for (Content c : root.getContent()) {
+			actual.add(c.getCType() + c.getValue() + (c instanceof Element ? ((Element)c).getName() : ""));
+		}
+		assertEquals(5, actual.size());
+		assertEquals(actual, mirror);
+		root.removeMutationListener(journal);
+	}
+
+}
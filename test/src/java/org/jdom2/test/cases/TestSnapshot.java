@@ -0,0 +1,274 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.DocType;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.IllegalDataException;
+import org.jdom2.IllegalNameException;
+import org.jdom2.Namespace;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Snapshot;
+import org.jdom2.Text;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+
+@SuppressWarnings("javadoc")
+public class TestSnapshot {
+
+	private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<!DOCTYPE root>"
+			+ "<!--head-->"
+			+ "<root xmlns:p=\"urn:p\" a=\"1\">"
+			+ "<a id=\"x\">text<b>bee</b><?pi data?></a>"
+			+ "<c p:q=\"2\"><d/><e>eee</e></c>"
+			+ "tail"
+			+ "</root>";
+
+	private static Document build() throws Exception {
+		return new SAXBuilder().build(new StringReader(XML));
+	}
+
+	private static String out(Document doc) {
+		return new XMLOutputter().outputString(doc).replace("\r", "").replace("\n", "");
+	}
+
+	@Test
+	public void testUnchanged() throws Exception {
+		final Document doc = build();
+		final String before = out(doc);
+		final Snapshot snap = doc.snapshot();
+		assertTrue(doc == snap.getSource());
+		assertEquals(0, snap.getChangedCount());
+		assertTrue(doc.getRootElement() == snap.getRootElement());
+		assertEquals(doc.getContent(), snap.getContent(doc));
+		assertEquals(before, out(snap.toDocument()));
+		assertFalse(doc == snap.toDocument());
+		snap.release();
+	}
+
+	@Test
+	public void testChangesArePreserved() throws Exception {
+		final Document doc = build();
+		final String before = out(doc);
+		final Snapshot snap = doc.snapshot();
+		final Element root = doc.getRootElement();
+		final Element a = root.getChild("a");
+		final Element b = a.getChild("b");
+		final Element c = root.getChild("c");
+
+		((Text)b.getContent(0)).setText("changed");
+		assertEquals(1, snap.getChangedCount());
+		b.getContent(0).detach();
+		assertEquals(2, snap.getChangedCount());
+		new Text("x").setText("y");
+		assertEquals(2, snap.getChangedCount());
+
+		root.getAttribute("a").setValue("99");
+		root.setName("newroot");
+		a.setAttribute("id", "y");
+		c.getAttribute("q", Namespace.getNamespace("urn:p")).setValue("3");
+		((ProcessingInstruction)a.getContent(2)).setData("other");
+		c.getChild("d").addContent(a.detach());
+		root.addNamespaceDeclaration(Namespace.getNamespace("z", "urn:z"));
+		doc.getDocType().setSystemID("sys");
+		((Comment)doc.getContent(1)).setText("new head");
+		doc.setBaseURI("http://example.com/");
+		root.sortContent(new Comparator<Content>() {
+			@Override
+			public int compare(Content o1, Content o2) {
+				return o1.getCType().compareTo(o2.getCType());
+			}
+		});
+
+		assertFalse(before.equals(out(doc)));
+		assertEquals(before, out(snap.toDocument()));
+		assertNull(snap.toDocument().getBaseURI());
+
+		// the navigation methods return the nodes as they were.
+		final List<Content> rc = snap.getContent(snap.getRootElement());
+		assertEquals(3, rc.size());
+		assertTrue(a == rc.get(0));
+		assertTrue(c == rc.get(1));
+		assertEquals("newroot", snap.getRootElement().getName());
+		assertEquals("root", snap.copyOf(snap.getRootElement()).getName());
+		final List<Attribute> atts = snap.getAttributes(a);
+		assertEquals(1, atts.size());
+		assertEquals("x", snap.copyOf(atts.get(0)).getValue());
+		assertEquals("y", atts.get(0).getValue());
+		assertEquals("tail", snap.copyOf((Text)rc.get(2)).getText());
+		assertTrue(snap.getAttributes(b).isEmpty());
+		assertEquals(1, snap.getContent(b).size());
+		try {
+			snap.getContent(b).clear();
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// good
+		}
+		snap.release();
+	}
+
+	@Test
+	public void testNewContentNotPreserved() throws Exception {
+		final Document doc = build();
+		final Snapshot snap = doc.snapshot();
+		final Element root = doc.getRootElement();
+		final Element added = new Element("added");
+		root.addContent(added);
+		assertEquals(1, snap.getChangedCount());
+		added.setAttribute("x", "y");
+		added.addContent(new Element("deeper").addContent("t"));
+		added.setName("renamed");
+		assertEquals(1, snap.getChangedCount());
+		final Element loose = new Element("loose");
+		loose.setText("text");
+		assertEquals(1, snap.getChangedCount());
+		assertEquals(out(build()), out(snap.toDocument()));
+		snap.release();
+	}
+
+	@Test
+	public void testSeveralSnapshots() throws Exception {
+		final Document doc = build();
+		final String v1 = out(doc);
+		final Snapshot s1 = doc.snapshot();
+		doc.getRootElement().getChild("c").getChild("e").setText("v2");
+		final String v2 = out(doc);
+		final Snapshot s2 = doc.snapshot();
+		doc.getRootElement().getChild("c").getChild("e").setText("v3");
+		doc.getRootElement().getChild("c").removeContent();
+		assertEquals(v1, out(s1.toDocument()));
+		assertEquals(v2, out(s2.toDocument()));
+		s1.release();
+		assertTrue(s1.isReleased());
+		assertFalse(s2.isReleased());
+		doc.getRootElement().setName("v4");
+		assertEquals(v2, out(s2.toDocument()));
+		s2.release();
+		try {
+			s1.getRootElement();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// good
+		}
+		assertEquals(0, s1.getChangedCount());
+	}
+
+	@Test
+	public void testConcurrentReader() throws Exception {
+		final Document doc = build();
+		final Element root = doc.getRootElement();
+		for (int i = 0; i < 100; i++) {
+			root.addContent(new Element("item").setAttribute("n", "" + i).setText("v" + i));
+		}
+		final String before = out(doc);
+		final Snapshot snap = doc.snapshot();
+		final Throwable[] failed = new Throwable[1];
+		final Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 2000; i++) {
+						final Element e = root.getChildren("item").get(i % 50);
+						e.setText("w" + i);
+						e.getAttribute("n").setValue("m" + i);
+						root.addContent(3, new Element("new" + i));
+						root.getChild("new" + i).detach();
+						e.detach();
+						root.addContent(e);
+					}
+				} catch (Throwable t) {
+					failed[0] = t;
+				}
+			}
+		};
+		writer.start();
+		for (int i = 0; i < 20; i++) {
+			assertEquals(before, out(snap.toDocument()));
+		}
+		writer.join();
+		if (failed[0] != null) {
+			throw new AssertionError(failed[0]);
+		}
+		assertEquals(before, out(snap.toDocument()));
+		snap.release();
+	}
+
+	@Test
+	public void testDetachedContentPreserved() throws Exception {
+		final Document doc = build();
+		final String before = out(doc);
+		final Snapshot snap = doc.snapshot();
+		final Element c = doc.getRootElement().getChild("c");
+		final Element e = c.getChild("e");
+		c.detach();
+		e.setText("changed");
+		e.setAttribute("att", "val");
+		c.getChild("d").detach().setName("dee");
+		assertEquals(before, out(snap.toDocument()));
+
+		// move the detached content to another snapshot Document.
+		final Document other = new Document(new Element("other"));
+		final Snapshot osnap = other.snapshot();
+		final String obefore = out(other);
+		other.getRootElement().addContent(c);
+		e.setText("again");
+		e.detach();
+		e.setName("eee");
+		assertEquals(before, out(snap.toDocument()));
+		assertEquals(obefore, out(osnap.toDocument()));
+		osnap.release();
+		snap.release();
+	}
+
+	@Test
+	public void testInvalidChangesNotPreserved() throws Exception {
+		final Document doc = build();
+		final Snapshot snap = doc.snapshot();
+		final Element root = doc.getRootElement();
+		final Text tail = (Text)root.getContent(root.getContentSize() - 1);
+		try {
+			root.setName("bad name");
+			fail("Expected IllegalNameException");
+		} catch (IllegalNameException ine) {
+			// good
+		}
+		try {
+			tail.setText("bad\u0000text");
+			fail("Expected IllegalDataException");
+		} catch (IllegalDataException ide) {
+			// good
+		}
+		try {
+			root.getAttribute("a").setName("bad name");
+			fail("Expected IllegalNameException");
+		} catch (IllegalNameException ine) {
+			// good
+		}
+		// removing a declaration that is not there changes nothing.
+		root.removeNamespaceDeclaration(Namespace.getNamespace("x", "urn:none"));
+		assertEquals(0, snap.getChangedCount());
+		snap.release();
+	}
+
+	@Test
+	public void testDocTypeOnly() {
+		final Document doc = new Document();
+		final Snapshot snap = doc.snapshot();
+		doc.setDocType(new DocType("x"));
+		assertNull(snap.getRootElement());
+		assertEquals(0, snap.toDocument().getContentSize());
+		snap.release();
+	}
+
+}
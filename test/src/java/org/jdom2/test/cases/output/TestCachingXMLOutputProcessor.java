@@ -0,0 +1,105 @@
+package org.jdom2.test.cases.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.output.support.CachingXMLOutputProcessor;
+
+@SuppressWarnings("javadoc")
+public class TestCachingXMLOutputProcessor {
+	
+	private static final Namespace NS = Namespace.getNamespace("c", "urn:catalogue");
+	
+	private static Document buildCatalogue() {
+		Element root = new Element("catalogue", NS);
+		for (int i = 0; i < 20; i++) {
+			Element item = new Element("item", NS);
+			item.setAttribute("id", "item" + i);
+			item.addContent(new Element("name", NS).setText("Item & <" + i + ">"));
+			item.addContent(new Element("price", NS).setText(String.valueOf(i * 10)));
+			root.addContent(item);
+		}
+		return new Document(root);
+	}
+	
+	private static void checkSame(Format format, Document doc) {
+		CachingXMLOutputProcessor cache = new CachingXMLOutputProcessor(0);
+		XMLOutputter cached = new XMLOutputter(format, cache);
+		XMLOutputter plain = new XMLOutputter(format);
+		
+		final String expect = plain.outputString(doc);
+		assertEquals(expect, cached.outputString(doc));
+		assertEquals(0L, cache.getHitCount());
+		
+		// everything is unchanged, the root element is spliced in.
+		assertEquals(expect, cached.outputString(doc));
+		assertEquals(1L, cache.getHitCount());
+		
+		// change one price.
+		Element price = doc.getRootElement().getChildren().get(7).getChild("price", NS);
+		price.setText("1234");
+		final String changed = plain.outputString(doc);
+		final long misses = cache.getMissCount();
+		assertEquals(changed, cached.outputString(doc));
+		// the root, the changed item, and the changed price are re-processed
+		assertEquals(misses + 3, cache.getMissCount());
+		
+		// output just an Element, not at the same depth, and no
+		// namespace declarations in scope.
+		Element item = doc.getRootElement().getChildren().get(3);
+		assertEquals(plain.outputString(item), cached.outputString(item));
+	}
+
+	@Test
+	public void testRaw() {
+		checkSame(Format.getRawFormat(), buildCatalogue());
+	}
+
+	@Test
+	public void testPretty() {
+		checkSame(Format.getPrettyFormat(), buildCatalogue());
+	}
+
+	@Test
+	public void testCompact() {
+		checkSame(Format.getCompactFormat(), buildCatalogue());
+	}
+
+	@Test
+	public void testFormatChange() {
+		Document doc = buildCatalogue();
+		CachingXMLOutputProcessor cache = new CachingXMLOutputProcessor(0);
+		String pretty = new XMLOutputter(Format.getPrettyFormat()).outputString(doc);
+		String raw = new XMLOutputter(Format.getRawFormat()).outputString(doc);
+		assertEquals(pretty, new XMLOutputter(Format.getPrettyFormat(), cache).outputString(doc));
+		assertEquals(raw, new XMLOutputter(Format.getRawFormat(), cache).outputString(doc));
+		assertEquals(pretty, new XMLOutputter(Format.getPrettyFormat(), cache).outputString(doc));
+		assertEquals(0L, cache.getHitCount());
+	}
+
+	@Test
+	public void testMinimumSize() {
+		Document doc = buildCatalogue();
+		CachingXMLOutputProcessor cache = new CachingXMLOutputProcessor(100);
+		XMLOutputter xout = new XMLOutputter(cache);
+		xout.outputString(doc);
+		// only the root element is large enough
+		assertEquals(1, cache.size());
+		doc.getRootElement().setAttribute("changed", "true");
+		xout.outputString(doc);
+		assertEquals(1, cache.size());
+		cache.evict(doc.getRootElement());
+		assertEquals(0, cache.size());
+		cache.clear();
+		assertEquals(0L, cache.getMissCount());
+		assertTrue(cache.getMinimumSize() == 100);
+	}
+
+}
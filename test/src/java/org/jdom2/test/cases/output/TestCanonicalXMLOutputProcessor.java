@@ -0,0 +1,192 @@
+package org.jdom2.test.cases.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import org.jdom2.CDATA;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.output.support.CanonicalXMLOutputProcessor;
+
+@SuppressWarnings("javadoc")
+public class TestCanonicalXMLOutputProcessor {
+	
+	private static Document parse(String xml) throws JDOMException, IOException {
+		return new SAXBuilder().build(new StringReader(xml));
+	}
+	
+	private static String c14n(CanonicalXMLOutputProcessor proc, Document doc) 
+			throws IOException {
+		// the Format is ignored
+		final String str = new XMLOutputter(Format.getPrettyFormat(), proc).outputString(doc);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		proc.canonicalize(baos, doc);
+		assertEquals(str, new String(baos.toByteArray(), "UTF-8"));
+		return str;
+	}
+	
+	private static String c14n(CanonicalXMLOutputProcessor proc, Element emt) 
+			throws IOException {
+		final String str = new XMLOutputter(Format.getPrettyFormat(), proc).outputString(emt);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		proc.canonicalize(baos, emt);
+		assertEquals(str, new String(baos.toByteArray(), "UTF-8"));
+		return str;
+	}
+	
+	@Test
+	public void testPIsAndComments() throws Exception {
+		// C14N spec example 3.1 (without the external DTD)
+		final String xml = "<?xml version=\"1.0\"?>\n\n" +
+				"<?xml-stylesheet   href=\"doc.xsl\"\n   type=\"text/xsl\"   ?>\n\n" +
+				"<doc>Hello, world!<!-- Comment 1 --></doc>\n\n" +
+				"<?pi-without-data     ?>\n\n" +
+				"<!-- Comment 2 -->\n\n" +
+				"<!-- Comment 3 -->";
+		final Document doc = parse(xml);
+		assertEquals("<?xml-stylesheet href=\"doc.xsl\"\n   type=\"text/xsl\"   ?>\n" +
+				"<doc>Hello, world!</doc>\n" +
+				"<?pi-without-data?>", 
+				c14n(new CanonicalXMLOutputProcessor(), doc));
+		assertEquals("<?xml-stylesheet href=\"doc.xsl\"\n   type=\"text/xsl\"   ?>\n" +
+				"<doc>Hello, world!<!-- Comment 1 --></doc>\n" +
+				"<?pi-without-data?>\n" +
+				"<!-- Comment 2 -->\n" +
+				"<!-- Comment 3 -->", 
+				c14n(new CanonicalXMLOutputProcessor(true), doc));
+	}
+	
+	@Test
+	public void testStartAndEndTags() throws Exception {
+		// C14N spec example 3.3
+		final String xml = "<!DOCTYPE doc [<!ATTLIST e9 attr CDATA \"default\">]>\n" +
+				"<doc>\n" +
+				"   <e1   />\n" +
+				"   <e2   ></e2>\n" +
+				"   <e3   name = \"elem3\"   id=\"elem3\"   />\n" +
+				"   <e4   name=\"elem4\"   id=\"elem4\"   ></e4>\n" +
+				"   <e5 a:attr=\"out\" b:attr=\"sorted\" attr2=\"all\" attr=\"I'm\"\n" +
+				"      xmlns:b=\"http://www.ietf.org\"\n" +
+				"      xmlns:a=\"http://www.w3.org\"\n" +
+				"      xmlns=\"http://example.org\"/>\n" +
+				"   <e6 xmlns=\"\" xmlns:a=\"http://www.w3.org\">\n" +
+				"      <e7 xmlns=\"http://www.ietf.org\">\n" +
+				"         <e8 xmlns=\"\" xmlns:a=\"http://www.w3.org\">\n" +
+				"            <e9 xmlns=\"\" xmlns:a=\"http://www.ietf.org\"/>\n" +
+				"         </e8>\n" +
+				"      </e7>\n" +
+				"   </e6>\n" +
+				"</doc>";
+		final String expect = "<doc>\n" +
+				"   <e1></e1>\n" +
+				"   <e2></e2>\n" +
+				"   <e3 id=\"elem3\" name=\"elem3\"></e3>\n" +
+				"   <e4 id=\"elem4\" name=\"elem4\"></e4>\n" +
+				"   <e5 xmlns=\"http://example.org\" xmlns:a=\"http://www.w3.org\" " +
+				"xmlns:b=\"http://www.ietf.org\" attr=\"I'm\" attr2=\"all\" " +
+				"b:attr=\"sorted\" a:attr=\"out\"></e5>\n" +
+				"   <e6 xmlns:a=\"http://www.w3.org\">\n" +
+				"      <e7 xmlns=\"http://www.ietf.org\">\n" +
+				"         <e8 xmlns=\"\">\n" +
+				"            <e9 xmlns:a=\"http://www.ietf.org\" attr=\"default\"></e9>\n" +
+				"         </e8>\n" +
+				"      </e7>\n" +
+				"   </e6>\n" +
+				"</doc>";
+		assertEquals(expect, c14n(new CanonicalXMLOutputProcessor(), parse(xml)));
+	}
+	
+	@Test
+	public void testEscaping() throws IOException {
+		final Element root = new Element("doc");
+		root.setAttribute("att", "a<b>&\"'\t\n\r");
+		root.addContent("t<&>\"'\r");
+		root.addContent(new CDATA("c<&>"));
+		root.addContent("\u00e9\u20ac\ud800\udc00");
+		final Document doc = new Document(root);
+		assertEquals("<doc att=\"a&lt;b>&amp;&quot;'&#x9;&#xA;&#xD;\">" +
+				"t&lt;&amp;&gt;\"'&#xD;c&lt;&amp;&gt;\u00e9\u20ac\ud800\udc00</doc>",
+				c14n(new CanonicalXMLOutputProcessor(), doc));
+	}
+	
+	@Test
+	public void testSubsets() throws Exception {
+		// example from the Exclusive C14N specification
+		final String xml = "<n0:local xmlns:n0=\"foo:bar\" xmlns:n3=\"ftp://example.org\">" +
+				"<n1:elem2 xmlns:n1=\"http://example.net\" xml:lang=\"en\">" +
+				"<n3:stuff xmlns:n3=\"ftp://example.org\"/></n1:elem2></n0:local>";
+		final Document doc = parse(xml);
+		final Element elem2 = doc.getRootElement().getChildren().get(0);
+		final Element stuff = elem2.getChildren().get(0);
+		
+		assertEquals("<n1:elem2 xmlns:n0=\"foo:bar\" xmlns:n1=\"http://example.net\" " +
+				"xmlns:n3=\"ftp://example.org\" xml:lang=\"en\">" +
+				"<n3:stuff></n3:stuff></n1:elem2>",
+				c14n(new CanonicalXMLOutputProcessor(), elem2));
+		assertEquals("<n1:elem2 xmlns:n1=\"http://example.net\" xml:lang=\"en\">" +
+				"<n3:stuff xmlns:n3=\"ftp://example.org\"></n3:stuff></n1:elem2>",
+				c14n(new CanonicalXMLOutputProcessor(true, false, null), elem2));
+		assertEquals("<n1:elem2 xmlns:n1=\"http://example.net\" " +
+				"xmlns:n3=\"ftp://example.org\" xml:lang=\"en\">" +
+				"<n3:stuff></n3:stuff></n1:elem2>",
+				c14n(new CanonicalXMLOutputProcessor(true, false, 
+						Collections.singleton("n3")), elem2));
+		
+		// inclusive inherits xml:* attributes, exclusive does not.
+		assertEquals("<n3:stuff xmlns:n0=\"foo:bar\" xmlns:n1=\"http://example.net\" " +
+				"xmlns:n3=\"ftp://example.org\" " +
+				"xml:lang=\"en\"></n3:stuff>",
+				c14n(new CanonicalXMLOutputProcessor(), stuff));
+		assertEquals("<n3:stuff xmlns:n3=\"ftp://example.org\"></n3:stuff>",
+				c14n(new CanonicalXMLOutputProcessor(true, false, null), stuff));
+	}
+	
+	@Test
+	public void testExclusiveDefaultNamespace() {
+		final Element root = new Element("root", Namespace.getNamespace("urn:a"));
+		final Element child = new Element("child");
+		root.addContent(child);
+		child.addContent(new Element("leaf"));
+		final CanonicalXMLOutputProcessor exc = 
+				new CanonicalXMLOutputProcessor(true, false, null);
+		assertEquals("<root xmlns=\"urn:a\"><child xmlns=\"\"><leaf></leaf></child></root>",
+				new XMLOutputter(exc).outputString(root));
+		assertEquals("<child><leaf></leaf></child>",
+				new XMLOutputter(exc).outputString(child));
+		assertTrue(exc.isExclusive());
+		assertEquals(Collections.emptyList(), exc.getInclusivePrefixes());
+	}
+	
+	@Test
+	public void testDigest() throws IOException, NoSuchAlgorithmException {
+		final Element root = new Element("root");
+		for (int i = 0; i < 5000; i++) {
+			root.addContent(new Element("item").setAttribute("id", "i" + i)
+					.setText("\u00e9 value " + i));
+		}
+		final Document doc = new Document(root);
+		final CanonicalXMLOutputProcessor proc = new CanonicalXMLOutputProcessor();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		proc.canonicalize(baos, doc);
+		final MessageDigest md = MessageDigest.getInstance("SHA-256");
+		final byte[] expect = md.digest(baos.toByteArray());
+		assertTrue(Arrays.equals(expect, proc.digest(md, doc)));
+		assertTrue(Arrays.equals(expect, proc.digest(md, root)));
+	}
+
+}
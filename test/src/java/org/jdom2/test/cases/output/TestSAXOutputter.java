@@ -1142,4 +1142,64 @@ public class TestSAXOutputter extends AbstractTestOutputter {
 		assertTrue("myurl".equals(count[0]));
 	}
 	
+	@Test
+	public void testReusedAttributes() throws JDOMException {
+		final Namespace nsa = Namespace.getNamespace("a", "urn:a");
+		final Element root = new Element("root", nsa);
+		root.addNamespaceDeclaration(Namespace.getNamespace("urn:def"));
+		root.setAttribute("x", "1");
+		root.setAttribute("y", "2", nsa);
+		final Attribute dflt = new Attribute("z", "3");
+		dflt.setSpecified(false);
+		root.setAttribute(dflt);
+		final Element child = new Element("child", nsa);
+		child.setAttribute("w", "4");
+		root.addContent(child);
+		root.addContent(new Element("child", nsa));
+		
+		final List<String> events = new ArrayList<String>();
+		final List<String> qnames = new ArrayList<String>();
+		ContentHandler ch = new DefaultHandler2() {
+			@Override
+			public void startElement(String uri, String localName,
+					String qName, Attributes atts) {
+				qnames.add(qName);
+				StringBuilder sb = new StringBuilder(qName);
+				for (int i = 0; i < atts.getLength(); i++) {
+					sb.append(" ").append(atts.getQName(i)).append("|")
+						.append(atts.getURI(i)).append("|")
+						.append(atts.getLocalName(i)).append("|")
+						.append(atts.getType(i)).append("=")
+						.append(atts.getValue(i));
+				}
+				events.add(sb.toString());
+				assertNull(atts.getQName(atts.getLength()));
+				assertNull(atts.getValue(-1));
+				if ("a:root".equals(qName)) {
+					assertEquals("2", atts.getValue("urn:a", "y"));
+					assertEquals("2", atts.getValue("a:y"));
+					assertEquals("CDATA", atts.getType("x"));
+					assertEquals(-1, atts.getIndex("", "nothere"));
+				}
+			}
+		};
+		SAXOutputter saxout = new SAXOutputter(ch);
+		saxout.setReportNamespaceDeclarations(true);
+		saxout.output(root);
+		assertEquals("a:root xmlns:a|||CDATA=urn:a xmlns|||CDATA=urn:def " +
+				"x||x|CDATA=1 a:y|urn:a|y|CDATA=2 z||z|CDATA=3", events.get(0));
+		assertEquals("a:child w||w|CDATA=4", events.get(1));
+		assertEquals("a:child", events.get(2));
+		// qualified names are cached.
+		assertTrue(qnames.get(1) == qnames.get(2));
+		
+		events.clear();
+		Format fmt = Format.getRawFormat();
+		fmt.setSpecifiedAttributesOnly(true);
+		saxout = new SAXOutputter(ch);
+		saxout.setFormat(fmt);
+		saxout.output(root);
+		assertEquals("a:root x||x|CDATA=1 a:y|urn:a|y|CDATA=2", events.get(0));
+	}
+	
 }
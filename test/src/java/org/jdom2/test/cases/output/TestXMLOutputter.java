@@ -20,6 +20,12 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -365,6 +371,29 @@ public final class TestXMLOutputter extends AbstractTestOutputter {
 
 
 
+	@Test
+	public void testFormattedTextRanges() {
+		// trimmed and compacted text is escaped from ranges of the source text
+		// and the walkers are reused for sibling elements.
+		Element root = new Element("root");
+		root.addContent(new Element("a").setText("  x <&> \n\t y  "));
+		root.addContent(new Element("b").setText("\t\n"));
+		root.addContent(new Element("c").addContent(new Text("  p  "))
+				.addContent(new CDATA("  q \n r  ")).addContent(new Text(" s ")));
+		root.addContent(new Element("d").setText("z"));
+		Format mf = Format.getCompactFormat();
+		mf.setLineSeparator("\n");
+		XMLOutputter xout = new XMLOutputter(mf);
+		assertEquals("<root><a>x &lt;&amp;&gt; y</a><b /><c>p <![CDATA[q r]]> s</c><d>z</d></root>",
+				xout.outputString(root));
+		mf = Format.getPrettyFormat();
+		mf.setLineSeparator("\n");
+		xout = new XMLOutputter(mf);
+		assertEquals("<root>\n  <a>x &lt;&amp;&gt; \n\t y</a>\n  <b />\n" +
+				"  <c>p  <![CDATA[  q \n r  ]]> s</c>\n  <d>z</d>\n</root>",
+				xout.outputString(root));
+	}
+
 	@Test
 	public void testTrimFullWhite() {
 		// See issue #31.
@@ -439,6 +468,168 @@ public final class TestXMLOutputter extends AbstractTestOutputter {
 		assertEquals(expect, actual);
 	}
 	
+	/**
+	 * A GatheringByteChannel that accepts at most 1000 bytes per write.
+	 */
+	private static final class SlowChannel implements GatheringByteChannel {
+		private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		private int gathers = 0;
+		
+		@Override
+		public int write(ByteBuffer src) {
+			final int len = Math.min(1000, src.remaining());
+			for (int i = 0; i < len; i++) {
+				baos.write(src.get());
+			}
+			return len;
+		}
+		
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			gathers++;
+			for (int i = offset; i < offset + length; i++) {
+				if (srcs[i].hasRemaining()) {
+					return write(srcs[i]);
+				}
+			}
+			return 0;
+		}
+		
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		@Override
+		public void close() {
+			// nothing
+		}
+	}
+	
+	@Test
+	public void testOutputChannel() throws IOException {
+		Element root = new Element("root");
+		for (int i = 0; i < 2000; i++) {
+			root.addContent(new Element("child").setAttribute("i", "" + i)
+					.setText("\u00e9\u20ac\ud800\udc00 " + i));
+		}
+		Document doc = new Document(root);
+		for (String enc : new String[] {"UTF-8", "UTF-16", "ISO-8859-1"}) {
+			XMLOutputter xout = new XMLOutputter(
+					Format.getPrettyFormat().setEncoding(enc));
+			ByteArrayOutputStream expect = new ByteArrayOutputStream();
+			xout.output(doc, expect);
+			
+			ByteArrayOutputStream simple = new ByteArrayOutputStream();
+			long cnt = xout.output(doc, Channels.newChannel(simple));
+			assertEquals(expect.size(), cnt);
+			assertTrue(Arrays.equals(expect.toByteArray(), simple.toByteArray()));
+			
+			SlowChannel slow = new SlowChannel();
+			cnt = xout.output(root, slow);
+			ByteArrayOutputStream exroot = new ByteArrayOutputStream();
+			xout.output(root, exroot);
+			assertEquals(exroot.size(), cnt);
+			assertTrue(Arrays.equals(exroot.toByteArray(), slow.baos.toByteArray()));
+			assertTrue(slow.gathers > 0);
+			
+			ByteArrayOutputStream small = new ByteArrayOutputStream();
+			cnt = xout.outputElementContent(root.getChild("child"), Channels.newChannel(small));
+			assertEquals(small.size(), cnt);
+			assertEquals(xout.outputElementContentString(root.getChild("child")),
+					new String(small.toByteArray(), enc));
+			
+			ByteArrayOutputStream list = new ByteArrayOutputStream();
+			cnt = xout.output(root.getContent().subList(0, 3), Channels.newChannel(list));
+			assertEquals(list.size(), cnt);
+			assertEquals(xout.outputString(root.getContent().subList(0, 3)),
+					new String(list.toByteArray(), enc));
+		}
+	}
+	
+	/**
+	 * A channel that fails every write, or, if broken is false, accepts
+	 * nothing.
+	 */
+	private static final class FailingChannel implements WritableByteChannel {
+		private final boolean broken;
+		private int writes = 0;
+		
+		FailingChannel(boolean broken) {
+			this.broken = broken;
+		}
+		
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			writes++;
+			if (broken) {
+				throw new IOException("failed write " + writes);
+			}
+			return 0;
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		@Override
+		public void close() {
+			// nothing
+		}
+	}
+	
+	@Test
+	public void testOutputChannelFailure() {
+		Element small = new Element("root").setText("text");
+		Element big = new Element("root");
+		for (int i = 0; i < 2000; i++) {
+			big.addContent(new Element("child").setAttribute("i", "" + i));
+		}
+		XMLOutputter xout = new XMLOutputter();
+		// the failure is reported from finish() for small output, and
+		// from the output itself for big output.
+		for (Element root : new Element[] {small, big}) {
+			FailingChannel channel = new FailingChannel(true);
+			try {
+				xout.output(root, channel);
+				fail("Expected IOException");
+			} catch (IOException ioe) {
+				assertEquals("failed write 1", ioe.getMessage());
+			}
+			assertEquals(1, channel.writes);
+			
+			channel = new FailingChannel(false);
+			try {
+				xout.output(new Document(root.clone()), channel);
+				fail("Expected IOException");
+			} catch (IOException ioe) {
+				// good, no spinning.
+			}
+			assertEquals(1, channel.writes);
+		}
+	}
+	
+	@Test
+	public void testOutputChannelNonBlocking() throws IOException {
+		Pipe pipe = Pipe.open();
+		try {
+			pipe.sink().configureBlocking(false);
+			new XMLOutputter().output(new Element("root"), pipe.sink());
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {
+			// good
+		} finally {
+			pipe.sink().close();
+			pipe.source().close();
+		}
+	}
+	
 	/**
 	 * The following method will run the output data through each of the three base
 	 * formatters, raw, compact, and pretty. It will also run each of those
@@ -0,0 +1,162 @@
+package org.jdom2.test.cases.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.Text;
+import org.jdom2.util.DocumentOrder;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.engine.NativeXPathFactory;
+
+@SuppressWarnings("javadoc")
+public class TestDocumentOrder {
+
+	private static Document buildDoc() {
+		// <!--c--><root a="1"><x b="2">t<y/></x><z/></root>
+		final Element root = new Element("root");
+		root.setAttribute("a", "1");
+		final Element x = new Element("x");
+		x.setAttribute("b", "2");
+		x.addContent(new Text("t"));
+		x.addContent(new Element("y"));
+		root.addContent(x);
+		root.addContent(new Element("z"));
+		final Document doc = new Document(root);
+		doc.addContent(0, new Comment("c"));
+		return doc;
+	}
+
+	@Test
+	public void testOrdinals() {
+		final Document doc = buildDoc();
+		final Element root = doc.getRootElement();
+		final Element x = root.getChild("x");
+		final Element y = x.getChild("y");
+		final Element z = root.getChild("z");
+		final DocumentOrder order = new DocumentOrder(doc);
+		assertTrue(doc == order.getRoot());
+		assertEquals(9, order.size());
+		assertEquals(0, order.getOrdinal(doc));
+		assertEquals(1, order.getOrdinal(doc.getContent(0)));
+		assertEquals(2, order.getOrdinal(root));
+		assertEquals(3, order.getOrdinal(root.getAttribute("a")));
+		assertEquals(4, order.getOrdinal(x));
+		assertEquals(5, order.getOrdinal(x.getAttribute("b")));
+		assertEquals(6, order.getOrdinal(x.getContent(0)));
+		assertEquals(7, order.getOrdinal(y));
+		assertEquals(8, order.getOrdinal(z));
+		assertEquals(-1, order.getOrdinal(new Element("other")));
+		assertEquals(-1, order.getOrdinal("string"));
+
+		assertTrue(order.compare(y, z) < 0);
+		assertTrue(order.compare(z, y) > 0);
+		assertTrue(order.compare(root.getAttribute("a"), x) < 0);
+		assertEquals(0, order.compare(x, x));
+
+		assertTrue(order.isAncestor(doc, y));
+		assertTrue(order.isAncestor(root, y));
+		assertTrue(order.isAncestor(x, y));
+		assertTrue(order.isAncestor(x, x.getAttribute("b")));
+		assertFalse(order.isAncestor(x, x));
+		assertFalse(order.isAncestor(y, x));
+		assertFalse(order.isAncestor(x, z));
+		assertFalse(order.isAncestor(doc.getContent(0), root));
+
+		try {
+			order.compare(x, new Element("other"));
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+	}
+
+	@Test
+	public void testRenumber() {
+		final Document doc = buildDoc();
+		final Element root = doc.getRootElement();
+		final Element z = root.getChild("z");
+		final DocumentOrder order = new DocumentOrder(doc);
+		assertEquals(8, order.getOrdinal(z));
+
+		// deep change
+		final Element w = new Element("w");
+		root.getChild("x").getChild("y").addContent(w);
+		assertEquals(8, order.getOrdinal(w));
+		assertEquals(9, order.getOrdinal(z));
+
+		// Document-level change
+		doc.addContent(0, new Comment("first"));
+		assertEquals(10, order.getOrdinal(z));
+
+		// attribute removal
+		root.removeAttribute("a");
+		assertEquals(9, order.getOrdinal(z));
+
+		// an Element-rooted numbering
+		final DocumentOrder sub = new DocumentOrder(root.getChild("x"));
+		assertEquals(0, sub.getOrdinal(root.getChild("x")));
+		assertEquals(-1, sub.getOrdinal(z));
+		assertEquals(5, sub.size());
+		w.detach();
+		assertEquals(4, sub.size());
+	}
+
+	@Test
+	public void testInstall() {
+		final Document doc = buildDoc();
+		assertNull(DocumentOrder.getInstance(doc));
+		assertFalse(DocumentOrder.remove(doc));
+		final DocumentOrder order = DocumentOrder.install(doc);
+		assertTrue(order == DocumentOrder.getInstance(doc));
+		// clones share properties, but not the numbering.
+		assertNull(DocumentOrder.getInstance(doc.clone()));
+		assertTrue(DocumentOrder.remove(doc));
+		assertNull(DocumentOrder.getInstance(doc));
+	}
+
+	@Test
+	public void testSort() {
+		final Document doc = buildDoc();
+		final List<Content> all = new ArrayList<Content>();
+		for (Content c : doc.getDescendants()) {
+			all.add(c);
+		}
+		final List<Content> shuffled = new ArrayList<Content>(all);
+		Collections.reverse(shuffled);
+		Collections.sort(shuffled, new DocumentOrder(doc));
+		assertEquals(all, shuffled);
+	}
+
+	@Test
+	public void testXPathUnion() {
+		final Document doc = buildDoc();
+		final XPathExpression<Object> xp = new NativeXPathFactory().compile(
+				"//z | //@* | //y | /comment() | //text()");
+		final List<Object> expect = xp.evaluate(doc);
+		assertEquals(6, expect.size());
+		DocumentOrder.install(doc);
+		assertEquals(expect, xp.evaluate(doc));
+		final Element root = doc.getRootElement();
+		assertTrue(expect.get(0) instanceof Comment);
+		assertTrue(expect.get(1) == root.getAttribute("a"));
+		assertTrue(expect.get(5) == root.getChild("z"));
+		// namespace nodes fall back to the unnumbered sort.
+		final List<Object> withns = new NativeXPathFactory().compile(
+				"//z | //y/namespace::* | //x").evaluate(doc);
+		assertEquals(3, withns.size());
+		assertTrue(withns.get(0) == root.getChild("x"));
+		assertTrue(withns.get(2) == root.getChild("z"));
+		assertTrue(withns.get(1) instanceof Namespace);
+	}
+
+}
@@ -69,6 +69,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
@@ -89,7 +91,9 @@ import org.jdom2.test.util.UnitTestUtil;
 import org.jdom2.xpath.XPathBuilder;
 import org.jdom2.xpath.XPathDiagnostic;
 import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathExpression2;
 import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.XPathProfile;
 
 @SuppressWarnings({"javadoc"})
 public abstract class AbstractTestXPathCompiled {
@@ -640,6 +644,112 @@ public abstract class AbstractTestXPathCompiled {
 		
 	}
 	
+	@Test
+	public void testEvaluateIterator() {
+		final String[] queries = {"//*", "//node()", "/main/*/@*", 
+				"//namespace::*", "//child/text()", "/*/*[2]"};
+		for (String q : queries) {
+			XPathExpression2<Object> xp = 
+					(XPathExpression2<Object>)getFactory().compile(q);
+			List<Object> expect = xp.evaluate(doc);
+			List<Object> actual = new ArrayList<Object>();
+			for (Iterator<Object> it = xp.evaluateIterator(doc); it.hasNext(); ) {
+				actual.add(it.next());
+			}
+			assertEquals(q, expect, actual);
+		}
+		
+		XPathExpression2<Element> xp = (XPathExpression2<Element>)getFactory()
+				.compile("//node()", Filters.element());
+		UnitTestUtil.testReadIterator(xp.evaluateIterator(doc), 
+				xp.evaluate(doc).toArray());
+		Iterator<Element> it = xp.evaluateIterator(doc, Collections.<String, Object>emptyMap());
+		assertTrue(it.next() == main);
+		try {
+			it.remove();
+			fail("expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException uoe) {
+			// good.
+		}
+	}
+	
+	@Test
+	public void testEvaluateEach() {
+		final List<Element> contexts = new ArrayList<Element>();
+		for (Element e : doc.getDescendants(Filters.element())) {
+			contexts.add(e);
+		}
+		for (int i = 0; i < 10; i++) {
+			contexts.add(main);
+		}
+		final ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			for (String q : new String[] {"*", "@*", "text()", ".."}) {
+				XPathExpression2<Object> xp = 
+						(XPathExpression2<Object>)getFactory().compile(q);
+				List<List<Object>> expect = new ArrayList<List<Object>>();
+				for (Element e : contexts) {
+					expect.add(xp.evaluate(e));
+				}
+				assertEquals(q, expect, xp.evaluateEach(contexts));
+				assertEquals(q, expect, xp.evaluateEach(contexts, pool));
+				assertEquals(q, expect, xp.evaluateEach(contexts, null));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		XPathExpression2<Element> xp = 
+				(XPathExpression2<Element>)getFactory().compile("*", Filters.element());
+		assertTrue(xp.evaluateEach(Collections.emptyList()).isEmpty());
+		List<List<Element>> kids = xp.evaluateEach(Collections.singleton(main));
+		assertEquals(1, kids.size());
+		assertEquals(main.getChildren(), kids.get(0));
+		try {
+			xp.evaluateEach(null);
+			fail("expected NullPointerException");
+		} catch (NullPointerException npe) {
+			// good.
+		}
+		try {
+			xp.evaluateEach(Collections.singletonList(null));
+			fail("expected NullPointerException");
+		} catch (NullPointerException npe) {
+			// good.
+		}
+	}
+	
+	@Test
+	public void testEvaluateWithVariables() {
+		Map<String,Object> vars = new HashMap<String, Object>();
+		vars.put("lname", "nothing");
+		vars.put("nsa:uri", "");
+		XPathExpression2<Element> xp = (XPathExpression2<Element>)getFactory().compile(
+				"//*[local-name() = $lname and namespace-uri() = $nsa:uri]", 
+				Filters.element(), vars, Namespace.getNamespace("nsa", "zzz"));
+		assertTrue(xp.evaluate(doc).isEmpty());
+		
+		Map<String,Object> call = new HashMap<String, Object>();
+		call.put("lname", "child");
+		assertEquals(2, xp.evaluate(doc, call).size());
+		assertEquals(child1emt, xp.evaluateFirst(doc, call));
+		call.put("nsa:uri", "jdom:c3nsa");
+		assertEquals(child3emt, xp.evaluateFirst(doc, call));
+		
+		// the expression's own values are unchanged.
+		assertEquals("nothing", xp.getVariable("lname"));
+		assertEquals("", xp.getVariable("nsa:uri"));
+		assertTrue(xp.evaluate(doc, null).isEmpty());
+		assertTrue(xp.evaluateFirst(doc, new HashMap<String, Object>()) == null);
+		
+		call.put("undeclared", "x");
+		try {
+			xp.evaluate(doc, call);
+			fail("expected IAE");
+		} catch (IllegalArgumentException iae) {
+			// good.
+		}
+	}
+	
 	@Test
 	public void testGetVariable2() {
 		Map<String,Object> vars = new HashMap<String, Object>();
@@ -1240,6 +1350,27 @@ public abstract class AbstractTestXPathCompiled {
 		assertTrue(diagg.getFilteredResults().size() == 0);
 	}
 
+	@Test
+	public void testProfiledDiagnostic() {
+		final XPathExpression2<Element> xpe = (XPathExpression2<Element>)
+				setupXPath(Filters.element("child"), "//*", null, null);
+		assertTrue(xpe.diagnose(doc, false).getProfile() == null);
+		assertTrue(xpe.diagnose(doc, false, false).getProfile() == null);
+		final XPathDiagnostic<Element> diag = xpe.diagnose(doc, false, true);
+		assertEquals(xpe.diagnose(doc, false).getRawResults(), diag.getRawResults());
+		assertEquals(2, diag.getResult().size());
+		final XPathProfile profile = diag.getProfile();
+		assertTrue(profile != null);
+		assertEquals(diag.getRawResults().size(), profile.getResultSize());
+		assertTrue(profile.getElapsedNanos() >= 0L);
+		assertTrue(profile.toString() != null);
+		
+		final XPathDiagnostic<Element> first = xpe.diagnose(doc, true, true);
+		assertEquals(1, first.getRawResults().size());
+		assertTrue(main == first.getRawResults().get(0));
+		assertTrue(first.getProfile() != null);
+	}
+
 	private void checkDetached(final NamespaceAware nsa) {
 		checkXPath(".", nsa, null, nsa);
 	}
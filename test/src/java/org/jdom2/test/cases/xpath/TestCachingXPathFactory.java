@@ -0,0 +1,153 @@
+package org.jdom2.test.cases.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+import org.jdom2.xpath.CachingXPathFactory;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.jaxen.JaxenXPathFactory;
+
+@SuppressWarnings({"javadoc"})
+public class TestCachingXPathFactory extends AbstractTestXPathCompiled {
+	
+	public TestCachingXPathFactory() {
+		super(true);
+	}
+
+	private static final XPathFactory myfac = 
+			new CachingXPathFactory(new JaxenXPathFactory(), 100);
+	
+	@Override
+	XPathFactory getFactory() {
+		return myfac;
+	}
+
+	@Override
+	@Test
+	@Ignore
+	public void testXPathOR() {
+		// JAXEN Does not support document order for unions....
+		super.testXPathOR();
+	}
+	
+	@Test
+	public void testCacheHits() {
+		CachingXPathFactory fac = new CachingXPathFactory(new JaxenXPathFactory(), 10);
+		Namespace nsa = Namespace.getNamespace("a", "urn:a");
+		Namespace nsb = Namespace.getNamespace("b", "urn:b");
+		XPathExpression<Element> xpa = fac.compile("//a:x", Filters.element(), null, nsa, nsb);
+		assertEquals(1L, fac.getMissCount());
+		// namespace order does not matter, and equal filters match.
+		XPathExpression<Element> xpb = fac.compile("//a:x", Filters.element(), null, nsb, nsa);
+		assertEquals(1L, fac.getHitCount());
+		assertTrue(xpa != xpb);
+		assertEquals("//a:x", xpb.getExpression());
+		// different filter.
+		fac.compile("//a:x", Filters.fpassthrough(), null, nsa, nsb);
+		assertEquals(2L, fac.getMissCount());
+		assertEquals(2, fac.size());
+		assertEquals(1.0 / 3.0, fac.getHitRate(), 0.0001);
+		fac.clear();
+		assertEquals(0, fac.size());
+	}
+	
+	@Test
+	public void testCachedClonesAreIndependent() {
+		CachingXPathFactory fac = new CachingXPathFactory(new JaxenXPathFactory(), 10);
+		Map<String,Object> vars = new HashMap<String, Object>();
+		vars.put("v", "1");
+		XPathExpression<Object> xpa = fac.compile("$v", Filters.fpassthrough(), vars);
+		xpa.setVariable("v", "2");
+		XPathExpression<Object> xpb = fac.compile("$v", Filters.fpassthrough(), vars);
+		assertEquals(1L, fac.getHitCount());
+		assertEquals("1", xpb.getVariable("v"));
+		assertEquals("1", xpb.evaluateFirst(new Element("root")));
+		assertEquals("2", xpa.evaluateFirst(new Element("root")));
+		// different initial variable values are different entries.
+		vars.put("v", "3");
+		XPathExpression<Object> xpc = fac.compile("$v", Filters.fpassthrough(), vars);
+		assertEquals(2L, fac.getMissCount());
+		assertEquals("3", xpc.evaluateFirst(new Element("root")));
+	}
+	
+	@Test
+	public void testHitsDoNotParseAgain() throws Exception {
+		CachingXPathFactory fac = new CachingXPathFactory(new JaxenXPathFactory(), 10);
+		XPathExpression<Object> xpa = fac.compile("x[@y = $v]", Filters.fpassthrough(),
+				Collections.singletonMap("v", (Object)"1"));
+		XPathExpression<Object> xpb = fac.compile("x[@y = $v]", Filters.fpassthrough(),
+				Collections.singletonMap("v", (Object)"1"));
+		assertEquals(1L, fac.getHitCount());
+		assertTrue(xpa != xpb);
+		// the parsed Jaxen expression is shared, not parsed again.
+		final Field parsed = xpa.getClass().getDeclaredField("xPath");
+		parsed.setAccessible(true);
+		assertSame(parsed.get(xpa), parsed.get(xpb));
+		assertSame(parsed.get(xpb), parsed.get(xpb.clone()));
+		// and evaluations still use each instance's own variables.
+		xpb.setVariable("v", "2");
+		final Element root = new Element("root");
+		root.addContent(new Element("x").setAttribute("y", "1"));
+		root.addContent(new Element("x").setAttribute("y", "2"));
+		assertTrue(root.getChildren().get(0) == xpa.evaluateFirst(root));
+		assertTrue(root.getChildren().get(1) == xpb.evaluateFirst(root));
+	}
+	
+	@Test
+	public void testEviction() {
+		CachingXPathFactory fac = new CachingXPathFactory(new JaxenXPathFactory(), 2);
+		assertEquals(2, fac.getMaximumSize());
+		fac.compile("/a");
+		fac.compile("/b");
+		// touch /a so /b is the least-recently used.
+		fac.compile("/a");
+		fac.compile("/c");
+		assertEquals(2, fac.size());
+		assertEquals(1L, fac.getHitCount());
+		fac.compile("/a");
+		assertEquals(2L, fac.getHitCount());
+		fac.compile("/b");
+		assertEquals(4L, fac.getMissCount());
+	}
+	
+	@Test
+	public void testBadExpressions() {
+		CachingXPathFactory fac = new CachingXPathFactory(new JaxenXPathFactory(), 2);
+		try {
+			fac.compile("//[");
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+		assertEquals(0, fac.size());
+		try {
+			new CachingXPathFactory(0);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+		try {
+			new CachingXPathFactory(null, 10);
+			fail("Expected a NullPointerException");
+		} catch (NullPointerException npe) {
+			// good
+		}
+		assertFalse(fac.toString().length() == 0);
+	}
+
+}
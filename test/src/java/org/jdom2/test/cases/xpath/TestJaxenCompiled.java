@@ -1,10 +1,19 @@
 package org.jdom2.test.cases.xpath;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
 import org.jdom2.Comment;
 import org.jdom2.Element;
+import org.jdom2.filter.Filters;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathExpression2;
 import org.jdom2.xpath.XPathFactory;
 import org.jdom2.xpath.jaxen.JaxenXPathFactory;
 
@@ -36,6 +45,43 @@ public class TestJaxenCompiled extends AbstractTestXPathCompiled {
 		super.testXPathOR();
 	}
 	
+	@Test
+	public void testConcurrentEvaluate() throws InterruptedException {
+		Map<String,Object> vars = new HashMap<String, Object>();
+		vars.put("pos", 1);
+		final XPathExpression2<Element> xp = (XPathExpression2<Element>)myfac.compile(
+				"//*[local-name() = 'child'][$pos]", Filters.element(), vars);
+		final Element[] expect = {child1emt, child2emt, child3emt};
+		final AtomicInteger errors = new AtomicInteger();
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					final Map<String,Object> call = new HashMap<String, Object>();
+					for (int i = 0; i < 500; i++) {
+						final int pos = i % 3;
+						call.put("pos", pos + 1);
+						if (xp.evaluateFirst(doc, call) != expect[pos]) {
+							errors.incrementAndGet();
+						}
+						if (xp.evaluate(main, call).size() != 1) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			};
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(0, errors.get());
+		assertEquals(1, xp.getVariable("pos"));
+	}
+	
 	@Test
 	@Ignore
 	public void testSpecialOR() {
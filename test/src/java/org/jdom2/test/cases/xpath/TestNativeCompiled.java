@@ -0,0 +1,292 @@
+package org.jdom2.test.cases.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
+import org.jdom2.Comment;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+import org.jdom2.test.util.CountingElement;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathExpression2;
+import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.XPathProfile;
+import org.jdom2.xpath.engine.NativeXPathFactory;
+import org.jdom2.xpath.engine.XPathIndex;
+import org.jdom2.xpath.jaxen.JaxenXPathFactory;
+
+@SuppressWarnings({"javadoc"})
+public class TestNativeCompiled extends AbstractTestXPathCompiled {
+	
+	public TestNativeCompiled() {
+		super(true);
+	}
+
+	private static final XPathFactory myfac = new NativeXPathFactory();
+	
+	@Override
+	XPathFactory getFactory() {
+		return myfac;
+	}
+	
+	private static Object eval(String xpath, Object context) {
+		return myfac.compile(xpath).evaluateFirst(context);
+	}
+	
+	@Test
+	public void testSpecialOR() {
+		Element m = new Element("main");
+		m.setAttribute("att", "value");
+		m.addContent(new Comment("comment"));
+		new Document(m);
+		checkXPath("/main/node()[1] | /main/@*", m, null, m.getAttribute("att"), m.getContent(0));
+	}
+	
+	@Test
+	public void testFunctions() {
+		Element e = new Element("e");
+		assertEquals("3", eval("string(1 + 2)", e));
+		assertEquals("-0.5", eval("string(-1 div 2)", e));
+		assertEquals("0.000001", eval("string(0.000001)", e));
+		assertEquals("Infinity", eval("string(1 div 0)", e));
+		assertEquals("NaN", eval("string(number('x'))", e));
+		assertEquals(Double.valueOf(2), eval("7 mod 5", e));
+		assertEquals(Double.valueOf(-2), eval("round(-2.5)", e));
+		assertEquals("234", eval("substring('12345', 1.5, 2.6)", e));
+		assertEquals("12", eval("substring('12345', 0, 3)", e));
+		assertEquals("", eval("substring('12345', 0 div 0, 3)", e));
+		assertEquals("a b c", eval("normalize-space('  a  b\tc ')", e));
+		assertEquals("BAr", eval("translate('bar','abc','ABC')", e));
+		assertEquals("AAA", eval("translate('--aaa--','abc-','ABC')", e));
+		assertEquals("1999", eval("substring-before('1999/04/01','/')", e));
+		assertEquals("04/01", eval("substring-after('1999/04/01','/')", e));
+		assertEquals(Boolean.TRUE, eval("starts-with('abc', 'ab') and contains('abc', 'bc')", e));
+		assertEquals(Boolean.TRUE, eval("1 < 2 and not(2 <= 1) and '2' = 2.0", e));
+		assertEquals("abc", eval("concat('a', 'b', 'c')", e));
+	}
+	
+	@Test
+	public void testPositions() {
+		Element root = new Element("root");
+		for (int i = 0; i < 5; i++) {
+			root.addContent(new Element("c").setAttribute("i", String.valueOf(i)));
+		}
+		new Document(root);
+		Element last = root.getChildren().get(4);
+		assertEquals(root.getChildren().get(3), eval("preceding-sibling::c[1]", last));
+		assertEquals(root.getChildren().get(0), eval("preceding-sibling::c[last()]", last));
+		assertEquals(root.getChildren().get(2), eval("/root/c[@i = '2']", last));
+		assertEquals(root.getChildren().get(2), eval("/root/c[3]", last));
+		assertEquals(root.getChildren().get(4), eval("/root/c[position() = last()]", last));
+		assertEquals(null, eval("/root/c[@i = '2'][2]", last));
+		assertEquals(Double.valueOf(4), eval("count(/root/c[@i > 0])", last));
+		assertEquals(Double.valueOf(10), eval("sum(//@i)", last));
+		List<Object> all = myfac.compile("(//c)[position() > 1] | //c[1]").evaluate(root);
+		assertEquals(root.getChildren(), all);
+	}
+	
+	@Test
+	public void testCompiledPlans() {
+		Namespace x = Namespace.getNamespace("x", "urn:x");
+		Element root = new Element("root");
+		for (int i = 0; i < 6; i++) {
+			Element a = new Element(i % 2 == 0 ? "a" : "b");
+			a.setAttribute("i", String.valueOf(i));
+			a.setAttribute("k", String.valueOf(i % 3), x);
+			for (int j = 0; j < 4; j++) {
+				Element c = new Element("c", j % 2 == 0 ? Namespace.NO_NAMESPACE : x);
+				c.setAttribute("j", String.valueOf(j));
+				c.addContent("t" + i + j);
+				c.addContent(new Comment("comment"));
+				c.addContent(new Element("a").setAttribute("i", "n" + i + j));
+				c.addContent("u");
+				a.addContent(c);
+			}
+			root.addContent(a);
+		}
+		Document doc = new Document(root);
+		String[] queries = {
+				"/root/a", "/root/*", "/root/a/c", "/root/*/x:c", "/root/a[2]",
+				"/root/a[@i='2']/c[2]", "/root/*[@x:k='1']", "/root/a/@i",
+				"/root/*/@*", "/root/a/x:*/text()", "//a", "//a[3]",
+				"/descendant::a[@i][4]", "/descendant-or-self::*[@j='3']",
+				"//c/@j", "//*/@x:*", "/root/b//a", "/root/a[1]/descendant::a[2]",
+				"c", "c[2]/a", "descendant-or-self::*", "*/text()", "@i",
+				"/root/a[5]", "/root/a[0]", "/root/a[@i='0'][@x:k='0'][1]",
+				"//text()", "/root/a/descendant::text()", "descendant::text()",
+		};
+		JaxenXPathFactory jaxen = new JaxenXPathFactory();
+		Element ctx = root.getChildren().get(2);
+		for (String q : queries) {
+			for (Object context : new Object[] {doc, root, ctx}) {
+				assertEquals(q, jaxen.compile(q, Filters.fpassthrough(), null, x).evaluate(context),
+						myfac.compile(q, Filters.fpassthrough(), null, x).evaluate(context));
+			}
+		}
+	}
+	
+	@Test
+	public void testProfileSteps() {
+		Element play = new Element("play");
+		for (int i = 0; i < 30; i++) {
+			Element speech = new Element("speech").setAttribute("n", String.valueOf(i));
+			speech.addContent(new Element("speaker").setText(i % 3 == 0 ? "HAMLET" : "OTHER"));
+			speech.addContent(new Element("line").setText("line " + i));
+			speech.addContent(new Element("line").setText("more " + i));
+			play.addContent(speech);
+		}
+		Document doc = new Document(play);
+		XPathExpression2<Element> xp = (XPathExpression2<Element>)myfac.compile(
+				"//speech[speaker = 'HAMLET']/line", Filters.element());
+		XPathProfile profile = xp.diagnose(doc, false, true).getProfile();
+		assertEquals(20, profile.getResultSize());
+		List<XPathProfile.Step> steps = profile.getSteps();
+		assertEquals(4, steps.size());
+		// '//' is descendant-or-self::node()/child:: when there are predicates.
+		XPathProfile.Step all = steps.get(0);
+		assertEquals("descendant-or-self::node()", all.getStep());
+		assertEquals(1, all.getEvaluations());
+		assertEquals(1, all.getContextNodes());
+		// the Document, and 1 + 30 * 7 Elements and Text.
+		assertEquals(212, all.getResultSize());
+		XPathProfile.Step speech = steps.get(1);
+		assertEquals("child::speech[(child::speaker = 'HAMLET')]", speech.getStep());
+		assertEquals(1, speech.getEvaluations());
+		assertEquals(212, speech.getContextNodes());
+		assertEquals(211, speech.getNodesVisited());
+		assertEquals(30, speech.getPredicateEvaluations());
+		assertEquals(10, speech.getResultSize());
+		// the predicate's path runs once for each speech.
+		XPathProfile.Step speaker = steps.get(2);
+		assertEquals("child::speaker", speaker.getStep());
+		assertEquals("child::speaker", speaker.getPath());
+		assertEquals(30, speaker.getEvaluations());
+		assertEquals(30, speaker.getResultSize());
+		assertEquals(3 * 30, speaker.getNodesVisited());
+		XPathProfile.Step line = steps.get(3);
+		assertEquals(xp.toString().substring(xp.toString().indexOf(" compiled as ") + 13),
+				line.getPath());
+		assertEquals(1, line.getEvaluations());
+		assertEquals(10, line.getContextNodes());
+		assertEquals(20, line.getResultSize());
+		assertTrue(speech.getElapsedNanos() >= speaker.getElapsedNanos());
+		
+		// with an index there is no walk.
+		XPathIndex.install(doc, "n");
+		steps = ((XPathExpression2<Object>)myfac.compile("//speech[@n='3']/line"))
+				.diagnose(doc, true, true).getProfile().getSteps();
+		assertEquals(2, steps.size());
+		assertEquals("index lookup for child::speech[@n = '3']", steps.get(0).getStep());
+		assertEquals(0, steps.get(0).getNodesVisited());
+		assertEquals(1, steps.get(0).getResultSize());
+	}
+	
+	@Test
+	public void testLazyIteration() {
+		CountingElement root = new CountingElement("root");
+		for (int i = 0; i < 1000; i++) {
+			root.addContent(new Element(i % 2 == 0 ? "even" : "odd"));
+		}
+		new Document(root);
+		XPathExpression2<Element> xp = (XPathExpression2<Element>)myfac.compile(
+				"/root/odd", Filters.element());
+		Iterator<Element> it = xp.evaluateIterator(root);
+		assertTrue(it.next() == root.getContent(1));
+		assertTrue(it.next() == root.getContent(3));
+		assertTrue(root.lookups < 10);
+		
+		root.lookups = 0;
+		assertTrue(myfac.compile("/root/even[3]").evaluateFirst(root) == root.getContent(4));
+		assertTrue(root.lookups < 10);
+		
+		// a reverse axis has to find everything first, but the results are
+		// still in document order.
+		root.lookups = 0;
+		List<Element> rev = myfac.compile("/root/odd[last()]/preceding-sibling::even",
+				Filters.element()).evaluate(root);
+		assertEquals(500, rev.size());
+		assertTrue(rev.get(0) == root.getContent(0));
+		assertTrue(root.lookups >= 1000);
+	}
+	
+	@Test
+	public void testIdAndLang() {
+		Element root = new Element("root");
+		root.setAttribute("lang", "en-US", org.jdom2.Namespace.XML_NAMESPACE);
+		Element a = new Element("a");
+		a.setAttribute(new Attribute("key", "k1", AttributeType.ID));
+		Element b = new Element("b");
+		b.setAttribute(new Attribute("key", "k2", AttributeType.ID));
+		root.addContent(a);
+		root.addContent(b);
+		Document doc = new Document(root);
+		List<Object> ids = myfac.compile("id('k2 k1')").evaluate(doc);
+		assertEquals(2, ids.size());
+		assertTrue(ids.get(0) == a);
+		assertTrue(ids.get(1) == b);
+		assertEquals(Boolean.TRUE, eval("lang('en')", b));
+		assertEquals(Boolean.FALSE, eval("lang('fr')", b));
+	}
+	
+	@Test
+	public void testCompileErrors() {
+		String[] bad = {"//", "foo(", "unknown()", "count()", "a[1", "1 +", 
+				"'abc", "foo::bar", "x:y", "a ! b"};
+		for (String xp : bad) {
+			try {
+				myfac.compile(xp);
+				fail("Should not be able to compile " + xp);
+			} catch (IllegalArgumentException iae) {
+				// good
+			}
+		}
+	}
+	
+	@Test
+	public void testConcurrentEvaluate() throws InterruptedException {
+		Map<String,Object> vars = new HashMap<String, Object>();
+		vars.put("pos", 1);
+		final XPathExpression2<Element> xp = (XPathExpression2<Element>)myfac.compile(
+				"//*[local-name() = 'child'][$pos]", Filters.element(), vars);
+		final Element[] expect = {child1emt, child2emt, child3emt};
+		final AtomicInteger errors = new AtomicInteger();
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					final Map<String,Object> call = new HashMap<String, Object>();
+					for (int i = 0; i < 500; i++) {
+						final int pos = i % 3;
+						call.put("pos", pos + 1);
+						if (xp.evaluateFirst(doc, call) != expect[pos]) {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			};
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(0, errors.get());
+		assertEquals(1, xp.getVariable("pos"));
+	}
+
+}
@@ -0,0 +1,247 @@
+package org.jdom2.test.cases.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.Namespace;
+import org.jdom2.Text;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.engine.NativeXPathFactory;
+import org.jdom2.xpath.engine.StreamingXPathHandlerFactory;
+import org.jdom2.xpath.engine.XPathMatchListener;
+import org.jdom2.xpath.jaxen.JaxenXPathFactory;
+
+@SuppressWarnings("javadoc")
+public class TestStreamingXPath {
+
+	private static final XPathFactory xpf = new NativeXPathFactory();
+	
+	private static final String XML = 
+			"<?xml version='1.0'?>\n" +
+			"<!-- prolog -->\n" +
+			"<orders xmlns:x='urn:x'>\n" +
+			"  <!-- skipped -->\n" +
+			"  <order id='1' status='open'>\n" +
+			"    <item sku='a'>Apple</item>\n" +
+			"    <item sku='b'>Pear<?pi data?></item>\n" +
+			"    <note>first</note>\n" +
+			"  </order>\n" +
+			"  <order id='2' status='closed'>\n" +
+			"    <item sku='c'>Plum</item>\n" +
+			"    <x:note>second</x:note>\n" +
+			"  </order>\n" +
+			"  <archive>\n" +
+			"    <order id='3' status='open'>\n" +
+			"      <item sku='d'>Fig<![CDATA[ & Date]]></item>\n" +
+			"    </order>\n" +
+			"  </archive>\n" +
+			"</orders>\n";
+
+	private static final class Collector implements XPathMatchListener {
+		private final List<XPathExpression<?>> expressions = 
+				new ArrayList<XPathExpression<?>>();
+		private final List<Object> values = new ArrayList<Object>();
+		@Override
+		public void matched(XPathExpression<?> expression, Object value) {
+			expressions.add(expression);
+			values.add(value);
+		}
+		List<Object> get(XPathExpression<?> expression) {
+			List<Object> ret = new ArrayList<Object>();
+			for (int i = 0; i < values.size(); i++) {
+				if (expressions.get(i) == expression) {
+					ret.add(values.get(i));
+				}
+			}
+			return ret;
+		}
+	}
+	
+	private static Document stream(Collector collector, 
+			XPathExpression<?>... xps) throws Exception {
+		SAXBuilder builder = new SAXBuilder(null, 
+				new StreamingXPathHandlerFactory(collector, xps), null);
+		return builder.build(new StringReader(XML));
+	}
+	
+	private static List<String> values(List<?> nodes) {
+		List<String> ret = new ArrayList<String>();
+		for (Object o : nodes) {
+			if (o instanceof Element) {
+				ret.add(((Element)o).getName() + ":" + ((Element)o).getValue());
+			} else if (o instanceof Attribute) {
+				ret.add(((Attribute)o).getValue());
+			} else {
+				ret.add(((Text)o).getText());
+			}
+		}
+		return ret;
+	}
+	
+	private static void checkSame(List<Object> streamed, XPathExpression<?> xp)
+			throws Exception {
+		Document full = new SAXBuilder().build(new StringReader(XML));
+		assertEquals(xp.getExpression(), 
+				values(xp.evaluate(full)), values(streamed));
+	}
+
+	@Test
+	public void testSameAsEvaluated() throws Exception {
+		Namespace x = Namespace.getNamespace("x", "urn:x");
+		List<XPathExpression<?>> xps = new ArrayList<XPathExpression<?>>();
+		xps.add(xpf.compile("/orders/order/item", Filters.element()));
+		xps.add(xpf.compile("//order[@status='open']/item"));
+		xps.add(xpf.compile("//item/@sku", Filters.attribute()));
+		xps.add(xpf.compile("/orders/order/@*"));
+		xps.add(xpf.compile("//item/text()"));
+		xps.add(xpf.compile("//*[@sku]"));
+		xps.add(xpf.compile("//x:note", Filters.element(), null, x));
+		xps.add(xpf.compile("/descendant::order/descendant::item"));
+		xps.add(xpf.compile("/orders//order//item[@sku='d']"));
+		xps.add(xpf.compile("//missing"));
+		Collector collector = new Collector();
+		stream(collector, xps.toArray(new XPathExpression<?>[xps.size()]));
+		for (XPathExpression<?> xp : xps) {
+			checkSame(collector.get(xp), xp);
+		}
+	}
+	
+	@Test
+	public void testPruned() throws Exception {
+		XPathExpression<Element> items = 
+				xpf.compile("//order[@status='open']/item", Filters.element());
+		Collector collector = new Collector();
+		Document doc = stream(collector, items);
+		Element root = doc.getRootElement();
+		assertEquals("orders", root.getName());
+		assertEquals(0, root.getContentSize());
+		// the prolog is kept.
+		assertEquals(2, doc.getContentSize());
+		List<Object> found = collector.get(items);
+		assertEquals(3, found.size());
+		for (Object o : found) {
+			Element item = (Element)o;
+			assertNull(item.getParent());
+		}
+		Element pear = (Element)found.get(1);
+		assertEquals(2, pear.getContentSize());
+		assertEquals("Pear", pear.getText());
+		assertEquals("Fig & Date", ((Element)found.get(2)).getText());
+	}
+	
+	@Test
+	public void testNested() throws Exception {
+		XPathExpression<Element> orders = xpf.compile("//order", Filters.element());
+		XPathExpression<Element> items = xpf.compile("//item", Filters.element());
+		XPathExpression<Text> notes = xpf.compile("//note/text()", Filters.text());
+		Collector collector = new Collector();
+		stream(collector, orders, items, notes);
+		List<Object> found = collector.get(orders);
+		assertEquals(3, found.size());
+		// items inside a matched order stay with their order.
+		Element first = (Element)found.get(0);
+		assertEquals(2, first.getChildren("item").size());
+		assertFalse(first.getChild("note").getContent().isEmpty());
+		for (Object o : collector.get(items)) {
+			assertTrue(((Element)o).getParentElement().getName().equals("order"));
+		}
+		assertEquals(1, collector.get(notes).size());
+		// results are reported as they complete, items before their order.
+		assertTrue(collector.values.indexOf(found.get(0)) > 
+				collector.values.indexOf(first.getChild("item")));
+	}
+	
+	@Test
+	public void testNestedSameExpression() throws Exception {
+		String xml = "<!DOCTYPE r [<!ENTITY e 'ent'>]>"
+				+ "<r>&e;<s id='1'>a<s id='2'>b&e;</s></s><t>&e;</t>&e;</r>";
+		XPathExpression<Element> sections = xpf.compile("//s", Filters.element());
+		Collector collector = new Collector();
+		SAXBuilder builder = new SAXBuilder(null, 
+				new StreamingXPathHandlerFactory(collector, sections), null);
+		builder.setExpandEntities(false);
+		Document doc = builder.build(new StringReader(xml));
+		// the EntityRefs outside the results are pruned too.
+		assertEquals(0, doc.getRootElement().getContentSize());
+		List<Object> found = collector.get(sections);
+		assertEquals(2, found.size());
+		// the inner match is reported first, still attached to the outer.
+		Element inner = (Element)found.get(0);
+		Element outer = (Element)found.get(1);
+		assertEquals("2", inner.getAttributeValue("id"));
+		assertEquals("1", outer.getAttributeValue("id"));
+		assertTrue(inner.getParent() == outer);
+		assertNull(outer.getParent());
+		assertEquals(2, inner.getContentSize());
+		assertTrue(inner.getContent(1) instanceof EntityRef);
+	}
+	
+	@Test
+	public void testReuse() throws Exception {
+		XPathExpression<Attribute> ids = xpf.compile("//order/@id", Filters.attribute());
+		Collector collector = new Collector();
+		StreamingXPathHandlerFactory shf = new StreamingXPathHandlerFactory(collector, ids);
+		SAXBuilder builder = new SAXBuilder(null, shf, null);
+		builder.build(new StringReader(XML));
+		builder.build(new StringReader(XML));
+		assertEquals(6, collector.get(ids).size());
+		assertEquals("3", ((Attribute)collector.values.get(5)).getValue());
+		assertEquals(1, shf.getExpressions().size());
+		assertTrue(ids == shf.getExpressions().get(0));
+	}
+	
+	@Test
+	public void testNotStreamable() {
+		String[] bad = new String[] {
+				"order", "/orders/order[1]", "//order[item]", "//order/..",
+				"/orders/order/following-sibling::order", "//comment()",
+				"count(//order)", "//order | //item", "/", "//@id", 
+				"//order[@id > 1]", "/orders/order/@id/..", "//item/text()[1]",
+		};
+		Collector collector = new Collector();
+		for (String xpath : bad) {
+			try {
+				new StreamingXPathHandlerFactory(collector, xpf.compile(xpath));
+				fail("Expect IllegalArgumentException for " + xpath);
+			} catch (IllegalArgumentException iae) {
+				// good
+			}
+		}
+		try {
+			new StreamingXPathHandlerFactory(collector, 
+					new JaxenXPathFactory().compile("//order"));
+			fail("Expect IllegalArgumentException for Jaxen expressions");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+		try {
+			new StreamingXPathHandlerFactory(collector);
+			fail("Expect IllegalArgumentException for no expressions");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+		try {
+			new StreamingXPathHandlerFactory(null, xpf.compile("//order"));
+			fail("Expect NullPointerException for no listener");
+		} catch (NullPointerException npe) {
+			// good
+		}
+	}
+
+}
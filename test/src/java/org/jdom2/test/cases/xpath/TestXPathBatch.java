@@ -0,0 +1,153 @@
+package org.jdom2.test.cases.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.jdom2.Attribute;
+import org.jdom2.Comment;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+import org.jdom2.test.util.CountingElement;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.engine.NativeXPathFactory;
+import org.jdom2.xpath.engine.XPathBatch;
+import org.jdom2.xpath.jaxen.JaxenXPathFactory;
+
+@SuppressWarnings("javadoc")
+public class TestXPathBatch {
+	
+	private static final XPathFactory xpf = new NativeXPathFactory();
+	
+	private static Document buildFeed(Element feed) {
+		Namespace atom = Namespace.getNamespace("a", "urn:atom");
+		for (int i = 0; i < 20; i++) {
+			Element entry = new Element("entry");
+			entry.setAttribute("id", "e" + i);
+			entry.setAttribute("kind", i % 3 == 0 ? "news" : "blog");
+			entry.addContent(new Element("title").setText("Title " + i));
+			entry.addContent(new Element("link").setAttribute("href", "http://x/" + i));
+			Element author = new Element("author");
+			author.addContent(new Element("name").setText("Author " + (i % 4)));
+			entry.addContent(author);
+			entry.addContent(new Element("category", atom).setText("c" + (i % 5)));
+			entry.addContent(new Comment("entry " + i));
+			feed.addContent(entry);
+		}
+		return new Document(feed);
+	}
+	
+	@Test
+	public void testSameAsIndividual() {
+		Document doc = buildFeed(new Element("feed"));
+		Namespace atom = Namespace.getNamespace("x", "urn:atom");
+		Map<String, Object> vars = new HashMap<String, Object>();
+		vars.put("n", "Author 2");
+		List<XPathExpression<?>> xps = new ArrayList<XPathExpression<?>>();
+		xps.add(xpf.compile("/feed/entry", Filters.element()));
+		xps.add(xpf.compile("/feed/entry/title", Filters.element()));
+		xps.add(xpf.compile("/feed/entry/link/@href", Filters.attribute()));
+		xps.add(xpf.compile("/feed/entry[@kind='news']/title"));
+		xps.add(xpf.compile("/feed/entry[3]/@id"));
+		xps.add(xpf.compile("//title"));
+		xps.add(xpf.compile("//author/name"));
+		xps.add(xpf.compile("//name[. = $n]", Filters.element(), vars));
+		xps.add(xpf.compile("//x:category", Filters.element(), null, atom));
+		xps.add(xpf.compile("//comment()"));
+		xps.add(xpf.compile("//entry/*[1]"));
+		xps.add(xpf.compile("/descendant-or-self::node()"));
+		xps.add(xpf.compile("//entry[last()]/preceding-sibling::entry[1]/@id"));
+		xps.add(xpf.compile("count(//entry)"));
+		xps.add(xpf.compile("//title | //link"));
+		xps.add(xpf.compile("name"));
+		xps.add(xpf.compile("author/name"));
+		xps.add(new JaxenXPathFactory().compile("//entry/@id"));
+		
+		XPathBatch batch = new XPathBatch(xps);
+		assertEquals(xps, batch.getExpressions());
+		
+		Element entry = doc.getRootElement().getChildren().get(5);
+		for (Object context : new Object[] {doc, entry, entry.getChild("author")}) {
+			XPathBatch.Results results = batch.evaluate(context);
+			assertEquals(xps.size(), results.size());
+			for (int i = 0; i < xps.size(); i++) {
+				assertEquals(xps.get(i).getExpression(), 
+						xps.get(i).evaluate(context), results.get(i));
+				assertTrue(results.get(i) == results.get(xps.get(i)));
+			}
+		}
+
+	}
+	
+	@Test
+	public void testTypedResults() {
+		Document doc = buildFeed(new Element("feed"));
+		XPathExpression<Element> titles = xpf.compile("/feed/entry/title", Filters.element());
+		XPathExpression<Attribute> hrefs = xpf.compile("/feed/entry/link/@href", Filters.attribute());
+		XPathBatch.Results results = new XPathBatch(titles, hrefs).evaluate(doc);
+		List<Element> t = results.get(titles);
+		List<Attribute> h = results.get(hrefs);
+		assertEquals(20, t.size());
+		assertEquals("Title 0", t.get(0).getText());
+		assertEquals("http://x/19", h.get(19).getValue());
+		try {
+			results.get(xpf.compile("/feed/entry/title", Filters.element()));
+			fail("Expect IllegalArgumentException for an expression not in the batch");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+	}
+	
+	@Test
+	public void testSingleWalk() {
+		CountingElement feed = new CountingElement("feed");
+		Document doc = buildFeed(feed);
+		String[] queries = {"//title", "//link", "//author/name", "//category", 
+				"//comment()", "//entry/@id"};
+		List<XPathExpression<?>> xps = new ArrayList<XPathExpression<?>>();
+		int separate = 0;
+		for (String q : queries) {
+			XPathExpression<?> xp = xpf.compile(q);
+			xps.add(xp);
+			feed.lookups = 0;
+			xp.evaluate(doc);
+			separate += feed.lookups;
+		}
+		XPathBatch batch = new XPathBatch(xps);
+		feed.lookups = 0;
+		batch.evaluate(doc);
+		// each query walks all 20 entries on their own, the batch walks them
+		// once. Sorting in to document order indexes the entries too: for
+		// //author/name in both cases, and for //entry/@id only in the batch
+		// (on its own it is a compiled plan, which never sorts).
+		assertEquals(separate - (queries.length - 2) * 20, feed.lookups);
+		assertTrue(feed.lookups < separate / 2);
+	}
+	
+	@Test
+	public void testBadArguments() {
+		try {
+			new XPathBatch(xpf.compile("//a"), null);
+			fail("Expect NullPointerException for a null expression");
+		} catch (NullPointerException npe) {
+			// good
+		}
+		try {
+			new XPathBatch(xpf.compile("//a")).evaluate(null);
+			fail("Expect NullPointerException for a null context");
+		} catch (NullPointerException npe) {
+			// good
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package org.jdom2.test.cases.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+import org.jdom2.test.util.CountingElement;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathExpression2;
+import org.jdom2.xpath.XPathFactory;
+import org.jdom2.xpath.engine.NativeXPathFactory;
+import org.jdom2.xpath.engine.XPathIndex;
+
+@SuppressWarnings("javadoc")
+public class TestXPathIndex {
+
+	private static final XPathFactory xpf = new NativeXPathFactory();
+	private static final Namespace X = Namespace.getNamespace("x", "urn:x");
+
+	private static Document buildOrders(Element root) {
+		for (int i = 0; i < 200; i++) {
+			Element order = new Element("order");
+			order.setAttribute("id", Integer.toString(i));
+			order.setAttribute("status", i % 3 == 0 ? "open" : "closed");
+			order.setAttribute("ref", Integer.toString(i % 7), X);
+			for (int j = 0; j < 3; j++) {
+				Element item = new Element("item").setText("item " + i + "." + j);
+				item.setAttribute("id", i + "." + j);
+				order.addContent(item);
+			}
+			if (i % 10 == 0) {
+				Element nested = new Element("order");
+				nested.setAttribute("id", "n" + i);
+				order.addContent(nested);
+			}
+			order.addContent(new Element("note", X));
+			root.addContent(order);
+		}
+		return new Document(root);
+	}
+	
+	private static final String[] QUERIES = new String[] {
+			"//order", "//order[@id='123']", "//order[@id='123']/item",
+			"//order[@status='open']", "//*[@id='n50']", "//order[@id]",
+			"/descendant::order[3]", "/descendant::order[@status='open'][2]",
+			"/descendant-or-self::order[last()]/@id", "//item[@id='17.2']",
+			"//x:note", "//*[@x:ref='3']", "//order[@x:ref='3']/@id",
+			"//order[@id='none']", "//order[1]", "//missing",
+			"//order[@id='40']//order", "count(//item)", "//order[@id=1]",
+			"//x:*[@id='3']", "/descendant::item[@id='3.1']/..",
+	};
+	
+	private static List<Object> evaluate(Object context) {
+		List<Object> ret = new ArrayList<Object>();
+		for (String q : QUERIES) {
+			ret.add(xpf.compile(q, Filters.fpassthrough(), null, X).evaluate(context));
+		}
+		return ret;
+	}
+	
+	@Test
+	public void testSameAsUnindexed() {
+		Document doc = buildOrders(new Element("orders"));
+		List<Object> expect = evaluate(doc);
+		assertNull(XPathIndex.getIndex(doc));
+		XPathIndex index = XPathIndex.install(doc, "id", "{urn:x}ref");
+		assertTrue(index == XPathIndex.getIndex(doc));
+		assertTrue(doc == index.getDocument());
+		List<Object> got = evaluate(doc);
+		for (int i = 0; i < QUERIES.length; i++) {
+			assertEquals(QUERIES[i], expect.get(i), got.get(i));
+		}
+		// and from a node within the document.
+		Element order = doc.getRootElement().getChildren().get(9);
+		got = evaluate(order);
+		for (int i = 0; i < QUERIES.length; i++) {
+			assertEquals(QUERIES[i], expect.get(i), got.get(i));
+		}
+		assertTrue(XPathIndex.remove(doc));
+		assertFalse(XPathIndex.remove(doc));
+		assertNull(XPathIndex.getIndex(doc));
+	}
+	
+	@Test
+	public void testIndexedLookups() {
+		CountingElement root = new CountingElement("orders");
+		Document doc = buildOrders(root);
+		XPathExpression<Element> byid = 
+				xpf.compile("//order[@id='123']/item", Filters.element());
+		XPathExpression2<Element> byname = (XPathExpression2<Element>)
+				xpf.compile("/descendant::order[5]", Filters.element());
+		byid.evaluate(doc);
+		int walk = root.lookups;
+		assertTrue(walk >= 200);
+		
+		XPathIndex.install(doc, "id");
+		assertEquals(3, byid.evaluate(doc).size());
+		// the first query builds the index.
+		root.lookups = 0;
+		assertEquals("123.0", byid.evaluate(doc).get(0).getAttributeValue("id"));
+		assertEquals("3", byname.evaluateFirst(doc).getAttributeValue("id"));
+		assertEquals("3", byname.evaluateIterator(doc).next().getAttributeValue("id"));
+		assertEquals(0, root.lookups);
+	}
+	
+	@Test
+	public void testModified() {
+		Document doc = buildOrders(new Element("orders"));
+		XPathIndex index = XPathIndex.install(doc, "id");
+		XPathExpression<Element> xp = xpf.compile("//order[@id='7']", Filters.element());
+		Element seven = xp.evaluateFirst(doc);
+		assertEquals(1, index.getElementsByAttribute("id", "7").size());
+		seven.setAttribute("id", "seven");
+		assertNull(xp.evaluateFirst(doc));
+		assertEquals(0, index.getElementsByAttribute("id", "7").size());
+		doc.getRootElement().getChildren().get(3).getChildren().get(1)
+				.setAttribute("id", "7");
+		assertEquals("item", xpf.compile("//*[@id='7']", Filters.element())
+				.evaluateFirst(doc).getName());
+		int orders = index.getElements("order", null).size();
+		doc.getRootElement().addContent(new Element("order"));
+		assertEquals(orders + 1, index.getElements("order", Namespace.NO_NAMESPACE).size());
+		doc.setRootElement(new Element("order"));
+		assertEquals(1, index.getElements("order", null).size());
+	}
+	
+	@Test
+	public void testClone() {
+		Document doc = buildOrders(new Element("orders"));
+		XPathIndex.install(doc, "id");
+		Document copy = doc.clone();
+		assertNull(XPathIndex.getIndex(copy));
+		Element e = xpf.compile("//order[@id='12']", Filters.element()).evaluateFirst(copy);
+		assertTrue(e.getDocument() == copy);
+	}
+	
+	@Test
+	public void testBadArguments() {
+		Document doc = buildOrders(new Element("orders"));
+		XPathIndex index = XPathIndex.install(doc, "id", "{}status", "{urn:x}ref");
+		assertEquals("[id, status, {urn:x}ref]", index.getIndexedAttributes().toString());
+		assertEquals(67, index.getElementsByAttribute("{}status", "open").size());
+		for (String bad : new String[] {null, "", "{urn:x}", "{urn:x", "a}b"}) {
+			try {
+				XPathIndex.install(doc, bad);
+				fail("Expect IllegalArgumentException for " + bad);
+			} catch (IllegalArgumentException iae) {
+				// good
+			}
+		}
+		try {
+			index.getElementsByAttribute("kind", "x");
+			fail("Expect IllegalArgumentException for a non-indexed attribute");
+		} catch (IllegalArgumentException iae) {
+			// good
+		}
+		try {
+			XPathIndex.install(null, "id");
+			fail("Expect NullPointerException for a null Document");
+		} catch (NullPointerException npe) {
+			// good
+		}
+	}
+
+}
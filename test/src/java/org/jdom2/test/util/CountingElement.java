@@ -0,0 +1,22 @@
+package org.jdom2.test.util;
+
+import org.jdom2.Content;
+import org.jdom2.Element;
+
+/**
+ * An Element that counts the calls to {@link #getContent(int)}, so tests
+ * can check how much of the content an XPath evaluation looked at.
+ */
+@SuppressWarnings("javadoc")
+public final class CountingElement extends Element {
+	private static final long serialVersionUID = 1L;
+	public int lookups = 0;
+	public CountingElement(String name) {
+		super(name);
+	}
+	@Override
+	public Content getContent(int index) {
+		lookups++;
+		return super.getContent(index);
+	}
+}